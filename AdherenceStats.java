@@ -0,0 +1,489 @@
+package com.example.myapplication1;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * AdherenceStats class.
+ * <p>
+ * Per-reminder adherence figures kept up to date from a {@link DoseEventLog}: doses due,
+ * taken, late, skipped and missed over the last 7, 30 and 90 days, and the current and best
+ * streak of doses taken in a row.
+ * <p>
+ * Every reminder keeps a ring of {@link #RING_DAYS} day buckets indexed by the local day the
+ * dose was due, so an event updates one bucket and a few fields in O(1), and a window is
+ * summed from at most {@link #RING_DAYS} buckets however long the history is. A fired dose
+ * that gets no taken or skipped event before the next dose of the same reminder fires counts
+ * as missed and ends the streak.
+ * <p>
+ * The state is checkpointed to "&lt;file&gt;.stats" together with the number of log events it
+ * covers, so {@link #attach} only replays the events recorded after the checkpoint.
+ * All methods are thread-safe.
+ */
+public class AdherenceStats implements DoseEventLog.Listener {
+
+    // Days kept per reminder, the longest window
+    public static final int RING_DAYS = 90;
+
+    // Windows reported by getSummary, in days
+    public static final int[] WINDOWS = {7, 30, 90};
+
+    // Suffix appended to the reminder file name
+    public static final String FILE_SUFFIX = ".stats";
+
+    // Magic number of the checkpoint file, ASCII "ADHS"
+    private static final int MAGIC = 0x41444853;
+
+    // Current checkpoint format version
+    private static final short VERSION = 1;
+
+    // Marks "no dose" in the per-reminder dose fields
+    private static final long NONE = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60_000L;
+
+    private final ZoneId zone;
+    private final Map<Long, ReminderStats> reminders = new HashMap<>();
+    private long eventCount;  // log events applied so far
+
+    /**
+     * Creates empty statistics.
+     *
+     * @param zone Zone whose days the buckets follow.
+     */
+    public AdherenceStats(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * @param reminderFile Reminder file.
+     * @return Checkpoint file of the reminder file.
+     */
+    public static File checkpointFile(File reminderFile) {
+        return new File(reminderFile.getPath() + FILE_SUFFIX);
+    }
+
+    /**
+     * Loads the checkpoint of a reminder file, or returns empty statistics if there is none
+     * or it cannot be read.
+     *
+     * @param reminderFile Reminder file.
+     * @param zone         Zone whose days the buckets follow.
+     * @return Statistics as of the checkpoint.
+     */
+    public static AdherenceStats load(File reminderFile, ZoneId zone) {
+        AdherenceStats stats = new AdherenceStats(zone);
+        File file = checkpointFile(reminderFile);
+        if (!file.exists()) {
+            return stats;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                return new AdherenceStats(zone);
+            }
+            stats.eventCount = in.readLong();
+            int reminderCount = in.readInt();
+            for (int i = 0; i < reminderCount; i++) {
+                ReminderStats reminder = ReminderStats.read(in);
+                stats.reminders.put(reminder.id, reminder);
+            }
+        } catch (IOException e) {
+            // A damaged checkpoint only means the whole log is replayed
+            return new AdherenceStats(zone);
+        }
+        return stats;
+    }
+
+    /**
+     * Replays the events recorded after the checkpoint and follows the log from then on.
+     * If the log holds fewer events than the checkpoint covers, it was replaced, and the
+     * statistics are rebuilt from the whole log.
+     *
+     * @param log Event log of the same reminder file.
+     * @throws IOException If reading the log fails.
+     */
+    public void attach(DoseEventLog log) throws IOException {
+        long from;
+        synchronized (this) {
+            if (log.size() < eventCount) {
+                reminders.clear();
+                eventCount = 0;
+            }
+            from = eventCount;
+        }
+        log.readFromAndListen(from, this);
+    }
+
+    /**
+     * Stops following a log.
+     *
+     * @param log Log passed to {@link #attach}.
+     */
+    public void detach(DoseEventLog log) {
+        log.removeListener(this);
+    }
+
+    @Override
+    public synchronized void onRecorded(DoseEvent event, long number) {
+        if (number == eventCount) {
+            apply(event);
+        }
+    }
+
+    /**
+     * Applies the next event of the log. Called with the statistics lock held.
+     */
+    private void apply(DoseEvent event) {
+        eventCount++;
+        ReminderStats reminder = reminders.get(event.getReminderId());
+        if (reminder == null) {
+            reminder = new ReminderStats(event.getReminderId());
+            reminders.put(reminder.id, reminder);
+        }
+        long scheduledAt = event.getScheduledAtMillis();
+        int day = localDay(scheduledAt);
+        switch (event.getType()) {
+            case DoseEvent.FIRED:
+                if (scheduledAt == reminder.lastDueAt) {
+                    return;  // outcome already recorded, or the same dose reported twice
+                }
+                if (reminder.pendingAt != NONE) {
+                    // The previous dose got no outcome before this one went off
+                    reminder.streak = 0;
+                }
+                reminder.bucket(day).due++;
+                reminder.lastDueAt = scheduledAt;
+                reminder.pendingAt = scheduledAt;
+                reminder.pendingDay = day;
+                break;
+            case DoseEvent.TAKEN:
+            case DoseEvent.LATE:
+            case DoseEvent.SKIPPED:
+                Bucket bucket = reminder.bucket(day);
+                if (scheduledAt < reminder.lastDueAt) {
+                    // Late outcome of an earlier dose, already counted as due and missed when
+                    // the next one fired; only turn the miss into taken or skipped, unless the
+                    // day has no miss left (a repeated outcome)
+                    int open = reminder.pendingAt != NONE && reminder.pendingDay == day ? 1 : 0;
+                    if (bucket.taken + bucket.skipped + open < bucket.due) {
+                        creditOutcome(bucket, event.getType());
+                    }
+                    return;
+                }
+                if (scheduledAt != reminder.lastDueAt) {
+                    // Outcome of a dose whose reminder did not fire, e.g. taken ahead of time
+                    bucket.due++;
+                    if (reminder.pendingAt != NONE) {
+                        reminder.streak = 0;
+                    }
+                    reminder.lastDueAt = scheduledAt;
+                } else if (reminder.pendingAt != scheduledAt) {
+                    return;  // second outcome for the same dose
+                }
+                reminder.pendingAt = NONE;
+                creditOutcome(bucket, event.getType());
+                if (event.getType() == DoseEvent.SKIPPED) {
+                    reminder.streak = 0;
+                } else {
+                    reminder.streak++;
+                    reminder.bestStreak = Math.max(reminder.bestStreak, reminder.streak);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Counts an outcome in the bucket of the day its dose was due.
+     */
+    private static void creditOutcome(Bucket bucket, int type) {
+        if (type == DoseEvent.SKIPPED) {
+            bucket.skipped++;
+        } else {
+            bucket.taken++;
+            if (type == DoseEvent.LATE) {
+                bucket.late++;
+            }
+        }
+    }
+
+    /**
+     * Returns the figures of one reminder for each of the {@link #WINDOWS}.
+     *
+     * @param reminderId Reminder id.
+     * @param nowMillis  Current time; windows end with the current local day.
+     * @return Summary, all zero if the reminder has no events.
+     */
+    public synchronized Summary getSummary(long reminderId, long nowMillis) {
+        ReminderStats reminder = reminders.get(reminderId);
+        Window[] windows = new Window[WINDOWS.length];
+        int today = localDay(nowMillis);
+        for (int w = 0; w < WINDOWS.length; w++) {
+            int due = 0, taken = 0, late = 0, skipped = 0, pending = 0;
+            if (reminder != null) {
+                int firstDay = today - WINDOWS[w] + 1;
+                for (int day = firstDay; day <= today; day++) {
+                    Bucket bucket = reminder.buckets[Math.floorMod(day, RING_DAYS)];
+                    if (bucket != null && bucket.day == day) {
+                        due += bucket.due;
+                        taken += bucket.taken;
+                        late += bucket.late;
+                        skipped += bucket.skipped;
+                    }
+                }
+                if (reminder.pendingAt != NONE && reminder.pendingDay >= firstDay
+                        && reminder.pendingDay <= today) {
+                    pending = 1;
+                }
+            }
+            windows[w] = new Window(WINDOWS[w], due, taken, late, skipped,
+                    Math.max(0, due - taken - skipped - pending));
+        }
+        return new Summary(reminderId, windows,
+                reminder == null ? 0 : reminder.streak, reminder == null ? 0 : reminder.bestStreak);
+    }
+
+    /**
+     * @return Number of log events the statistics cover.
+     */
+    public synchronized long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Writes the state next to a reminder file, atomically replacing the previous checkpoint.
+     *
+     * @param reminderFile Reminder file the events belong to.
+     * @throws IOException If writing fails.
+     */
+    public void checkpoint(File reminderFile) throws IOException {
+        File file = checkpointFile(reminderFile);
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            synchronized (this) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeLong(eventCount);
+                out.writeInt(reminders.size());
+                for (ReminderStats reminder : reminders.values()) {
+                    reminder.write(out);
+                }
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    private int localDay(long millis) {
+        long offset = zone.getRules().getOffset(Instant.ofEpochMilli(millis)).getTotalSeconds() * 1000L;
+        return (int) Math.floorDiv(millis + offset, MILLIS_PER_DAY);
+    }
+
+    /**
+     * Figures of one reminder over one window.
+     */
+    public static final class Window {
+        private final int days;
+        private final int due;
+        private final int taken;
+        private final int late;
+        private final int skipped;
+        private final int missed;
+
+        Window(int days, int due, int taken, int late, int skipped, int missed) {
+            this.days = days;
+            this.due = due;
+            this.taken = taken;
+            this.late = late;
+            this.skipped = skipped;
+            this.missed = missed;
+        }
+
+        public int getDays() {
+            return days;
+        }
+
+        public int getDue() {
+            return due;
+        }
+
+        /**
+         * @return Doses taken, on time or late.
+         */
+        public int getTaken() {
+            return taken;
+        }
+
+        public int getLate() {
+            return late;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public int getMissed() {
+            return missed;
+        }
+
+        /**
+         * @return Share of due doses that were taken, 0..100, or 100 if nothing was due.
+         */
+        public int getAdherencePercent() {
+            return due == 0 ? 100 : Math.min(100, taken * 100 / due);
+        }
+    }
+
+    /**
+     * Figures of one reminder.
+     */
+    public static final class Summary {
+        private final long reminderId;
+        private final Window[] windows;
+        private final int currentStreak;
+        private final int bestStreak;
+
+        Summary(long reminderId, Window[] windows, int currentStreak, int bestStreak) {
+            this.reminderId = reminderId;
+            this.windows = windows;
+            this.currentStreak = currentStreak;
+            this.bestStreak = bestStreak;
+        }
+
+        public long getReminderId() {
+            return reminderId;
+        }
+
+        /**
+         * @param days One of {@link #WINDOWS}.
+         * @return Figures of that window.
+         */
+        public Window getWindow(int days) {
+            for (Window window : windows) {
+                if (window.days == days) {
+                    return window;
+                }
+            }
+            throw new IllegalArgumentException("No " + days + " day window");
+        }
+
+        public int getCurrentStreak() {
+            return currentStreak;
+        }
+
+        public int getBestStreak() {
+            return bestStreak;
+        }
+    }
+
+    /**
+     * Counts of the doses due on one local day.
+     */
+    private static final class Bucket {
+        int day;
+        int due;
+        int taken;
+        int late;
+        int skipped;
+    }
+
+    /**
+     * State of one reminder.
+     */
+    private static final class ReminderStats {
+        final long id;
+        final Bucket[] buckets = new Bucket[RING_DAYS];
+        int streak;
+        int bestStreak;
+        long lastDueAt = NONE;   // due time of the latest dose seen
+        long pendingAt = NONE;   // due time of a fired dose without outcome
+        int pendingDay;
+
+        ReminderStats(long id) {
+            this.id = id;
+        }
+
+        /**
+         * Returns the bucket of a day, recycling the slot of the day {@link #RING_DAYS} earlier.
+         * Events for days that already left the ring land in a bucket no window reads.
+         */
+        Bucket bucket(int day) {
+            int slot = Math.floorMod(day, RING_DAYS);
+            Bucket bucket = buckets[slot];
+            if (bucket == null) {
+                bucket = new Bucket();
+                bucket.day = day;
+                buckets[slot] = bucket;
+            } else if (bucket.day < day) {
+                bucket.day = day;
+                bucket.due = 0;
+                bucket.taken = 0;
+                bucket.late = 0;
+                bucket.skipped = 0;
+            } else if (bucket.day > day) {
+                return new Bucket();
+            }
+            return bucket;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(id);
+            out.writeInt(streak);
+            out.writeInt(bestStreak);
+            out.writeLong(lastDueAt);
+            out.writeLong(pendingAt);
+            out.writeInt(pendingDay);
+            int count = 0;
+            for (Bucket bucket : buckets) {
+                if (bucket != null) count++;
+            }
+            out.writeInt(count);
+            for (Bucket bucket : buckets) {
+                if (bucket != null) {
+                    out.writeInt(bucket.day);
+                    out.writeInt(bucket.due);
+                    out.writeInt(bucket.taken);
+                    out.writeInt(bucket.late);
+                    out.writeInt(bucket.skipped);
+                }
+            }
+        }
+
+        static ReminderStats read(DataInputStream in) throws IOException {
+            ReminderStats reminder = new ReminderStats(in.readLong());
+            reminder.streak = in.readInt();
+            reminder.bestStreak = in.readInt();
+            reminder.lastDueAt = in.readLong();
+            reminder.pendingAt = in.readLong();
+            reminder.pendingDay = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Bucket bucket = new Bucket();
+                bucket.day = in.readInt();
+                bucket.due = in.readInt();
+                bucket.taken = in.readInt();
+                bucket.late = in.readInt();
+                bucket.skipped = in.readInt();
+                reminder.buckets[Math.floorMod(bucket.day, RING_DAYS)] = bucket;
+            }
+            return reminder;
+        }
+    }
+}
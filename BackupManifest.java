@@ -0,0 +1,206 @@
+package com.example.myapplication1;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * BackupManifest class.
+ * <p>
+ * Description of one backup: for every file of the reminder store, its size and the list of
+ * chunks that make it up, in order. The chunks themselves live in the {@link BackupRepository}
+ * and are shared by all backups that contain them, so a manifest is all a nightly backup adds
+ * besides the chunks that changed.
+ * <p>
+ * Layout, all numbers big-endian:
+ * <pre>
+ * int   magic "BKUP"
+ * short version
+ * long  creation time, int file count
+ * per file:  name (modified UTF-8), boolean journal, long length, long last modified,
+ *            long generation, int chunk count, then per chunk 32 bytes SHA-256, int length
+ * </pre>
+ * Immutable.
+ */
+public final class BackupManifest {
+
+    // Magic number of a manifest, ASCII "BKUP"
+    private static final int MAGIC = 0x424B5550;
+
+    // Current format version
+    private static final short VERSION = 1;
+
+    // Length of a chunk hash in bytes
+    static final int HASH_SIZE = 32;
+
+    private final long createdMillis;
+    private final List<FileEntry> files;
+
+    /**
+     * One chunk of a file: its SHA-256 and its uncompressed length.
+     */
+    public static final class ChunkRef {
+        private final byte[] hash;
+        private final int length;
+
+        ChunkRef(byte[] hash, int length) {
+            this.hash = hash;
+            this.length = length;
+        }
+
+        /**
+         * @return SHA-256 of the uncompressed chunk; not to be modified.
+         */
+        byte[] getHash() {
+            return hash;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+
+    /**
+     * One file of the store.
+     */
+    public static final class FileEntry {
+        private final String name;
+        private final boolean journal;
+        private final long length;
+        private final long lastModified;
+        private final long generation;
+        private final List<ChunkRef> chunks;
+
+        FileEntry(String name, boolean journal, long length, long lastModified, long generation,
+                  List<ChunkRef> chunks) {
+            this.name = name;
+            this.journal = journal;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.generation = generation;
+            this.chunks = Collections.unmodifiableList(chunks);
+        }
+
+        /**
+         * @return File name relative to the store folder.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return True for a reminder journal, which was backed up up to a frame boundary.
+         */
+        public boolean isJournal() {
+            return journal;
+        }
+
+        /**
+         * @return Bytes backed up.
+         */
+        public long getLength() {
+            return length;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return Journal generation at the time of the backup, 0 for other files.
+         */
+        public long getGeneration() {
+            return generation;
+        }
+
+        public List<ChunkRef> getChunks() {
+            return chunks;
+        }
+    }
+
+    BackupManifest(long createdMillis, List<FileEntry> files) {
+        this.createdMillis = createdMillis;
+        this.files = Collections.unmodifiableList(files);
+    }
+
+    /**
+     * @return Time the backup was taken, epoch milliseconds.
+     */
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    public List<FileEntry> getFiles() {
+        return files;
+    }
+
+    /**
+     * @param name File name.
+     * @return Entry of the file, or null if the backup does not contain it.
+     */
+    public FileEntry getFile(String name) {
+        for (FileEntry file : files) {
+            if (file.name.equals(name)) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(createdMillis);
+        out.writeInt(files.size());
+        for (FileEntry file : files) {
+            out.writeUTF(file.name);
+            out.writeBoolean(file.journal);
+            out.writeLong(file.length);
+            out.writeLong(file.lastModified);
+            out.writeLong(file.generation);
+            out.writeInt(file.chunks.size());
+            for (ChunkRef chunk : file.chunks) {
+                out.write(chunk.hash);
+                out.writeInt(chunk.length);
+            }
+        }
+    }
+
+    static BackupManifest read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a backup manifest");
+        }
+        short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported backup manifest version " + version);
+        }
+        long createdMillis = in.readLong();
+        int fileCount = in.readInt();
+        if (fileCount < 0) {
+            throw new IOException("Corrupt backup manifest");
+        }
+        List<FileEntry> files = new ArrayList<>(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            String name = in.readUTF();
+            boolean journal = in.readBoolean();
+            long length = in.readLong();
+            long lastModified = in.readLong();
+            long generation = in.readLong();
+            int chunkCount = in.readInt();
+            if (chunkCount < 0) {
+                throw new IOException("Corrupt backup manifest entry " + name);
+            }
+            List<ChunkRef> chunks = new ArrayList<>(chunkCount);
+            for (int c = 0; c < chunkCount; c++) {
+                byte[] hash = new byte[HASH_SIZE];
+                in.readFully(hash);
+                chunks.add(new ChunkRef(hash, in.readInt()));
+            }
+            files.add(new FileEntry(name, journal, length, lastModified, generation, chunks));
+        }
+        return new BackupManifest(createdMillis, files);
+    }
+}
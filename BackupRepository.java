@@ -0,0 +1,296 @@
+package com.example.myapplication1;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * BackupRepository class.
+ * <p>
+ * Folder holding backups of the reminder store: compressed chunks named by the SHA-256 of
+ * their content under "chunks/", and one {@link BackupManifest} per backup under
+ * "manifests/". A chunk is written once and then shared by every file and every backup that
+ * contains it, so a nightly backup only writes the chunks that changed since any earlier
+ * backup, plus a small manifest.
+ * <p>
+ * Chunks are compressed with {@link Deflater} and checked against their hash when read back,
+ * so a damaged chunk is reported instead of restored. Every file is written under a temporary
+ * name and renamed into place, so an interrupted backup leaves no partial chunk or manifest
+ * behind. {@link #prune} drops old backups and the chunks no remaining backup refers to; it
+ * must not run while a backup into the same repository is in progress.
+ * <p>
+ * All methods are thread-safe.
+ */
+public final class BackupRepository implements Closeable {
+
+    // Suffix of manifest files, named by their creation time
+    private static final String MANIFEST_SUFFIX = ".bak";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File chunkDir;
+    private final File manifestDir;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final Inflater inflater = new Inflater();
+    private byte[] compressBuffer = new byte[ContentChunker.MAX_CHUNK + 1024];
+
+    /**
+     * Opens a repository, creating its folders if needed.
+     *
+     * @param dir Repository folder.
+     * @throws IOException If the folders cannot be created.
+     */
+    public BackupRepository(File dir) throws IOException {
+        chunkDir = new File(dir, "chunks");
+        manifestDir = new File(dir, "manifests");
+        if (!chunkDir.isDirectory() && !chunkDir.mkdirs() || !manifestDir.isDirectory() && !manifestDir.mkdirs()) {
+            throw new IOException("Could not create backup repository in " + dir);
+        }
+    }
+
+    /**
+     * @return New SHA-256 digest.
+     */
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * @param hash Chunk hash.
+     * @return True if the repository holds the chunk.
+     */
+    public boolean hasChunk(byte[] hash) {
+        return chunkFile(hash).exists();
+    }
+
+    /**
+     * Stores a chunk unless the repository already holds one with the same hash.
+     *
+     * @param hash   SHA-256 of the chunk.
+     * @param bytes  Buffer holding the chunk.
+     * @param offset Start of the chunk.
+     * @param length Length of the chunk.
+     * @return Compressed bytes written, 0 if the chunk was already stored.
+     * @throws IOException If writing fails.
+     */
+    public synchronized int putChunk(byte[] hash, byte[] bytes, int offset, int length) throws IOException {
+        File file = chunkFile(hash);
+        if (file.exists()) {
+            return 0;
+        }
+        deflater.reset();
+        deflater.setInput(bytes, offset, length);
+        deflater.finish();
+        int compressed = 0;
+        while (!deflater.finished()) {
+            if (compressed == compressBuffer.length) {
+                compressBuffer = Arrays.copyOf(compressBuffer, compressBuffer.length * 2);
+            }
+            compressed += deflater.deflate(compressBuffer, compressed, compressBuffer.length - compressed);
+        }
+
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create " + parent);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(compressBuffer, 0, compressed);
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not store chunk " + file);
+        }
+        return compressed;
+    }
+
+    /**
+     * Reads a chunk back and checks it against its hash.
+     *
+     * @param chunk Chunk of a manifest.
+     * @return Uncompressed chunk.
+     * @throws IOException If the chunk is missing, cannot be read or does not match its hash.
+     */
+    public synchronized byte[] readChunk(BackupManifest.ChunkRef chunk) throws IOException {
+        File file = chunkFile(chunk.getHash());
+        byte[] compressed;
+        try {
+            compressed = Files.readAllBytes(file.toPath());
+        } catch (NoSuchFileException e) {
+            throw new IOException("Backup chunk missing: " + file.getName(), e);
+        }
+        byte[] bytes = new byte[chunk.getLength()];
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            int n = 0;
+            while (n < bytes.length && !inflater.finished()) {
+                int inflated = inflater.inflate(bytes, n, bytes.length - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += inflated;
+            }
+            if (n != bytes.length || !inflater.finished()) {
+                throw new IOException("Backup chunk has the wrong length: " + file.getName());
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Backup chunk is corrupt: " + file.getName(), e);
+        }
+        if (!MessageDigest.isEqual(sha256().digest(bytes), chunk.getHash())) {
+            throw new IOException("Backup chunk does not match its hash: " + file.getName());
+        }
+        return bytes;
+    }
+
+    /**
+     * Stores a manifest, named by its creation time.
+     *
+     * @param manifest Manifest.
+     * @throws IOException If writing fails.
+     */
+    public synchronized void writeManifest(BackupManifest manifest) throws IOException {
+        File file = new File(manifestDir, manifest.getCreatedMillis() + MANIFEST_SUFFIX);
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            manifest.write(out);
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /**
+     * @return Manifest files, oldest first.
+     */
+    public synchronized List<File> manifestFiles() {
+        List<File> files = new ArrayList<>();
+        File[] listed = manifestDir.listFiles((dir, name) -> name.endsWith(MANIFEST_SUFFIX));
+        if (listed != null) {
+            files.addAll(Arrays.asList(listed));
+        }
+        files.sort((a, b) -> Long.compare(createdMillis(a), createdMillis(b)));
+        return files;
+    }
+
+    /**
+     * @param file Manifest file from {@link #manifestFiles()}.
+     * @return Manifest.
+     * @throws IOException If the manifest cannot be read.
+     */
+    public BackupManifest readManifest(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return BackupManifest.read(in);
+        }
+    }
+
+    /**
+     * @return Latest backup, or null if there is none.
+     * @throws IOException If the manifest cannot be read.
+     */
+    public BackupManifest latest() throws IOException {
+        List<File> files = manifestFiles();
+        return files.isEmpty() ? null : readManifest(files.get(files.size() - 1));
+    }
+
+    /**
+     * Deletes all but the newest backups and the chunks that only the deleted ones used.
+     *
+     * @param keep Number of backups to keep, at least 1.
+     * @return Number of chunks deleted.
+     * @throws IOException If a remaining manifest cannot be read.
+     */
+    public synchronized int prune(int keep) throws IOException {
+        if (keep < 1) {
+            throw new IllegalArgumentException("Must keep at least one backup: " + keep);
+        }
+        List<File> files = manifestFiles();
+        Set<String> referenced = new HashSet<>();
+        for (File file : files.subList(Math.max(0, files.size() - keep), files.size())) {
+            for (BackupManifest.FileEntry entry : readManifest(file).getFiles()) {
+                for (BackupManifest.ChunkRef chunk : entry.getChunks()) {
+                    referenced.add(hex(chunk.getHash()));
+                }
+            }
+        }
+        for (File file : files.subList(0, Math.max(0, files.size() - keep))) {
+            file.delete();
+        }
+
+        int deleted = 0;
+        File[] prefixes = chunkDir.listFiles();
+        if (prefixes != null) {
+            for (File prefix : prefixes) {
+                File[] chunks = prefix.listFiles();
+                if (chunks == null) {
+                    continue;
+                }
+                for (File chunk : chunks) {
+                    if (!referenced.contains(chunk.getName()) && chunk.delete()) {
+                        deleted++;
+                    }
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Frees the compressor's native memory.
+     */
+    @Override
+    public synchronized void close() {
+        deflater.end();
+        inflater.end();
+    }
+
+    private File chunkFile(byte[] hash) {
+        String name = hex(hash);
+        return new File(new File(chunkDir, name.substring(0, 2)), name);
+    }
+
+    private static long createdMillis(File manifest) {
+        String name = manifest.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - MANIFEST_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.myapplication1;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.SplittableRandom;
+
+/**
+ * ContentChunker class.
+ * <p>
+ * Splits a stream into chunks whose boundaries depend on the content, not on offsets. A
+ * rolling gear hash is updated with every byte and a chunk ends where its low bits are all
+ * zero, so inserting or removing bytes only moves the boundaries next to the edit; the chunks
+ * around it come out identical and are deduplicated by {@link BackupRepository}. Chunks are
+ * between {@link #MIN_CHUNK} and {@link #MAX_CHUNK} bytes, {@link #AVERAGE_CHUNK} on average
+ * past the minimum.
+ * <p>
+ * The gear table is generated from a fixed seed. Changing the seed or the sizes only costs
+ * deduplication against older backups; restore does not depend on them. Stateless and
+ * thread-safe.
+ */
+public final class ContentChunker {
+
+    // Chunk size bounds and the average size past the minimum
+    public static final int MIN_CHUNK = 2 * 1024;
+    public static final int AVERAGE_CHUNK = 8 * 1024;
+    public static final int MAX_CHUNK = 64 * 1024;
+
+    // Bits of the rolling hash that must be zero at a boundary
+    private static final long BOUNDARY_MASK = AVERAGE_CHUNK - 1;
+
+    // Random value per byte value, from a fixed seed so boundaries are the same on every device
+    private static final long[] GEAR = new long[256];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x6D656469636E6521L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Receives the chunks of a stream in order.
+     */
+    public interface ChunkSink {
+        /**
+         * @param bytes  Buffer holding the chunk; only valid during the call.
+         * @param offset Start of the chunk in the buffer.
+         * @param length Length of the chunk.
+         * @throws IOException If handling the chunk fails.
+         */
+        void chunk(byte[] bytes, int offset, int length) throws IOException;
+    }
+
+    private ContentChunker() {
+        // Static helpers only
+    }
+
+    /**
+     * Splits a stream into chunks up to its end. The last chunk may be shorter than
+     * {@link #MIN_CHUNK}.
+     *
+     * @param in   Input, read to the end but not closed.
+     * @param sink Receives the chunks.
+     * @return Number of bytes read.
+     * @throws IOException If reading or the sink fails.
+     */
+    public static long split(InputStream in, ChunkSink sink) throws IOException {
+        byte[] buffer = new byte[2 * MAX_CHUNK];
+        int start = 0;   // start of the current chunk
+        int end = 0;     // end of the bytes read
+        long total = 0;
+        boolean eof = false;
+        while (true) {
+            // Keep at least one maximal chunk in the buffer unless the stream has ended
+            if (!eof && end - start < MAX_CHUNK) {
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                }
+                while (end < buffer.length) {
+                    int read = in.read(buffer, end, buffer.length - end);
+                    if (read < 0) {
+                        eof = true;
+                        break;
+                    }
+                    end += read;
+                    total += read;
+                }
+            }
+            if (start == end) {
+                return total;
+            }
+            int length = boundary(buffer, start, end);
+            sink.chunk(buffer, start, length);
+            start += length;
+        }
+    }
+
+    /**
+     * Finds the length of the chunk starting at an offset.
+     */
+    private static int boundary(byte[] bytes, int start, int end) {
+        int limit = Math.min(end, start + MAX_CHUNK);
+        if (limit - start <= MIN_CHUNK) {
+            return limit - start;
+        }
+        long hash = 0;
+        for (int i = start + MIN_CHUNK; i < limit; i++) {
+            hash = (hash << 1) + GEAR[bytes[i] & 0xFF];
+            if ((hash & BOUNDARY_MASK) == 0) {
+                return i + 1 - start;
+            }
+        }
+        return limit - start;
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.myapplication1;
+
+/**
+ * DoseEvent class.
+ * <p>
+ * One entry of the dose adherence log: what happened to one dose of a reminder and when.
+ * Stored by {@link DoseEventLog}.
+ */
+public final class DoseEvent {
+
+    // Event types
+    public static final int FIRED = 0;    // the reminder went off
+    public static final int TAKEN = 1;    // the dose was taken on time
+    public static final int LATE = 2;     // the dose was taken after the grace period
+    public static final int SKIPPED = 3;  // the dose was deliberately not taken
+
+    // A dose taken more than this long after its due time counts as late
+    public static final long LATE_AFTER_MILLIS = 30 * 60_000L;
+
+    private final long reminderId;
+    private final int doseIndex;
+    private final long scheduledAtMillis;
+    private final long eventAtMillis;
+    private final int type;
+
+    /**
+     * Creates an event.
+     *
+     * @param reminderId        Id of the reminder the dose belongs to.
+     * @param doseIndex         Index of the dose within its day, 0 for the first dose.
+     * @param scheduledAtMillis Due time of the dose in epoch milliseconds.
+     * @param eventAtMillis     Time of the event in epoch milliseconds.
+     * @param type              One of {@link #FIRED}, {@link #TAKEN}, {@link #LATE}, {@link #SKIPPED}.
+     */
+    public DoseEvent(long reminderId, int doseIndex, long scheduledAtMillis, long eventAtMillis, int type) {
+        if (type < FIRED || type > SKIPPED) {
+            throw new IllegalArgumentException("Unknown event type: " + type);
+        }
+        if (doseIndex < 0) {
+            throw new IllegalArgumentException("Negative dose index: " + doseIndex);
+        }
+        this.reminderId = reminderId;
+        this.doseIndex = doseIndex;
+        this.scheduledAtMillis = scheduledAtMillis;
+        this.eventAtMillis = eventAtMillis;
+        this.type = type;
+    }
+
+    /**
+     * Creates the event of a dose that went off.
+     *
+     * @param dose     Dose reported by {@link DoseScheduler#pollDue}.
+     * @param atMillis Time the reminder went off.
+     * @return FIRED event.
+     */
+    public static DoseEvent fired(ScheduledDose dose, long atMillis) {
+        return new DoseEvent(dose.getRecord().getId(), dose.getDoseIndex(), dose.getFireAtMillis(),
+                atMillis, FIRED);
+    }
+
+    /**
+     * Creates the event of a dose that was taken, on time or late.
+     *
+     * @param dose     The dose.
+     * @param atMillis Time the dose was taken.
+     * @return TAKEN event, or LATE if taken more than {@link #LATE_AFTER_MILLIS} after it was due.
+     */
+    public static DoseEvent taken(ScheduledDose dose, long atMillis) {
+        int type = atMillis - dose.getFireAtMillis() > LATE_AFTER_MILLIS ? LATE : TAKEN;
+        return new DoseEvent(dose.getRecord().getId(), dose.getDoseIndex(), dose.getFireAtMillis(),
+                atMillis, type);
+    }
+
+    /**
+     * Creates the event of a dose that was skipped.
+     *
+     * @param dose     The dose.
+     * @param atMillis Time the dose was skipped.
+     * @return SKIPPED event.
+     */
+    public static DoseEvent skipped(ScheduledDose dose, long atMillis) {
+        return new DoseEvent(dose.getRecord().getId(), dose.getDoseIndex(), dose.getFireAtMillis(),
+                atMillis, SKIPPED);
+    }
+
+    public long getReminderId() {
+        return reminderId;
+    }
+
+    public int getDoseIndex() {
+        return doseIndex;
+    }
+
+    public long getScheduledAtMillis() {
+        return scheduledAtMillis;
+    }
+
+    public long getEventAtMillis() {
+        return eventAtMillis;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DoseEvent)) return false;
+        DoseEvent other = (DoseEvent) o;
+        return reminderId == other.reminderId && doseIndex == other.doseIndex
+                && scheduledAtMillis == other.scheduledAtMillis
+                && eventAtMillis == other.eventAtMillis && type == other.type;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Long.hashCode(reminderId);
+        result = 31 * result + doseIndex;
+        result = 31 * result + Long.hashCode(scheduledAtMillis);
+        result = 31 * result + Long.hashCode(eventAtMillis);
+        return 31 * result + type;
+    }
+
+    @Override
+    public String toString() {
+        return "DoseEvent{id=" + reminderId + ", dose=" + doseIndex + ", scheduled=" + scheduledAtMillis
+                + ", at=" + eventAtMillis + ", type=" + type + "}";
+    }
+}
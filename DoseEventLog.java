@@ -0,0 +1,631 @@
+package com.example.myapplication1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * DoseEventLog class.
+ * <p>
+ * Append-only time series of {@link DoseEvent}s for one reminder file, kept next to it as
+ * "&lt;file&gt;.events". Since every patient has their own reminder file, a query like
+ * "this patient, last 30 days" only ever touches that patient's log.
+ * <p>
+ * Events are collected in memory and sealed into blocks of up to {@link #BLOCK_EVENTS}
+ * events. Within a block the reminder ids are stored once in a small table and the times as
+ * zigzag varint deltas, and the result is compressed with a {@link Deflater}. Each block is
+ * preceded by a header with its event count, time range and a 64-bit mask of the reminder ids
+ * it contains. The headers form a sparse index that is rebuilt when the log is opened by
+ * reading the headers only, and a query decompresses just the blocks whose time range
+ * overlaps the query and whose mask may contain the reminder asked for.
+ * <p>
+ * {@link #record} only adds the event to the open block, so it is cheap enough for the path
+ * where a reminder goes off; full blocks are compressed and appended on a background thread.
+ * Events of the open block are lost in a crash unless {@link #flush()} was called, which
+ * seals the open block even if it is not full and syncs the file.
+ * <p>
+ * Events are numbered in the order they were recorded. {@link #readFrom} replays the events
+ * from a number on, skipping whole blocks by their counts, and listeners see every event as
+ * it is recorded; together they let aggregates such as {@link AdherenceStats} resume from a
+ * checkpoint.
+ * <p>
+ * File layout: magic "DEVT" (4), version (2), then blocks of
+ * payload length (4), event count (4), min time (8), max time (8), id mask (8), payload.
+ * All methods are thread-safe.
+ */
+public class DoseEventLog implements Closeable {
+
+    /**
+     * Notified of every recorded event, with the log lock held.
+     * Implementations must be quick and must not call back into the log from another thread.
+     */
+    public interface Listener {
+        /**
+         * @param event  The event.
+         * @param number Number of the event, counting from 0 in recording order.
+         */
+        void onRecorded(DoseEvent event, long number);
+    }
+
+    // Events per sealed block
+    public static final int BLOCK_EVENTS = 256;
+
+    // Suffix appended to the reminder file name
+    public static final String FILE_SUFFIX = ".events";
+
+    // Magic number of the event log, ASCII "DEVT"
+    private static final int MAGIC = 0x44455654;
+
+    // Current event log format version
+    private static final short VERSION = 1;
+
+    // Size of the file header in bytes (magic + version)
+    private static final int HEADER_SIZE = 4 + 2;
+
+    // Size of a block header in bytes (payload length + count + min time + max time + id mask)
+    private static final int BLOCK_HEADER_SIZE = 4 + 4 + 8 + 8 + 8;
+
+    // One log per file, shared by all callers in the process
+    private static final Map<String, DoseEventLog> INSTANCES = new HashMap<>();
+
+    // Background thread shared by all logs, compressing and appending sealed blocks
+    private static final ExecutorService WRITE_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "DoseEventLog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Metrics.Counter BLOCKS_READ = Metrics.counter("events.blocks_read");
+    private static final Metrics.Counter BLOCKS_SKIPPED = Metrics.counter("events.blocks_skipped");
+    private static final Metrics.Histogram BLOCK_WRITE_TIME = Metrics.histogram("events.block_write_us");
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final List<Block> blocks = new ArrayList<>();          // sparse index, in file order
+    private final List<DoseEvent[]> sealed = new ArrayList<>();    // sealed, not yet appended
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private DoseEvent[] open = new DoseEvent[BLOCK_EVENTS];
+    private int openCount;
+    private long length;      // end of the last complete block
+    private long eventCount;  // events in blocks, sealed and open
+
+    /**
+     * Returns the shared log of a reminder file, opening it on first use.
+     *
+     * @param reminderFile Reminder file the events belong to.
+     * @return Shared log.
+     * @throws IOException If the log cannot be opened or is corrupt.
+     */
+    public static DoseEventLog getInstance(File reminderFile) throws IOException {
+        File file = eventFile(reminderFile);
+        String key = file.getAbsolutePath();
+        synchronized (INSTANCES) {
+            DoseEventLog log = INSTANCES.get(key);
+            if (log == null) {
+                log = new DoseEventLog(file);
+                INSTANCES.put(key, log);
+            }
+            return log;
+        }
+    }
+
+    /**
+     * @param reminderFile Reminder file.
+     * @return True if the shared log of the reminder file is open in this process.
+     */
+    static boolean isOpen(File reminderFile) {
+        synchronized (INSTANCES) {
+            return INSTANCES.containsKey(eventFile(reminderFile).getAbsolutePath());
+        }
+    }
+
+    /**
+     * @param reminderFile Reminder file.
+     * @return Event log file of the reminder file.
+     */
+    public static File eventFile(File reminderFile) {
+        return new File(reminderFile.getPath() + FILE_SUFFIX);
+    }
+
+    /**
+     * Opens a log, creating the file if needed, and rebuilds the block index from the block
+     * headers. A partially written trailing block is cut off.
+     *
+     * @param file Event log file.
+     * @throws IOException If the file cannot be opened or is not an event log.
+     */
+    public DoseEventLog(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        if (raf.length() == 0) {
+            raf.writeInt(MAGIC);
+            raf.writeShort(VERSION);
+            length = HEADER_SIZE;
+            return;
+        }
+        if (raf.length() < HEADER_SIZE || raf.readInt() != MAGIC || raf.readShort() > VERSION) {
+            raf.close();
+            throw new IOException("Not a dose event log: " + file);
+        }
+        long fileLength = raf.length();
+        long position = HEADER_SIZE;
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+        while (position + BLOCK_HEADER_SIZE <= fileLength) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            Block block = new Block(position, header.getInt(), header.getInt(),
+                    header.getLong(), header.getLong(), header.getLong());
+            if (block.payloadLength < 0 || block.end() > fileLength) {
+                break;
+            }
+            blocks.add(block);
+            eventCount += block.count;
+            position = block.end();
+        }
+        length = position;
+        if (fileLength > length) {
+            raf.setLength(length);
+        }
+    }
+
+    /**
+     * Adds an event to the open block. Does no I/O unless the block becomes full, in which
+     * case it is handed to the background thread.
+     *
+     * @param event Event to add.
+     */
+    public synchronized void record(DoseEvent event) {
+        long number = eventCount++;
+        open[openCount++] = event;
+        if (openCount == BLOCK_EVENTS) {
+            sealOpenBlock();
+        }
+        for (Listener listener : listeners) {
+            listener.onRecorded(event, number);
+        }
+    }
+
+    /**
+     * Registers a listener for events recorded from now on.
+     *
+     * @param listener Listener to add.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener Listener to remove.
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Hands the events from a number on to a listener, then registers it for the events
+     * recorded after them. Both happen under the log lock, so the listener sees every event
+     * from that number on exactly once, in order.
+     *
+     * @param fromNumber Number of the first event to hand over.
+     * @param listener   Listener to add.
+     * @throws IOException If reading fails; the listener is not added then.
+     */
+    public synchronized void readFromAndListen(long fromNumber, Listener listener) throws IOException {
+        List<DoseEvent> events = new ArrayList<>();
+        long number = readFrom(fromNumber, events) - events.size();
+        for (DoseEvent event : events) {
+            listener.onRecorded(event, number++);
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * Collects the events from a number on, in recording order. Blocks holding only earlier
+     * events are skipped without being read.
+     *
+     * @param fromNumber Number of the first event to return.
+     * @param out        Receives the events.
+     * @return Number of events in the log, i.e. the number of the next event.
+     * @throws IOException If reading fails.
+     */
+    public synchronized long readFrom(long fromNumber, List<DoseEvent> out) throws IOException {
+        long number = 0;
+        for (Block block : blocks) {
+            if (number + block.count > fromNumber) {
+                DoseEvent[] events = readBlock(block);
+                BLOCKS_READ.increment();
+                addFrom(events, events.length, number, fromNumber, out);
+            }
+            number += block.count;
+        }
+        for (DoseEvent[] events : sealed) {
+            addFrom(events, events.length, number, fromNumber, out);
+            number += events.length;
+        }
+        addFrom(open, openCount, number, fromNumber, out);
+        return number + openCount;
+    }
+
+    private static void addFrom(DoseEvent[] events, int count, long firstNumber, long fromNumber,
+                                List<DoseEvent> out) {
+        for (int i = (int) Math.max(0, Math.min(count, fromNumber - firstNumber)); i < count; i++) {
+            out.add(events[i]);
+        }
+    }
+
+    /**
+     * Seals the open block and waits in the background until every sealed block is in the
+     * file and synced.
+     *
+     * @return Future completed once all events recorded so far are durable.
+     */
+    public CompletableFuture<Void> flush() {
+        synchronized (this) {
+            if (openCount > 0) {
+                sealOpenBlock();
+            }
+        }
+        return CompletableFuture.runAsync(() -> {
+            try {
+                // Also retries blocks whose background append failed
+                appendSealed();
+                channel.force(false);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, WRITE_EXECUTOR);
+    }
+
+    /**
+     * Returns the events of a time range, of all reminders.
+     *
+     * @param fromMillis Start of the range, inclusive.
+     * @param toMillis   End of the range, exclusive.
+     * @return Events ordered by event time.
+     * @throws IOException If reading fails.
+     */
+    public List<DoseEvent> query(long fromMillis, long toMillis) throws IOException {
+        return query(fromMillis, toMillis, 0, false);
+    }
+
+    /**
+     * Returns the events of one reminder in a time range.
+     *
+     * @param reminderId Reminder id.
+     * @param fromMillis Start of the range, inclusive.
+     * @param toMillis   End of the range, exclusive.
+     * @return Events ordered by event time.
+     * @throws IOException If reading fails.
+     */
+    public List<DoseEvent> query(long reminderId, long fromMillis, long toMillis) throws IOException {
+        return query(fromMillis, toMillis, reminderId, true);
+    }
+
+    /**
+     * @return Number of blocks in the file.
+     */
+    public synchronized int getBlockCount() {
+        return blocks.size();
+    }
+
+    /**
+     * @return Number of events in the file, in sealed blocks and in the open block.
+     */
+    public synchronized long size() {
+        return eventCount;
+    }
+
+    /**
+     * @return Bytes in the file.
+     */
+    public synchronized long length() {
+        return length;
+    }
+
+    /**
+     * Writes out all recorded events and closes the file. The shared instance is dropped.
+     *
+     * @throws IOException If the events could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e);
+        } finally {
+            synchronized (INSTANCES) {
+                INSTANCES.remove(file.getAbsolutePath(), this);
+            }
+            raf.close();
+        }
+    }
+
+    private List<DoseEvent> query(long fromMillis, long toMillis, long reminderId, boolean oneReminder)
+            throws IOException {
+        List<Block> candidates = new ArrayList<>();
+        List<DoseEvent> events = new ArrayList<>();
+        long idBit = idBit(reminderId);
+        synchronized (this) {
+            for (Block block : blocks) {
+                if (block.maxTime < fromMillis || block.minTime >= toMillis
+                        || (oneReminder && (block.idMask & idBit) == 0)) {
+                    BLOCKS_SKIPPED.increment();
+                } else {
+                    candidates.add(block);
+                }
+            }
+            // Events not in the file yet
+            for (DoseEvent[] block : sealed) {
+                collect(block, block.length, fromMillis, toMillis, reminderId, oneReminder, events);
+            }
+            collect(open, openCount, fromMillis, toMillis, reminderId, oneReminder, events);
+        }
+        // Blocks never move once written, so they are read without holding the lock
+        for (Block block : candidates) {
+            DoseEvent[] decoded = readBlock(block);
+            BLOCKS_READ.increment();
+            collect(decoded, decoded.length, fromMillis, toMillis, reminderId, oneReminder, events);
+        }
+        events.sort(Comparator.comparingLong(DoseEvent::getEventAtMillis));
+        return events;
+    }
+
+    private static void collect(DoseEvent[] block, int count, long fromMillis, long toMillis,
+                                long reminderId, boolean oneReminder, List<DoseEvent> out) {
+        for (int i = 0; i < count; i++) {
+            DoseEvent event = block[i];
+            if (event.getEventAtMillis() >= fromMillis && event.getEventAtMillis() < toMillis
+                    && (!oneReminder || event.getReminderId() == reminderId)) {
+                out.add(event);
+            }
+        }
+    }
+
+    /**
+     * Moves the open block to the sealed blocks and schedules its append. Called with the
+     * log lock held.
+     */
+    private void sealOpenBlock() {
+        sealed.add(Arrays.copyOf(open, openCount));
+        open = new DoseEvent[BLOCK_EVENTS];
+        openCount = 0;
+        WRITE_EXECUTOR.execute(() -> {
+            try {
+                appendSealed();
+            } catch (IOException e) {
+                Metrics.recordError("events.append", e);
+            }
+        });
+    }
+
+    /**
+     * Compresses and appends the sealed blocks in order. Runs on the background thread only;
+     * a block stays in the sealed list, visible to queries, until it is in the index.
+     */
+    private void appendSealed() throws IOException {
+        while (true) {
+            DoseEvent[] events;
+            long position;
+            synchronized (this) {
+                if (sealed.isEmpty()) {
+                    return;
+                }
+                events = sealed.get(0);
+                position = length;
+            }
+            long start = Metrics.startTimer();
+            // On failure the events stay in the sealed list and the next flush tries again
+            Block block = writeBlock(events, position);
+            BLOCK_WRITE_TIME.recordSince(start);
+            synchronized (this) {
+                blocks.add(block);
+                length = block.end();
+                sealed.remove(0);
+            }
+        }
+    }
+
+    /**
+     * Encodes, compresses and writes one block at a position.
+     */
+    private Block writeBlock(DoseEvent[] events, long position) throws IOException {
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        long idMask = 0;
+        Map<Long, Integer> idIndex = new HashMap<>();
+        List<Long> ids = new ArrayList<>();
+        for (DoseEvent event : events) {
+            minTime = Math.min(minTime, event.getEventAtMillis());
+            maxTime = Math.max(maxTime, event.getEventAtMillis());
+            idMask |= idBit(event.getReminderId());
+            if (!idIndex.containsKey(event.getReminderId())) {
+                idIndex.put(event.getReminderId(), ids.size());
+                ids.add(event.getReminderId());
+            }
+        }
+
+        // Id table, then per event: time delta, due time relative to the event, id index,
+        // and dose index and type packed together
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(events.length * 8 + ids.size() * 8);
+        writeVarint(raw, ids.size());
+        for (long id : ids) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                raw.write((int) (id >>> shift));
+            }
+        }
+        long previousTime = minTime;
+        for (DoseEvent event : events) {
+            writeVarint(raw, zigzag(event.getEventAtMillis() - previousTime));
+            writeVarint(raw, zigzag(event.getScheduledAtMillis() - event.getEventAtMillis()));
+            writeVarint(raw, idIndex.get(event.getReminderId()));
+            writeVarint(raw, ((long) event.getDoseIndex() << 2) | event.getType());
+            previousTime = event.getEventAtMillis();
+        }
+
+        byte[] input = raw.toByteArray();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(input.length / 2 + 64);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            byte[] chunk = new byte[4096];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                compressed.write(chunk, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        byte[] payload = compressed.toByteArray();
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length).putInt(events.length)
+                .putLong(minTime).putLong(maxTime).putLong(idMask).put(payload);
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + buffer.position());
+            }
+        } catch (IOException e) {
+            // Cut off the partial block so the next append starts on a block boundary
+            channel.truncate(position);
+            throw e;
+        }
+        return new Block(position, payload.length, events.length, minTime, maxTime, idMask);
+    }
+
+    /**
+     * Reads and decodes one block with a single positioned read.
+     */
+    private DoseEvent[] readBlock(Block block) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(block.payloadLength);
+        long position = block.offset + BLOCK_HEADER_SIZE;
+        while (payload.hasRemaining()) {
+            if (channel.read(payload, position + payload.position()) < 0) {
+                throw new IOException("Truncated block at offset " + block.offset);
+            }
+        }
+
+        Inflater inflater = new Inflater();
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(block.count * 8);
+        try {
+            inflater.setInput(payload.array());
+            byte[] chunk = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Corrupt block at offset " + block.offset);
+                }
+                raw.write(chunk, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block at offset " + block.offset, e);
+        } finally {
+            inflater.end();
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(raw.toByteArray());
+        try {
+            long[] ids = new long[(int) readVarint(in)];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = in.getLong();
+            }
+            DoseEvent[] events = new DoseEvent[block.count];
+            long time = block.minTime;
+            for (int i = 0; i < events.length; i++) {
+                time += unzigzag(readVarint(in));
+                long scheduledAt = time + unzigzag(readVarint(in));
+                long id = ids[(int) readVarint(in)];
+                long doseAndType = readVarint(in);
+                events[i] = new DoseEvent(id, (int) (doseAndType >>> 2), scheduledAt, time,
+                        (int) (doseAndType & 3));
+            }
+            return events;
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt block at offset " + block.offset, e);
+        }
+    }
+
+    /**
+     * @return The bit of the block id mask a reminder id maps to.
+     */
+    private static long idBit(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return 1L << (h >>> 58);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Varint too long");
+    }
+
+    /**
+     * Index entry of a block in the file.
+     */
+    private static final class Block {
+        final long offset;
+        final int payloadLength;
+        final int count;
+        final long minTime;
+        final long maxTime;
+        final long idMask;
+
+        Block(long offset, int payloadLength, int count, long minTime, long maxTime, long idMask) {
+            this.offset = offset;
+            this.payloadLength = payloadLength;
+            this.count = count;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+            this.idMask = idMask;
+        }
+
+        long end() {
+            return offset + BLOCK_HEADER_SIZE + payloadLength;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.myapplication1;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DoseScheduler class.
+ * <p>
+ * Turns medicine reminders into a stream of due times. A reminder with n doses per day fires
+ * at its selected time and then every 24/n hours, on each selected day; doses of a day may run
+ * past midnight. Every reminder has exactly one pending occurrence, kept in an indexed min-heap
+ * ordered by due time, so finding the next dose is O(1) and adding, removing or firing a
+ * reminder is O(log n).
+ * <p>
+ * Time comes from a {@link Clock}, so the scheduler can be driven deterministically in tests.
+ * Next occurrences are computed with epoch-day arithmetic and {@link DoseTime} bit checks; the
+ * time zone offset is cached until its next transition, so rescheduling allocates nothing.
+ * When attached to a {@link MedicineJournal} it follows every put and delete. With an event
+ * log set, every dose reported by {@link #pollDue} is recorded as a {@link DoseEvent#FIRED}
+ * event. All methods are thread-safe.
+ */
+public class DoseScheduler implements MedicineJournal.ChangeListener {
+
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+    private static final long MILLIS_PER_DAY = DoseTime.MINUTES_PER_DAY * MILLIS_PER_MINUTE;
+
+    private final Clock clock;
+    private final ZoneId zone;
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private DoseEventLog eventLog;  // receives fired doses, may be null
+
+    private Entry[] heap = new Entry[16];
+    private int size;
+
+    // Zone offset cached for the period between two transitions of the zone rules
+    private long offsetMillis;
+    private long offsetValidFrom = Long.MAX_VALUE;
+    private long offsetValidUntil = Long.MIN_VALUE;
+
+    /**
+     * Creates an empty scheduler.
+     *
+     * @param clock Source of the current time and time zone.
+     */
+    public DoseScheduler(Clock clock) {
+        this.clock = clock;
+        this.zone = clock.getZone();
+    }
+
+    /**
+     * Schedules every record of a journal and keeps following its changes.
+     *
+     * @param journal Journal to follow.
+     * @throws IOException If the journal cannot be read.
+     */
+    public void attach(MedicineJournal journal) throws IOException {
+        journal.readAllAndListen(this);
+    }
+
+    /**
+     * Stops following a journal. Scheduled reminders are kept.
+     *
+     * @param journal Journal to detach from.
+     */
+    public void detach(MedicineJournal journal) {
+        journal.removeChangeListener(this);
+    }
+
+    /**
+     * Schedules a reminder from now on, replacing any earlier schedule with the same id.
+     * Reminders without days or doses are not scheduled.
+     *
+     * @param record Reminder to schedule.
+     */
+    public synchronized void add(MedicineRecord record) {
+        remove(record.getId());
+        Entry entry = new Entry(record);
+        if (!advance(entry, clock.millis())) {
+            return;
+        }
+        entries.put(record.getId(), entry);
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        entry.heapIndex = size;
+        heap[size++] = entry;
+        siftUp(entry.heapIndex);
+    }
+
+    /**
+     * Removes a reminder from the schedule.
+     *
+     * @param id Record id.
+     * @return True if the reminder was scheduled.
+     */
+    public synchronized boolean remove(long id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        int index = entry.heapIndex;
+        Entry last = heap[--size];
+        heap[size] = null;
+        if (index != size) {
+            heap[index] = last;
+            last.heapIndex = index;
+            siftDown(index);
+            siftUp(last.heapIndex);
+        }
+        return true;
+    }
+
+    /**
+     * Sets the log that fired doses are recorded in.
+     *
+     * @param log Event log of the attached reminder file, or null to stop recording.
+     */
+    public synchronized void setEventLog(DoseEventLog log) {
+        eventLog = log;
+    }
+
+    /**
+     * @return The next dose due, or null if nothing is scheduled.
+     */
+    public synchronized ScheduledDose peekNext() {
+        return size == 0 ? null : heap[0].toDose();
+    }
+
+    /**
+     * Collects all doses due at the current clock time and schedules each of their
+     * reminders for its next occurrence after now. A reminder that missed several
+     * occurrences (for example while the device was off) is reported once.
+     *
+     * @param out Receives the due doses in due-time order.
+     * @return Number of doses added to out.
+     */
+    public synchronized int pollDue(List<ScheduledDose> out) {
+        long now = clock.millis();
+        int fired = 0;
+        while (size > 0 && heap[0].fireAt <= now) {
+            Entry entry = heap[0];
+            ScheduledDose dose = entry.toDose();
+            out.add(dose);
+            if (eventLog != null) {
+                eventLog.record(DoseEvent.fired(dose, now));
+            }
+            fired++;
+            advance(entry, now);
+            siftDown(0);
+        }
+        return fired;
+    }
+
+    /**
+     * @return Number of scheduled reminders.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public void onPut(MedicineRecord record) {
+        add(record);
+    }
+
+    @Override
+    public void onDelete(long id) {
+        remove(id);
+    }
+
+    /**
+     * Moves an entry to the first occurrence of its reminder strictly after a time. Every
+     * dose is placed at its local time with the zone offset in effect at that time, so on
+     * the day of a daylight saving change the doses after the change stay on the clock;
+     * a dose in the hour skipped by the change fires that much later.
+     *
+     * @return False if the reminder never fires.
+     */
+    private boolean advance(Entry entry, long afterMillis) {
+        int[] minutes = DoseTime.weekMinutes(entry.record);
+        if (minutes.length == 0) {
+            return false;
+        }
+        long afterDay = Math.floorDiv(afterMillis + offsetAt(afterMillis), MILLIS_PER_DAY);
+
+        // Start at the Monday of yesterday, the last doses of yesterday may still be ahead
+        // of us. Doses of a later week always come after all doses of an earlier week, so
+        // the first week with a candidate holds the earliest.
+        long monday = afterDay - 1 - DoseTime.dayOfWeek(afterDay - 1);
+        for (long weekStart = monday; weekStart <= monday + 14; weekStart += 7) {
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < minutes.length; i++) {
+                long fireAt = localToEpochMillis(weekStart * MILLIS_PER_DAY + minutes[i] * MILLIS_PER_MINUTE);
+                if (fireAt > afterMillis && fireAt < best) {
+                    best = fireAt;
+                    entry.doseIndex = i % entry.record.getTimesPerDay();
+                }
+            }
+            if (best != Long.MAX_VALUE) {
+                entry.fireAt = best;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Converts a local time to epoch milliseconds. A local time that occurs twice when the
+     * clocks go back maps to one of the two, always the same one; a local time skipped when
+     * the clocks go forward maps to the instant as far after the gap as the time was into it.
+     *
+     * @param localMillis Local time as milliseconds since 1970-01-01T00:00 local.
+     * @return Epoch milliseconds.
+     */
+    private long localToEpochMillis(long localMillis) {
+        long guess = offsetAt(localMillis);  // offset a few hours away at most
+        long offset = offsetAt(localMillis - guess);
+        long check = offsetAt(localMillis - offset);
+        if (check != offset) {
+            // In a gap neither offset fits; the smaller one is the offset before the gap
+            offset = Math.min(offset, check);
+        }
+        return localMillis - offset;
+    }
+
+    /**
+     * Returns the zone offset at a time, looking up the zone rules only when the time
+     * leaves the period covered by the cached offset.
+     *
+     * @param millis Epoch milliseconds.
+     * @return Offset from UTC in milliseconds.
+     */
+    private long offsetAt(long millis) {
+        if (millis < offsetValidFrom || millis >= offsetValidUntil) {
+            ZoneRules rules = zone.getRules();
+            Instant instant = Instant.ofEpochMilli(millis);
+            offsetMillis = rules.getOffset(instant).getTotalSeconds() * 1000L;
+            ZoneOffsetTransition previous = rules.previousTransition(instant);
+            ZoneOffsetTransition next = rules.nextTransition(instant);
+            offsetValidFrom = previous == null ? Long.MIN_VALUE : previous.toEpochSecond() * 1000L;
+            offsetValidUntil = next == null ? Long.MAX_VALUE : next.toEpochSecond() * 1000L;
+        }
+        return offsetMillis;
+    }
+
+    private void siftUp(int index) {
+        Entry entry = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].fireAt <= entry.fireAt) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heap[index].heapIndex = index;
+            index = parent;
+        }
+        heap[index] = entry;
+        entry.heapIndex = index;
+    }
+
+    private void siftDown(int index) {
+        Entry entry = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && heap[child + 1].fireAt < heap[child].fireAt) {
+                child++;
+            }
+            if (entry.fireAt <= heap[child].fireAt) {
+                break;
+            }
+            heap[index] = heap[child];
+            heap[index].heapIndex = index;
+            index = child;
+        }
+        heap[index] = entry;
+        entry.heapIndex = index;
+    }
+
+    /**
+     * Pending occurrence of one reminder, with its position in the heap.
+     */
+    private static final class Entry {
+        final MedicineRecord record;
+        long fireAt;
+        int doseIndex;
+        int heapIndex;
+
+        Entry(MedicineRecord record) {
+            this.record = record;
+        }
+
+        ScheduledDose toDose() {
+            return new ScheduledDose(record, doseIndex, fireAt);
+        }
+    }
+}
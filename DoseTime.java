@@ -0,0 +1,231 @@
+package com.example.myapplication1;
+
+/**
+ * DoseTime class.
+ * <p>
+ * Primitive encoding of reminder times and weekday selections. A time of day is a minute
+ * since midnight packed into a short, and a weekday selection is a 7-bit mask with
+ * bit 0 = Monday ... bit 6 = Sunday, in the order of the checkboxes on the Add Medicine screen.
+ * <p>
+ * Matching is done with integer arithmetic and bit operations only; nothing here allocates
+ * except {@link #weekMinutes} and the render helpers, which append to a caller-supplied
+ * builder.
+ */
+public final class DoseTime {
+
+    // Number of minutes in one day
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    // Mask with all seven days selected
+    public static final int ALL_DAYS = 0x7F;
+
+    // Day names in mask bit order, used only when rendering
+    private static final String[] DAY_NAMES =
+            {"Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday"};
+
+    private DoseTime() {
+        // Static helpers only
+    }
+
+    /**
+     * Packs a time of day into minutes since midnight.
+     *
+     * @param hourOfDay Hour, 0..23.
+     * @param minute    Minute, 0..59.
+     * @return Minute of day, 0..1439.
+     */
+    public static short packMinute(int hourOfDay, int minute) {
+        return (short) (hourOfDay * 60 + minute);
+    }
+
+    /**
+     * Sets the bit of a day in a mask.
+     *
+     * @param mask Current mask.
+     * @param day  Day index, 0 = Monday ... 6 = Sunday.
+     * @return Mask with the day selected.
+     */
+    public static int withDay(int mask, int day) {
+        return mask | (1 << day);
+    }
+
+    /**
+     * @param mask Day mask.
+     * @param day  Day index, 0 = Monday ... 6 = Sunday.
+     * @return True if the day is selected.
+     */
+    public static boolean isScheduledOn(int mask, int day) {
+        return (mask & (1 << day)) != 0;
+    }
+
+    /**
+     * @param mask Day mask.
+     * @return Number of selected days.
+     */
+    public static int dayCount(int mask) {
+        return Integer.bitCount(mask & ALL_DAYS);
+    }
+
+    /**
+     * Returns the weekday of a day counted since 1970-01-01, which was a Thursday.
+     *
+     * @param epochDay Days since the epoch, in local time.
+     * @return Day index, 0 = Monday ... 6 = Sunday.
+     */
+    public static int dayOfWeek(long epochDay) {
+        return (int) Math.floorMod(epochDay + 3, 7L);
+    }
+
+    /**
+     * Returns the spacing between doses of a reminder taking the given number of doses a day.
+     *
+     * @param timesPerDay Doses per day, at least 1.
+     * @return Minutes between consecutive doses.
+     */
+    public static int doseIntervalMinutes(int timesPerDay) {
+        return Math.max(1, MINUTES_PER_DAY / timesPerDay);
+    }
+
+    /**
+     * Checks whether a reminder has a dose at a given minute of a given weekday. Doses start at
+     * the reminder's time and repeat every 24/timesPerDay hours; the later doses of a selected
+     * day may fall after midnight, on the following weekday.
+     *
+     * @param minuteOfDay Reminder time.
+     * @param timesPerDay Doses per day.
+     * @param dayMask     Selected days.
+     * @param day         Weekday to check, 0 = Monday ... 6 = Sunday.
+     * @param minute      Minute of that weekday to check.
+     * @return True if a dose is due at exactly that minute.
+     */
+    public static boolean isDueAt(int minuteOfDay, int timesPerDay, int dayMask, int day, int minute) {
+        if (timesPerDay <= 0) {
+            return false;
+        }
+        int interval = doseIntervalMinutes(timesPerDay);
+        // Dose of the same day
+        if (isScheduledOn(dayMask, day) && isDoseMinute(minute - minuteOfDay, interval, timesPerDay)) {
+            return true;
+        }
+        // Dose of the previous day that ran past midnight
+        int previousDay = day == 0 ? 6 : day - 1;
+        return isScheduledOn(dayMask, previousDay)
+                && isDoseMinute(minute + MINUTES_PER_DAY - minuteOfDay, interval, timesPerDay);
+    }
+
+    /**
+     * Expands a reminder into the minutes of the week of all its doses. Doses start at the
+     * reminder's time on every selected day and repeat every 24/timesPerDay hours; the later
+     * doses of a day may run past midnight, those of Sunday into Monday.
+     *
+     * @param record Reminder.
+     * @return Minutes of the week, 0 .. 7 * MINUTES_PER_DAY - 1, day by day from Monday, so
+     * entry i is dose i % timesPerDay. Empty if no day is selected or timesPerDay is not
+     * positive, which records pulled by sync are not checked for.
+     */
+    public static int[] weekMinutes(MedicineRecord record) {
+        int timesPerDay = record.getTimesPerDay();
+        int dayMask = record.getDayMask();
+        if (timesPerDay <= 0 || dayCount(dayMask) == 0) {
+            return new int[0];
+        }
+        int interval = doseIntervalMinutes(timesPerDay);
+        int[] minutes = new int[timesPerDay * dayCount(dayMask)];
+        int n = 0;
+        for (int day = 0; day < 7; day++) {
+            if (isScheduledOn(dayMask, day)) {
+                for (int dose = 0; dose < timesPerDay; dose++) {
+                    minutes[n++] = DueTimeIndex.weekMinute(day, record.getMinuteOfDay() + dose * interval);
+                }
+            }
+        }
+        return minutes;
+    }
+
+    /**
+     * Looks up a day by name, ignoring case. Besides the full name any prefix of at least
+     * three letters is accepted, e.g. "Mon" or "thurs".
+     *
+     * @param name Day name.
+     * @return Day index, 0 = Monday ... 6 = Sunday, or -1 if the name is not a day.
+     */
+    public static int dayIndex(String name) {
+        if (name.length() < 3) {
+            return -1;
+        }
+        for (int day = 0; day < DAY_NAMES.length; day++) {
+            if (DAY_NAMES[day].regionMatches(true, 0, name, 0, name.length())) {
+                return day;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param day Day index, 0 = Monday ... 6 = Sunday.
+     * @return Full English name of the day.
+     */
+    public static String dayName(int day) {
+        return DAY_NAMES[day];
+    }
+
+    /**
+     * Appends a time of day in 12-hour form, e.g. "08:05 PM".
+     *
+     * @param builder     Destination.
+     * @param minuteOfDay Minute of day.
+     * @return The builder.
+     */
+    public static StringBuilder appendTime(StringBuilder builder, int minuteOfDay) {
+        int hourOfDay = minuteOfDay / 60;
+        int minute = minuteOfDay % 60;
+        int hour12 = hourOfDay % 12;
+        if (hour12 == 0) hour12 = 12;
+        if (hour12 < 10) builder.append('0');
+        builder.append(hour12).append(':');
+        if (minute < 10) builder.append('0');
+        builder.append(minute).append(hourOfDay >= 12 ? " PM" : " AM");
+        return builder;
+    }
+
+    /**
+     * Appends the names of the selected days separated by spaces, e.g. "Monday Friday".
+     *
+     * @param builder Destination.
+     * @param mask    Day mask.
+     * @return The builder.
+     */
+    public static StringBuilder appendDays(StringBuilder builder, int mask) {
+        boolean first = true;
+        for (int day = 0; day < DAY_NAMES.length; day++) {
+            if (isScheduledOn(mask, day)) {
+                if (!first) builder.append(' ');
+                builder.append(DAY_NAMES[day]);
+                first = false;
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * @param minuteOfDay Minute of day.
+     * @return Time in 12-hour form, e.g. "08:05 PM".
+     */
+    public static String formatTime(int minuteOfDay) {
+        return appendTime(new StringBuilder(8), minuteOfDay).toString();
+    }
+
+    /**
+     * @param mask Day mask.
+     * @return Names of the selected days separated by spaces.
+     */
+    public static String formatDays(int mask) {
+        return appendDays(new StringBuilder(), mask).toString();
+    }
+
+    private static boolean isDoseMinute(int sinceFirstDose, int interval, int timesPerDay) {
+        return sinceFirstDose >= 0
+                && sinceFirstDose % interval == 0
+                && sinceFirstDose / interval < timesPerDay;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.myapplication1;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * DrugDictionary class.
+ * <p>
+ * Resolves medicine names to the drug ids of the interaction table. Every drug has one
+ * canonical name; brand names and other spellings are aliases of the same id. Lookups use
+ * the normalized form of {@link MedicineNameIndex}, so "  Aspirin" and "aspirin" resolve alike.
+ * <p>
+ * Names are interned: each canonical name is held once and handed out by {@link #intern}, so
+ * callers that keep many copies of the same name can share one instance. The dictionary is
+ * small and lives on the heap; it is part of the {@link DrugInteractionDatabase} file.
+ * Immutable and thread-safe.
+ */
+public final class DrugDictionary {
+
+    // Returned by resolve() for a name the dictionary does not know
+    public static final int UNKNOWN = -1;
+
+    private final String[] names;              // id -> canonical name
+    private final Map<String, Integer> ids;    // normalized name or alias -> id
+
+    /**
+     * Creates a dictionary.
+     *
+     * @param names   Canonical names, indexed by drug id.
+     * @param aliases Additional names mapped to drug ids.
+     */
+    public DrugDictionary(String[] names, Map<String, Integer> aliases) {
+        this.names = names.clone();
+        this.ids = new HashMap<>((names.length + aliases.size()) * 4 / 3 + 1);
+        for (int id = 0; id < names.length; id++) {
+            ids.put(MedicineNameIndex.normalize(names[id]), id);
+        }
+        for (Map.Entry<String, Integer> alias : aliases.entrySet()) {
+            int id = alias.getValue();
+            if (id < 0 || id >= names.length) {
+                throw new IllegalArgumentException("Alias " + alias.getKey() + " of unknown drug " + id);
+            }
+            ids.putIfAbsent(MedicineNameIndex.normalize(alias.getKey()), id);
+        }
+    }
+
+    /**
+     * Reads a dictionary written by {@link #write}.
+     *
+     * @param in Input positioned at the dictionary.
+     * @param drugCount  Number of canonical names.
+     * @param aliasCount Number of aliases.
+     * @return Dictionary.
+     * @throws IOException If reading fails or an alias points to an unknown drug.
+     */
+    static DrugDictionary read(DataInput in, int drugCount, int aliasCount) throws IOException {
+        String[] names = new String[drugCount];
+        for (int id = 0; id < drugCount; id++) {
+            names[id] = in.readUTF();
+        }
+        Map<String, Integer> aliases = new HashMap<>(aliasCount * 4 / 3 + 1);
+        for (int i = 0; i < aliasCount; i++) {
+            String alias = in.readUTF();
+            int id = in.readInt();
+            if (id < 0 || id >= drugCount) {
+                throw new IOException("Alias " + alias + " of unknown drug " + id);
+            }
+            aliases.put(alias, id);
+        }
+        return new DrugDictionary(names, aliases);
+    }
+
+    /**
+     * Writes canonical names and aliases in the layout read by {@link #read}.
+     *
+     * @param out     Output.
+     * @param names   Canonical names, indexed by drug id.
+     * @param aliases Additional names mapped to drug ids.
+     * @throws IOException If writing fails.
+     */
+    static void write(DataOutput out, String[] names, Map<String, Integer> aliases) throws IOException {
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+        for (Map.Entry<String, Integer> alias : aliases.entrySet()) {
+            out.writeUTF(alias.getKey());
+            out.writeInt(alias.getValue());
+        }
+    }
+
+    /**
+     * @param name Medicine name as typed or stored.
+     * @return Drug id, or {@link #UNKNOWN}.
+     */
+    public int resolve(String name) {
+        Integer id = ids.get(MedicineNameIndex.normalize(name));
+        return id == null ? UNKNOWN : id;
+    }
+
+    /**
+     * @param name Medicine name as typed or stored, or an alias.
+     * @return The shared canonical name of the drug, or null if the name is unknown.
+     */
+    public String intern(String name) {
+        int id = resolve(name);
+        return id == UNKNOWN ? null : names[id];
+    }
+
+    /**
+     * @param id Drug id.
+     * @return Canonical name.
+     */
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * @return Number of drugs.
+     */
+    public int size() {
+        return names.length;
+    }
+}
@@ -0,0 +1,309 @@
+package com.example.myapplication1;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DrugInteractionDatabase class.
+ * <p>
+ * Offline drug interaction database, shipped as one binary file: a {@link DrugDictionary}
+ * that resolves names to drug ids, followed by an {@link InteractionTable} of drug pairs.
+ * Opening it reads the dictionary onto the heap and maps the table, so the cost of opening
+ * and the heap it takes do not depend on the number of pairs. Checking a medicine against the
+ * n medicines of a patient costs n hash lookups and n binary searches of the mapped table.
+ * <p>
+ * File layout, all numbers big-endian:
+ * <pre>
+ * int   magic "DRUG"
+ * short version
+ * int   drug count, int alias count, int pair count
+ * long  table offset
+ * dictionary: canonical names (modified UTF-8), then (alias, drug id) pairs
+ * table at table offset: pair count * (int low id, int high id, byte severity), sorted
+ * </pre>
+ * The file is written once by {@link Builder} and never modified. Thread-safe.
+ */
+public final class DrugInteractionDatabase {
+
+    // Name of the database file in the app's files directory
+    public static final String FILE_NAME = "drug_interactions.db";
+
+    // Magic number of the database file, ASCII "DRUG"
+    private static final int MAGIC = 0x44525547;
+
+    // Current format version
+    private static final short VERSION = 1;
+
+    // One open database per file, shared by all screens in the process
+    private static final Map<String, DrugInteractionDatabase> INSTANCES = new HashMap<>();
+
+    // Time to check one medicine against all medicines of a patient
+    private static final Metrics.Histogram CHECK_TIME = Metrics.histogram("interactions.check_us");
+
+    private final DrugDictionary dictionary;
+    private final InteractionTable table;
+
+    /**
+     * One interaction found by {@link #check}.
+     */
+    public static final class Interaction {
+        private final String medicine;
+        private final String drug;
+        private final String otherDrug;
+        private final int severity;
+
+        Interaction(String medicine, String drug, String otherDrug, int severity) {
+            this.medicine = medicine;
+            this.drug = drug;
+            this.otherDrug = otherDrug;
+            this.severity = severity;
+        }
+
+        /**
+         * @return The patient's medicine as it is stored.
+         */
+        public String getMedicine() {
+            return medicine;
+        }
+
+        /**
+         * @return Canonical name of the checked drug.
+         */
+        public String getDrug() {
+            return drug;
+        }
+
+        /**
+         * @return Canonical name of the patient's drug.
+         */
+        public String getOtherDrug() {
+            return otherDrug;
+        }
+
+        /**
+         * @return Severity, one of the {@link InteractionTable} levels.
+         */
+        public int getSeverity() {
+            return severity;
+        }
+
+        @Override
+        public String toString() {
+            return drug + " + " + otherDrug + " (" + InteractionTable.severityName(severity) + ")";
+        }
+    }
+
+    private DrugInteractionDatabase(DrugDictionary dictionary, InteractionTable table) {
+        this.dictionary = dictionary;
+        this.table = table;
+    }
+
+    /**
+     * Returns the shared database for a file, opening it on first use.
+     *
+     * @param file Database file.
+     * @return Shared database, or null if no database is installed at that path.
+     * @throws IOException If the file cannot be read or is not a database.
+     */
+    public static DrugInteractionDatabase getInstance(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        synchronized (INSTANCES) {
+            DrugInteractionDatabase database = INSTANCES.get(key);
+            if (database == null) {
+                if (!file.exists()) {
+                    return null;
+                }
+                database = open(file);
+                INSTANCES.put(key, database);
+            }
+            return database;
+        }
+    }
+
+    /**
+     * Opens a database file.
+     *
+     * @param file Database file.
+     * @return Database.
+     * @throws IOException If the file cannot be read or is not a database.
+     */
+    public static DrugInteractionDatabase open(File file) throws IOException {
+        DrugDictionary dictionary;
+        int pairCount;
+        long tableOffset;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a drug interaction database: " + file);
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported drug interaction database version " + version);
+            }
+            int drugCount = in.readInt();
+            int aliasCount = in.readInt();
+            pairCount = in.readInt();
+            tableOffset = in.readLong();
+            if (drugCount < 0 || aliasCount < 0) {
+                throw new IOException("Corrupt drug interaction database header: " + file);
+            }
+            dictionary = DrugDictionary.read(in, drugCount, aliasCount);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return new DrugInteractionDatabase(dictionary, InteractionTable.map(channel, tableOffset, pairCount));
+        }
+    }
+
+    /**
+     * Checks a medicine against other medicines of the same patient. Names the dictionary does
+     * not know are skipped.
+     *
+     * @param name   Medicine being added.
+     * @param others Names of the patient's other medicines.
+     * @return Interactions found, worst first; empty if there are none.
+     */
+    public List<Interaction> check(String name, Collection<String> others) {
+        long start = Metrics.startTimer();
+        int drug = dictionary.resolve(name);
+        if (drug == DrugDictionary.UNKNOWN) {
+            return Collections.emptyList();
+        }
+        List<Interaction> interactions = new ArrayList<>(0);
+        for (String other : others) {
+            int otherDrug = dictionary.resolve(other);
+            if (otherDrug == DrugDictionary.UNKNOWN || otherDrug == drug) {
+                continue;
+            }
+            int severity = table.severity(drug, otherDrug);
+            if (severity != InteractionTable.NONE) {
+                interactions.add(new Interaction(other, dictionary.nameOf(drug),
+                        dictionary.nameOf(otherDrug), severity));
+            }
+        }
+        interactions.sort((a, b) -> Integer.compare(b.getSeverity(), a.getSeverity()));
+        CHECK_TIME.recordSince(start);
+        return interactions;
+    }
+
+    /**
+     * @return Dictionary of the database.
+     */
+    public DrugDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return Interaction table of the database.
+     */
+    public InteractionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Collects drugs and interactions and writes them as a database file, for building the
+     * file that ships with the app.
+     */
+    public static final class Builder {
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> ids = new HashMap<>();            // normalized -> id
+        private final Map<String, Integer> aliases = new LinkedHashMap<>();  // alias -> id
+        private final Map<Long, Integer> pairs = new HashMap<>();            // pair -> severity
+
+        /**
+         * Adds a drug, or returns the id of the drug a name already belongs to.
+         *
+         * @param name    Canonical name.
+         * @param aliases Other names of the same drug.
+         * @return Drug id.
+         */
+        public int addDrug(String name, String... aliases) {
+            Integer id = ids.get(MedicineNameIndex.normalize(name));
+            if (id == null) {
+                id = names.size();
+                names.add(name);
+                ids.put(MedicineNameIndex.normalize(name), id);
+            }
+            for (String alias : aliases) {
+                if (ids.putIfAbsent(MedicineNameIndex.normalize(alias), id) == null) {
+                    this.aliases.put(alias, id);
+                }
+            }
+            return id;
+        }
+
+        /**
+         * Adds an interaction between two drugs, adding drugs not seen before. A pair added
+         * twice keeps the worse severity.
+         *
+         * @param a        Name of one drug.
+         * @param b        Name of the other drug.
+         * @param severity One of the {@link InteractionTable} levels above NONE.
+         * @return This builder.
+         */
+        public Builder addInteraction(String a, String b, int severity) {
+            if (severity <= InteractionTable.NONE || severity > InteractionTable.MAJOR) {
+                throw new IllegalArgumentException("Severity out of range: " + severity);
+            }
+            pairs.merge(InteractionTable.pairKey(addDrug(a), addDrug(b)), severity, Math::max);
+            return this;
+        }
+
+        /**
+         * Writes the database, atomically replacing any existing file.
+         *
+         * @param file Database file.
+         * @throws IOException If writing fails.
+         */
+        public void write(File file) throws IOException {
+            long[] keys = new long[pairs.size()];
+            int n = 0;
+            for (long key : pairs.keySet()) {
+                keys[n++] = key;
+            }
+            Arrays.sort(keys);
+            byte[] severities = new byte[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                severities[i] = (byte) (int) pairs.get(keys[i]);
+            }
+            String[] nameArray = names.toArray(new String[0]);
+
+            File temp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream fos = new FileOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeInt(nameArray.length);
+                out.writeInt(aliases.size());
+                out.writeInt(keys.length);
+                out.writeLong(0);  // table offset, patched below at byte 18
+                DrugDictionary.write(out, nameArray, aliases);
+                long tableOffset = out.size();
+                InteractionTable.write(out, keys, severities);
+                out.flush();
+                fos.getChannel().write(ByteBuffer.allocate(8).putLong(0, tableOffset), 18);
+                fos.getFD().sync();
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Could not replace " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.myapplication1;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * DueListLoader class.
+ * <p>
+ * Loads the reminders due in a window of the week from the shared {@link DueTimeIndex} on a
+ * background thread and hands them back through a result executor (the UI thread on Android),
+ * as a {@link ListPageSource}. Like {@link MedicineListLoader} it follows the journal after a
+ * load and queries again when a reminder is saved or deleted, until {@link #cancel()}. Windows
+ * relative to the current time, such as the next hour or today, are placed from the clock on
+ * every query, so a reload long after the first load shows what is due then. Has no Android
+ * dependencies.
+ */
+public class DueListLoader {
+
+    // Background thread shared by all due list loaders
+    private static final ExecutorService QUERY_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "DueListLoader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File file;
+    private final Executor resultExecutor;
+    private final Clock clock;
+    private final AtomicInteger requestId = new AtomicInteger();
+    private final AtomicBoolean reloadQueued = new AtomicBoolean();
+
+    // Queries the window again whenever the journal changes while a load is active
+    private final MedicineJournal.ChangeListener reloadListener = new MedicineJournal.ChangeListener() {
+        @Override
+        public void onPut(MedicineRecord record) {
+            scheduleReload();
+        }
+
+        @Override
+        public void onDelete(long id) {
+            scheduleReload();
+        }
+    };
+
+    private volatile Runnable active;  // repeats the last load, until cancel()
+    private MedicineJournal watched;   // journal the reload listener is registered on
+    private Future<?> pending;
+
+    /**
+     * Creates a loader for a reminder file. The index is built lazily on the background thread.
+     *
+     * @param file           Reminder file to query.
+     * @param resultExecutor Executor the callback is run on.
+     */
+    public DueListLoader(File file, Executor resultExecutor) {
+        this(file, resultExecutor, Clock.systemDefaultZone());
+    }
+
+    /**
+     * Creates a loader for a reminder file that places relative windows with a given clock.
+     *
+     * @param file           Reminder file to query.
+     * @param resultExecutor Executor the callback is run on.
+     * @param clock          Source of the current time and time zone.
+     */
+    public DueListLoader(File file, Executor resultExecutor, Clock clock) {
+        this.file = file;
+        this.resultExecutor = resultExecutor;
+        this.clock = clock;
+    }
+
+    /**
+     * Starts loading the reminders due in a fixed window of the week. Any load still in
+     * progress is cancelled first. The result is always delivered through
+     * {@link MedicineListLoader.Callback#onLoaded}.
+     *
+     * @param day           Weekday the window starts on, 0 = Monday ... 6 = Sunday.
+     * @param fromMinute    Minute of that day the window starts at.
+     * @param windowMinutes Length of the window in minutes.
+     * @param callback      Receives the due reminders in due order.
+     */
+    public void load(int day, int fromMinute, int windowMinutes, MedicineListLoader.Callback callback) {
+        int weekMinute = DueTimeIndex.weekMinute(day, fromMinute);
+        start(() -> weekMinute, windowMinutes, callback);
+    }
+
+    /**
+     * Starts loading the reminders due from the current minute on, e.g. in the next hour.
+     *
+     * @param windowMinutes Length of the window in minutes.
+     * @param callback      Receives the due reminders in due order.
+     */
+    public void loadFromNow(int windowMinutes, MedicineListLoader.Callback callback) {
+        start(() -> {
+            LocalDateTime now = LocalDateTime.now(clock);
+            return DueTimeIndex.weekMinute(now.getDayOfWeek().getValue() - 1,
+                    now.getHour() * 60 + now.getMinute());
+        }, windowMinutes, callback);
+    }
+
+    /**
+     * Starts loading the reminders due today, from midnight to midnight.
+     *
+     * @param callback Receives the due reminders in due order.
+     */
+    public void loadToday(MedicineListLoader.Callback callback) {
+        start(() -> DueTimeIndex.weekMinute(LocalDateTime.now(clock).getDayOfWeek().getValue() - 1, 0),
+                DoseTime.MINUTES_PER_DAY, callback);
+    }
+
+    /**
+     * Cancels any load in progress and queries the window placed by windowStart, now and on
+     * every reload.
+     */
+    private synchronized void start(IntSupplier windowStart, int windowMinutes,
+                                    MedicineListLoader.Callback callback) {
+        cancelPending();
+        active = () -> start(windowStart, windowMinutes, callback);
+        int id = requestId.get();
+        pending = QUERY_EXECUTOR.submit(() -> {
+            List<MedicineRecord> due = new ArrayList<>();
+            try {
+                MedicineJournal journal = MedicineJournal.getInstance(file);
+                DueTimeIndex index = DueTimeIndex.getInstance(file);
+                watch(journal, id);
+                int weekMinute = windowStart.getAsInt();
+                // The journal lock makes sure a change being applied has reached the index
+                synchronized (journal) {
+                    index.query(weekMinute / DoseTime.MINUTES_PER_DAY, weekMinute % DoseTime.MINUTES_PER_DAY,
+                            windowMinutes, due);
+                }
+            } catch (IOException e) {
+                Metrics.recordError("due.load", e);
+            }
+            MedicinePageSource source = new ListPageSource(due);
+            resultExecutor.execute(() -> {
+                // Re-check on the result thread, cancel() may have run in the meantime
+                if (requestId.get() == id) {
+                    callback.onLoaded(source);
+                }
+            });
+        });
+    }
+
+    /**
+     * Cancels any pending load and stops following the journal. Pending results will not
+     * be delivered.
+     */
+    public synchronized void cancel() {
+        cancelPending();
+        active = null;
+        if (watched != null) {
+            watched.removeChangeListener(reloadListener);
+            watched = null;
+        }
+    }
+
+    private synchronized void cancelPending() {
+        requestId.incrementAndGet();
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+
+    /**
+     * Registers the reload listener on a journal, unless the request was cancelled.
+     */
+    private synchronized void watch(MedicineJournal journal, int id) {
+        if (requestId.get() != id || watched == journal) {
+            return;
+        }
+        if (watched != null) {
+            watched.removeChangeListener(reloadListener);
+        }
+        journal.addChangeListener(reloadListener);
+        watched = journal;
+    }
+
+    /**
+     * Queues one reload on the result executor, unless one is already queued. Called from
+     * the journal listener, with the journal lock held.
+     */
+    private void scheduleReload() {
+        if (active == null || !reloadQueued.compareAndSet(false, true)) {
+            return;
+        }
+        resultExecutor.execute(() -> {
+            reloadQueued.set(false);
+            Runnable reload = active;
+            if (reload != null) {
+                reload.run();
+            }
+        });
+    }
+}
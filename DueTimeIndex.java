@@ -0,0 +1,235 @@
+package com.example.myapplication1;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * DueTimeIndex class.
+ * <p>
+ * Index of every weekly dose occurrence, keyed on the minute of the week
+ * (weekday * 1440 + minute of day, Monday 00:00 = 0), answering "which reminders are due
+ * between these two times" with one tree search plus a walk over the k matching doses,
+ * O(log n + k). Occurrences follow the dose rules of {@link DoseTime#isDueAt}: n doses
+ * spaced 24/n hours apart from the reminder time, on each selected day, with late doses
+ * running past midnight into the next day.
+ * <p>
+ * The index is built with one scan of the journal and then follows its puts and deletes.
+ * A reminder takes timesPerDay * selected days entries. All methods are thread-safe.
+ */
+public class DueTimeIndex implements MedicineJournal.ChangeListener {
+
+    // Number of minutes in one week, the exclusive upper bound for a minute of the week
+    public static final int MINUTES_PER_WEEK = 7 * DoseTime.MINUTES_PER_DAY;
+
+    // One index per reminder file, shared by all screens in the process
+    private static final Map<String, DueTimeIndex> INSTANCES = new HashMap<>();
+
+    // Background thread shared by all indexes for building them ahead of first use
+    private static final ExecutorService BUILD_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "DueTimeIndex");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final NavigableSet<Occurrence> occurrences = new TreeSet<>();
+    private final Map<Long, Occurrence[]> byRecord = new HashMap<>();
+
+    /**
+     * Returns the shared index for a reminder file, building it and attaching it to the
+     * journal on first use. The first call scans the file and should not run on the UI thread.
+     *
+     * @param file Reminder file.
+     * @return Shared index.
+     * @throws IOException If the journal cannot be opened or read.
+     */
+    public static DueTimeIndex getInstance(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        synchronized (INSTANCES) {
+            DueTimeIndex index = INSTANCES.get(key);
+            if (index == null) {
+                index = new DueTimeIndex();
+                index.attach(MedicineJournal.getInstance(file));
+                INSTANCES.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Builds the shared index for a file in the background, so that the first query
+     * does not have to wait for the scan.
+     *
+     * @param file Reminder file.
+     */
+    public static void preload(File file) {
+        BUILD_EXECUTOR.execute(() -> {
+            try {
+                getInstance(file);
+            } catch (IOException e) {
+                Metrics.recordError("due.index", e);
+            }
+        });
+    }
+
+    /**
+     * Indexes every record of a journal and keeps following its changes.
+     *
+     * @param journal Journal to follow.
+     * @throws IOException If the journal cannot be read.
+     */
+    public void attach(MedicineJournal journal) throws IOException {
+        journal.readAllAndListen(this);
+    }
+
+    /**
+     * Stops following a journal. Indexed reminders are kept.
+     *
+     * @param journal Journal to detach from.
+     */
+    public void detach(MedicineJournal journal) {
+        journal.removeChangeListener(this);
+    }
+
+    /**
+     * Indexes all weekly doses of a reminder, replacing any earlier entries with the same id.
+     *
+     * @param record Reminder to index.
+     */
+    public synchronized void add(MedicineRecord record) {
+        remove(record.getId());
+        int[] minutes = DoseTime.weekMinutes(record);
+        if (minutes.length == 0) {
+            return;
+        }
+        Occurrence[] entries = new Occurrence[minutes.length];
+        for (int i = 0; i < minutes.length; i++) {
+            Occurrence occurrence = new Occurrence(minutes[i], i % record.getTimesPerDay(), record);
+            occurrences.add(occurrence);
+            entries[i] = occurrence;
+        }
+        byRecord.put(record.getId(), entries);
+    }
+
+    /**
+     * Removes all doses of a reminder.
+     *
+     * @param id Record id.
+     * @return True if the reminder was indexed.
+     */
+    public synchronized boolean remove(long id) {
+        Occurrence[] entries = byRecord.remove(id);
+        if (entries == null) {
+            return false;
+        }
+        for (Occurrence occurrence : entries) {
+            occurrences.remove(occurrence);
+        }
+        return true;
+    }
+
+    /**
+     * Collects the reminders with a dose in a window of the week. The window may wrap from
+     * Sunday night into Monday. Each reminder is reported once, in the order of its first
+     * dose in the window.
+     *
+     * @param day           Weekday the window starts on, 0 = Monday ... 6 = Sunday.
+     * @param fromMinute    Minute of that day the window starts at, inclusive.
+     * @param windowMinutes Length of the window in minutes, at most one week.
+     * @param out           Receives the due reminders.
+     * @return Number of reminders added to out.
+     */
+    public synchronized int query(int day, int fromMinute, int windowMinutes, List<MedicineRecord> out) {
+        int from = weekMinute(day, fromMinute);
+        int length = Math.min(Math.max(windowMinutes, 0), MINUTES_PER_WEEK);
+        int to = from + length;
+        Set<Long> seen = new HashSet<>();
+        int added = collect(from, Math.min(to, MINUTES_PER_WEEK), seen, out);
+        if (to > MINUTES_PER_WEEK) {
+            added += collect(0, to - MINUTES_PER_WEEK, seen, out);
+        }
+        return added;
+    }
+
+    /**
+     * @return Number of indexed dose occurrences.
+     */
+    public synchronized int size() {
+        return occurrences.size();
+    }
+
+    @Override
+    public void onPut(MedicineRecord record) {
+        add(record);
+    }
+
+    @Override
+    public void onDelete(long id) {
+        remove(id);
+    }
+
+    /**
+     * Returns the minute of the week for a weekday and a minute of that day, which may run
+     * past midnight into the following days.
+     *
+     * @param day         Weekday, 0 = Monday ... 6 = Sunday.
+     * @param minuteOfDay Minutes since midnight of that day.
+     * @return Minute of the week, 0 .. MINUTES_PER_WEEK - 1.
+     */
+    public static int weekMinute(int day, int minuteOfDay) {
+        return Math.floorMod(day * DoseTime.MINUTES_PER_DAY + minuteOfDay, MINUTES_PER_WEEK);
+    }
+
+    /**
+     * Adds the reminders of the doses in [from, to) that are not yet in seen.
+     */
+    private int collect(int from, int to, Set<Long> seen, List<MedicineRecord> out) {
+        int added = 0;
+        // Bounds sort before every real occurrence at the same minute
+        Occurrence lower = new Occurrence(from, -1, null);
+        Occurrence upper = new Occurrence(to, -1, null);
+        for (Occurrence occurrence : occurrences.subSet(lower, true, upper, false)) {
+            if (seen.add(occurrence.record.getId())) {
+                out.add(occurrence.record);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * One weekly dose of a reminder, ordered by minute of the week, then record id, then dose.
+     */
+    private static final class Occurrence implements Comparable<Occurrence> {
+        final int weekMinute;
+        final int dose;
+        final MedicineRecord record;  // null for query bounds
+
+        Occurrence(int weekMinute, int dose, MedicineRecord record) {
+            this.weekMinute = weekMinute;
+            this.dose = dose;
+            this.record = record;
+        }
+
+        @Override
+        public int compareTo(Occurrence other) {
+            if (weekMinute != other.weekMinute) {
+                return Integer.compare(weekMinute, other.weekMinute);
+            }
+            if (record == null || other.record == null) {
+                // Query bounds come first at their minute
+                return record == null ? (other.record == null ? 0 : -1) : 1;
+            }
+            int byId = Long.compare(record.getId(), other.record.getId());
+            return byId != 0 ? byId : Integer.compare(dose, other.dose);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.myapplication1;
+
+import java.time.Clock;
+
+/**
+ * HybridLogicalClock class.
+ * <p>
+ * Hybrid logical clock used to order reminder changes across devices. A timestamp packs the
+ * wall clock in milliseconds into the high 48 bits and a logical counter into the low 16 bits,
+ * so timestamps compare as plain longs, stay close to real time, and still grow when the wall
+ * clock stands still or goes back. Receiving a timestamp from another device moves the clock
+ * past it, so a change made after seeing a remote change always orders after it.
+ * <p>
+ * Time comes from a {@link Clock}, so sync can be driven deterministically in tests.
+ * Thread-safe.
+ */
+public final class HybridLogicalClock {
+
+    // Low bits of a timestamp holding the logical counter
+    public static final int LOGICAL_BITS = 16;
+
+    private final Clock clock;
+    private long last;
+
+    /**
+     * Creates a clock.
+     *
+     * @param clock Wall clock.
+     * @param last  Largest timestamp issued or seen before, e.g. restored from disk; 0 for none.
+     */
+    public HybridLogicalClock(Clock clock, long last) {
+        this.clock = clock;
+        this.last = last;
+    }
+
+    /**
+     * @return New timestamp for a local change, larger than every timestamp issued or seen.
+     */
+    public synchronized long now() {
+        last = Math.max(last + 1, clock.millis() << LOGICAL_BITS);
+        return last;
+    }
+
+    /**
+     * Moves the clock past a timestamp received from another device.
+     *
+     * @param remote Remote timestamp.
+     */
+    public synchronized void observe(long remote) {
+        last = Math.max(last, remote);
+    }
+
+    /**
+     * @return Largest timestamp issued or seen.
+     */
+    public synchronized long last() {
+        return last;
+    }
+
+    /**
+     * @param timestamp Timestamp.
+     * @return Wall clock part in epoch milliseconds.
+     */
+    public static long physicalMillis(long timestamp) {
+        return timestamp >>> LOGICAL_BITS;
+    }
+}
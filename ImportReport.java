@@ -0,0 +1,112 @@
+package com.example.myapplication1;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ImportReport class.
+ * <p>
+ * Outcome of a bulk import: how many rows were read and saved, and for every rejected row
+ * its row number and the reason. Rows are numbered from 1; for CSV files the row number is
+ * the line the row starts on, for JSON files the position of the object in the array.
+ * <p>
+ * An import that stops partway, for example because the file could not be read to the end,
+ * keeps the rows saved until then; its report counts them and carries the error in
+ * {@link #getFailure()}.
+ */
+public class ImportReport {
+
+    /**
+     * A row that was not imported.
+     */
+    public static final class RowError {
+        private final int row;
+        private final String message;
+
+        RowError(int row, String message) {
+            this.row = row;
+            this.message = message;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "Row " + row + ": " + message;
+        }
+    }
+
+    private final AtomicInteger rowCount = new AtomicInteger();
+    private final AtomicInteger importedCount = new AtomicInteger();
+    private final List<RowError> errors = Collections.synchronizedList(new ArrayList<>());
+    private volatile Throwable failure;
+
+    /**
+     * @return Number of data rows read, valid or not.
+     */
+    public int getRowCount() {
+        return rowCount.get();
+    }
+
+    /**
+     * @return Number of reminders saved durably.
+     */
+    public int getImportedCount() {
+        return importedCount.get();
+    }
+
+    /**
+     * @return Rejected rows in row order.
+     */
+    public List<RowError> getErrors() {
+        synchronized (errors) {
+            List<RowError> sorted = new ArrayList<>(errors);
+            sorted.sort(Comparator.comparingInt(RowError::getRow));
+            return sorted;
+        }
+    }
+
+    /**
+     * @return Error that stopped the import before the end of the file, or null if the whole
+     * file was read.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return Short summary, e.g. "Imported 98 of 100 rows, 2 errors", followed by the reason
+     * if the import stopped early.
+     */
+    public String getSummary() {
+        String summary = "Imported " + getImportedCount() + " of " + getRowCount() + " rows, "
+                + errors.size() + (errors.size() == 1 ? " error" : " errors");
+        Throwable stoppedBy = failure;
+        return stoppedBy == null ? summary : summary + "; stopped early: " + stoppedBy.getMessage();
+    }
+
+    void countRow() {
+        rowCount.incrementAndGet();
+    }
+
+    void countImported() {
+        importedCount.incrementAndGet();
+    }
+
+    void addError(int row, String message) {
+        errors.add(new RowError(row, message));
+    }
+
+    void setFailure(Throwable failure) {
+        this.failure = failure;
+    }
+}
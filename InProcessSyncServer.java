@@ -0,0 +1,119 @@
+package com.example.myapplication1;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * InProcessSyncServer class.
+ * <p>
+ * Stand-in for the sync endpoint that runs in the same process, for tests and benchmarks
+ * without a network. It keeps, per data set, the winning version of every record and a log
+ * of those versions ordered by a sequence number, which is the cursor handed to devices.
+ * A version that is superseded leaves the log, so a device that syncs after a long time
+ * receives each changed record once, not its whole history.
+ * <p>
+ * Pushed changes are resolved with {@link SyncChange#winsOver}, the same rule the devices
+ * use, so the server and every device agree on the winner. Deletes are kept as tombstones.
+ * Thread-safe.
+ */
+public final class InProcessSyncServer implements SyncTransport {
+
+    private final Map<String, Dataset> datasets = new HashMap<>();
+    private long exchanges;
+    private long bytesIn;
+    private long bytesOut;
+
+    /**
+     * Winning versions of one data set.
+     */
+    private static final class Dataset {
+        final Map<Long, SyncChange> latest = new HashMap<>();    // id -> winning version
+        final Map<Long, Long> sequences = new HashMap<>();       // id -> sequence in the log
+        final TreeMap<Long, SyncChange> log = new TreeMap<>();   // sequence -> version
+        long lastSequence;
+    }
+
+    @Override
+    public synchronized byte[] exchange(String dataset, byte[] request) throws IOException {
+        SyncBatch batch = SyncBatch.decode(request);
+        Dataset data = datasets.computeIfAbsent(dataset, key -> new Dataset());
+        for (SyncChange change : batch.getChanges()) {
+            if (change.winsOver(data.latest.get(change.getId()))) {
+                data.latest.put(change.getId(), change);
+                long sequence = ++data.lastSequence;
+                Long previous = data.sequences.put(change.getId(), sequence);
+                if (previous != null) {
+                    data.log.remove(previous);
+                }
+                data.log.put(sequence, change);
+            }
+        }
+
+        // Changes after the device's cursor, without the ones the device made itself
+        List<SyncChange> changes = new ArrayList<>();
+        long cursor = Math.max(batch.getCursor(), data.lastSequence);
+        boolean more = false;
+        Iterator<Map.Entry<Long, SyncChange>> it = data.log.tailMap(batch.getCursor(), false).entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, SyncChange> e = it.next();
+            if (e.getValue().getNodeId() == batch.getNodeId()) {
+                continue;
+            }
+            changes.add(e.getValue());
+            if (changes.size() == SyncBatch.MAX_CHANGES) {
+                cursor = e.getKey();
+                more = it.hasNext();
+                break;
+            }
+        }
+
+        byte[] response = SyncBatch.response(cursor, more, changes).encode();
+        exchanges++;
+        bytesIn += request.length;
+        bytesOut += response.length;
+        return response;
+    }
+
+    /**
+     * @param dataset Data set.
+     * @return Live records of the data set as the server resolved them, in no particular order.
+     */
+    public synchronized List<MedicineRecord> records(String dataset) {
+        List<MedicineRecord> records = new ArrayList<>();
+        Dataset data = datasets.get(dataset);
+        if (data != null) {
+            for (SyncChange change : data.latest.values()) {
+                if (!change.isDelete()) {
+                    records.add(change.getRecord());
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return Number of requests served.
+     */
+    public synchronized long getExchangeCount() {
+        return exchanges;
+    }
+
+    /**
+     * @return Compressed bytes received in requests.
+     */
+    public synchronized long getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * @return Compressed bytes sent in responses.
+     */
+    public synchronized long getBytesOut() {
+        return bytesOut;
+    }
+}
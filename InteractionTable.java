@@ -0,0 +1,135 @@
+package com.example.myapplication1;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * InteractionTable class.
+ * <p>
+ * Sorted table of drug pairs and the severity of their interaction, read straight from a
+ * memory-mapped file. Each entry is 9 bytes: the lower drug id, the higher drug id and the
+ * severity, sorted by the pair. A lookup is a binary search over the mapping, about 20 probes
+ * for a million pairs, so the table never has to be loaded onto the heap; the operating system
+ * pages in only the parts that are read.
+ * <p>
+ * Lookups use absolute reads only, so the table can be shared between threads.
+ */
+public final class InteractionTable {
+
+    // Severity levels, higher is worse
+    public static final int NONE = 0;      // no known interaction
+    public static final int MINOR = 1;     // minor, usually no action needed
+    public static final int MODERATE = 2;  // may need monitoring or a dose change
+    public static final int MAJOR = 3;     // avoid the combination
+
+    // Bytes per entry: two int drug ids and one severity byte
+    static final int ENTRY_SIZE = 9;
+
+    private final ByteBuffer entries;
+    private final int count;
+
+    private InteractionTable(ByteBuffer entries, int count) {
+        this.entries = entries;
+        this.count = count;
+    }
+
+    /**
+     * Maps a table written by {@link #write} read-only. The mapping stays valid after the
+     * channel is closed.
+     *
+     * @param channel Channel of the file holding the table.
+     * @param offset  Position of the first entry.
+     * @param count   Number of entries.
+     * @return Table.
+     * @throws IOException If the file is too short or cannot be mapped.
+     */
+    static InteractionTable map(FileChannel channel, long offset, int count) throws IOException {
+        long size = (long) count * ENTRY_SIZE;
+        if (count < 0 || offset + size > channel.size()) {
+            throw new IOException("Interaction table truncated: " + count + " entries at " + offset);
+        }
+        return new InteractionTable(channel.map(FileChannel.MapMode.READ_ONLY, offset, size), count);
+    }
+
+    /**
+     * Writes entries in the layout mapped by {@link #map}.
+     *
+     * @param out        Output.
+     * @param pairs      Drug pairs sorted ascending, see {@link #pairKey}.
+     * @param severities Severity of each pair.
+     * @throws IOException If writing fails.
+     */
+    static void write(DataOutput out, long[] pairs, byte[] severities) throws IOException {
+        for (int i = 0; i < pairs.length; i++) {
+            out.writeInt((int) (pairs[i] >>> 32));
+            out.writeInt((int) pairs[i]);
+            out.writeByte(severities[i]);
+        }
+    }
+
+    /**
+     * Key of a drug pair, the same whichever order the drugs are given in.
+     *
+     * @param a Drug id.
+     * @param b Other drug id.
+     * @return Lower id in the high half, higher id in the low half.
+     */
+    static long pairKey(int a, int b) {
+        int low = Math.min(a, b);
+        int high = Math.max(a, b);
+        return ((long) low << 32) | (high & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Looks up the interaction of two drugs.
+     *
+     * @param a Drug id.
+     * @param b Other drug id.
+     * @return Severity, {@link #NONE} if the pair is not in the table.
+     */
+    public int severity(int a, int b) {
+        long key = pairKey(a, b);
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int position = mid * ENTRY_SIZE;
+            long midKey = ((long) entries.getInt(position) << 32)
+                    | (entries.getInt(position + 4) & 0xFFFFFFFFL);
+            if (midKey < key) {
+                lo = mid + 1;
+            } else if (midKey > key) {
+                hi = mid - 1;
+            } else {
+                return entries.get(position + 8);
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @return Number of drug pairs.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param severity Severity level.
+     * @return Display name of the level.
+     */
+    public static String severityName(int severity) {
+        switch (severity) {
+            case MINOR:
+                return "minor";
+            case MODERATE:
+                return "moderate";
+            case MAJOR:
+                return "major";
+            default:
+                return "none";
+        }
+    }
+}
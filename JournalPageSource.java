@@ -0,0 +1,45 @@
+package com.example.myapplication1;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * JournalPageSource class.
+ * <p>
+ * {@link MedicinePageSource} over a snapshot of the live frame offsets of a
+ * {@link MedicineJournal}. Holding the offsets costs 8 bytes per row; records are only decoded
+ * when a page is requested. The source goes stale when the journal is compacted.
+ */
+public class JournalPageSource implements MedicinePageSource {
+
+    private final MedicineJournal journal;
+    private final long generation;
+    private final long[] offsets;
+    private final int count;
+
+    /**
+     * Creates a source over the first count entries of an offsets array.
+     *
+     * @param journal    Journal the offsets belong to.
+     * @param generation Journal generation the offsets were taken in.
+     * @param offsets    Sorted frame offsets; entries past count are ignored and may change.
+     * @param count      Number of rows.
+     */
+    public JournalPageSource(MedicineJournal journal, long generation, long[] offsets, int count) {
+        this.journal = journal;
+        this.generation = generation;
+        this.offsets = offsets;
+        this.count = count;
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public List<MedicineRecord> loadPage(int start, int count) throws IOException {
+        int end = Math.min(start + count, this.count);
+        return journal.readAt(offsets, start, end, generation);
+    }
+}
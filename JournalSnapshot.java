@@ -0,0 +1,384 @@
+package com.example.myapplication1;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * JournalSnapshot class.
+ * <p>
+ * Immutable, versioned view of a {@link MedicineJournal}: the records that were live when it
+ * was published, read from the journal file as it was at that moment. The journal publishes a
+ * new snapshot after every change through an atomic reference, see
+ * {@link MedicineJournal#snapshot()}, so a reader takes the current one without locking and then
+ * reads from it while the writer keeps appending. The file is append-only within a generation,
+ * so the bytes up to {@link #getLength()} never change under a reader, and all reads are
+ * positioned reads on a channel shared with the journal.
+ * <p>
+ * A snapshot stores its live frame offsets as the changes made since the previous snapshot;
+ * the sorted offsets array is built on first use and cached, so publishing a snapshot costs
+ * time proportional to the change, not to the size of the journal. Once the changes kept
+ * along a chain of snapshots reach 1/{@link #REBUILD_RATIO} of the live records, the writer
+ * builds the array itself, which bounds the memory held by the chain and keeps the cost of a
+ * write constant on average.
+ * <p>
+ * When the journal is compacted the file of an older snapshot is closed; reads from it then
+ * return null and the caller takes a new snapshot. Thread-safe.
+ */
+public final class JournalSnapshot {
+
+    // The offsets array is rebuilt once the chained changes exceed this share of the records
+    static final int REBUILD_RATIO = 16;
+
+    // Changes always allowed in a chain, so small journals are not rebuilt on every write
+    static final int MIN_REBUILD_CHANGES = 64;
+
+    private static final long[] NO_OFFSETS = new long[0];
+
+    private final FileChannel channel;
+    private final long version;
+    private final long generation;
+    private final long length;
+    private final long editCount;
+    private final int size;
+    private final int chained;         // changes since offsets were last built, along the parents
+
+    private volatile long[] offsets;          // sorted live offsets, null until built
+    private volatile JournalSnapshot parent;  // previous snapshot, dropped once offsets are built
+    private final long[] removed;             // sorted offsets of the parent that are no longer live
+    private final long[] appended;            // sorted offsets appended since the parent
+
+    private JournalSnapshot(FileChannel channel, long version, long generation, long length,
+                            long editCount, int size, int chained, long[] offsets,
+                            JournalSnapshot parent, long[] removed, long[] appended) {
+        this.channel = channel;
+        this.version = version;
+        this.generation = generation;
+        this.length = length;
+        this.editCount = editCount;
+        this.size = size;
+        this.chained = chained;
+        this.offsets = offsets;
+        this.parent = parent;
+        this.removed = removed;
+        this.appended = appended;
+    }
+
+    /**
+     * Creates a snapshot from a complete, sorted offsets array.
+     */
+    static JournalSnapshot of(FileChannel channel, long version, long generation, long length,
+                              long editCount, long[] offsets) {
+        return new JournalSnapshot(channel, version, generation, length, editCount,
+                offsets.length, 0, offsets, null, NO_OFFSETS, NO_OFFSETS);
+    }
+
+    /**
+     * Creates the snapshot that follows this one after a change of the journal.
+     *
+     * @param removed  Sorted offsets of this snapshot that are no longer live.
+     * @param appended Sorted offsets of the frames appended since this snapshot.
+     */
+    JournalSnapshot next(long version, long length, long editCount, long[] removed, long[] appended) {
+        // A snapshot whose offsets were built, by the writer or a reader, starts a new chain
+        int changes = removed.length + appended.length + 1;
+        int nextChained = offsets != null ? changes : chained + changes;
+        JournalSnapshot next = new JournalSnapshot(channel, version, generation, length, editCount,
+                size - removed.length + appended.length, nextChained, null, this, removed, appended);
+        if (nextChained > Math.max(MIN_REBUILD_CHANGES, next.size / REBUILD_RATIO)) {
+            next.offsets();
+        }
+        return next;
+    }
+
+    /**
+     * @return Number that grows with every change of the journal, across generations.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Journal generation the snapshot belongs to.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return Length of the journal file at the time of the snapshot.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return Number of edits and deletes made in this generation, see {@link MedicineJournal#editCount()}.
+     */
+    public long getEditCount() {
+        return editCount;
+    }
+
+    /**
+     * @return Number of live records.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the offsets of all live PUT frames in file order, for {@link #readAt}.
+     *
+     * @return Sorted offsets, a new array the caller may modify.
+     */
+    public long[] liveOffsets() {
+        return offsets().clone();
+    }
+
+    /**
+     * Decodes the PUT frames at a range of offsets taken from {@link #liveOffsets()} with a
+     * single positioned read that spans them.
+     *
+     * @param offsets Sorted frame offsets.
+     * @param from    First index into offsets, inclusive.
+     * @param to      Last index into offsets, exclusive.
+     * @return Decoded records in offset order, or null if the journal was compacted since.
+     * @throws IOException If reading fails or an offset is not a PUT frame.
+     */
+    public List<MedicineRecord> readAt(long[] offsets, int from, int to) throws IOException {
+        List<MedicineRecord> records = new ArrayList<>(Math.max(0, to - from));
+        if (from >= to) {
+            return records;
+        }
+        try {
+            // Read the header of the last frame to know where the span ends
+            long start = offsets[from];
+            long last = offsets[to - 1];
+            ByteBuffer header = ByteBuffer.allocate(MedicineFileFormat.FRAME_HEADER_SIZE);
+            readFully(header, last);
+            long end = last + MedicineFileFormat.FRAME_HEADER_SIZE + header.getInt(1);
+            if (end > length || end - start > Integer.MAX_VALUE) {
+                throw new IOException("Offsets outside of journal");
+            }
+
+            byte[] span = new byte[(int) (end - start)];
+            readFully(ByteBuffer.wrap(span), start);
+            ByteBuffer bytes = ByteBuffer.wrap(span);
+            for (int i = from; i < to; i++) {
+                int position = (int) (offsets[i] - start);
+                if (bytes.get(position) != MedicineFileFormat.OP_PUT) {
+                    throw new IOException("Not a record frame at offset " + offsets[i]);
+                }
+                int payloadLength = bytes.getInt(position + 1);
+                records.add(MedicineRecordReader.decode(span,
+                        position + MedicineFileFormat.FRAME_HEADER_SIZE, payloadLength));
+            }
+            MedicineJournal.BYTES_READ.add(span.length);
+            return records;
+        } catch (ClosedChannelException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Decodes the PUT frame at an offset whose size the caller already knows, with one
+     * positioned read.
+     *
+     * @param offset    Frame offset.
+     * @param frameSize Size of the frame including its header.
+     * @return Decoded record, or null if the journal was compacted since.
+     * @throws IOException If reading fails or the offset is not a PUT frame.
+     */
+    MedicineRecord readFrame(long offset, int frameSize) throws IOException {
+        if (offset + frameSize > length) {
+            throw new IOException("Offset outside of journal: " + offset);
+        }
+        byte[] frame = new byte[frameSize];
+        try {
+            readFully(ByteBuffer.wrap(frame), offset);
+        } catch (ClosedChannelException e) {
+            return null;
+        }
+        if (frame[0] != MedicineFileFormat.OP_PUT) {
+            throw new IOException("Not a record frame at offset " + offset);
+        }
+        MedicineJournal.BYTES_READ.add(frameSize);
+        return MedicineRecordReader.decode(frame, MedicineFileFormat.FRAME_HEADER_SIZE,
+                frameSize - MedicineFileFormat.FRAME_HEADER_SIZE);
+    }
+
+    /**
+     * Reads all live records with one sequential scan, in the order of their latest write.
+     *
+     * @return Live records, or null if the journal was compacted since.
+     * @throws IOException If reading fails.
+     */
+    public List<MedicineRecord> readAll() throws IOException {
+        long[] live = offsets();
+        List<MedicineRecord> records = new ArrayList<>(live.length);
+        try (MedicineRecordReader reader = new MedicineRecordReader(new ChannelInputStream(0))) {
+            int next = 0;
+            while (next < live.length && reader.next()) {
+                // Live offsets are sorted, so the next live frame is always the next one to match
+                if (reader.getFramePosition() == live[next]) {
+                    records.add(reader.getRecord());
+                    next++;
+                }
+            }
+            MedicineJournal.BYTES_READ.add(reader.getPosition());
+        } catch (ClosedChannelException e) {
+            return null;
+        }
+        return records;
+    }
+
+    /**
+     * Reads the frames at or after an offset up to the end of the snapshot.
+     *
+     * @param offset  Frame boundary to start reading at, at least the header size.
+     * @param visitor Receives each frame in file order.
+     * @return Offset just past the last frame visited, or -1 if the journal was compacted since.
+     * @throws IOException If reading fails or the offset is outside of the snapshot.
+     */
+    public long readFrom(long offset, MedicineJournal.FrameVisitor visitor) throws IOException {
+        if (offset < MedicineFileFormat.HEADER_SIZE || offset > length) {
+            throw new IOException("Offset outside of journal: " + offset);
+        }
+        try (MedicineRecordReader reader = new MedicineRecordReader(new ChannelInputStream(offset), offset)) {
+            long position = offset;
+            while (position < length && reader.next()) {
+                position = reader.getPosition();
+                if (!visitor.visit(reader)) {
+                    break;
+                }
+            }
+            MedicineJournal.BYTES_READ.add(position - offset);
+            return position;
+        } catch (ClosedChannelException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the sorted live offsets, building them on first use from the nearest older
+     * snapshot that has them and the changes of the snapshots in between, in one pass.
+     */
+    long[] offsets() {
+        long[] built = offsets;
+        if (built != null) {
+            return built;
+        }
+        synchronized (this) {
+            if (offsets != null) {
+                return offsets;
+            }
+            List<JournalSnapshot> links = new ArrayList<>();
+            JournalSnapshot snapshot = this;
+            long[] base;
+            while ((base = snapshot.offsets) == null) {
+                JournalSnapshot older = snapshot.parent;
+                if (older == null) {
+                    // Built by another thread in the meantime; offsets is set before parent is cleared
+                    base = snapshot.offsets;
+                    break;
+                }
+                links.add(snapshot);
+                snapshot = older;
+            }
+
+            int removedCount = 0;
+            int appendedCount = 0;
+            for (JournalSnapshot link : links) {
+                removedCount += link.removed.length;
+                appendedCount += link.appended.length;
+            }
+            long[] allRemoved = new long[removedCount];
+            long[] allAppended = new long[appendedCount];
+            // Oldest link first, so the appended offsets stay in file order
+            int r = 0;
+            int a = 0;
+            for (int i = links.size() - 1; i >= 0; i--) {
+                JournalSnapshot link = links.get(i);
+                System.arraycopy(link.removed, 0, allRemoved, r, link.removed.length);
+                System.arraycopy(link.appended, 0, allAppended, a, link.appended.length);
+                r += link.removed.length;
+                a += link.appended.length;
+            }
+            Arrays.sort(allRemoved);
+
+            // Base and appended offsets form one sorted sequence; drop the removed ones from it
+            built = new long[size];
+            int n = copyLive(base, allRemoved, built, 0);
+            copyLive(allAppended, allRemoved, built, n);
+            offsets = built;
+            parent = null;
+            return built;
+        }
+    }
+
+    /**
+     * Copies the offsets of a sorted array that are not in a sorted removed array to out,
+     * starting at index n.
+     *
+     * @return Number of offsets in out after the copy.
+     */
+    private static int copyLive(long[] from, long[] removed, long[] out, int n) {
+        int r = 0;
+        for (long offset : from) {
+            while (r < removed.length && removed[r] < offset) {
+                r++;
+            }
+            if (r < removed.length && removed[r] == offset) {
+                r++;
+            } else {
+                out[n++] = offset;
+            }
+        }
+        return n;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of journal at " + (position + buffer.position()));
+            }
+        }
+    }
+
+    /**
+     * Stream over the snapshot's part of the file, made of positioned reads so that it does
+     * not move the shared channel.
+     */
+    private final class ChannelInputStream extends InputStream {
+        private long position;
+
+        ChannelInputStream(long position) {
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) throws IOException {
+            long remaining = length - position;
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = channel.read(ByteBuffer.wrap(bytes, offset, (int) Math.min(count, remaining)), position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.myapplication1;
+
+import java.util.List;
+
+/**
+ * ListPageSource class.
+ * <p>
+ * {@link MedicinePageSource} over records that are already in memory, such as the result
+ * of an index query. Never goes stale.
+ */
+public class ListPageSource implements MedicinePageSource {
+
+    private final List<MedicineRecord> records;
+
+    /**
+     * @param records Rows of the list; must not be modified afterwards.
+     */
+    public ListPageSource(List<MedicineRecord> records) {
+        this.records = records;
+    }
+
+    @Override
+    public int getCount() {
+        return records.size();
+    }
+
+    @Override
+    public List<MedicineRecord> loadPage(int start, int count) {
+        return records.subList(start, Math.min(start + count, records.size()));
+    }
+}
@@ -1,28 +1,52 @@
 package com.example.myapplication1;
 
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
 import android.view.Gravity;
+import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.LinearLayout;
+import android.widget.Spinner;
 import android.widget.TextView;
+import android.widget.Toast;
 
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.coordinatorlayout.widget.CoordinatorLayout;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * MainActivity class.
  *
  * This activity serves as the main screen of the Medicine Reminder app.
  * It shows a toolbar with the app title, a button to navigate to the add medicine screen,
- * and a text view displaying the list of saved medicine reminders.
+ * and a recycled list view displaying the saved medicine reminders.
+ * Filter buttons narrow the list to the reminders due in the next hour or today.
+ * A profile picker switches between patients, each with their own reminder shard.
+ * On a cold start the pre-rendered snapshot of a patient's list is shown right away, and the
+ * list loaded in the background takes over once it arrives.
+ * Import and Export buttons read and write the current patient's reminders as CSV or JSON.
+ * Whenever the screen is paused the app's {@link Metrics} are written to diagnostics.json in
+ * the external files directory, where they can be pulled with adb.
  */
 public class MainActivity extends AppCompatActivity {
 
@@ -42,8 +66,60 @@ public class MainActivity extends AppCompatActivity {
     // Constant for medicine list padding in dp
     private static final int MEDICINE_LIST_PADDING_DP = 16;
 
-    private TextView medicineList;       // TextView to display saved medicines
+    // Text shown when there are no saved reminders
+    private static final String EMPTY_LIST_TEXT = "No reminders found.";
+
+    // Text shown when no reminder is due in the selected window
+    private static final String EMPTY_DUE_TEXT = "No reminders due.";
+
+    // Filters for the medicine list
+    private static final int FILTER_ALL = 0;
+    private static final int FILTER_NEXT_HOUR = 1;
+    private static final int FILTER_TODAY = 2;
+
+    // Length of the "Next hour" window in minutes
+    private static final int NEXT_HOUR_MINUTES = 60;
+
+    // Request codes of the document pickers
+    private static final int REQUEST_IMPORT = 1;
+    private static final int REQUEST_EXPORT = 2;
+
+    // File the metrics are dumped to when the screen is paused
+    private static final String DIAGNOSTICS_FILE = "diagnostics.json";
+
+    // Startup and resume latencies of this screen
+    private static final Metrics.Histogram CREATE_TIME = Metrics.histogram("main.on_create_us");
+    private static final Metrics.Histogram RESUME_TO_LIST_TIME = Metrics.histogram("main.resume_to_list_us");
+    private static final Metrics.Histogram SNAPSHOT_READ_TIME = Metrics.histogram("main.snapshot_read_us");
+
+    // Number of rejected rows listed in the import report dialog
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    // Medicines running out within this time are listed above the reminders
+    private static final long REFILL_WARNING_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+    private RecyclerView medicineList;   // Recycled list view displaying saved medicines
+    private TextView emptyListText;      // Shown instead of the list when it is empty
+    private TextView refillText;         // Medicines of all patients running out soon
     private LinearLayout contentLayout;  // Layout container for main content views
+    private MedicineListAdapter listAdapter;  // Binds the visible rows from decoded pages
+    private MedicineListLoader listLoader;    // Loads the medicine list off the UI thread
+    private DueListLoader dueLoader;          // Loads the reminders due in a time window
+    private int filter = FILTER_ALL;          // Filter currently applied to the list
+
+    private PatientDirectory patientDirectory;            // Profiles and their shard files
+    private ArrayAdapter<PatientProfile> profileAdapter;  // Items of the profile picker
+    private Spinner profilePicker;                        // Selects the patient shown
+    private PatientProfile currentProfile =
+            new PatientProfile(PatientDirectory.DEFAULT_PROFILE_ID, PatientDirectory.DEFAULT_PROFILE_NAME);
+    private List<PatientProfile> profiles;                // All profiles, null until opened
+
+    // Loaders per profile; each keeps the last list of its profile cached in memory
+    private final Map<Long, MedicineListLoader> listLoaders = new HashMap<>();
+    private final Map<Long, DueListLoader> dueLoaders = new HashMap<>();
+
+    private int exportFormat = MedicineTextFormat.CSV;  // Format chosen for the pending export
+    private long resumeStart;  // Metrics timer started by onResume, 0 once a list is shown
 
     /**
      * Called when the activity is starting.
@@ -53,6 +129,7 @@ public class MainActivity extends AppCompatActivity {
      */
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long start = Metrics.startTimer();
         super.onCreate(savedInstanceState);
 
         // Create the root CoordinatorLayout for overall screen layout
@@ -72,7 +149,7 @@ public class MainActivity extends AppCompatActivity {
         contentLayout.setGravity(Gravity.TOP);
         contentLayout.setLayoutParams(new CoordinatorLayout.LayoutParams(
                 ViewGroup.LayoutParams.MATCH_PARENT,
-                ViewGroup.LayoutParams.WRAP_CONTENT
+                ViewGroup.LayoutParams.MATCH_PARENT
         ));
 
         // Create toolbar with title and styling
@@ -85,6 +162,38 @@ public class MainActivity extends AppCompatActivity {
                 dpToPx(TOOLBAR_HEIGHT_DP)
         ));
 
+        // Create a profile picker with a button to add a new patient next to it
+        LinearLayout profileBar = new LinearLayout(this);
+        profileBar.setOrientation(LinearLayout.HORIZONTAL);
+        profileBar.setLayoutParams(new LinearLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT
+        ));
+        profileAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item);
+        profileAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        profileAdapter.add(currentProfile);
+        profilePicker = new Spinner(this);
+        profilePicker.setAdapter(profileAdapter);
+        profilePicker.setLayoutParams(new LinearLayout.LayoutParams(
+                0, ViewGroup.LayoutParams.WRAP_CONTENT, 1f
+        ));
+        profilePicker.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                selectProfile(profileAdapter.getItem(position));
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                // Keep showing the current profile
+            }
+        });
+        Button addProfileButton = new Button(this);
+        addProfileButton.setText("New Patient");
+        addProfileButton.setOnClickListener(v -> showAddProfileDialog());
+        profileBar.addView(profilePicker);
+        profileBar.addView(addProfileButton);
+
         // Create button to navigate to Add Medicine screen
         Button goToAddButton = new Button(this);
         goToAddButton.setText("Add Medicine");
@@ -94,26 +203,86 @@ public class MainActivity extends AppCompatActivity {
         ));
         goToAddButton.setOnClickListener(v -> {
             Intent intent = new Intent(MainActivity.this, MainActivity2.class);
+            intent.putExtra(MainActivity2.EXTRA_PROFILE_ID, currentProfile.getId());
+            intent.putExtra(MainActivity2.EXTRA_PROFILE_NAME, currentProfile.getName());
             startActivity(intent);
         });
 
-        // Create TextView to display list of medicines
-        medicineList = new TextView(this);
-        medicineList.setTextSize(20); // Increase font size for readability
-        medicineList.setLineSpacing(1.2f, 1.3f); // Adjust line spacing
-        medicineList.setPadding(
+        // Create a row with import and export buttons
+        LinearLayout transferBar = new LinearLayout(this);
+        transferBar.setOrientation(LinearLayout.HORIZONTAL);
+        transferBar.setLayoutParams(new LinearLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT
+        ));
+        Button importButton = new Button(this);
+        importButton.setText("Import");
+        importButton.setOnClickListener(v -> pickImportFile());
+        Button exportButton = new Button(this);
+        exportButton.setText("Export");
+        exportButton.setOnClickListener(v -> showExportDialog());
+        transferBar.addView(importButton);
+        transferBar.addView(exportButton);
+
+        // Create a row of filter buttons above the list
+        LinearLayout filterBar = new LinearLayout(this);
+        filterBar.setOrientation(LinearLayout.HORIZONTAL);
+        filterBar.setLayoutParams(new LinearLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT
+        ));
+        filterBar.addView(createFilterButton("All", FILTER_ALL));
+        filterBar.addView(createFilterButton("Next hour", FILTER_NEXT_HOUR));
+        filterBar.addView(createFilterButton("Today", FILTER_TODAY));
+
+        // Create TextView shown while there are no medicines
+        emptyListText = new TextView(this);
+        emptyListText.setText(EMPTY_LIST_TEXT);
+        emptyListText.setTextSize(20); // Increase font size for readability
+        emptyListText.setPadding(
                 dpToPx(MEDICINE_LIST_PADDING_DP),
                 dpToPx(MEDICINE_LIST_PADDING_DP),
                 dpToPx(MEDICINE_LIST_PADDING_DP),
                 dpToPx(MEDICINE_LIST_PADDING_DP)
         );
-        medicineList.setLayoutParams(new LinearLayout.LayoutParams(
+        emptyListText.setVisibility(View.GONE);
+        emptyListText.setLayoutParams(new LinearLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT
+        ));
+
+        // Create TextView listing the medicines that run out soon, hidden while there are none
+        refillText = new TextView(this);
+        refillText.setPadding(
+                dpToPx(MEDICINE_LIST_PADDING_DP),
+                dpToPx(MEDICINE_LIST_PADDING_DP),
+                dpToPx(MEDICINE_LIST_PADDING_DP),
+                0
+        );
+        refillText.setVisibility(View.GONE);
+        refillText.setLayoutParams(new LinearLayout.LayoutParams(
                 ViewGroup.LayoutParams.MATCH_PARENT,
                 ViewGroup.LayoutParams.WRAP_CONTENT
         ));
 
-        // Add button and medicine list TextView to content layout
+        // Create recycled list view; only rows near the viewport are decoded and laid out
+        listAdapter = new MedicineListAdapter(this::runOnUiThread, this::reloadMedicineList);
+        medicineList = new RecyclerView(this);
+        medicineList.setLayoutManager(new LinearLayoutManager(this));
+        medicineList.setHasFixedSize(true);
+        medicineList.setAdapter(listAdapter);
+        medicineList.setPadding(0, dpToPx(MEDICINE_LIST_PADDING_DP), 0, 0);
+        medicineList.setLayoutParams(new LinearLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, 0, 1f
+        ));
+
+        // Add button, empty text and medicine list to content layout
+        contentLayout.addView(profileBar);
         contentLayout.addView(goToAddButton);
+        contentLayout.addView(transferBar);
+        contentLayout.addView(filterBar);
+        contentLayout.addView(refillText);
+        contentLayout.addView(emptyListText);
         contentLayout.addView(medicineList);
 
         // Add toolbar and content layout to the root CoordinatorLayout
@@ -122,37 +291,458 @@ public class MainActivity extends AppCompatActivity {
 
         // Set the CoordinatorLayout as the activity content view
         setContentView(coordinatorLayout);
+
+        // Show the default profile right away, the other profiles appear once loaded
+        patientDirectory = PatientDirectory.getInstance(getFilesDir());
+        useProfileLoaders(currentProfile.getId());
+
+        // Open every patient's shard in parallel, then fill the profile picker
+        patientDirectory.openAll().whenCompleteAsync((profiles, error) -> {
+            if (error != null) {
+                Metrics.recordError("main.profiles", error);
+            } else if (!isFinishing()) {
+                this.profiles = profiles;
+                showProfiles(profiles);
+                reloadRefills();
+            }
+        }, this::runOnUiThread);
+        CREATE_TIME.recordSince(start);
     }
 
     /**
      * Called when the activity resumes.
-     * Refreshes the medicine list display by reading saved medicines from file.
+     * Refreshes the medicine list display in the background; nothing is read
+     * if the reminder journal is unchanged since the last load, and only the
+     * appended tail is read if reminders were just added. The medicines running
+     * out soon are refreshed too, once the profiles are open.
      */
     @Override
     protected void onResume() {
         super.onResume();
-        medicineList.setText(readMedicinesFromFile());
+        resumeStart = Metrics.startTimer();
+        reloadMedicineList();
+        if (profiles != null) {
+            reloadRefills();
+        }
+    }
+
+    /**
+     * Called when the activity pauses.
+     * Cancels a pending list load so a stale result is not posted to the hidden screen,
+     * dumps the metrics and, once a day, backs up the reminder store in the background.
+     */
+    @Override
+    protected void onPause() {
+        super.onPause();
+        listLoader.cancel();
+        dueLoader.cancel();
+        if (Metrics.isEnabled()) {
+            File dir = getExternalFilesDir(null);
+            Metrics.dumpAsync(new File(dir != null ? dir : getFilesDir(), DIAGNOSTICS_FILE))
+                    .exceptionally(error -> {
+                        Metrics.recordError("main.diagnostics", error);
+                        return null;
+                    });
+        }
+        File backupDir = getExternalFilesDir(ReminderBackup.BACKUP_DIR);
+        if (backupDir != null) {
+            ReminderBackup.backupIfDueAsync(getFilesDir(), backupDir, System.currentTimeMillis())
+                    .exceptionally(error -> {
+                        Metrics.recordError("main.backup", error);
+                        return null;
+                    });
+        }
+    }
+
+    /**
+     * Called when a document picker returns. Starts the import or export of the
+     * current patient's reminders with the chosen file.
+     *
+     * @param requestCode {@link #REQUEST_IMPORT} or {@link #REQUEST_EXPORT}.
+     * @param resultCode  Result of the picker.
+     * @param data        Intent holding the chosen document.
+     */
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) {
+            return;
+        }
+        if (requestCode == REQUEST_IMPORT) {
+            importFrom(data.getData());
+        } else if (requestCode == REQUEST_EXPORT) {
+            exportTo(data.getData(), exportFormat);
+        }
+    }
+
+    /**
+     * Replaces the items of the profile picker, keeping the current profile selected.
+     *
+     * @param profiles All profiles.
+     */
+    private void showProfiles(List<PatientProfile> profiles) {
+        profileAdapter.clear();
+        profileAdapter.addAll(profiles);
+        int position = profiles.indexOf(currentProfile);
+        profilePicker.setSelection(Math.max(position, 0));
+    }
+
+    /**
+     * Opens the pill inventories of all patients in the background, then lists the medicines
+     * that run out within {@link #REFILL_WARNING_MILLIS}. Inventories opened before only
+     * answer from the shared refill queue, so nothing is read again.
+     */
+    private void reloadRefills() {
+        List<File> shards = new ArrayList<>(profiles.size());
+        Map<File, String> names = new HashMap<>();
+        for (PatientProfile profile : profiles) {
+            File shard = patientDirectory.shardFile(profile.getId());
+            shards.add(shard);
+            names.put(shard, profile.getName());
+        }
+        long limit = System.currentTimeMillis() + REFILL_WARNING_MILLIS;
+        PillInventory.preload(shards)
+                .thenApply(ignored -> RefillQueue.getInstance().runningOutBefore(limit))
+                .whenCompleteAsync((refills, error) -> {
+                    if (error != null) {
+                        Metrics.recordError("main.refills", error);
+                    } else if (!isFinishing()) {
+                        showRefills(refills, names);
+                    }
+                }, this::runOnUiThread);
     }
 
     /**
-     * Reads saved medicine reminders from internal file "medicines.txt".
-     * Each line is prefixed with a bullet point for readability.
-     * Returns a default message if no reminders found or file cannot be read.
+     * Lists medicines that run out soon, with their patient and the first dose not covered.
      *
-     * @return String containing formatted medicine list or a default message.
-     */
-    private String readMedicinesFromFile() {
-        StringBuilder builder = new StringBuilder();
-        try (FileInputStream fis = openFileInput("medicines.txt");
-             BufferedReader reader = new BufferedReader(new InputStreamReader(fis))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                builder.append("• ").append(line).append("\n");
+     * @param refills Medicines in run-out order.
+     * @param names   Patient name by reminder file; medicines of other files are left out.
+     */
+    private void showRefills(List<RefillQueue.Refill> refills, Map<File, String> names) {
+        StringBuilder text = new StringBuilder("Refill soon:");
+        int shown = 0;
+        for (RefillQueue.Refill refill : refills) {
+            String patient = names.get(refill.getInventory().getReminderFile());
+            if (patient == null) {
+                continue;
             }
+            LocalDateTime runOut = LocalDateTime.ofInstant(
+                    Instant.ofEpochMilli(refill.getRunOutMillis()), ZoneId.systemDefault());
+            text.append("\n").append(refill.getRecord().getName())
+                    .append(" (").append(patient).append(") runs out ")
+                    .append(DoseTime.dayName(runOut.getDayOfWeek().getValue() - 1)).append(' ');
+            DoseTime.appendTime(text, runOut.getHour() * 60 + runOut.getMinute());
+            shown++;
+        }
+        refillText.setText(text);
+        refillText.setVisibility(shown == 0 ? View.GONE : View.VISIBLE);
+    }
+
+    /**
+     * Shows the reminders of another patient. The list comes from that patient's loader,
+     * so switching back to a patient shown before reads nothing unless their shard changed.
+     *
+     * @param profile Profile to show.
+     */
+    private void selectProfile(PatientProfile profile) {
+        if (profile.getId() == currentProfile.getId()) {
+            return;
+        }
+        listLoader.cancel();
+        dueLoader.cancel();
+        currentProfile = profile;
+        useProfileLoaders(profile.getId());
+        // The loader may still remember delivering a list that is no longer shown
+        listLoader.clearDelivered();
+        reloadMedicineList();
+    }
+
+    /**
+     * Points the list and due loaders at a profile's shard, creating them on first use.
+     *
+     * @param profileId Profile id.
+     */
+    private void useProfileLoaders(long profileId) {
+        File shard = patientDirectory.shardFile(profileId);
+        listLoader = listLoaders.get(profileId);
+        if (listLoader == null) {
+            listLoader = new MedicineListLoader(shard, this::runOnUiThread);
+            listLoaders.put(profileId, listLoader);
+            showListSnapshot(shard);
+        }
+        dueLoader = dueLoaders.get(profileId);
+        if (dueLoader == null) {
+            dueLoader = new DueListLoader(shard, this::runOnUiThread);
+            dueLoaders.put(profileId, dueLoader);
+            // Build the due time index in the background before the first filter is applied
+            DueTimeIndex.preload(shard);
+        }
+    }
+
+    /**
+     * Shows the pre-rendered first rows of a shard's list, if they match the shard. The read
+     * is bounded by the snapshot size, so it is done right here to fill the first frame.
+     *
+     * @param shard Reminder file about to be loaded.
+     */
+    private void showListSnapshot(File shard) {
+        if (filter != FILTER_ALL) {
+            return;
+        }
+        long start = Metrics.startTimer();
+        MedicineListSnapshot snapshot = MedicineListSnapshot.read(shard);
+        SNAPSHOT_READ_TIME.recordSince(start);
+        if (snapshot != null) {
+            listAdapter.showSnapshot(snapshot);
+            updateEmptyState(snapshot.getCount());
+        }
+    }
+
+    /**
+     * Asks for a patient name and adds a profile with an empty reminder shard.
+     */
+    private void showAddProfileDialog() {
+        EditText nameInput = new EditText(this);
+        nameInput.setHint("Patient Name");
+        new AlertDialog.Builder(this)
+                .setTitle("New Patient")
+                .setView(nameInput)
+                .setPositiveButton("Add", (dialog, which) -> {
+                    String name = nameInput.getText().toString().trim();
+                    if (name.isEmpty()) {
+                        Toast.makeText(this, "Please enter patient name", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    patientDirectory.addProfileAsync(name).whenCompleteAsync((profile, error) -> {
+                        if (error != null) {
+                            Metrics.recordError("main.add_profile", error);
+                            Toast.makeText(this, "Could not add " + name, Toast.LENGTH_LONG).show();
+                            return;
+                        }
+                        profileAdapter.add(profile);
+                        profilePicker.setSelection(profileAdapter.getPosition(profile));
+                    }, this::runOnUiThread);
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    /**
+     * Opens the document picker for a CSV or JSON file to import.
+     */
+    private void pickImportFile() {
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("*/*");
+        intent.putExtra(Intent.EXTRA_MIME_TYPES,
+                new String[]{"text/csv", "text/comma-separated-values", "application/json", "text/plain"});
+        startActivityForResult(intent, REQUEST_IMPORT);
+    }
+
+    /**
+     * Asks for the export format, then opens the document picker to create the file.
+     */
+    private void showExportDialog() {
+        new AlertDialog.Builder(this)
+                .setTitle("Export " + currentProfile.getName())
+                .setItems(new CharSequence[]{"CSV", "JSON"}, (dialog, which) -> {
+                    exportFormat = which == 0 ? MedicineTextFormat.CSV : MedicineTextFormat.JSON;
+                    boolean csv = exportFormat == MedicineTextFormat.CSV;
+                    Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+                    intent.addCategory(Intent.CATEGORY_OPENABLE);
+                    intent.setType(csv ? "text/csv" : "application/json");
+                    intent.putExtra(Intent.EXTRA_TITLE, csv ? "medicines.csv" : "medicines.json");
+                    startActivityForResult(intent, REQUEST_EXPORT);
+                })
+                .show();
+    }
+
+    /**
+     * Imports a file into the current patient's shard in the background and shows the report,
+     * also when the import stopped partway. The list reloads by itself as the imported
+     * reminders are saved.
+     *
+     * @param uri Chosen document.
+     */
+    private void importFrom(Uri uri) {
+        InputStream in;
+        try {
+            in = getContentResolver().openInputStream(uri);
+        } catch (IOException e) {
+            Metrics.recordError("main.import", e);
+            Toast.makeText(this, "Could not open the file", Toast.LENGTH_LONG).show();
+            return;
+        }
+        Toast.makeText(this, "Importing...", Toast.LENGTH_SHORT).show();
+        MedicineImporter.importAsync(patientDirectory.shardFile(currentProfile.getId()), in)
+                .whenCompleteAsync((report, error) -> {
+                    if (error != null) {
+                        Metrics.recordError("main.import", error);
+                        Throwable cause = error.getCause() != null ? error.getCause() : error;
+                        showMessage("Import failed", String.valueOf(cause.getMessage()));
+                        return;
+                    }
+                    StringBuilder message = new StringBuilder(report.getSummary());
+                    List<ImportReport.RowError> errors = report.getErrors();
+                    for (int i = 0; i < errors.size() && i < MAX_REPORTED_ERRORS; i++) {
+                        message.append('\n').append(errors.get(i));
+                    }
+                    if (errors.size() > MAX_REPORTED_ERRORS) {
+                        message.append("\n...and ").append(errors.size() - MAX_REPORTED_ERRORS).append(" more");
+                    }
+                    if (report.getFailure() != null) {
+                        // The rows counted as imported are saved, the rest of the file is not
+                        Metrics.recordError("main.import", report.getFailure());
+                        showMessage("Import stopped", message.toString());
+                    } else {
+                        showMessage("Import finished", message.toString());
+                    }
+                }, this::runOnUiThread);
+    }
+
+    /**
+     * Exports the current patient's reminders in the background.
+     *
+     * @param uri    Created document.
+     * @param format {@link MedicineTextFormat#CSV} or {@link MedicineTextFormat#JSON}.
+     */
+    private void exportTo(Uri uri, int format) {
+        OutputStream out;
+        try {
+            out = getContentResolver().openOutputStream(uri);
         } catch (IOException e) {
-            builder.append("No reminders found.");
+            Metrics.recordError("main.export", e);
+            Toast.makeText(this, "Could not create the file", Toast.LENGTH_LONG).show();
+            return;
         }
-        return builder.toString();
+        MedicineExporter.exportAsync(patientDirectory.shardFile(currentProfile.getId()), out, format)
+                .whenCompleteAsync((count, error) -> {
+                    if (error != null) {
+                        Metrics.recordError("main.export", error);
+                        Toast.makeText(this, "Export failed", Toast.LENGTH_LONG).show();
+                    } else {
+                        Toast.makeText(this, "Exported " + count + " reminders", Toast.LENGTH_SHORT).show();
+                    }
+                }, this::runOnUiThread);
+    }
+
+    /**
+     * Shows a message in a dialog with an OK button.
+     *
+     * @param title   Dialog title.
+     * @param message Dialog text.
+     */
+    private void showMessage(String title, String message) {
+        if (isFinishing()) {
+            return;
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(title)
+                .setMessage(message)
+                .setPositiveButton("OK", null)
+                .show();
+    }
+
+    /**
+     * Creates a button that applies a filter to the medicine list.
+     *
+     * @param label  Button text.
+     * @param filter Filter to apply, one of the FILTER_ constants.
+     * @return The button, sharing the filter bar width with the other buttons.
+     */
+    private Button createFilterButton(String label, int filter) {
+        Button button = new Button(this);
+        button.setText(label);
+        button.setLayoutParams(new LinearLayout.LayoutParams(
+                0, ViewGroup.LayoutParams.WRAP_CONTENT, 1f
+        ));
+        button.setOnClickListener(v -> {
+            if (this.filter != filter) {
+                this.filter = filter;
+                // Whatever is shown now is not the full list any more
+                listLoader.clearDelivered();
+                listAdapter.showSnapshot(null);
+            }
+            reloadMedicineList();
+        });
+        return button;
+    }
+
+    /**
+     * Starts a background load of the list for the current filter and shows the result.
+     * Filtered lists are answered from the due time index, relative to the time of each query.
+     */
+    private void reloadMedicineList() {
+        if (filter == FILTER_ALL) {
+            dueLoader.cancel();
+            loadFullList();
+            return;
+        }
+        listLoader.cancel();
+        MedicineListLoader.Callback showDue = new MedicineListLoader.Callback() {
+            @Override
+            public void onLoaded(MedicinePageSource source) {
+                listAdapter.setSource(source);
+                updateEmptyState(source.getCount());
+                recordListShown();
+            }
+
+            @Override
+            public void onAppended(MedicinePageSource source, int previousCount) {
+                onLoaded(source);
+            }
+        };
+        // The window is placed from the clock on every query, reloads included
+        if (filter == FILTER_NEXT_HOUR) {
+            dueLoader.loadFromNow(NEXT_HOUR_MINUTES, showDue);
+        } else {
+            dueLoader.loadToday(showDue);
+        }
+    }
+
+    /**
+     * Starts a background load of the whole medicine list and shows the result.
+     * Appended reminders are inserted into the list without rebinding the existing rows.
+     */
+    private void loadFullList() {
+        listLoader.load(new MedicineListLoader.Callback() {
+            @Override
+            public void onLoaded(MedicinePageSource source) {
+                listAdapter.setSource(source);
+                updateEmptyState(source.getCount());
+                recordListShown();
+            }
+
+            @Override
+            public void onAppended(MedicinePageSource source, int previousCount) {
+                listAdapter.appendSource(source, previousCount);
+                updateEmptyState(source.getCount());
+                recordListShown();
+            }
+        });
+    }
+
+    /**
+     * Records the time from onResume to the first list shown after it. Nothing is recorded
+     * if the list was unchanged and therefore not delivered again.
+     */
+    private void recordListShown() {
+        if (resumeStart != 0) {
+            RESUME_TO_LIST_TIME.recordSince(resumeStart);
+            resumeStart = 0;
+        }
+    }
+
+    /**
+     * Shows the empty message instead of the list when there are no reminders.
+     *
+     * @param count Number of rows currently shown.
+     */
+    private void updateEmptyState(int count) {
+        boolean empty = count == 0;
+        emptyListText.setText(filter == FILTER_ALL ? EMPTY_LIST_TEXT : EMPTY_DUE_TEXT);
+        emptyListText.setVisibility(empty ? View.VISIBLE : View.GONE);
+        medicineList.setVisibility(empty ? View.GONE : View.VISIBLE);
     }
 
     /**
@@ -173,15 +763,21 @@ public class MainActivity extends AppCompatActivity {
  * This MainActivity class serves as the main screen for the Medicine Reminder app.
  * It displays a toolbar with the title, a button to navigate to the Add Medicine screen,
  * and a scrollable list of saved medicine reminders retrieved from internal storage.
+ * The list is a RecyclerView fed by MedicinePager, which decodes reminders a page at a
+ * time, so memory use and layout cost stay flat however many reminders are stored.
  *
- * When the activity resumes, it refreshes the displayed medicine list by reading from
- * the "medicines.txt" file stored internally. The medicine entries are displayed as
- * bullet points for easy reading.
+ * When the activity resumes, it refreshes the displayed medicine list from the
+ * "medicines.dat" reminder journal stored internally (see MedicineJournal). The journal is
+ * read on a background thread by MedicineListLoader, and skipped when it has not changed.
+ * The medicine entries are displayed as bullet points for easy reading.
+ * Every patient has a profile with their own reminder shard (see PatientDirectory); all
+ * shards are opened in parallel at startup and the picker switches between them.
+ * The "Next hour" and "Today" filters show only the reminders due in that window; they are
+ * answered by DueTimeIndex, which indexes every weekly dose by weekday and minute of day.
  *
  * The UI elements are created programmatically using Android layouts and views,
  * including CoordinatorLayout for overall layout, LinearLayout for content stacking,
- * Toolbar for app title, Buttons for navigation, and TextView for showing the medicine list.
+ * Toolbar for app title, Buttons for navigation, and RecyclerView for showing the medicine list.
  *
- * Utility methods handle converting dp units to pixels for consistent UI scaling
- * and reading the medicine list from the file with appropriate exception handling.
+ * Utility methods handle converting dp units to pixels for consistent UI scaling.
  */
@@ -0,0 +1,103 @@
+package com.example.myapplication1;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * MedicineExporter class.
+ * <p>
+ * Streams the reminders of a journal to a CSV or JSON file (see {@link MedicineTextFormat}).
+ * Only the offsets of the live records are taken up front; records are decoded and written
+ * {@link #PAGE_SIZE} at a time, so the whole list is never held in memory.
+ */
+public class MedicineExporter {
+
+    // Records decoded and written together
+    public static final int PAGE_SIZE = 512;
+
+    // Background thread running exports started with exportAsync
+    private static final ExecutorService EXPORT_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "MedicineExporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private MedicineExporter() {
+        // Static helpers only
+    }
+
+    /**
+     * Exports a reminder file on a background thread as UTF-8. The stream is closed afterwards.
+     *
+     * @param shard  Reminder file to export.
+     * @param out    Destination.
+     * @param format {@link MedicineTextFormat#CSV} or {@link MedicineTextFormat#JSON}.
+     * @return Future completed with the number of exported reminders.
+     */
+    public static CompletableFuture<Integer> exportAsync(File shard, OutputStream out, int format) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                return export(MedicineJournal.getInstance(shard), writer, format);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, EXPORT_EXECUTOR);
+    }
+
+    /**
+     * Writes all live reminders of a journal, in the order of their latest change.
+     *
+     * @param journal Journal to export.
+     * @param out     Destination; flushed but not closed.
+     * @param format  {@link MedicineTextFormat#CSV} or {@link MedicineTextFormat#JSON}.
+     * @return Number of exported reminders.
+     * @throws IOException If reading or writing fails, or the journal was compacted meanwhile.
+     */
+    public static int export(MedicineJournal journal, Writer out, int format) throws IOException {
+        if (format != MedicineTextFormat.CSV && format != MedicineTextFormat.JSON) {
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        // Every page is read from the same snapshot, so writes during the export neither
+        // wait for it nor show up in it
+        JournalSnapshot snapshot = journal.snapshot();
+        long[] offsets = snapshot.liveOffsets();
+
+        boolean csv = format == MedicineTextFormat.CSV;
+        out.write(csv ? MedicineTextFormat.CSV_HEADER + "\n" : "[");
+        StringBuilder line = new StringBuilder(128);
+        int count = 0;
+        for (int start = 0; start < offsets.length; start += PAGE_SIZE) {
+            List<MedicineRecord> page = snapshot.readAt(offsets, start,
+                    Math.min(start + PAGE_SIZE, offsets.length));
+            if (page == null) {
+                throw new IOException("Reminders were compacted during the export, please try again");
+            }
+            for (MedicineRecord record : page) {
+                line.setLength(0);
+                if (csv) {
+                    MedicineTextFormat.appendCsv(line, record).append('\n');
+                } else {
+                    line.append(count == 0 ? "\n" : ",\n");
+                    MedicineTextFormat.appendJson(line, record);
+                }
+                out.append(line);
+                count++;
+            }
+        }
+        if (!csv) {
+            out.write("\n]\n");
+        }
+        out.flush();
+        return count;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.myapplication1;
+
+/**
+ * MedicineFileFormat class.
+ * <p>
+ * Constants describing the binary reminder journal shared by {@link MedicineRecordWriter},
+ * {@link MedicineRecordReader} and {@link MedicineJournal}.
+ * <p>
+ * Layout (version 2):
+ * <pre>
+ * header:  int magic, short version, long generation
+ * frame:   byte op, int payloadLength, payload
+ * PUT:     long id, short minuteOfDay, short timesPerDay, byte dayMask,
+ *          short nameLength, nameLength bytes of UTF-8 name
+ * DELETE:  long id
+ * </pre>
+ * Version 1 files have no generation and no op byte; every frame is a PUT.
+ * The length prefix lets a reader skip fields added by newer versions and detect a
+ * frame that was only partially written. The generation is bumped every time the
+ * file is rewritten by compaction.
+ */
+public final class MedicineFileFormat {
+
+    // Name of the reminder file in the app's internal storage
+    public static final String FILE_NAME = "medicines.dat";
+
+    // "MED1" in ASCII, identifies a reminder file
+    public static final int MAGIC = 0x4D454431;
+
+    // Current format version
+    public static final short VERSION = 2;
+
+    // First version, plain list of records without op codes or generation
+    public static final short VERSION_1 = 1;
+
+    // Size of the version 1 file header in bytes (magic + version)
+    public static final int HEADER_SIZE_V1 = 4 + 2;
+
+    // Size of the current file header in bytes (magic + version + generation)
+    public static final int HEADER_SIZE = 4 + 2 + 8;
+
+    // Frame op code: insert or replace the record with the payload's id
+    public static final byte OP_PUT = 1;
+
+    // Frame op code: tombstone for the payload's id
+    public static final byte OP_DELETE = 2;
+
+    // Size of the part of a frame preceding the payload (op + payload length)
+    public static final int FRAME_HEADER_SIZE = 1 + 4;
+
+    // Size of the fixed part of a PUT payload (id, minute, times/day, day mask, name length)
+    public static final int FIXED_PAYLOAD_SIZE = 8 + 2 + 2 + 1 + 2;
+
+    // Size of a DELETE payload (id)
+    public static final int DELETE_PAYLOAD_SIZE = 8;
+
+    // Upper bound on a single payload, guards against reading garbage lengths
+    public static final int MAX_PAYLOAD_SIZE = 64 * 1024;
+
+    private MedicineFileFormat() {
+        // Constants only
+    }
+}
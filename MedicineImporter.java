@@ -0,0 +1,562 @@
+package com.example.myapplication1;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MedicineImporter class.
+ * <p>
+ * Streams reminders from a CSV or JSON file (see {@link MedicineTextFormat}) into a
+ * {@link MedicineWriteQueue}. The file is read once, front to back, and cut into chunks of
+ * {@link #CHUNK_SIZE} rows; chunks are parsed and validated in parallel on a bounded pool and
+ * written to the queue in file order. At most {@link #MAX_CHUNKS_IN_FLIGHT} chunks are held at
+ * a time, so memory use does not depend on the size of the file.
+ * <p>
+ * Every row is checked with the same {@link MedicineValidator} rules as the Add Medicine form.
+ * Rejected rows, and rows that could not be saved, are listed in the returned
+ * {@link ImportReport}; the other rows are imported. Rows with an id replace the reminder
+ * with that id, rows without one get a new id.
+ */
+public class MedicineImporter {
+
+    // Rows parsed together by one task
+    public static final int CHUNK_SIZE = 512;
+
+    // Threads parsing chunks
+    public static final int PARSE_PARALLELISM =
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    // Chunks read ahead of the one being written
+    public static final int MAX_CHUNKS_IN_FLIGHT = 2 * PARSE_PARALLELISM;
+
+    // Longest accepted row, guards against reading a whole broken file as one row
+    private static final int MAX_ROW_LENGTH = 64 * 1024;
+
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    // Pool shared by all importers for parsing chunks
+    private static final ExecutorService PARSE_POOL = Executors.newFixedThreadPool(PARSE_PARALLELISM, r -> {
+        Thread thread = new Thread(r, "MedicineImporter-" + THREAD_NUMBER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Background thread running imports started with importAsync
+    private static final ExecutorService IMPORT_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "MedicineImporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Turns the text of one row into a record, or into the reason it was rejected.
+     */
+    private interface RowParser {
+        /**
+         * @param text Row text.
+         * @return A {@link MedicineRecord}, or a String with the error message.
+         */
+        Object parse(String text);
+    }
+
+    /**
+     * Reads the rows of a file one at a time.
+     */
+    private interface RowReader {
+        /**
+         * @return True if a row was read, false at the end of the file.
+         * @throws IOException If reading fails or the file structure is broken.
+         */
+        boolean next() throws IOException;
+
+        int row();
+
+        String text();
+    }
+
+    private final MedicineWriteQueue queue;
+
+    /**
+     * Creates an importer writing to a queue. A batched flush policy lets the queue write
+     * the imported rows with few writes and syncs.
+     *
+     * @param queue Queue the imported reminders are written to.
+     */
+    public MedicineImporter(MedicineWriteQueue queue) {
+        this.queue = queue;
+    }
+
+    /**
+     * Imports a reminder file on a background thread, through a batched write queue that is
+     * closed once the import is done. The stream is closed as well.
+     *
+     * @param shard Reminder file to import into.
+     * @param in    UTF-8 CSV or JSON data.
+     * @return Future completed with the report once every imported row is durable, also when
+     * reading stopped partway (see {@link ImportReport#getFailure()}); completed exceptionally
+     * only if nothing was imported.
+     */
+    public static CompletableFuture<ImportReport> importAsync(File shard, InputStream in) {
+        return CompletableFuture.supplyAsync(() -> {
+            MedicineWriteQueue queue = new MedicineWriteQueue(shard,
+                    MedicineWriteQueue.FlushPolicy.batched(CHUNK_SIZE, 50));
+            try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                return new MedicineImporter(queue).importFrom(reader);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } finally {
+                queue.close();
+            }
+        }, IMPORT_EXECUTOR);
+    }
+
+    /**
+     * Imports a file, telling JSON from CSV by its first character.
+     *
+     * @param reader File contents.
+     * @return Report of the import, returned once every imported row is durable.
+     * @throws IOException If reading fails or the file structure is broken before the first row.
+     */
+    public ImportReport importFrom(Reader reader) throws IOException {
+        BufferedReader in = new BufferedReader(reader);
+        int c;
+        do {
+            in.mark(1);
+            c = in.read();
+        } while (c == '\uFEFF' || (c >= 0 && Character.isWhitespace(c)));
+        in.reset();
+        return c == '[' ? importJson(in) : importCsv(in);
+    }
+
+    /**
+     * Imports a CSV file with a header line.
+     *
+     * @param reader File contents.
+     * @return Report of the import, returned once every imported row is durable.
+     * @throws IOException If a required column is missing, or reading fails before the first row.
+     */
+    public ImportReport importCsv(Reader reader) throws IOException {
+        CsvRecordReader rows = new CsvRecordReader(reader instanceof BufferedReader
+                ? reader : new BufferedReader(reader));
+        if (!rows.next()) {
+            return new ImportReport();
+        }
+
+        // Map column names to positions; "times_per_day" and "timesPerDay" are the same column
+        Map<String, Integer> columns = new HashMap<>();
+        List<String> names;
+        try {
+            names = MedicineTextFormat.splitCsv(rows.text().replace("\uFEFF", ""));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid CSV header: " + e.getMessage());
+        }
+        for (int i = 0; i < names.size(); i++) {
+            columns.put(columnKey(names.get(i)), i);
+        }
+        int nameColumn = requireColumn(columns, MedicineTextFormat.FIELD_NAME);
+        int timeColumn = requireColumn(columns, MedicineTextFormat.FIELD_TIME);
+        int timesColumn = requireColumn(columns, MedicineTextFormat.FIELD_TIMES_PER_DAY);
+        int daysColumn = requireColumn(columns, MedicineTextFormat.FIELD_DAYS);
+        int idColumn = columns.getOrDefault(columnKey(MedicineTextFormat.FIELD_ID), -1);
+
+        return run(rows, text -> {
+            List<String> fields = MedicineTextFormat.splitCsv(text);
+            return toRecord(field(fields, idColumn), field(fields, nameColumn),
+                    field(fields, timeColumn), field(fields, timesColumn), field(fields, daysColumn));
+        });
+    }
+
+    /**
+     * Imports a JSON array of reminder objects.
+     *
+     * @param reader File contents.
+     * @return Report of the import, returned once every imported row is durable.
+     * @throws IOException If reading fails or the file is not an array of objects, before
+     *                     the first row.
+     */
+    public ImportReport importJson(Reader reader) throws IOException {
+        return run(new JsonArrayReader(reader instanceof BufferedReader
+                ? reader : new BufferedReader(reader)), text -> {
+            Map<String, Object> fields = MedicineTextFormat.parseJsonObject(text);
+            Object days = fields.get(MedicineTextFormat.FIELD_DAYS);
+            if (days instanceof List) {
+                StringBuilder joined = new StringBuilder();
+                for (Object day : (List<?>) days) {
+                    joined.append(day).append(' ');
+                }
+                days = joined.toString();
+            }
+            return toRecord(text(fields.get(MedicineTextFormat.FIELD_ID)),
+                    text(fields.get(MedicineTextFormat.FIELD_NAME)),
+                    text(fields.get(MedicineTextFormat.FIELD_TIME)),
+                    text(fields.get(MedicineTextFormat.FIELD_TIMES_PER_DAY)),
+                    text(days));
+        });
+    }
+
+    /**
+     * Reads rows into chunks, parses the chunks on the pool and writes their records to the
+     * queue in row order, then waits until all of them are durable. If reading stops partway,
+     * the rows read until then are still written and the report carries the error.
+     */
+    private ImportReport run(RowReader rows, RowParser parser) throws IOException {
+        ImportReport report = new ImportReport();
+        ArrayDeque<Future<Chunk>> inFlight = new ArrayDeque<>();
+        Chunk chunk = new Chunk();
+        try {
+            try {
+                while (rows.next()) {
+                    report.countRow();
+                    chunk.add(rows.row(), rows.text());
+                    if (chunk.size == CHUNK_SIZE) {
+                        inFlight.add(submit(chunk, parser));
+                        chunk = new Chunk();
+                        if (inFlight.size() >= MAX_CHUNKS_IN_FLIGHT) {
+                            write(inFlight.poll().get(), report);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                if (report.getRowCount() == 0) {
+                    throw e;  // nothing was written, the import simply failed
+                }
+                // Rows read before the error are still saved; the report says why the rest are not
+                report.setFailure(e);
+            }
+            if (chunk.size > 0) {
+                inFlight.add(submit(chunk, parser));
+            }
+            while (!inFlight.isEmpty()) {
+                write(inFlight.poll().get(), report);
+            }
+            try {
+                queue.flush().get();
+            } catch (ExecutionException e) {
+                // Rows that could not be saved are already in the report
+            }
+            return report;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Import failed", e.getCause());
+        } finally {
+            for (Future<Chunk> pending : inFlight) {
+                pending.cancel(false);
+            }
+        }
+    }
+
+    private static Future<Chunk> submit(Chunk chunk, RowParser parser) {
+        return PARSE_POOL.submit(() -> {
+            for (int i = 0; i < chunk.size; i++) {
+                try {
+                    chunk.results[i] = parser.parse(chunk.texts[i]);
+                } catch (RuntimeException e) {
+                    chunk.results[i] = "Invalid row: " + e.getMessage();
+                }
+                chunk.texts[i] = null;  // no longer needed
+            }
+            return chunk;
+        });
+    }
+
+    /**
+     * Enqueues the valid records of a parsed chunk and reports its rejected rows.
+     */
+    private void write(Chunk chunk, ImportReport report) {
+        for (int i = 0; i < chunk.size; i++) {
+            Object result = chunk.results[i];
+            int row = chunk.rows[i];
+            if (result instanceof MedicineRecord) {
+                queue.put((MedicineRecord) result).whenComplete((ignored, error) -> {
+                    if (error == null) {
+                        report.countImported();
+                    } else {
+                        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                        report.addError(row, "Could not save: " + cause.getMessage());
+                    }
+                });
+            } else {
+                report.addError(row, (String) result);
+            }
+        }
+    }
+
+    /**
+     * Validates the fields of one row with the rules of the Add Medicine form.
+     *
+     * @return A {@link MedicineRecord}, or a String with the first error found.
+     */
+    static Object toRecord(String id, String name, String time, String timesPerDay, String days) {
+        name = name == null ? "" : name.trim();
+        String error = MedicineValidator.checkName(name);
+        if (error != null) {
+            return error;
+        }
+        time = time == null ? "" : time.trim();
+        int minuteOfDay = time.isEmpty() ? -1 : MedicineTextFormat.parseTime(time);
+        if (!time.isEmpty() && minuteOfDay < 0) {
+            return "Invalid time: " + time;
+        }
+        error = MedicineValidator.checkTime(minuteOfDay);
+        if (error != null) {
+            return error;
+        }
+        timesPerDay = timesPerDay == null ? "" : timesPerDay.trim();
+        error = MedicineValidator.checkTimesPerDay(timesPerDay);
+        if (error != null) {
+            return error;
+        }
+        int dayMask = days == null ? 0 : MedicineTextFormat.parseDays(days);
+        if (dayMask < 0) {
+            return "Unknown day in: " + days.trim();
+        }
+        error = MedicineValidator.checkDays(dayMask);
+        if (error != null) {
+            return error;
+        }
+        long recordId;
+        if (id == null || id.trim().isEmpty()) {
+            recordId = MedicineRecord.generateId();
+        } else {
+            try {
+                recordId = Long.parseLong(id.trim());
+            } catch (NumberFormatException e) {
+                return "Invalid id: " + id.trim();
+            }
+        }
+        return new MedicineRecord(recordId, name, minuteOfDay,
+                MedicineValidator.parseTimesPerDay(timesPerDay), dayMask);
+    }
+
+    private static String columnKey(String name) {
+        return name.trim().replace("_", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static int requireColumn(Map<String, Integer> columns, String name) throws IOException {
+        Integer index = columns.get(columnKey(name));
+        if (index == null) {
+            throw new IOException("Missing CSV column: " + name);
+        }
+        return index;
+    }
+
+    private static String field(List<String> fields, int index) {
+        return index >= 0 && index < fields.size() ? fields.get(index) : null;
+    }
+
+    private static String text(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * Rows parsed by one task, with their row numbers and results.
+     */
+    private static final class Chunk {
+        final int[] rows = new int[CHUNK_SIZE];
+        final String[] texts = new String[CHUNK_SIZE];
+        final Object[] results = new Object[CHUNK_SIZE];
+        int size;
+
+        void add(int row, String text) {
+            rows[size] = row;
+            texts[size] = text;
+            size++;
+        }
+    }
+
+    /**
+     * Cuts CSV text into records. A line break inside a quoted field belongs to the field, as
+     * written by {@link MedicineTextFormat#appendCsv}, so one record may span several lines.
+     * Blank lines between records are skipped.
+     */
+    private static final class CsvRecordReader implements RowReader {
+        private final Reader in;
+        private final StringBuilder text = new StringBuilder();
+        private int line = 1;  // line of the next character
+        private int row;
+        private int pushedBack = -1;
+
+        CsvRecordReader(Reader in) {
+            this.in = in;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            text.setLength(0);
+            row = line;
+            boolean inQuotes = false;
+            int c;
+            while ((c = read()) >= 0) {
+                if (c == '"') {
+                    inQuotes = !inQuotes;  // a doubled quote toggles twice
+                } else if (c == '\n' || c == '\r') {
+                    if (c == '\r') {
+                        int after = read();
+                        if (after == '\n') {
+                            if (inQuotes) text.append('\r');
+                            c = after;
+                        } else {
+                            pushedBack = after;
+                        }
+                    }
+                    line++;
+                    if (!inQuotes) {
+                        if (!isBlank(text)) {
+                            return true;
+                        }
+                        text.setLength(0);
+                        row = line;
+                        continue;
+                    }
+                }
+                if (text.length() >= MAX_ROW_LENGTH) {
+                    throw new IOException("Row " + row + " is too long or has an unclosed quote");
+                }
+                text.append((char) c);
+            }
+            // An unclosed quote at the end of the file is left to the row parser to report
+            return !isBlank(text);
+        }
+
+        @Override
+        public int row() {
+            return row;
+        }
+
+        @Override
+        public String text() {
+            return text.toString();
+        }
+
+        private int read() throws IOException {
+            int c = pushedBack;
+            if (c >= 0) {
+                pushedBack = -1;
+                return c;
+            }
+            return in.read();
+        }
+
+        private static boolean isBlank(CharSequence text) {
+            for (int i = 0; i < text.length(); i++) {
+                if (!Character.isWhitespace(text.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Cuts a JSON array into the texts of its objects without parsing them, tracking only
+     * strings and nesting so that braces inside names are not mistaken for structure.
+     */
+    private static final class JsonArrayReader implements RowReader {
+        private final Reader in;
+        private final StringBuilder text = new StringBuilder();
+        private boolean started;
+        private boolean finished;
+        private int row;
+
+        JsonArrayReader(Reader in) {
+            this.in = in;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            if (finished) {
+                return false;
+            }
+            int c = skipWhitespace();
+            if (!started) {
+                if (c != '[') {
+                    throw new IOException("Not a JSON array");
+                }
+                started = true;
+                c = skipWhitespace();
+            } else if (c == ',') {
+                c = skipWhitespace();
+            } else if (c != ']') {
+                throw new IOException("Expected , or ] after row " + row);
+            }
+            if (c == ']') {
+                finished = true;
+                return false;
+            }
+            if (c != '{') {
+                throw new IOException("Expected an object at row " + (row + 1));
+            }
+
+            text.setLength(0);
+            text.append('{');
+            int depth = 1;
+            boolean inString = false;
+            boolean escaped = false;
+            while (depth > 0) {
+                int ch = in.read();
+                if (ch < 0) {
+                    throw new IOException("Unexpected end of file in row " + (row + 1));
+                }
+                if (text.length() >= MAX_ROW_LENGTH) {
+                    throw new IOException("Row " + (row + 1) + " is too long");
+                }
+                text.append((char) ch);
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (ch == '\\') {
+                        escaped = true;
+                    } else if (ch == '"') {
+                        inString = false;
+                    }
+                } else if (ch == '"') {
+                    inString = true;
+                } else if (ch == '{' || ch == '[') {
+                    depth++;
+                } else if (ch == '}' || ch == ']') {
+                    depth--;
+                }
+            }
+            row++;
+            return true;
+        }
+
+        @Override
+        public int row() {
+            return row;
+        }
+
+        @Override
+        public String text() {
+            return text.toString();
+        }
+
+        private int skipWhitespace() throws IOException {
+            int c;
+            do {
+                c = in.read();
+            } while (c == '\uFEFF' || (c >= 0 && Character.isWhitespace(c)));
+            return c;
+        }
+    }
+}
@@ -0,0 +1,1006 @@
+package com.example.myapplication1;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToLongFunction;
+
+/**
+ * MedicineJournal class.
+ * <p>
+ * Append-only store of medicine reminders. Every change is appended to the reminder file as a
+ * PUT or DELETE frame (see {@link MedicineFileFormat}), so adding, editing or deleting a
+ * reminder costs a single small write regardless of how many reminders exist.
+ * <p>
+ * An in-memory index maps each live record id to the file offset of its latest PUT frame.
+ * It is rebuilt with one sequential scan when the journal is opened. Frames that are no longer
+ * referenced by the index are dead; once they make up more than {@link #COMPACTION_THRESHOLD}
+ * of the file, a background compaction rewrites the file with only the live records and bumps
+ * the file generation.
+ * <p>
+ * Writes are serialized by the journal lock. After every change the journal publishes an
+ * immutable {@link JournalSnapshot} through an atomic reference; all reads go through the
+ * current snapshot without taking the lock, so readers never wait for a writer, never block
+ * one, and never see a change half applied. Listeners are notified after the snapshot that
+ * contains their change has been published.
+ * <p>
+ * All methods are thread-safe. Use {@link #getInstance(File)} so that every screen in the
+ * process shares the same index. Reads, writes, syncs and opening times are recorded in
+ * {@link Metrics}, together with gauges of the records and bytes of all open journals.
+ */
+public class MedicineJournal implements Closeable {
+
+    /**
+     * Visits the frames of the journal in file order.
+     */
+    public interface FrameVisitor {
+        /**
+         * @param reader Reader positioned on the frame; use its getters to inspect it.
+         * @return True to continue with the next frame, false to stop.
+         * @throws IOException If decoding the frame fails.
+         */
+        boolean visit(MedicineRecordReader reader) throws IOException;
+    }
+
+    /**
+     * Notified after every successful change, once it is visible in {@link #snapshot()},
+     * with the journal lock held.
+     * Implementations must be quick and must not call back into the journal from another thread.
+     */
+    public interface ChangeListener {
+        /**
+         * @param record Record that was added or replaced.
+         */
+        void onPut(MedicineRecord record);
+
+        /**
+         * @param id Id of the record that was deleted.
+         */
+        void onDelete(long id);
+    }
+
+    /**
+     * One change of a batch passed to {@link #apply(List)}.
+     */
+    public static final class Change {
+        final MedicineRecord record;  // null for a delete
+        final long id;
+
+        private Change(MedicineRecord record, long id) {
+            this.record = record;
+            this.id = id;
+        }
+
+        /**
+         * @param record Record to add or replace.
+         * @return Change that stores the record.
+         */
+        public static Change put(MedicineRecord record) {
+            return new Change(record, record.getId());
+        }
+
+        /**
+         * @param id Id of the record to delete.
+         * @return Change that deletes the record.
+         */
+        public static Change delete(long id) {
+            return new Change(null, id);
+        }
+    }
+
+    // Share of dead bytes above which the file is compacted
+    public static final double COMPACTION_THRESHOLD = 0.5;
+
+    // Files smaller than this are never compacted, rewriting them gains nothing
+    public static final long MIN_COMPACTION_SIZE = 64 * 1024;
+
+    // Appended to the legacy text file once its reminders are in the journal
+    static final String LEGACY_SUFFIX = ".migrated";
+
+    // One journal per file, shared by all callers in the process
+    private static final Map<String, MedicineJournal> INSTANCES = new HashMap<>();
+
+    // Lock per file being opened, so that opening one file does not block opening another
+    private static final Map<String, Object> OPENING = new HashMap<>();
+
+    // Metrics shared by all journals
+    static final Metrics.Counter BYTES_READ = Metrics.counter("journal.bytes_read");
+    private static final Metrics.Counter BYTES_WRITTEN = Metrics.counter("journal.bytes_written");
+    private static final Metrics.Histogram OPEN_TIME = Metrics.histogram("journal.open_us");
+    private static final Metrics.Histogram APPLY_TIME = Metrics.histogram("journal.apply_us");
+    private static final Metrics.Histogram SYNC_TIME = Metrics.histogram("journal.sync_us");
+    private static final Metrics.Histogram COMPACTION_TIME = Metrics.histogram("journal.compaction_us");
+    private static final Metrics.Counter LEGACY_LINES_SKIPPED = Metrics.counter("journal.legacy_lines_skipped");
+    private static final Metrics.Histogram COMPACTION_LOCK_TIME = Metrics.histogram("journal.compaction_lock_us");
+
+    static {
+        Metrics.gauge("store.records", () -> sumOverInstances(MedicineJournal::size));
+        Metrics.gauge("store.bytes", () -> sumOverInstances(MedicineJournal::length));
+    }
+
+    // Single background thread shared by all journals for compaction
+    private static final ExecutorService COMPACTION_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "MedicineJournal-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File file;
+    private final Object compactionLock = new Object();  // one compaction at a time
+    private Map<Long, Long> index = new HashMap<>();  // record id -> offset of PUT frame
+    private Map<Long, Integer> frameSizes = new HashMap<>();  // record id -> size of PUT frame
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicReference<JournalSnapshot> current = new AtomicReference<>();
+
+    private RandomAccessFile readFile;
+    private FileOutputStream appendStream;
+    private MedicineRecordWriter writer;
+    private long length;
+    private long liveBytes;
+    private long generation;
+    private long editCount;
+    private boolean compactionScheduled;
+    private boolean closed;
+    private long version;
+
+    // Changes of the live offsets since the last published snapshot
+    private long[] removedOffsets = new long[16];
+    private int removedCount;
+    private long[] appendedOffsets = new long[16];
+    private int appendedCount;
+
+    /**
+     * Returns the shared journal for a file, opening it on first use. Different files can
+     * be opened in parallel; concurrent callers for the same file wait for one opening.
+     *
+     * @param file Reminder file.
+     * @return Shared journal instance.
+     * @throws IOException If the file cannot be opened or is corrupt.
+     */
+    public static MedicineJournal getInstance(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        Object openLock;
+        synchronized (INSTANCES) {
+            MedicineJournal journal = INSTANCES.get(key);
+            if (journal != null) {
+                return journal;
+            }
+            openLock = OPENING.computeIfAbsent(key, k -> new Object());
+        }
+        synchronized (openLock) {
+            synchronized (INSTANCES) {
+                MedicineJournal journal = INSTANCES.get(key);
+                if (journal != null) {
+                    return journal;
+                }
+            }
+            // Scan the file without holding the map lock
+            MedicineJournal journal = new MedicineJournal(file);
+            synchronized (INSTANCES) {
+                INSTANCES.put(key, journal);
+                OPENING.remove(key, openLock);
+            }
+            return journal;
+        }
+    }
+
+    /**
+     * @param file Reminder file.
+     * @return True if the shared journal of the file is open in this process.
+     */
+    static boolean isOpen(File file) {
+        synchronized (INSTANCES) {
+            return INSTANCES.containsKey(file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Sums a value over all shared journals, for the store gauges.
+     */
+    private static long sumOverInstances(ToLongFunction<MedicineJournal> value) {
+        List<MedicineJournal> journals;
+        synchronized (INSTANCES) {
+            journals = new ArrayList<>(INSTANCES.values());
+        }
+        long sum = 0;
+        for (MedicineJournal journal : journals) {
+            sum += value.applyAsLong(journal);
+        }
+        return sum;
+    }
+
+    /**
+     * Opens a journal, creating the file if needed and rebuilding the index from its contents.
+     * Version 1 files are upgraded in place; a partially written trailing frame is cut off.
+     * A new default reminder file starts with the reminders of the legacy text file next to
+     * it, see {@link #readLegacyFile}.
+     *
+     * @param file Reminder file.
+     * @throws IOException If the file cannot be opened or is corrupt.
+     */
+    public MedicineJournal(File file) throws IOException {
+        long start = Metrics.startTimer();
+        this.file = file;
+        if (file.length() == 0) {
+            File legacy = new File(file.getAbsoluteFile().getParentFile(), MedicineTextFormat.LEGACY_FILE_NAME);
+            boolean migrate = file.getName().equals(MedicineFileFormat.FILE_NAME) && legacy.isFile();
+            rewrite(migrate ? readLegacyFile(legacy) : new ArrayList<>(), 1);
+            if (migrate && !legacy.renameTo(new File(legacy.getPath() + LEGACY_SUFFIX))) {
+                // The journal is no longer empty, so the file is not read again anyway
+                Metrics.recordError("journal.migrate", new IOException("Could not rename " + legacy));
+            }
+        } else {
+            int version = rebuildIndex();
+            if (version < MedicineFileFormat.VERSION) {
+                rewrite(scanLive(), generation + 1);
+            } else if (file.length() > length) {
+                // Drop a partially written trailing frame so new frames start on a boundary
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(length);
+                }
+            }
+        }
+        readFile = new RandomAccessFile(file, "r");
+        openWriter();
+        publishAll();
+        OPEN_TIME.recordSince(start);
+    }
+
+    /**
+     * Adds a record, or replaces the record with the same id.
+     *
+     * @param record Record to store.
+     * @throws IOException If writing fails.
+     */
+    public synchronized void put(MedicineRecord record) throws IOException {
+        ensureOpen();
+        long offset = length;
+        int frameSize;
+        try {
+            frameSize = writer.write(record);
+            writer.flush();
+        } catch (IOException e) {
+            discardPartialAppend();
+            throw e;
+        }
+        indexPut(record, offset, frameSize);
+        publish();
+        notifyPut(record);
+        BYTES_WRITTEN.add(frameSize);
+        maybeScheduleCompaction();
+    }
+
+    /**
+     * Deletes a record by appending a tombstone. Unknown ids are ignored.
+     *
+     * @param id Id of the record to delete.
+     * @return True if a record was deleted.
+     * @throws IOException If writing fails.
+     */
+    public synchronized boolean delete(long id) throws IOException {
+        ensureOpen();
+        if (!index.containsKey(id)) {
+            return false;
+        }
+        int frameSize;
+        try {
+            frameSize = writer.writeDelete(id);
+            writer.flush();
+        } catch (IOException e) {
+            discardPartialAppend();
+            throw e;
+        }
+        indexDelete(id, frameSize);
+        publish();
+        notifyDelete(id);
+        BYTES_WRITTEN.add(frameSize);
+        maybeScheduleCompaction();
+        return true;
+    }
+
+    /**
+     * Appends a batch of changes through one buffer, flushed once at the end, so a large batch
+     * costs a handful of writes instead of one per change. Either all frames of the batch
+     * reach the file or none do. Deletes of ids that are not live at that point of the batch
+     * are skipped. The frames are handed to the operating system but not forced to the
+     * storage device, see {@link #sync()}.
+     *
+     * @param changes Changes in the order they were made.
+     * @throws IOException If writing fails; the journal is unchanged in that case.
+     */
+    public synchronized void apply(List<Change> changes) throws IOException {
+        ensureOpen();
+        long start = Metrics.startTimer();
+        long startLength = length;
+        int[] sizes = new int[changes.size()];
+        Map<Long, Boolean> liveInBatch = new HashMap<>();  // liveness changed by this batch
+        try {
+            for (int i = 0; i < sizes.length; i++) {
+                Change change = changes.get(i);
+                if (change.record != null) {
+                    sizes[i] = writer.write(change.record);
+                    liveInBatch.put(change.id, Boolean.TRUE);
+                } else if (liveInBatch.getOrDefault(change.id, index.containsKey(change.id))) {
+                    sizes[i] = writer.writeDelete(change.id);
+                    liveInBatch.put(change.id, Boolean.FALSE);
+                }
+            }
+            writer.flush();
+        } catch (IOException e) {
+            discardPartialAppend();
+            throw e;
+        }
+
+        for (int i = 0; i < sizes.length; i++) {
+            Change change = changes.get(i);
+            if (change.record != null) {
+                indexPut(change.record, length, sizes[i]);
+            } else if (sizes[i] > 0) {
+                indexDelete(change.id, sizes[i]);
+            }
+        }
+        publish();
+        for (int i = 0; i < sizes.length; i++) {
+            Change change = changes.get(i);
+            if (change.record != null) {
+                notifyPut(change.record);
+            } else if (sizes[i] > 0) {
+                notifyDelete(change.id);
+            }
+        }
+        BYTES_WRITTEN.add(length - startLength);
+        APPLY_TIME.recordSince(start);
+        maybeScheduleCompaction();
+    }
+
+    /**
+     * Forces every frame appended so far to the storage device. The journal lock is only
+     * held to pick up the file, not during the sync itself, so readers are not blocked.
+     *
+     * @throws IOException If the data could not be synced.
+     */
+    public void sync() throws IOException {
+        FileOutputStream out;
+        long syncedGeneration;
+        synchronized (this) {
+            ensureOpen();
+            writer.flush();
+            out = appendStream;
+            syncedGeneration = generation;
+        }
+        long start = Metrics.startTimer();
+        try {
+            out.getFD().sync();
+            SYNC_TIME.recordSince(start);
+        } catch (IOException e) {
+            // A compaction closed the stream in the meantime; it synced the rewritten file itself
+            if (generation() == syncedGeneration) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Looks up a single record with one positioned read from the current snapshot. Only the
+     * index lookup takes the journal lock; the read itself runs outside of it, so lookups do
+     * not wait for writers and writers do not wait for the disk.
+     *
+     * @param id Record id.
+     * @return The record, or null if there is no live record with this id.
+     * @throws IOException If reading fails or the journal is closed.
+     */
+    public MedicineRecord get(long id) throws IOException {
+        while (true) {
+            JournalSnapshot snapshot;
+            long offset;
+            int frameSize;
+            // The index and the snapshot change together under the lock
+            synchronized (this) {
+                Long found = index.get(id);
+                if (found == null) {
+                    return null;
+                }
+                snapshot = current.get();
+                offset = found;
+                frameSize = frameSizes.get(id);
+            }
+            MedicineRecord record = snapshot.readFrame(offset, frameSize);
+            if (record != null) {
+                return record;
+            }
+            // Compacted in the meantime: look the record up again in the rewritten file
+            newerSnapshot(snapshot);
+        }
+    }
+
+    /**
+     * Returns the current snapshot. Taking it never blocks, and reads from it are not affected
+     * by changes made afterwards.
+     *
+     * @return Snapshot of the latest change.
+     */
+    public JournalSnapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Reads all live records of the current snapshot with one sequential scan, in the order
+     * of their latest write.
+     *
+     * @return List of live records.
+     * @throws IOException If reading fails.
+     */
+    public List<MedicineRecord> readAll() throws IOException {
+        JournalSnapshot snapshot = snapshot();
+        List<MedicineRecord> records;
+        while ((records = snapshot.readAll()) == null) {
+            snapshot = newerSnapshot(snapshot);
+        }
+        return records;
+    }
+
+    /**
+     * Reads all live records under the journal lock, for rewriting the file.
+     */
+    private List<MedicineRecord> scanLive() throws IOException {
+        List<MedicineRecord> records = new ArrayList<>(index.size());
+        try (MedicineRecordReader reader = new MedicineRecordReader(new FileInputStream(file))) {
+            while (reader.getPosition() < length && reader.next()) {
+                if (isLive(reader)) {
+                    records.add(reader.getRecord());
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Reads the frames of the current snapshot at or after an offset, for example by a caller
+     * that already consumed the file up to that offset.
+     *
+     * @param offset  Frame boundary to start reading at, at least the header size.
+     * @param visitor Receives each frame in file order.
+     * @return Offset just past the last frame visited.
+     * @throws IOException If reading fails, the offset is not a frame boundary, or the
+     *                     file was compacted during the read.
+     */
+    public long readFrom(long offset, FrameVisitor visitor) throws IOException {
+        long end = snapshot().readFrom(offset, visitor);
+        if (end < 0) {
+            throw new IOException("Journal was compacted during the read");
+        }
+        return end;
+    }
+
+    /**
+     * Returns the offsets of all live PUT frames of the current snapshot in file order.
+     * Within one generation the frames never move, so the offsets stay readable with
+     * {@link #readAt} until the next compaction, even if the records are edited or deleted
+     * in the meantime.
+     *
+     * @return Sorted offsets of the live records.
+     */
+    public long[] liveOffsets() {
+        return snapshot().liveOffsets();
+    }
+
+    /**
+     * Decodes the PUT frames at a range of offsets taken from {@link #liveOffsets()} or
+     * {@link #readFrom}, using a single positioned read that spans them.
+     *
+     * @param offsets            Sorted frame offsets.
+     * @param from               First index into offsets, inclusive.
+     * @param to                 Last index into offsets, exclusive.
+     * @param expectedGeneration Generation the offsets were taken in.
+     * @return Decoded records in offset order, or null if the file was compacted since.
+     * @throws IOException If reading fails or an offset is not a PUT frame.
+     */
+    public List<MedicineRecord> readAt(long[] offsets, int from, int to,
+                                       long expectedGeneration) throws IOException {
+        JournalSnapshot snapshot = snapshot();
+        if (snapshot.getGeneration() != expectedGeneration) {
+            return null;
+        }
+        return snapshot.readAt(offsets, from, to);
+    }
+
+    /**
+     * Registers a listener for changes made from now on.
+     *
+     * @param listener Listener to add.
+     */
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Hands every live record to a listener as a put, then registers it for the changes
+     * that follow. Both happen under the journal lock, so no change is missed or seen before
+     * the record it replaces.
+     *
+     * @param listener Listener to add.
+     * @throws IOException If the journal cannot be read; the listener is not added then.
+     */
+    public synchronized void readAllAndListen(ChangeListener listener) throws IOException {
+        for (MedicineRecord record : readAll()) {
+            listener.onPut(record);
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener Listener to remove.
+     */
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return Number of live records.
+     */
+    public int size() {
+        return snapshot().size();
+    }
+
+    /**
+     * @return Current length of the reminder file in bytes.
+     */
+    public long length() {
+        return snapshot().getLength();
+    }
+
+    /**
+     * @return Generation of the reminder file, incremented by every compaction.
+     */
+    public long generation() {
+        return snapshot().getGeneration();
+    }
+
+    /**
+     * @return Number of edits and deletes since the journal was opened. While it is unchanged,
+     * every frame appended to the file is a brand new record.
+     */
+    public long editCount() {
+        return snapshot().getEditCount();
+    }
+
+    /**
+     * @return File backing this journal.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Rewrites the file with only the live records if dead frames exceed the threshold.
+     *
+     * @return True if the file was compacted.
+     * @throws IOException If rewriting fails; the old file is left intact in that case.
+     */
+    public boolean compactIfNeeded() throws IOException {
+        synchronized (compactionLock) {
+            synchronized (this) {
+                compactionScheduled = false;
+                if (closed || !needsCompaction()) {
+                    return false;
+                }
+            }
+            compact();
+            return true;
+        }
+    }
+
+    /**
+     * Unconditionally rewrites the file with only the live records. The live records of the
+     * current snapshot are copied to a temporary file without holding the journal lock, so
+     * writes carry on meanwhile; the lock is only taken again to copy the frames appended
+     * since the snapshot and to swap the files.
+     *
+     * @throws IOException If rewriting fails; the old file is left intact in that case.
+     */
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            long start = Metrics.startTimer();
+            JournalSnapshot base;
+            synchronized (this) {
+                ensureOpen();
+                base = current.get();
+            }
+
+            long newGeneration = base.getGeneration() + 1;
+            Map<Long, Long> newIndex = new HashMap<>();
+            Map<Long, Integer> newSizes = new HashMap<>();
+            File temp = new File(file.getPath() + ".tmp");
+            boolean replaced = false;
+            try (FileOutputStream fos = new FileOutputStream(temp);
+                 MedicineRecordWriter tempWriter = new MedicineRecordWriter(fos)) {
+                tempWriter.writeHeader(newGeneration);
+                long offset = MedicineFileFormat.HEADER_SIZE;
+                List<MedicineRecord> records = base.readAll();
+                if (records == null) {
+                    throw new ClosedChannelException();
+                }
+                for (MedicineRecord record : records) {
+                    int frameSize = tempWriter.write(record);
+                    newIndex.put(record.getId(), offset);
+                    newSizes.put(record.getId(), frameSize);
+                    offset += frameSize;
+                }
+                tempWriter.flush();
+                fos.getFD().sync();
+
+                synchronized (this) {
+                    ensureOpen();
+                    long lockStart = Metrics.startTimer();
+                    long newLength = copyTail(base.getLength(), tempWriter, offset, newIndex, newSizes);
+                    tempWriter.flush();
+                    fos.getFD().sync();
+                    if (!temp.renameTo(file)) {
+                        throw new IOException("Could not replace " + file);
+                    }
+                    replaced = true;
+                    swapFile(newIndex, newSizes, newGeneration, newLength);
+                    COMPACTION_LOCK_TIME.recordSince(lockStart);
+                }
+            } finally {
+                if (!replaced) {
+                    temp.delete();
+                }
+            }
+            COMPACTION_TIME.recordSince(start);
+        }
+    }
+
+    /**
+     * Copies the frames appended after a compaction took its snapshot to the compacted file,
+     * applying them to the index of that file. Called under the journal lock.
+     *
+     * @param from       Length of the file when the snapshot was taken.
+     * @param tempWriter Writer of the compacted file.
+     * @param offset     Length of the compacted file so far.
+     * @param newIndex   Index of the compacted file, updated in place.
+     * @param newSizes   Frame sizes of the compacted file, updated in place.
+     * @return Length of the compacted file.
+     */
+    private long copyTail(long from, MedicineRecordWriter tempWriter, long offset,
+                          Map<Long, Long> newIndex, Map<Long, Integer> newSizes) throws IOException {
+        writer.flush();
+        byte[] tail = new byte[(int) (length - from)];
+        readFile.seek(from);
+        readFile.readFully(tail);
+        MedicineRecordReader reader = new MedicineRecordReader(new ByteArrayInputStream(tail), from);
+        while (reader.next()) {
+            long id = reader.getId();
+            if (reader.getOp() == MedicineFileFormat.OP_PUT) {
+                int frameSize = tempWriter.write(reader.getRecord());
+                newIndex.put(id, offset);
+                newSizes.put(id, frameSize);
+                offset += frameSize;
+            } else if (newIndex.remove(id) != null) {
+                // The PUT it deletes may already be in the compacted file
+                newSizes.remove(id);
+                offset += tempWriter.writeDelete(id);
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Switches to a compacted file that has just replaced the reminder file. Called under
+     * the journal lock.
+     */
+    private void swapFile(Map<Long, Long> newIndex, Map<Long, Integer> newSizes,
+                          long newGeneration, long newLength) throws IOException {
+        index = newIndex;
+        frameSizes = newSizes;
+        liveBytes = 0;
+        for (int frameSize : newSizes.values()) {
+            liveBytes += frameSize;
+        }
+        length = newLength;
+        generation = newGeneration;
+
+        // Publish the new file before closing the old one, so a reader whose read fails
+        // on the closed file always finds a newer snapshot
+        RandomAccessFile oldReadFile = readFile;
+        MedicineRecordWriter oldWriter = writer;
+        readFile = new RandomAccessFile(file, "r");
+        openWriter();
+        publishAll();
+        try {
+            oldWriter.close();
+        } finally {
+            oldReadFile.close();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        try {
+            writer.close();
+        } finally {
+            readFile.close();
+        }
+        synchronized (INSTANCES) {
+            INSTANCES.remove(file.getAbsolutePath(), this);
+        }
+    }
+
+    /**
+     * Refuses writes to a closed journal before anything reaches the file. Another instance
+     * may have appended since, so cutting back a failed append to this instance's length
+     * would destroy its frames.
+     *
+     * @throws ClosedChannelException If the journal was closed.
+     */
+    private void ensureOpen() throws ClosedChannelException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Reads the reminders of the plain text file written by the first app versions, so that
+     * updating the app does not lose them. Lines that are not valid reminders are skipped and
+     * counted; the file itself is kept under a new name.
+     *
+     * @param legacy Legacy reminder file.
+     * @return Reminders in file order, each with a new id.
+     * @throws IOException If the file cannot be read.
+     */
+    private static List<MedicineRecord> readLegacyFile(File legacy) throws IOException {
+        List<MedicineRecord> records = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(legacy), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                MedicineRecord record = MedicineTextFormat.parseLegacyLine(line);
+                if (record != null) {
+                    records.add(record);
+                } else if (!line.trim().isEmpty()) {
+                    LEGACY_LINES_SKIPPED.increment();
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Scans the file and rebuilds the index, live byte count, length and generation.
+     *
+     * @return Format version of the file.
+     * @throws IOException If reading fails or the file is corrupt.
+     */
+    private int rebuildIndex() throws IOException {
+        index.clear();
+        frameSizes.clear();
+        liveBytes = 0;
+        try (MedicineRecordReader reader = new MedicineRecordReader(new FileInputStream(file))) {
+            while (reader.next()) {
+                long id = reader.getId();
+                int frameSize = (int) (reader.getPosition() - reader.getFramePosition());
+                Integer oldSize;
+                if (reader.getOp() == MedicineFileFormat.OP_PUT) {
+                    index.put(id, reader.getFramePosition());
+                    oldSize = frameSizes.put(id, frameSize);
+                    liveBytes += frameSize;
+                } else {
+                    index.remove(id);
+                    oldSize = frameSizes.remove(id);
+                }
+                if (oldSize != null) {
+                    liveBytes -= oldSize;
+                }
+            }
+            length = reader.getPosition();
+            generation = reader.getGeneration();
+            return reader.getVersion();
+        }
+    }
+
+    /**
+     * Writes the given records to a temporary file and atomically replaces the reminder file,
+     * then rebuilds the index from the new file.
+     *
+     * @param records       Live records to keep.
+     * @param newGeneration Generation to stamp on the new file.
+     * @throws IOException If writing or renaming fails.
+     */
+    private void rewrite(List<MedicineRecord> records, long newGeneration) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp);
+             MedicineRecordWriter tempWriter = new MedicineRecordWriter(fos)) {
+            tempWriter.writeHeader(newGeneration);
+            for (MedicineRecord record : records) {
+                tempWriter.write(record);
+            }
+            tempWriter.flush();
+            fos.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+        rebuildIndex();
+    }
+
+    /**
+     * @param reader Reader positioned on a frame.
+     * @return True if the frame is the latest PUT of a live record.
+     */
+    private boolean isLive(MedicineRecordReader reader) {
+        if (reader.getOp() != MedicineFileFormat.OP_PUT) {
+            return false;
+        }
+        Long offset = index.get(reader.getId());
+        return offset != null && offset == reader.getFramePosition();
+    }
+
+    /**
+     * Points the index at a PUT frame just appended at an offset.
+     */
+    private void indexPut(MedicineRecord record, long offset, int frameSize) {
+        length = offset + frameSize;
+        Integer oldSize = frameSizes.put(record.getId(), frameSize);
+        if (oldSize != null) {
+            liveBytes -= oldSize;
+            editCount++;
+        }
+        Long oldOffset = index.put(record.getId(), offset);
+        if (oldOffset != null) {
+            dropOffset(oldOffset);
+        }
+        if (appendedCount == appendedOffsets.length) {
+            appendedOffsets = Arrays.copyOf(appendedOffsets, appendedCount * 2);
+        }
+        appendedOffsets[appendedCount++] = offset;
+        liveBytes += frameSize;
+    }
+
+    /**
+     * Drops a live record from the index after its tombstone was appended.
+     */
+    private void indexDelete(long id, int frameSize) {
+        length += frameSize;
+        dropOffset(index.remove(id));
+        liveBytes -= frameSizes.remove(id);
+        editCount++;
+    }
+
+    /**
+     * Records that a frame is no longer live, for the next published snapshot.
+     */
+    private void dropOffset(long offset) {
+        if (offset >= current.get().getLength()) {
+            // Appended since the last snapshot, so it was never published; the most recent
+            // appends are the most likely to be replaced again
+            for (int i = appendedCount - 1; i >= 0; i--) {
+                if (appendedOffsets[i] == offset) {
+                    System.arraycopy(appendedOffsets, i + 1, appendedOffsets, i, appendedCount - i - 1);
+                    appendedCount--;
+                    return;
+                }
+            }
+        }
+        if (removedCount == removedOffsets.length) {
+            removedOffsets = Arrays.copyOf(removedOffsets, removedCount * 2);
+        }
+        removedOffsets[removedCount++] = offset;
+    }
+
+    /**
+     * Publishes the changes since the last snapshot as a new snapshot.
+     */
+    private void publish() {
+        long[] removed = Arrays.copyOf(removedOffsets, removedCount);
+        Arrays.sort(removed);
+        long[] appended = Arrays.copyOf(appendedOffsets, appendedCount);
+        current.set(current.get().next(++version, length, editCount, removed, appended));
+        removedCount = 0;
+        appendedCount = 0;
+    }
+
+    /**
+     * Publishes a snapshot built from the whole index, after opening or rewriting the file.
+     */
+    private void publishAll() {
+        long[] offsets = new long[index.size()];
+        int i = 0;
+        for (long offset : index.values()) {
+            offsets[i++] = offset;
+        }
+        Arrays.sort(offsets);
+        current.set(JournalSnapshot.of(readFile.getChannel(), ++version, generation, length,
+                editCount, offsets));
+        removedCount = 0;
+        appendedCount = 0;
+    }
+
+    /**
+     * Returns a snapshot newer than one whose file was closed by a compaction.
+     *
+     * @throws IOException If there is none because the journal was closed.
+     */
+    private JournalSnapshot newerSnapshot(JournalSnapshot stale) throws IOException {
+        JournalSnapshot fresh = snapshot();
+        if (fresh == stale) {
+            throw new IOException("Journal is closed: " + file);
+        }
+        return fresh;
+    }
+
+    private void notifyPut(MedicineRecord record) {
+        for (ChangeListener listener : listeners) {
+            listener.onPut(record);
+        }
+    }
+
+    private void notifyDelete(long id) {
+        for (ChangeListener listener : listeners) {
+            listener.onDelete(id);
+        }
+    }
+
+    private boolean needsCompaction() {
+        long payloadBytes = length - MedicineFileFormat.HEADER_SIZE;
+        return length >= MIN_COMPACTION_SIZE
+                && payloadBytes - liveBytes > payloadBytes * COMPACTION_THRESHOLD;
+    }
+
+    private void maybeScheduleCompaction() {
+        if (compactionScheduled || !needsCompaction()) {
+            return;
+        }
+        compactionScheduled = true;
+        COMPACTION_EXECUTOR.execute(() -> {
+            try {
+                compactIfNeeded();
+            } catch (IOException e) {
+                // Compaction is only an optimisation, the journal stays valid without it
+                Metrics.recordError("journal.compaction", e);
+            }
+        });
+    }
+
+    /**
+     * Cuts the file back to the last complete frame after a failed append, so the next
+     * frame starts on a frame boundary.
+     *
+     * @throws IOException If the file cannot be repaired.
+     */
+    private void discardPartialAppend() throws IOException {
+        try {
+            writer.close();
+        } catch (IOException ignored) {
+            // The file is truncated below anyway
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+        // Only frames past the published length are cut, so snapshots keep reading the same file
+        openWriter();
+    }
+
+    private void openWriter() throws IOException {
+        appendStream = new FileOutputStream(file, true);
+        writer = new MedicineRecordWriter(appendStream);
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.myapplication1;
+
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.concurrent.Executor;
+
+/**
+ * MedicineListAdapter class.
+ * <p>
+ * RecyclerView adapter for the medicine list on the main screen. Rows are taken from a
+ * {@link MedicinePager}, so only the pages around the visible rows are decoded and held in
+ * memory, and only the visible rows are measured and laid out. A row whose page is still
+ * loading is bound empty and rebound when the page arrives.
+ * <p>
+ * On a cold start the adapter can show a {@link MedicineListSnapshot} before any source is
+ * set. The first source with the same row count takes over, and its rows keep the snapshot
+ * text until their page is decoded, so the list does not flash empty.
+ */
+public class MedicineListAdapter extends RecyclerView.Adapter<MedicineListAdapter.RowHolder>
+        implements MedicinePager.Listener {
+
+    // Constant for row padding in dp
+    private static final int ROW_PADDING_DP = 16;
+
+    private final MedicinePager pager;
+    private final Runnable onStale;
+    private MedicineListSnapshot snapshot;  // pre-rendered rows shown until page 0 is decoded
+    private boolean hasSource;              // a source was set since the adapter was created
+
+    /**
+     * Creates an empty adapter.
+     *
+     * @param uiExecutor Executor running on the UI thread, used to deliver loaded pages.
+     * @param onStale    Called on the UI thread when the list must be reloaded.
+     */
+    public MedicineListAdapter(Executor uiExecutor, Runnable onStale) {
+        this.pager = new MedicinePager(uiExecutor, this);
+        this.onStale = onStale;
+    }
+
+    /**
+     * Replaces the whole list.
+     *
+     * @param source New rows.
+     */
+    public void setSource(MedicinePageSource source) {
+        if (snapshot != null && (hasSource || snapshot.getCount() != source.getCount())) {
+            snapshot = null;
+        }
+        hasSource = true;
+        pager.setSource(source, 0);
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Shows rows appended to the current list, keeping the pages already loaded.
+     *
+     * @param source        Rows including the new ones.
+     * @param previousCount Number of rows before the append.
+     */
+    public void appendSource(MedicinePageSource source, int previousCount) {
+        snapshot = null;
+        pager.setSource(source, previousCount);
+        notifyItemRangeInserted(previousCount, source.getCount() - previousCount);
+    }
+
+    /**
+     * Shows pre-rendered rows until the next source is set, or stops showing them.
+     *
+     * @param snapshot Snapshot of the list about to be loaded, or null to drop the snapshot.
+     */
+    public void showSnapshot(MedicineListSnapshot snapshot) {
+        this.snapshot = snapshot;
+        if (snapshot != null) {
+            hasSource = false;
+        }
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public RowHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        TextView row = new TextView(parent.getContext());
+        row.setTextSize(20); // Same font size as the former single-TextView list
+        row.setLineSpacing(1.2f, 1.3f);
+        int padding = Math.round(ROW_PADDING_DP
+                * parent.getContext().getResources().getDisplayMetrics().density);
+        row.setPadding(padding, padding / 4, padding, padding / 4);
+        row.setLayoutParams(new RecyclerView.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT
+        ));
+        return new RowHolder(row);
+    }
+
+    @Override
+    public void onBindViewHolder(RowHolder holder, int position) {
+        // Display text is built only for rows that are actually bound
+        if (!hasSource) {
+            holder.text.setText(snapshot == null ? "" : snapshot.getRow(position));
+            return;
+        }
+        MedicineRecord record = pager.getRecord(position);
+        if (record != null) {
+            holder.text.setText(MedicineListSnapshot.renderRow(record));
+        } else if (snapshot != null && position < snapshot.getRowCount()) {
+            holder.text.setText(snapshot.getRow(position));
+        } else {
+            holder.text.setText("");
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        if (!hasSource) {
+            return snapshot == null ? 0 : snapshot.getRowCount();
+        }
+        return pager.getCount();
+    }
+
+    @Override
+    public void onRangeLoaded(int start, int count) {
+        if (start == 0) {
+            // The decoded first page replaces the snapshot rows
+            snapshot = null;
+        }
+        notifyItemRangeChanged(start, count);
+    }
+
+    @Override
+    public void onSourceStale() {
+        onStale.run();
+    }
+
+    /**
+     * View holder for a single reminder row.
+     */
+    static class RowHolder extends RecyclerView.ViewHolder {
+        final TextView text;
+
+        RowHolder(TextView text) {
+            super(text);
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.example.myapplication1;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MedicineListLoader class.
+ * <p>
+ * Builds a {@link JournalPageSource} for the medicine list on a background thread and hands
+ * it back through a result executor (the UI thread on Android). The source only holds the
+ * offsets of the live records; the rows themselves are decoded page by page by
+ * {@link MedicinePager}.
+ * <p>
+ * The last snapshot is cached together with the journal length, the file modification
+ * time and the journal generation. If none of these changed since the last load nothing is
+ * read, and if the caller already shows that snapshot nothing is delivered at all.
+ * <p>
+ * The cached length doubles as the byte offset consumed so far. When the journal only grew,
+ * its generation is unchanged and no record was edited or deleted, just the appended tail is
+ * read and its frame offsets are added to the snapshot, delivered through
+ * {@link Callback#onAppended}. A shrunk file, a new generation, or an edit or delete falls
+ * back to a full reload, which takes the offsets from the journal index without reading the file.
+ * Every load works on one {@link JournalSnapshot}, so the key, the offsets and the tail always
+ * belong together, and a load never holds the journal lock or makes a writer wait.
+ * <p>
+ * After a load, the loader follows the journal: any put or delete, for example one written
+ * by a {@link MedicineWriteQueue} after the load started, triggers another load. Reloads
+ * are coalesced so a burst of changes costs few loads. {@link #cancel()} stops following the
+ * journal, and loads started before it never deliver their result.
+ * <p>
+ * After a load that read a new state of the journal, the first rows are rendered into a
+ * {@link MedicineListSnapshot} next to the reminder file, for the next cold start.
+ * <p>
+ * Every load records its duration and the journal bytes it read in {@link Metrics}.
+ */
+public class MedicineListLoader {
+
+    /**
+     * Receives the medicine list on the result executor.
+     */
+    public interface Callback {
+        /**
+         * Called with a new list; replaces whatever is shown.
+         *
+         * @param source Rows of the list.
+         */
+        void onLoaded(MedicinePageSource source);
+
+        /**
+         * Called when reminders were appended to the list delivered before; its rows are
+         * unchanged and the new rows follow them.
+         *
+         * @param source        Rows of the list, including the new ones.
+         * @param previousCount Number of rows in the list delivered before.
+         */
+        void onAppended(MedicinePageSource source, int previousCount);
+    }
+
+    // Metrics shared by all loaders
+    private static final Metrics.Histogram LOAD_TIME = Metrics.histogram("list.load_us");
+    private static final Metrics.Histogram LOAD_BYTES = Metrics.histogram("list.load_bytes");
+    private static final Metrics.Counter UNCHANGED_LOADS = Metrics.counter("list.unchanged_loads");
+
+    // Background thread shared by all loaders
+    private static final ExecutorService LOAD_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "MedicineListLoader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Distinguishes snapshots built by separate full loads
+    private static final AtomicInteger LINEAGE = new AtomicInteger();
+
+    private final File file;
+    private final Executor resultExecutor;
+    private final AtomicInteger requestId = new AtomicInteger();
+    private final AtomicBoolean reloadQueued = new AtomicBoolean();
+
+    // Reloads the list whenever the journal changes while a callback is active
+    private final MedicineJournal.ChangeListener reloadListener = new MedicineJournal.ChangeListener() {
+        @Override
+        public void onPut(MedicineRecord record) {
+            scheduleReload();
+        }
+
+        @Override
+        public void onDelete(long id) {
+            scheduleReload();
+        }
+    };
+
+    private volatile Snapshot snapshot;    // last snapshot built
+    private volatile Snapshot delivered;   // last snapshot handed to the callback
+    private Snapshot persisted;            // last snapshot rendered to disk, loader thread only
+    private Future<?> pending;
+    private volatile Callback active;       // callback of the last load, until cancel()
+    private MedicineJournal watched;        // journal the reload listener is registered on
+
+    /**
+     * Creates a loader for a reminder file. The journal is opened lazily on the
+     * background thread.
+     *
+     * @param file           Reminder file to load from.
+     * @param resultExecutor Executor the callback is run on.
+     */
+    public MedicineListLoader(File file, Executor resultExecutor) {
+        this.file = file;
+        this.resultExecutor = resultExecutor;
+    }
+
+    /**
+     * Starts loading the medicine list in the background and keeps it up to date with later
+     * changes until {@link #cancel()}. Any load still in progress is cancelled first.
+     *
+     * @param callback Receives the list, unless it is unchanged since the last delivery.
+     */
+    public synchronized void load(Callback callback) {
+        cancelPending();
+        active = callback;
+        int id = requestId.get();
+        pending = LOAD_EXECUTOR.submit(() -> {
+            Snapshot result = loadSnapshot(id);
+            Snapshot shown = delivered;
+            if (result == shown || requestId.get() != id) {
+                return;
+            }
+            // Only report an append if the caller shows exactly the snapshot it extends
+            boolean append = shown != null && result.extendsSnapshot(shown);
+            resultExecutor.execute(() -> {
+                // Re-check on the result thread, cancel() may have run in the meantime
+                if (requestId.get() == id) {
+                    delivered = result;
+                    if (append) {
+                        callback.onAppended(result.source, shown.count);
+                    } else {
+                        callback.onLoaded(result.source);
+                    }
+                }
+            });
+            persistSnapshot(result);
+        });
+    }
+
+    /**
+     * Forgets which list was delivered last, so that the next load delivers the list even if
+     * it is unchanged. Call it after the caller showed something else in the meantime.
+     */
+    public void clearDelivered() {
+        delivered = null;
+    }
+
+    /**
+     * Cancels any pending load and stops following the journal. Pending results will not
+     * be delivered.
+     */
+    public synchronized void cancel() {
+        cancelPending();
+        active = null;
+        if (watched != null) {
+            watched.removeChangeListener(reloadListener);
+            watched = null;
+        }
+    }
+
+    private synchronized void cancelPending() {
+        requestId.incrementAndGet();
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+
+    /**
+     * Returns the cached snapshot if the journal is unchanged, extends it with the appended
+     * tail if possible, and otherwise takes a new snapshot of the journal index.
+     * Runs on the background thread.
+     *
+     * @param id Request the snapshot is taken for.
+     * @return Current snapshot.
+     */
+    private Snapshot loadSnapshot(int id) {
+        long start = Metrics.startTimer();
+        MedicineJournal journal;
+        try {
+            journal = MedicineJournal.getInstance(file);
+        } catch (IOException e) {
+            Metrics.recordError("list.load", e);
+            return Snapshot.empty();
+        }
+        // Listen before taking the snapshot so no change can fall in between
+        watch(journal, id);
+
+        Snapshot cached = snapshot;
+        Snapshot fresh;
+        try {
+            // One journal snapshot, so the key and the offsets belong together
+            JournalSnapshot view = journal.snapshot();
+            long length = view.getLength();
+            long generation = view.getGeneration();
+            long lastModified = file.lastModified();
+            if (cached != null && cached.matches(length, lastModified, generation)) {
+                UNCHANGED_LOADS.increment();
+                LOAD_BYTES.record(0);
+                LOAD_TIME.recordSince(start);
+                return cached;
+            }
+            fresh = null;
+            if (cached != null && cached.journal == journal
+                    && cached.generation == generation
+                    && cached.editCount == view.getEditCount()
+                    && cached.length < length) {
+                fresh = readTail(view, journal, cached, lastModified);
+            }
+            if (fresh == null) {
+                // The offsets come from the index, nothing is read from the file
+                LOAD_BYTES.record(0);
+                long[] offsets = view.liveOffsets();
+                fresh = new Snapshot(journal, LINEAGE.incrementAndGet(), length, lastModified,
+                        generation, view.getEditCount(), offsets, offsets.length);
+            }
+        } catch (IOException e) {
+            Metrics.recordError("list.load", e);
+            fresh = Snapshot.empty();
+        }
+        snapshot = fresh;
+        LOAD_TIME.recordSince(start);
+        return fresh;
+    }
+
+    /**
+     * Renders the first rows of a snapshot to disk unless they were already rendered.
+     * Runs on the background thread, after the result was handed to the result executor.
+     */
+    private void persistSnapshot(Snapshot result) {
+        if (result == persisted || result.journal == null) {
+            return;
+        }
+        persisted = result;
+        try {
+            MedicineListSnapshot rendered = MedicineListSnapshot.capture(result.journal,
+                    result.offsets, result.count, result.generation, result.length);
+            if (rendered != null) {
+                rendered.write(file);
+            }
+        } catch (IOException e) {
+            Metrics.recordError("list.snapshot", e);
+        }
+    }
+
+    /**
+     * Registers the reload listener on a journal, unless the request was cancelled.
+     */
+    private synchronized void watch(MedicineJournal journal, int id) {
+        if (requestId.get() != id || watched == journal) {
+            return;
+        }
+        if (watched != null) {
+            watched.removeChangeListener(reloadListener);
+        }
+        journal.addChangeListener(reloadListener);
+        watched = journal;
+    }
+
+    /**
+     * Queues one reload on the result executor, unless one is already queued. Called from
+     * the journal listener, with the journal lock held.
+     */
+    private void scheduleReload() {
+        if (active == null || !reloadQueued.compareAndSet(false, true)) {
+            return;
+        }
+        resultExecutor.execute(() -> {
+            reloadQueued.set(false);
+            Callback callback = active;
+            if (callback != null) {
+                load(callback);
+            }
+        });
+    }
+
+    /**
+     * Reads the frames appended since a snapshot up to the end of a journal snapshot and
+     * extends it.
+     *
+     * @return Extended snapshot, or null if the tail is not made of new records only or the
+     * journal was compacted meanwhile.
+     */
+    private Snapshot readTail(JournalSnapshot view, MedicineJournal journal, Snapshot base,
+                              long lastModified) throws IOException {
+        long[][] offsets = {base.offsets};
+        int[] count = {base.count};
+        boolean[] pureAppend = {true};
+        long end = view.readFrom(base.length, reader -> {
+            if (reader.getOp() != MedicineFileFormat.OP_PUT) {
+                pureAppend[0] = false;
+                return false;
+            }
+            if (count[0] == offsets[0].length) {
+                offsets[0] = Arrays.copyOf(offsets[0], Math.max(16, count[0] * 2));
+            }
+            offsets[0][count[0]++] = reader.getFramePosition();
+            return true;
+        });
+        if (end < 0) {
+            return null;
+        }
+        LOAD_BYTES.record(end - base.length);
+        if (!pureAppend[0]) {
+            return null;
+        }
+        // The offsets array may be shared with the base snapshot; it only ever writes
+        // past the base count, which the base snapshot ignores.
+        return new Snapshot(journal, base.lineage, end, lastModified, base.generation,
+                base.editCount, offsets[0], count[0]);
+    }
+
+    /**
+     * List snapshot together with the journal state it was taken from.
+     */
+    private static final class Snapshot {
+        final MedicineJournal journal;
+        final int lineage;          // same for a full load and the appends built on it
+        final long length;          // journal bytes consumed, also the offset to resume from
+        final long lastModified;
+        final long generation;
+        final long editCount;
+        final long[] offsets;
+        final int count;
+        final MedicinePageSource source;
+
+        Snapshot(MedicineJournal journal, int lineage, long length, long lastModified,
+                 long generation, long editCount, long[] offsets, int count) {
+            this.journal = journal;
+            this.lineage = lineage;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.generation = generation;
+            this.editCount = editCount;
+            this.offsets = offsets;
+            this.count = count;
+            this.source = new JournalPageSource(journal, generation, offsets, count);
+        }
+
+        static Snapshot empty() {
+            return new Snapshot(null, 0, -1, -1, -1, -1, new long[0], 0);
+        }
+
+        /**
+         * @return True if this snapshot is the shown snapshot plus appended rows.
+         */
+        boolean extendsSnapshot(Snapshot shown) {
+            return shown.lineage == lineage && lineage != 0 && shown.count < count;
+        }
+
+        boolean matches(long length, long lastModified, long generation) {
+            return this.length == length
+                    && this.lastModified == lastModified
+                    && this.generation == generation;
+        }
+    }
+}
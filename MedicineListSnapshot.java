@@ -0,0 +1,211 @@
+package com.example.myapplication1;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+/**
+ * MedicineListSnapshot class.
+ * <p>
+ * Pre-rendered first screen of a medicine list, persisted next to the reminder file as
+ * "&lt;file&gt;.snapshot" so that a cold start can show the list before the journal is opened.
+ * It holds the display text of the first {@link #MAX_ROWS} rows, the total row count, and the
+ * generation and length of the journal it was rendered from.
+ * <p>
+ * {@link #read(File)} checks the snapshot against the generation in the reminder file header
+ * and the file length, which costs one small read however many reminders there are. Any write
+ * to the journal changes the length and a compaction changes the generation, so a snapshot that
+ * passes the check shows exactly what a full load would.
+ */
+public final class MedicineListSnapshot {
+
+    // Rows rendered into the snapshot, one page of the list
+    public static final int MAX_ROWS = MedicinePager.PAGE_SIZE;
+
+    // Suffix appended to the reminder file name
+    public static final String FILE_SUFFIX = ".snapshot";
+
+    // Magic number of the snapshot file, ASCII "SNAP"
+    private static final int MAGIC = 0x534E4150;
+
+    // Current snapshot format version
+    private static final short VERSION = 1;
+
+    private final long generation;
+    private final long length;
+    private final int count;
+    private final String[] rows;
+
+    private MedicineListSnapshot(long generation, long length, int count, String[] rows) {
+        this.generation = generation;
+        this.length = length;
+        this.count = count;
+        this.rows = rows;
+    }
+
+    /**
+     * Renders a row of the medicine list. The list adapter uses the same text, so a snapshot
+     * row and a loaded row look the same.
+     *
+     * @param record Reminder.
+     * @return Display text of the row.
+     */
+    public static String renderRow(MedicineRecord record) {
+        return "• " + record.toDisplayString();
+    }
+
+    /**
+     * @param file Reminder file.
+     * @return Snapshot file of the reminder file.
+     */
+    public static File snapshotFile(File file) {
+        return new File(file.getPath() + FILE_SUFFIX);
+    }
+
+    /**
+     * Renders the first rows of a list taken from a journal.
+     *
+     * @param journal    Journal the offsets belong to.
+     * @param offsets    Sorted offsets of the live records, see {@link MedicineJournal#liveOffsets()}.
+     * @param count      Number of valid offsets.
+     * @param generation Generation the offsets were taken in.
+     * @param length     Journal length when the offsets were taken.
+     * @return Snapshot, or null if the journal was compacted since.
+     * @throws IOException If reading fails.
+     */
+    public static MedicineListSnapshot capture(MedicineJournal journal, long[] offsets, int count,
+                                               long generation, long length) throws IOException {
+        List<MedicineRecord> records = journal.readAt(offsets, 0, Math.min(count, MAX_ROWS), generation);
+        if (records == null) {
+            return null;
+        }
+        String[] rows = new String[records.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = renderRow(records.get(i));
+        }
+        return new MedicineListSnapshot(generation, length, count, rows);
+    }
+
+    /**
+     * Reads the snapshot of a reminder file if it still matches the file.
+     *
+     * @param file Reminder file.
+     * @return Snapshot, or null if there is none, it is unreadable, or the file changed since.
+     */
+    public static MedicineListSnapshot read(File file) {
+        File snapshotFile = snapshotFile(file);
+        if (!snapshotFile.exists()) {
+            return null;
+        }
+        MedicineListSnapshot snapshot;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                return null;
+            }
+            long generation = in.readLong();
+            long length = in.readLong();
+            int count = in.readInt();
+            int rowCount = in.readInt();
+            if (rowCount < 0 || rowCount > Math.min(count, MAX_ROWS)) {
+                return null;
+            }
+            String[] rows = new String[rowCount];
+            for (int i = 0; i < rowCount; i++) {
+                rows[i] = in.readUTF();
+            }
+            snapshot = new MedicineListSnapshot(generation, length, count, rows);
+        } catch (IOException e) {
+            // A missing or damaged snapshot only means the list is loaded the normal way
+            return null;
+        }
+        return snapshot.matches(file) ? snapshot : null;
+    }
+
+    /**
+     * Writes this snapshot next to a reminder file, atomically replacing the previous one.
+     * The file is not synced; after a crash the snapshot is at worst missing or rejected.
+     *
+     * @param file Reminder file the snapshot was rendered from.
+     * @throws IOException If writing fails.
+     */
+    public void write(File file) throws IOException {
+        File snapshotFile = snapshotFile(file);
+        File temp = new File(snapshotFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(generation);
+            out.writeLong(length);
+            out.writeInt(count);
+            out.writeInt(rows.length);
+            for (String row : rows) {
+                out.writeUTF(row);
+            }
+        }
+        if (!temp.renameTo(snapshotFile)) {
+            temp.delete();
+            throw new IOException("Could not replace " + snapshotFile);
+        }
+    }
+
+    /**
+     * @return Generation of the journal the snapshot was rendered from.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return Journal length the snapshot was rendered at.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return Number of rows of the whole list.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return Number of pre-rendered rows, at most {@link #MAX_ROWS}.
+     */
+    public int getRowCount() {
+        return rows.length;
+    }
+
+    /**
+     * @param position Row, less than {@link #getRowCount()}.
+     * @return Display text of the row.
+     */
+    public String getRow(int position) {
+        return rows[position];
+    }
+
+    /**
+     * Compares the snapshot key with the length and header generation of a reminder file.
+     */
+    private boolean matches(File file) {
+        if (file.length() != length || length < MedicineFileFormat.HEADER_SIZE) {
+            return false;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return raf.readInt() == MedicineFileFormat.MAGIC
+                    && raf.readShort() == MedicineFileFormat.VERSION
+                    && raf.readLong() == generation;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
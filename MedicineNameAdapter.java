@@ -0,0 +1,115 @@
+package com.example.myapplication1;
+
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MedicineNameAdapter class.
+ * <p>
+ * Autocomplete adapter for the medicine name field. Unlike an ArrayAdapter, whose filter scans
+ * every item on each keystroke, suggestions are looked up in the shared
+ * {@link MedicineNameIndex}, so the cost per keystroke does not grow with the number of
+ * known names. Names of every patient are suggested, not only those of the patient being
+ * edited. Filtering runs on the filter's background thread.
+ */
+public class MedicineNameAdapter extends BaseAdapter implements Filterable {
+
+    // Maximum number of suggestions shown in the drop-down
+    private static final int MAX_SUGGESTIONS = 8;
+
+    // Constant for row padding in dp
+    private static final int ROW_PADDING_DP = 12;
+
+    private final File dir;
+    private List<String> suggestions = new ArrayList<>();
+    private Filter filter;
+
+    /**
+     * Creates an adapter suggesting names from the reminder files of all patients.
+     *
+     * @param dir Folder holding the profile list and the shard files.
+     */
+    public MedicineNameAdapter(File dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public int getCount() {
+        return suggestions.size();
+    }
+
+    @Override
+    public String getItem(int position) {
+        return suggestions.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView row = (TextView) convertView;
+        if (row == null) {
+            row = new TextView(parent.getContext());
+            row.setTextSize(18);
+            int padding = Math.round(ROW_PADDING_DP
+                    * parent.getContext().getResources().getDisplayMetrics().density);
+            row.setPadding(padding, padding, padding, padding);
+        }
+        row.setText(getItem(position));
+        return row;
+    }
+
+    @Override
+    public Filter getFilter() {
+        if (filter == null) {
+            filter = new NameFilter();
+        }
+        return filter;
+    }
+
+    /**
+     * Looks up suggestions in the name index.
+     */
+    private class NameFilter extends Filter {
+
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            List<String> names = new ArrayList<>();
+            if (constraint != null) {
+                try {
+                    // Built once per process, every later keystroke is one lookup per shard
+                    names = MedicineNameIndex.suggestAll(dir, constraint.toString(), MAX_SUGGESTIONS);
+                } catch (IOException e) {
+                    Metrics.recordError("names.suggest", e);
+                }
+            }
+            FilterResults results = new FilterResults();
+            results.values = names;
+            results.count = names.size();
+            return results;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            suggestions = (List<String>) results.values;
+            if (results.count > 0) {
+                notifyDataSetChanged();
+            } else {
+                notifyDataSetInvalidated();
+            }
+        }
+    }
+}
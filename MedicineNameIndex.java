@@ -0,0 +1,249 @@
+package com.example.myapplication1;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * MedicineNameIndex class.
+ * <p>
+ * Sorted prefix index over the distinct medicine names in the reminder file, used for
+ * autocomplete on the Add Medicine form. Names are keyed case-insensitively, so "aspirin" and
+ * "Aspirin" are one entry, and every entry suggests the spelling it was first stored with.
+ * <p>
+ * The index is built with one scan of the journal and then follows its puts and deletes, so
+ * it never reads the file again. A lookup is one tree search plus a walk over the returned
+ * names, independent of how many names are indexed. A name stays in the index while at least
+ * one reminder uses it.
+ * <p>
+ * There is one index per patient's shard; {@link #suggestAll} merges the suggestions of all
+ * shards in a storage folder, so a medicine entered for one resident is offered for every
+ * resident. All methods are thread-safe.
+ */
+public class MedicineNameIndex implements MedicineJournal.ChangeListener {
+
+    // One index per reminder file, shared by all screens in the process
+    private static final Map<String, MedicineNameIndex> INSTANCES = new HashMap<>();
+
+    // Background thread shared by all indexes for building them ahead of first use
+    private static final ExecutorService BUILD_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "MedicineNameIndex");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final NavigableMap<String, Entry> names = new TreeMap<>();  // key -> entry
+    private final Map<Long, Entry> byRecord = new HashMap<>();         // record id -> entry
+
+    /**
+     * Returns the shared index for a reminder file, building it and attaching it to the
+     * journal on first use. The first call scans the file and should not run on the UI thread.
+     *
+     * @param file Reminder file.
+     * @return Shared index.
+     * @throws IOException If the journal cannot be opened or read.
+     */
+    public static MedicineNameIndex getInstance(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        synchronized (INSTANCES) {
+            MedicineNameIndex index = INSTANCES.get(key);
+            if (index == null) {
+                index = new MedicineNameIndex();
+                index.attach(MedicineJournal.getInstance(file));
+                INSTANCES.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Builds the shared index for a file in the background, so that the first lookup
+     * does not have to wait for the scan.
+     *
+     * @param file Reminder file.
+     */
+    public static void preload(File file) {
+        BUILD_EXECUTOR.execute(() -> {
+            try {
+                getInstance(file);
+            } catch (IOException e) {
+                Metrics.recordError("names.index", e);
+            }
+        });
+    }
+
+    /**
+     * Builds the indexes of every patient's shard in a storage folder in the background,
+     * so that the first lookup with {@link #suggestAll} does not have to wait for the scans.
+     *
+     * @param dir Folder holding the profile list and the shard files.
+     */
+    public static void preloadAll(File dir) {
+        BUILD_EXECUTOR.execute(() -> {
+            try {
+                PatientDirectory directory = PatientDirectory.getInstance(dir);
+                for (PatientProfile profile : directory.getProfiles()) {
+                    getInstance(directory.shardFile(profile.getId()));
+                }
+            } catch (IOException e) {
+                Metrics.recordError("names.index", e);
+            }
+        });
+    }
+
+    /**
+     * Returns the names starting with a prefix across the shards of all patients in a storage
+     * folder, ignoring case, in alphabetical order. A name stored in several shards is listed
+     * once, in the spelling of the first patient using it. The index of a shard is built on
+     * first use, so the first call should not run on the UI thread.
+     *
+     * @param dir    Folder holding the profile list and the shard files.
+     * @param prefix Typed text; leading and trailing spaces are ignored.
+     * @param limit  Maximum number of names to return.
+     * @return Matching names in their stored spelling.
+     * @throws IOException If the profile list or a shard cannot be read.
+     */
+    public static List<String> suggestAll(File dir, String prefix, int limit) throws IOException {
+        PatientDirectory directory = PatientDirectory.getInstance(dir);
+        // Each shard contributes at most limit names, so the first limit keys are exact
+        NavigableMap<String, String> merged = new TreeMap<>();
+        for (PatientProfile profile : directory.getProfiles()) {
+            for (String name : getInstance(directory.shardFile(profile.getId())).suggest(prefix, limit)) {
+                merged.putIfAbsent(normalize(name), name);
+            }
+        }
+        List<String> result = new ArrayList<>(Math.min(limit, merged.size()));
+        for (String name : merged.values()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(name);
+        }
+        return result;
+    }
+
+    /**
+     * Indexes every record of a journal and keeps following its changes.
+     *
+     * @param journal Journal to follow.
+     * @throws IOException If the journal cannot be read.
+     */
+    public void attach(MedicineJournal journal) throws IOException {
+        journal.readAllAndListen(this);
+    }
+
+    /**
+     * Stops following a journal. Indexed names are kept.
+     *
+     * @param journal Journal to detach from.
+     */
+    public void detach(MedicineJournal journal) {
+        journal.removeChangeListener(this);
+    }
+
+    /**
+     * Indexes the name of a record, replacing the name it was indexed with before.
+     *
+     * @param record Record to index.
+     */
+    public synchronized void add(MedicineRecord record) {
+        String key = normalize(record.getName());
+        Entry previous = byRecord.get(record.getId());
+        if (previous != null && previous.key.equals(key)) {
+            return;
+        }
+        remove(record.getId());
+        if (key.isEmpty()) {
+            return;
+        }
+        Entry entry = names.get(key);
+        if (entry == null) {
+            entry = new Entry(key, record.getName().trim());
+            names.put(key, entry);
+        }
+        entry.uses++;
+        byRecord.put(record.getId(), entry);
+    }
+
+    /**
+     * Drops a record; its name disappears once no other record uses it.
+     *
+     * @param id Record id.
+     */
+    public synchronized void remove(long id) {
+        Entry entry = byRecord.remove(id);
+        if (entry != null && --entry.uses == 0) {
+            names.remove(entry.key);
+        }
+    }
+
+    /**
+     * Returns the names starting with a prefix, ignoring case, in alphabetical order.
+     *
+     * @param prefix Typed text; leading and trailing spaces are ignored.
+     * @param limit  Maximum number of names to return.
+     * @return Matching names in their stored spelling.
+     */
+    public synchronized List<String> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        List<String> result = new ArrayList<>(Math.min(limit, 16));
+        if (key.isEmpty()) {
+            return result;
+        }
+        // Every key starting with the prefix sorts between the prefix and prefix + MAX_VALUE
+        for (Entry entry : names.subMap(key, true, key + Character.MAX_VALUE, false).values()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(entry.name);
+        }
+        return result;
+    }
+
+    /**
+     * @return Number of distinct names.
+     */
+    public synchronized int size() {
+        return names.size();
+    }
+
+    @Override
+    public void onPut(MedicineRecord record) {
+        add(record);
+    }
+
+    @Override
+    public void onDelete(long id) {
+        remove(id);
+    }
+
+    /**
+     * @param name Medicine name as typed or stored.
+     * @return Key the name is indexed under.
+     */
+    static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * A distinct name together with the number of records using it.
+     */
+    private static final class Entry {
+        final String key;
+        final String name;
+        int uses;
+
+        Entry(String key, String name) {
+            this.key = key;
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.myapplication1;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * MedicinePageSource interface.
+ * <p>
+ * Immutable, position-addressed view of a medicine list that decodes records one page at a
+ * time, so a list screen only ever holds the rows near its viewport in memory.
+ */
+public interface MedicinePageSource {
+
+    /**
+     * @return Number of rows in the list.
+     */
+    int getCount();
+
+    /**
+     * Decodes a range of rows. May block; call it off the UI thread.
+     *
+     * @param start First row, inclusive.
+     * @param count Maximum number of rows; fewer are returned at the end of the list.
+     * @return Decoded rows, or null if the underlying data changed and the source is stale.
+     * @throws IOException If reading fails.
+     */
+    List<MedicineRecord> loadPage(int start, int count) throws IOException;
+}
@@ -0,0 +1,175 @@
+package com.example.myapplication1;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * MedicinePager class.
+ * <p>
+ * Page cache between a {@link MedicinePageSource} and a recycled list view. Rows are decoded a
+ * page at a time on a background thread; at most {@link #MAX_CACHED_PAGES} pages are kept, the
+ * least recently used page being dropped first. A row whose page is not loaded yet is reported
+ * as null and the page is requested; the listener is told once it arrives.
+ * <p>
+ * All methods except the background page loads must be called on the result executor's thread
+ * (the UI thread on Android).
+ */
+public class MedicinePager {
+
+    /**
+     * Receives page load notifications on the result executor.
+     */
+    public interface Listener {
+        /**
+         * Called when rows have been decoded and can be bound.
+         *
+         * @param start First loaded row.
+         * @param count Number of loaded rows.
+         */
+        void onRangeLoaded(int start, int count);
+
+        /**
+         * Called when the source reported that it is stale and must be replaced.
+         */
+        void onSourceStale();
+    }
+
+    // Rows decoded per page
+    public static final int PAGE_SIZE = 50;
+
+    // Pages kept in memory, enough for a screenful plus prefetch in both directions
+    public static final int MAX_CACHED_PAGES = 8;
+
+    // Time to decode one page, shared by all pagers
+    private static final Metrics.Histogram PAGE_LOAD_TIME = Metrics.histogram("list.page_load_us");
+
+    // Background thread shared by all pagers
+    private static final ExecutorService PAGE_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "MedicinePager");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Executor resultExecutor;
+    private final Listener listener;
+    private final Map<Integer, List<MedicineRecord>> pages =
+            new LinkedHashMap<Integer, List<MedicineRecord>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, List<MedicineRecord>> eldest) {
+                    return size() > MAX_CACHED_PAGES;
+                }
+            };
+    private final Set<Integer> loading = new HashSet<>();
+
+    private MedicinePageSource source;
+    private int sourceVersion;
+
+    /**
+     * Creates an empty pager.
+     *
+     * @param resultExecutor Executor loaded pages are delivered on.
+     * @param listener       Receives load notifications.
+     */
+    public MedicinePager(Executor resultExecutor, Listener listener) {
+        this.resultExecutor = resultExecutor;
+        this.listener = listener;
+    }
+
+    /**
+     * Replaces the source. Cached pages that lie completely within the first keepRows rows
+     * are kept, which lets an append reuse everything but the last partial page.
+     *
+     * @param newSource New source.
+     * @param keepRows  Number of leading rows known to be unchanged, 0 to drop every page.
+     */
+    public void setSource(MedicinePageSource newSource, int keepRows) {
+        source = newSource;
+        sourceVersion++;
+        loading.clear();
+        pages.keySet().removeIf(page -> (page + 1) * PAGE_SIZE > keepRows);
+    }
+
+    /**
+     * @return Number of rows, 0 without a source.
+     */
+    public int getCount() {
+        return source == null ? 0 : source.getCount();
+    }
+
+    /**
+     * Returns a row if its page is cached, otherwise requests the page. The neighbouring
+     * pages are requested as well so scrolling in either direction finds them ready.
+     *
+     * @param position Row position.
+     * @return The record, or null while its page is loading.
+     */
+    public MedicineRecord getRecord(int position) {
+        int page = position / PAGE_SIZE;
+        List<MedicineRecord> rows = pages.get(page);
+        if (rows == null) {
+            requestPage(page);
+        }
+        requestPage(page + 1);
+        if (page > 0) {
+            requestPage(page - 1);
+        }
+        if (rows == null) {
+            return null;
+        }
+        int index = position - page * PAGE_SIZE;
+        return index < rows.size() ? rows.get(index) : null;
+    }
+
+    /**
+     * @return Number of pages currently held in memory.
+     */
+    public int getCachedPageCount() {
+        return pages.size();
+    }
+
+    private void requestPage(int page) {
+        MedicinePageSource pageSource = source;
+        if (pageSource == null || page * PAGE_SIZE >= pageSource.getCount()
+                || pages.containsKey(page) || !loading.add(page)) {
+            return;
+        }
+        int version = sourceVersion;
+        PAGE_EXECUTOR.execute(() -> {
+            try {
+                long start = Metrics.startTimer();
+                List<MedicineRecord> rows = pageSource.loadPage(page * PAGE_SIZE, PAGE_SIZE);
+                PAGE_LOAD_TIME.recordSince(start);
+                resultExecutor.execute(() -> onPageLoaded(version, page, rows));
+            } catch (IOException e) {
+                // Leave the rows empty; the page is requested again when they are next bound
+                Metrics.recordError("list.page", e);
+                resultExecutor.execute(() -> {
+                    if (version == sourceVersion) {
+                        loading.remove(page);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageLoaded(int version, int page, List<MedicineRecord> rows) {
+        if (version != sourceVersion) {
+            // Source was replaced while loading
+            return;
+        }
+        loading.remove(page);
+        if (rows == null) {
+            listener.onSourceStale();
+            return;
+        }
+        pages.put(page, rows);
+        listener.onRangeLoaded(page * PAGE_SIZE, rows.size());
+    }
+}
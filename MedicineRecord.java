@@ -0,0 +1,128 @@
+package com.example.myapplication1;
+
+import java.util.UUID;
+
+/**
+ * MedicineRecord class.
+ * <p>
+ * Typed, immutable model of a single medicine reminder as captured by the Add Medicine form.
+ * The time is stored as minutes since midnight in a short and the selected days as a 7-bit
+ * mask (bit 0 = Monday ... bit 6 = Sunday, see {@link DoseTime}), so no display text has to be
+ * parsed to get at the fields. Display text is only built when a record is rendered.
+ */
+public final class MedicineRecord {
+
+    // Number of minutes in one day, the exclusive upper bound for minuteOfDay
+    public static final int MINUTES_PER_DAY = DoseTime.MINUTES_PER_DAY;
+
+    private final long id;
+    private final String name;
+    private final short minuteOfDay;
+    private final short timesPerDay;
+    private final byte dayMask;
+
+    /**
+     * Creates a new medicine record.
+     *
+     * @param id          Unique record id.
+     * @param name        Medicine name.
+     * @param minuteOfDay Reminder time in minutes since midnight (0..1439).
+     * @param timesPerDay Number of doses per day.
+     * @param dayMask     Selected days of the week, bit 0 = Monday ... bit 6 = Sunday.
+     */
+    public MedicineRecord(long id, String name, int minuteOfDay, int timesPerDay, int dayMask) {
+        if (name == null) {
+            throw new IllegalArgumentException("name must not be null");
+        }
+        if (minuteOfDay < 0 || minuteOfDay >= MINUTES_PER_DAY) {
+            throw new IllegalArgumentException("minuteOfDay out of range: " + minuteOfDay);
+        }
+        if (timesPerDay < 0 || timesPerDay > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("timesPerDay out of range: " + timesPerDay);
+        }
+        this.id = id;
+        this.name = name;
+        this.minuteOfDay = (short) minuteOfDay;
+        this.timesPerDay = (short) timesPerDay;
+        this.dayMask = (byte) (dayMask & DoseTime.ALL_DAYS);
+    }
+
+    /**
+     * Generates a random record id that is unique for all practical purposes.
+     *
+     * @return New record id.
+     */
+    public static long generateId() {
+        return UUID.randomUUID().getMostSignificantBits();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMinuteOfDay() {
+        return minuteOfDay;
+    }
+
+    public int getTimesPerDay() {
+        return timesPerDay;
+    }
+
+    public int getDayMask() {
+        return dayMask;
+    }
+
+    /**
+     * Builds the human readable form of this reminder, in the same wording the app
+     * has always shown, e.g. "Aspirin at 08:00 AM, 3 times/day on Monday Tuesday".
+     *
+     * @return Display string for this record.
+     */
+    public String toDisplayString() {
+        return appendDisplayString(new StringBuilder(name.length() + 48)).toString();
+    }
+
+    /**
+     * Appends the human readable form of this reminder, see {@link #toDisplayString()}.
+     *
+     * @param builder Destination.
+     * @return The builder.
+     */
+    public StringBuilder appendDisplayString(StringBuilder builder) {
+        builder.append(name).append(" at ");
+        DoseTime.appendTime(builder, minuteOfDay);
+        builder.append(", ").append(timesPerDay).append(" times/day on ");
+        return DoseTime.appendDays(builder, dayMask);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MedicineRecord)) return false;
+        MedicineRecord other = (MedicineRecord) o;
+        return id == other.id
+                && minuteOfDay == other.minuteOfDay
+                && timesPerDay == other.timesPerDay
+                && dayMask == other.dayMask
+                && name.equals(other.name);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Long.hashCode(id);
+        result = 31 * result + name.hashCode();
+        result = 31 * result + minuteOfDay;
+        result = 31 * result + timesPerDay;
+        result = 31 * result + dayMask;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "MedicineRecord{id=" + id + ", " + toDisplayString() + "}";
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.myapplication1;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * MedicineRecordReader class.
+ * <p>
+ * Iterates over the frames of a reminder journal written by {@link MedicineRecordWriter}.
+ * Frames are decoded field by field from the binary payload; no text parsing is involved.
+ * Only the record id is decoded eagerly, the full record is decoded on request. Stepping
+ * through frames reuses one payload buffer and allocates nothing per frame.
+ * A frame cut short at the end of the file (for example by a crash during a write) is
+ * treated as end of data.
+ */
+public class MedicineRecordReader implements Closeable {
+
+    private final DataInputStream in;
+    private final int version;
+    private final long generation;
+
+    private byte[] payload = new byte[256];
+    private int payloadLength;
+    private int op;
+    private long id;
+    private long framePosition;
+    private long position;
+
+    /**
+     * Creates a reader positioned at the start of a file and validates the file header.
+     *
+     * @param in Source stream, closed together with this reader.
+     * @throws IOException If the header is missing or not a reminder file.
+     */
+    public MedicineRecordReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        int magic = this.in.readInt();
+        short fileVersion = this.in.readShort();
+        if (magic != MedicineFileFormat.MAGIC) {
+            throw new IOException("Not a medicine reminder file");
+        }
+        if (fileVersion > MedicineFileFormat.VERSION) {
+            throw new IOException("Unsupported file version: " + fileVersion);
+        }
+        this.version = fileVersion;
+        if (fileVersion == MedicineFileFormat.VERSION_1) {
+            this.generation = 0;
+            this.position = MedicineFileFormat.HEADER_SIZE_V1;
+        } else {
+            this.generation = this.in.readLong();
+            this.position = MedicineFileFormat.HEADER_SIZE;
+        }
+    }
+
+    /**
+     * Creates a reader for a stream that is already positioned on a frame boundary
+     * of a current-version file, past the header.
+     *
+     * @param in       Source stream, closed together with this reader.
+     * @param position File offset the stream is positioned at.
+     */
+    public MedicineRecordReader(InputStream in, long position) {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        this.version = MedicineFileFormat.VERSION;
+        this.generation = -1;
+        this.position = position;
+    }
+
+    /**
+     * Advances to the next frame.
+     *
+     * @return True if a complete frame was read, false at the end of the data.
+     * @throws IOException If reading fails or the data is corrupt.
+     */
+    public boolean next() throws IOException {
+        int frameOp;
+        int length;
+        int headerSize;
+        try {
+            if (version == MedicineFileFormat.VERSION_1) {
+                frameOp = MedicineFileFormat.OP_PUT;
+                length = in.readInt();
+                headerSize = 4;
+            } else {
+                frameOp = in.readByte();
+                length = in.readInt();
+                headerSize = MedicineFileFormat.FRAME_HEADER_SIZE;
+            }
+        } catch (EOFException e) {
+            return false;
+        }
+        int minLength = frameOp == MedicineFileFormat.OP_DELETE
+                ? MedicineFileFormat.DELETE_PAYLOAD_SIZE
+                : MedicineFileFormat.FIXED_PAYLOAD_SIZE;
+        if ((frameOp != MedicineFileFormat.OP_PUT && frameOp != MedicineFileFormat.OP_DELETE)
+                || length < minLength || length > MedicineFileFormat.MAX_PAYLOAD_SIZE) {
+            throw new IOException("Corrupt frame at offset " + position);
+        }
+        if (payload.length < length) {
+            payload = new byte[Math.max(length, payload.length * 2)];
+        }
+        try {
+            in.readFully(payload, 0, length);
+        } catch (EOFException e) {
+            // Partially written trailing frame
+            return false;
+        }
+
+        op = frameOp;
+        payloadLength = length;
+        id = readLong(payload, 0);
+        framePosition = position;
+        position += headerSize + length;
+        return true;
+    }
+
+    /**
+     * @return Op code of the current frame, {@link MedicineFileFormat#OP_PUT} or
+     * {@link MedicineFileFormat#OP_DELETE}.
+     */
+    public int getOp() {
+        return op;
+    }
+
+    /**
+     * @return Record id of the current frame.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Decodes the record of the current PUT frame.
+     *
+     * @return Decoded record.
+     * @throws IOException If the current frame is not a PUT or its payload is inconsistent.
+     */
+    public MedicineRecord getRecord() throws IOException {
+        if (op != MedicineFileFormat.OP_PUT) {
+            throw new IOException("Current frame is not a record");
+        }
+        return decode(payload, 0, payloadLength);
+    }
+
+    /**
+     * @return File offset of the current frame.
+     */
+    public long getFramePosition() {
+        return framePosition;
+    }
+
+    /**
+     * @return File offset just past the last complete frame read.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return Format version from the file header.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Generation from the file header, 0 for version 1 files, -1 if no header was read.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Decodes a PUT payload.
+     *
+     * @param buffer Buffer holding the payload.
+     * @param offset Offset of the payload in the buffer.
+     * @param length Payload length in bytes.
+     * @return Decoded record.
+     * @throws IOException If the payload is inconsistent.
+     */
+    static MedicineRecord decode(byte[] buffer, int offset, int length) throws IOException {
+        long id = readLong(buffer, offset);
+        int minuteOfDay = readShort(buffer, offset + 8);
+        int timesPerDay = readShort(buffer, offset + 10);
+        int dayMask = buffer[offset + 12];
+        int nameLength = readShort(buffer, offset + 13) & 0xFFFF;
+        if (nameLength > length - MedicineFileFormat.FIXED_PAYLOAD_SIZE) {
+            throw new IOException("Corrupt record name length: " + nameLength);
+        }
+        String name = new String(buffer, offset + MedicineFileFormat.FIXED_PAYLOAD_SIZE,
+                nameLength, StandardCharsets.UTF_8);
+        try {
+            return new MedicineRecord(id, name, minuteOfDay, timesPerDay, dayMask);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt record: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads a big-endian long from a buffer.
+     */
+    static long readLong(byte[] buffer, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (buffer[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Reads a big-endian short from a buffer.
+     */
+    static short readShort(byte[] buffer, int offset) {
+        return (short) (((buffer[offset] & 0xFF) << 8) | (buffer[offset + 1] & 0xFF));
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
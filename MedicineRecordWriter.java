@@ -0,0 +1,135 @@
+package com.example.myapplication1;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * MedicineRecordWriter class.
+ * <p>
+ * Writes journal frames for {@link MedicineRecord}s to a stream in the binary format
+ * described by {@link MedicineFileFormat}. Names are UTF-8 encoded into a reused buffer, so
+ * writing a record allocates nothing.
+ */
+public class MedicineRecordWriter implements Closeable {
+
+    private final DataOutputStream out;
+    private byte[] nameBuffer = new byte[64];
+
+    /**
+     * Creates a writer on top of the given stream. The stream is buffered internally.
+     *
+     * @param out Destination stream, closed together with this writer.
+     */
+    public MedicineRecordWriter(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+    }
+
+    /**
+     * Writes the file header. Must be called once, before the first frame of a new file.
+     *
+     * @param generation Generation number of the file.
+     * @throws IOException If writing fails.
+     */
+    public void writeHeader(long generation) throws IOException {
+        out.writeInt(MedicineFileFormat.MAGIC);
+        out.writeShort(MedicineFileFormat.VERSION);
+        out.writeLong(generation);
+    }
+
+    /**
+     * Writes a PUT frame for a record.
+     *
+     * @param record Record to write.
+     * @return Number of bytes the frame occupies in the file.
+     * @throws IOException If writing fails or the name is too long to encode.
+     */
+    public int write(MedicineRecord record) throws IOException {
+        int nameLength = encodeName(record.getName());
+        int payloadLength = MedicineFileFormat.FIXED_PAYLOAD_SIZE + nameLength;
+        if (payloadLength > MedicineFileFormat.MAX_PAYLOAD_SIZE) {
+            throw new IOException("Medicine name too long: " + nameLength + " bytes");
+        }
+
+        out.writeByte(MedicineFileFormat.OP_PUT);
+        out.writeInt(payloadLength);
+        out.writeLong(record.getId());
+        out.writeShort(record.getMinuteOfDay());
+        out.writeShort(record.getTimesPerDay());
+        out.writeByte(record.getDayMask());
+        out.writeShort(nameLength);
+        out.write(nameBuffer, 0, nameLength);
+        return MedicineFileFormat.FRAME_HEADER_SIZE + payloadLength;
+    }
+
+    /**
+     * Writes a DELETE frame (tombstone) for a record id.
+     *
+     * @param id Id of the deleted record.
+     * @return Number of bytes the frame occupies in the file.
+     * @throws IOException If writing fails.
+     */
+    public int writeDelete(long id) throws IOException {
+        out.writeByte(MedicineFileFormat.OP_DELETE);
+        out.writeInt(MedicineFileFormat.DELETE_PAYLOAD_SIZE);
+        out.writeLong(id);
+        return MedicineFileFormat.FRAME_HEADER_SIZE + MedicineFileFormat.DELETE_PAYLOAD_SIZE;
+    }
+
+    /**
+     * Encodes a name as UTF-8 into the reused name buffer. Unpaired surrogates are written
+     * as '?', like {@link String#getBytes(java.nio.charset.Charset)} does.
+     *
+     * @param name Name to encode.
+     * @return Number of bytes written to the buffer.
+     */
+    private int encodeName(String name) {
+        int length = name.length();
+        if (nameBuffer.length < length * 3) {
+            nameBuffer = new byte[Math.max(length * 3, nameBuffer.length * 2)];
+        }
+        byte[] buffer = nameBuffer;
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            if (c < 0x80) {
+                buffer[n++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[n++] = (byte) (0xC0 | (c >> 6));
+                buffer[n++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(name.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, name.charAt(++i));
+                    buffer[n++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[n++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    buffer[n++] = (byte) '?';
+                }
+            } else {
+                buffer[n++] = (byte) (0xE0 | (c >> 12));
+                buffer[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Flushes buffered data to the underlying stream.
+     *
+     * @throws IOException If flushing fails.
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.myapplication1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.Clock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MedicineStoreBenchmark class.
+ * <p>
+ * JMH benchmarks for the persistence and rendering paths of the medicine list, run against
+ * synthetic reminder files of 1k, 100k and 1M records. None of the code under test depends on
+ * Android, so it runs on a plain JVM:
+ * <ul>
+ * <li>cold load: opening the journal and reading the first page, as the main screen does
+ * on its first resume; and decoding every record, the old readMedicinesFromFile path;</li>
+ * <li>cold snapshot: reading the pre-rendered first screen, what the main screen shows on
+ * its first frame before the journal is opened;</li>
+ * <li>incremental load: reading only the frames appended since the last load;</li>
+ * <li>single and batched append, both raw through the journal and durable through a
+ * {@link MedicineWriteQueue};</li>
+ * <li>bullet-list formatting of one page of rows and of the whole list;</li>
+ * <li>wakeup planning: the wakeups a weekday of the schedule needs with the default
+ * tolerance.</li>
+ * </ul>
+ * The project has no benchmark build yet: running these needs a separate module that
+ * compiles this class with jmh-core and the jmh-generator-annprocess annotation processor
+ * and packages the generated runner. Until then the class only documents the measured
+ * paths; {@link ReminderLoadSimulator} runs on a plain JVM without any of that.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MedicineStoreBenchmark {
+
+    // Records appended after the base of the store, read by the incremental load
+    private static final int TAIL_SIZE = 100;
+
+    // Records per batch in the batched append benchmarks
+    private static final int BATCH_SIZE = 100;
+
+    // Sample names for synthetic records, mixed lengths and one non-ASCII name
+    private static final String[] NAMES = {
+            "Aspirin", "Ibuprofen", "Paracetamol", "Amoxicillin", "Vitamin D",
+            "Metformin", "Omeprazole", "Levothyroxine", "Atorvastatin", "Şurup"
+    };
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private File dir;
+    private File storeFile;        // size records, never modified by the benchmarks
+    private File appendFile;       // copy of the store, reset before each iteration
+    private long tailOffset;       // offset of the first of the last TAIL_SIZE frames
+    private List<MedicineRecord> records;
+
+    private MedicineJournal journal;        // read-only journal over the store
+    private MedicineJournal appendJournal;  // journal over the append copy
+    private MedicineWriteQueue singleQueue;
+    private MedicineWriteQueue batchQueue;
+    private WakeupPlanner planner;          // every record of the store, default tolerance
+    private long nextId;
+    private final StringBuilder builder = new StringBuilder();
+
+    /**
+     * Generates the synthetic store once per parameter value.
+     */
+    @Setup(Level.Trial)
+    public void createStore() throws IOException {
+        dir = Files.createTempDirectory("medicine-bench").toFile();
+        storeFile = new File(dir, MedicineFileFormat.FILE_NAME);
+        appendFile = new File(dir, "append.dat");
+
+        Random random = new Random(42);
+        records = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            records.add(randomRecord(random, i));
+        }
+        try (FileOutputStream fos = new FileOutputStream(storeFile);
+             MedicineRecordWriter writer = new MedicineRecordWriter(fos)) {
+            writer.writeHeader(1);
+            long offset = MedicineFileFormat.HEADER_SIZE;
+            int tailStart = Math.max(0, size - TAIL_SIZE);
+            for (int i = 0; i < size; i++) {
+                if (i == tailStart) {
+                    tailOffset = offset;
+                }
+                offset += writer.write(records.get(i));
+            }
+        }
+        planner = new WakeupPlanner(Clock.systemDefaultZone(), WakeupPlanner.DEFAULT_TOLERANCE_MINUTES);
+        for (MedicineRecord record : records) {
+            planner.add(record);
+        }
+        journal = new MedicineJournal(storeFile);
+        long[] offsets = journal.liveOffsets();
+        MedicineListSnapshot.capture(journal, offsets, offsets.length, journal.generation(),
+                journal.length()).write(storeFile);
+    }
+
+    /**
+     * Gives every iteration of the append benchmarks a fresh copy of the store, so the
+     * file does not keep growing across iterations.
+     */
+    @Setup(Level.Iteration)
+    public void resetAppendFile() throws IOException {
+        Files.copy(storeFile.toPath(), appendFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        appendJournal = MedicineJournal.getInstance(appendFile);
+        singleQueue = new MedicineWriteQueue(appendFile, MedicineWriteQueue.FlushPolicy.everyRecord());
+        batchQueue = new MedicineWriteQueue(appendFile,
+                MedicineWriteQueue.FlushPolicy.batched(BATCH_SIZE, 1000));
+        nextId = size;
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeAppendFile() throws Exception {
+        singleQueue.close().get();
+        batchQueue.close().get();
+        appendJournal.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteStore() throws IOException {
+        journal.close();
+        storeFile.delete();
+        MedicineListSnapshot.snapshotFile(storeFile).delete();
+        appendFile.delete();
+        dir.delete();
+    }
+
+    /**
+     * Opens the store from scratch and decodes the first page, what the main screen does
+     * when it is shown for the first time.
+     */
+    @Benchmark
+    public List<MedicineRecord> coldLoadFirstPage() throws IOException {
+        try (MedicineJournal cold = new MedicineJournal(storeFile)) {
+            long[] offsets = cold.liveOffsets();
+            int count = Math.min(MedicinePager.PAGE_SIZE, offsets.length);
+            return cold.readAt(offsets, 0, count, cold.generation());
+        }
+    }
+
+    /**
+     * Reads and validates the pre-rendered first screen; its cost does not depend on the
+     * size of the store.
+     */
+    @Benchmark
+    public MedicineListSnapshot coldLoadSnapshot() {
+        return MedicineListSnapshot.read(storeFile);
+    }
+
+    /**
+     * Decodes every record of the store with one sequential scan.
+     */
+    @Benchmark
+    public List<MedicineRecord> coldLoadAll() throws IOException {
+        return journal.readAll();
+    }
+
+    /**
+     * Reads only the frames appended since the last load, as the list loader does on resume.
+     */
+    @Benchmark
+    public long incrementalLoad(Blackhole blackhole) throws IOException {
+        return journal.readFrom(tailOffset, reader -> {
+            blackhole.consume(reader.getFramePosition());
+            return true;
+        });
+    }
+
+    /**
+     * Appends one record, handed to the operating system but not synced.
+     */
+    @Benchmark
+    public void singleAppend() throws IOException {
+        appendJournal.put(newRecord());
+    }
+
+    /**
+     * Appends a batch of records with one buffered write, not synced.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void batchedAppend() throws IOException {
+        List<MedicineJournal.Change> changes = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            changes.add(MedicineJournal.Change.put(newRecord()));
+        }
+        appendJournal.apply(changes);
+    }
+
+    /**
+     * Appends one record through the write queue and waits until it is durable.
+     */
+    @Benchmark
+    public void singleAppendDurable() throws Exception {
+        singleQueue.put(newRecord()).get();
+    }
+
+    /**
+     * Appends a batch of records through the write queue and waits until all are durable.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void batchedAppendDurable() throws Exception {
+        CompletableFuture<Void> last = null;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            last = batchQueue.put(newRecord());
+        }
+        last.get();
+    }
+
+    /**
+     * Renders one page of bullet rows, the work the list adapter does per page.
+     */
+    @Benchmark
+    public void formatPage(Blackhole blackhole) {
+        int count = Math.min(MedicinePager.PAGE_SIZE, records.size());
+        for (int i = 0; i < count; i++) {
+            builder.setLength(0);
+            builder.append("• ");
+            blackhole.consume(records.get(i).appendDisplayString(builder).toString());
+        }
+    }
+
+    /**
+     * Renders the whole list as one bullet-list text, as the single TextView list did.
+     */
+    @Benchmark
+    public int formatAll() {
+        builder.setLength(0);
+        for (MedicineRecord record : records) {
+            builder.append("• ");
+            record.appendDisplayString(builder).append('\n');
+        }
+        return builder.length();
+    }
+
+    /**
+     * Counts the wakeups of one weekday with the default tolerance.
+     */
+    @Benchmark
+    public int countWakeups() {
+        return planner.countWakeups(0);
+    }
+
+    private MedicineRecord newRecord() {
+        long id = nextId++;
+        return new MedicineRecord(id, NAMES[(int) (id % NAMES.length)],
+                (int) (id % MedicineRecord.MINUTES_PER_DAY), 2, DoseTime.ALL_DAYS);
+    }
+
+    private static MedicineRecord randomRecord(Random random, long id) {
+        return new MedicineRecord(id, NAMES[random.nextInt(NAMES.length)],
+                random.nextInt(MedicineRecord.MINUTES_PER_DAY), 1 + random.nextInt(4),
+                1 + random.nextInt(DoseTime.ALL_DAYS));
+    }
+}
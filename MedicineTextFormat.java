@@ -0,0 +1,413 @@
+package com.example.myapplication1;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * MedicineTextFormat class.
+ * <p>
+ * Text encodings of reminders used for bulk import and export.
+ * <p>
+ * CSV: one reminder per record after a header record naming the columns
+ * {@value #CSV_HEADER}. Columns may come in any order and the id column is optional.
+ * Fields containing commas, quotes or line breaks are quoted, with quotes doubled; a record
+ * with a quoted line break spans several lines.
+ * <p>
+ * JSON: an array of flat objects, e.g.
+ * {@code {"id":"42","name":"Aspirin","time":"08:00","timesPerDay":3,"days":["Monday"]}}.
+ * The id is written as a string so that JavaScript readers do not round it, and days may also
+ * be given as one string.
+ * <p>
+ * In both formats times are written as 24-hour "HH:mm"; "h:mm AM/PM" is accepted as well.
+ * Days are full English names, and any three-letter or longer prefix is accepted.
+ * <p>
+ * Legacy: the plain text file {@value #LEGACY_FILE_NAME} of the first app versions, one line
+ * per reminder such as "Aspirin at 08:00 AM, 2 times/day on Monday Friday". It is only read,
+ * to move old reminders into the journal.
+ */
+public final class MedicineTextFormat {
+
+    // Supported formats
+    public static final int CSV = 1;
+    public static final int JSON = 2;
+
+    // Column names of the CSV header, in the order they are exported
+    public static final String CSV_HEADER = "id,name,time,times_per_day,days";
+
+    // Field names shared by both formats
+    public static final String FIELD_ID = "id";
+    public static final String FIELD_NAME = "name";
+    public static final String FIELD_TIME = "time";
+    public static final String FIELD_TIMES_PER_DAY = "timesPerDay";
+    public static final String FIELD_DAYS = "days";
+
+    // Reminder file of the first app versions, next to the default patient's shard
+    public static final String LEGACY_FILE_NAME = "medicines.txt";
+
+    // Separators of a legacy line: name " at " time ", " times " times/day on " days
+    private static final String LEGACY_AT = " at ";
+    private static final String LEGACY_TIMES = ", ";
+    private static final String LEGACY_DAYS = " times/day on ";
+
+    private MedicineTextFormat() {
+        // Static helpers only
+    }
+
+    /**
+     * Appends a reminder as one CSV record, without record terminator.
+     *
+     * @param builder Destination.
+     * @param record  Reminder to encode.
+     * @return The builder.
+     */
+    public static StringBuilder appendCsv(StringBuilder builder, MedicineRecord record) {
+        builder.append(record.getId()).append(',');
+        appendCsvField(builder, record.getName()).append(',');
+        appendTime24(builder, record.getMinuteOfDay()).append(',');
+        builder.append(record.getTimesPerDay()).append(',');
+        return DoseTime.appendDays(builder, record.getDayMask());
+    }
+
+    /**
+     * Appends a reminder as one JSON object.
+     *
+     * @param builder Destination.
+     * @param record  Reminder to encode.
+     * @return The builder.
+     */
+    public static StringBuilder appendJson(StringBuilder builder, MedicineRecord record) {
+        builder.append("{\"").append(FIELD_ID).append("\":\"").append(record.getId())
+                .append("\",\"").append(FIELD_NAME).append("\":");
+        appendJsonString(builder, record.getName());
+        builder.append(",\"").append(FIELD_TIME).append("\":\"");
+        appendTime24(builder, record.getMinuteOfDay());
+        builder.append("\",\"").append(FIELD_TIMES_PER_DAY).append("\":").append(record.getTimesPerDay())
+                .append(",\"").append(FIELD_DAYS).append("\":[");
+        boolean first = true;
+        for (int day = 0; day < 7; day++) {
+            if (DoseTime.isScheduledOn(record.getDayMask(), day)) {
+                if (!first) builder.append(',');
+                builder.append('"').append(DoseTime.dayName(day)).append('"');
+                first = false;
+            }
+        }
+        return builder.append("]}");
+    }
+
+    /**
+     * Appends a time of day in 24-hour form, e.g. "20:05".
+     *
+     * @param builder     Destination.
+     * @param minuteOfDay Minute of day.
+     * @return The builder.
+     */
+    public static StringBuilder appendTime24(StringBuilder builder, int minuteOfDay) {
+        int hour = minuteOfDay / 60;
+        int minute = minuteOfDay % 60;
+        if (hour < 10) builder.append('0');
+        builder.append(hour).append(':');
+        if (minute < 10) builder.append('0');
+        return builder.append(minute);
+    }
+
+    /**
+     * Parses a time of day, either "HH:mm" or "h:mm AM/PM".
+     *
+     * @param text Time as text.
+     * @return Minute of day, or -1 if the text is not a valid time.
+     */
+    public static int parseTime(String text) {
+        String time = text.trim().toUpperCase(Locale.ROOT);
+        int offset = -1;  // hours added for AM/PM, -1 for 24-hour times
+        if (time.endsWith("AM") || time.endsWith("PM")) {
+            offset = time.endsWith("PM") ? 12 : 0;
+            time = time.substring(0, time.length() - 2).trim();
+        }
+        int colon = time.indexOf(':');
+        if (colon < 1 || colon > 2 || time.length() != colon + 3) {
+            return -1;
+        }
+        int hour = parseDigits(time, 0, colon);
+        int minute = parseDigits(time, colon + 1, time.length());
+        if (hour < 0 || minute < 0 || minute > 59) {
+            return -1;
+        }
+        if (offset >= 0) {
+            if (hour < 1 || hour > 12) {
+                return -1;
+            }
+            hour = hour % 12 + offset;
+        } else if (hour > 23) {
+            return -1;
+        }
+        return hour * 60 + minute;
+    }
+
+    /**
+     * Parses days separated by spaces, commas, semicolons, slashes or bars.
+     *
+     * @param text Day names.
+     * @return Day mask, or -1 if a name is not a day.
+     */
+    public static int parseDays(String text) {
+        int mask = 0;
+        for (String name : text.split("[\\s,;/|]+")) {
+            if (name.isEmpty()) {
+                continue;
+            }
+            int day = DoseTime.dayIndex(name);
+            if (day < 0) {
+                return -1;
+            }
+            mask = DoseTime.withDay(mask, day);
+        }
+        return mask;
+    }
+
+    /**
+     * Parses one line of the legacy text file. The name may itself contain " at ", so the
+     * line is split from the end.
+     *
+     * @param line Line without terminator.
+     * @return Reminder with a new id, or null if the line is not a valid reminder.
+     */
+    public static MedicineRecord parseLegacyLine(String line) {
+        int days = line.lastIndexOf(LEGACY_DAYS);
+        int times = days < 0 ? -1 : line.lastIndexOf(LEGACY_TIMES, days);
+        int at = times < 0 ? -1 : line.lastIndexOf(LEGACY_AT, times);
+        if (at < 0) {
+            return null;
+        }
+        String name = line.substring(0, at).trim();
+        int minuteOfDay = parseTime(line.substring(at + LEGACY_AT.length(), times));
+        String timesPerDay = line.substring(times + LEGACY_TIMES.length(), days).trim();
+        int dayMask = parseDays(line.substring(days + LEGACY_DAYS.length()));
+        if (name.isEmpty() || minuteOfDay < 0 || dayMask <= 0
+                || MedicineValidator.checkTimesPerDay(timesPerDay) != null) {
+            return null;
+        }
+        return new MedicineRecord(MedicineRecord.generateId(), name, minuteOfDay,
+                MedicineValidator.parseTimesPerDay(timesPerDay), dayMask);
+    }
+
+    /**
+     * Splits one CSV record into its fields.
+     *
+     * @param line Record without terminator; may contain line breaks inside quoted fields.
+     * @return Unquoted fields.
+     * @throws IllegalArgumentException If a quoted field is not closed.
+     */
+    public static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>(5);
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        while (true) {
+            field.setLength(0);
+            if (i < line.length() && line.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= line.length()) {
+                        throw new IllegalArgumentException("Unclosed quote");
+                    }
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < line.length() && line.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                }
+                // Skip anything between the closing quote and the next comma
+                while (i < line.length() && line.charAt(i) != ',') i++;
+            } else {
+                while (i < line.length() && line.charAt(i) != ',') {
+                    field.append(line.charAt(i++));
+                }
+            }
+            fields.add(field.toString());
+            if (i >= line.length()) {
+                return fields;
+            }
+            i++;  // comma
+        }
+    }
+
+    /**
+     * Parses one flat JSON object. Values may be strings, numbers, booleans, null or arrays
+     * of those; numbers and booleans are returned as their text and arrays as lists.
+     *
+     * @param text Object text, from the opening to the closing brace.
+     * @return Fields in document order.
+     * @throws IllegalArgumentException If the text is not a flat JSON object.
+     */
+    public static Map<String, Object> parseJsonObject(String text) {
+        JsonCursor cursor = new JsonCursor(text);
+        Map<String, Object> fields = new LinkedHashMap<>();
+        cursor.expect('{');
+        if (cursor.peek() == '}') {
+            cursor.pos++;
+        } else {
+            while (true) {
+                String key = cursor.readString();
+                cursor.expect(':');
+                fields.put(key, cursor.readValue(true));
+                char c = cursor.next();
+                if (c == '}') break;
+                if (c != ',') throw new IllegalArgumentException("Expected , or } at " + (cursor.pos - 1));
+            }
+        }
+        if (cursor.peek() != 0) {
+            throw new IllegalArgumentException("Unexpected text after object");
+        }
+        return fields;
+    }
+
+    private static StringBuilder appendCsvField(StringBuilder builder, String value) {
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quote) {
+            return builder.append(value);
+        }
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') builder.append('"');
+            builder.append(c);
+        }
+        return builder.append('"');
+    }
+
+    private static void appendJsonString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        builder.append('"');
+    }
+
+    /**
+     * @return Value of the decimal digits in text[from, to), or -1 if there are none or
+     * a character is not a digit.
+     */
+    private static int parseDigits(String text, int from, int to) {
+        if (from >= to) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Position in a JSON text, skipping whitespace between tokens.
+     */
+    private static final class JsonCursor {
+        final String text;
+        int pos;
+
+        JsonCursor(String text) {
+            this.text = text;
+        }
+
+        /**
+         * @return Next non-whitespace character without consuming it, 0 at the end.
+         */
+        char peek() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+            return pos < text.length() ? text.charAt(pos) : 0;
+        }
+
+        char next() {
+            char c = peek();
+            if (c == 0) throw new IllegalArgumentException("Unexpected end of object");
+            pos++;
+            return c;
+        }
+
+        void expect(char expected) {
+            if (next() != expected) {
+                throw new IllegalArgumentException("Expected " + expected + " at " + (pos - 1));
+            }
+        }
+
+        Object readValue(boolean allowArray) {
+            char c = peek();
+            if (c == '"') {
+                return readString();
+            }
+            if (c == '[' && allowArray) {
+                pos++;
+                List<Object> values = new ArrayList<>();
+                if (peek() == ']') {
+                    pos++;
+                    return values;
+                }
+                while (true) {
+                    values.add(readValue(false));
+                    char separator = next();
+                    if (separator == ']') return values;
+                    if (separator != ',') throw new IllegalArgumentException("Expected , or ] at " + (pos - 1));
+                }
+            }
+            // Number, true, false or null: take the literal up to the next delimiter
+            int start = pos;
+            while (pos < text.length() && ",}] \t\r\n".indexOf(text.charAt(pos)) < 0) pos++;
+            if (start == pos) {
+                throw new IllegalArgumentException("Unsupported value at " + start);
+            }
+            String literal = text.substring(start, pos);
+            return literal.equals("null") ? null : literal;
+        }
+
+        String readString() {
+            if (next() != '"') {
+                throw new IllegalArgumentException("Expected string at " + (pos - 1));
+            }
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                if (pos >= text.length()) throw new IllegalArgumentException("Unclosed string");
+                char c = text.charAt(pos++);
+                if (c == '"') return value.toString();
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) throw new IllegalArgumentException("Unclosed string");
+                char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case 'n': value.append('\n'); break;
+                    case 't': value.append('\t'); break;
+                    case 'r': value.append('\r'); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > text.length()) throw new IllegalArgumentException("Bad escape");
+                        value.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default: value.append(escaped); break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.myapplication1;
+
+/**
+ * MedicineValidator class.
+ * <p>
+ * Validation rules for a medicine reminder, shared by the Add Medicine form and the bulk
+ * importer so that a reminder accepted by one is accepted by the other. Every check returns
+ * the message the form shows, or null if the value is valid.
+ */
+public final class MedicineValidator {
+
+    // Maximum length of a medicine name, as limited by the name field
+    public static final int MAX_NAME_LENGTH = 20;
+
+    // Maximum number of digits of times per day, as limited by its field
+    public static final int MAX_TIMES_DIGITS = 3;
+
+    // Maximum number of digits of the pills on hand, as limited by its field
+    public static final int MAX_PILL_DIGITS = 4;
+
+    private MedicineValidator() {
+        // Static helpers only
+    }
+
+    /**
+     * @param name Trimmed medicine name.
+     * @return Error message, or null if valid.
+     */
+    public static String checkName(String name) {
+        if (name == null || name.isEmpty()) {
+            return "Please enter medicine name";
+        }
+        if (name.length() > MAX_NAME_LENGTH) {
+            return "Medicine name is longer than " + MAX_NAME_LENGTH + " characters";
+        }
+        return null;
+    }
+
+    /**
+     * @param minuteOfDay Selected time in minutes since midnight, negative if none.
+     * @return Error message, or null if valid.
+     */
+    public static String checkTime(int minuteOfDay) {
+        if (minuteOfDay < 0 || minuteOfDay >= DoseTime.MINUTES_PER_DAY) {
+            return "Please select a time";
+        }
+        return null;
+    }
+
+    /**
+     * @param timesPerDay Trimmed times per day as typed.
+     * @return Error message, or null if valid; use {@link #parseTimesPerDay} to get the value.
+     */
+    public static String checkTimesPerDay(String timesPerDay) {
+        if (timesPerDay == null || timesPerDay.isEmpty()) {
+            return "Please enter times per day";
+        }
+        if (timesPerDay.length() > MAX_TIMES_DIGITS) {
+            return "Invalid number";
+        }
+        for (int i = 0; i < timesPerDay.length(); i++) {
+            if (timesPerDay.charAt(i) < '0' || timesPerDay.charAt(i) > '9') {
+                return "Invalid number";
+            }
+        }
+        if (Integer.parseInt(timesPerDay) == 0) {
+            return "Times per day cannot be 0";
+        }
+        return null;
+    }
+
+    /**
+     * @param timesPerDay Times per day that passed {@link #checkTimesPerDay}.
+     * @return Parsed value.
+     */
+    public static int parseTimesPerDay(String timesPerDay) {
+        return Integer.parseInt(timesPerDay);
+    }
+
+    /**
+     * @param pills Trimmed pills on hand as typed; optional.
+     * @return Error message, or null if valid or left empty; use {@link #parsePillCount} to get the value.
+     */
+    public static String checkPillCount(String pills) {
+        if (pills == null || pills.isEmpty()) {
+            return null;
+        }
+        if (pills.length() > MAX_PILL_DIGITS) {
+            return "Invalid number";
+        }
+        for (int i = 0; i < pills.length(); i++) {
+            if (pills.charAt(i) < '0' || pills.charAt(i) > '9') {
+                return "Invalid number";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param pills Pills on hand that passed {@link #checkPillCount}.
+     * @return Parsed value, or -1 if left empty.
+     */
+    public static int parsePillCount(String pills) {
+        return pills == null || pills.isEmpty() ? -1 : Integer.parseInt(pills);
+    }
+
+    /**
+     * @param dayMask Selected days, bit 0 = Monday.
+     * @return Error message, or null if valid.
+     */
+    public static String checkDays(int dayMask) {
+        if ((dayMask & DoseTime.ALL_DAYS) == 0) {
+            return "Please select at least one day";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.myapplication1;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MedicineWriteQueue class.
+ * <p>
+ * Single writer for a reminder journal. Callers enqueue puts and deletes from any thread and
+ * return immediately; one background thread drains the queue, groups the pending changes into
+ * batches and appends each batch with a single {@link MedicineJournal#apply} call, then forces
+ * it to disk with {@link MedicineJournal#sync()}. Bulk provisioning therefore pays for one
+ * buffered write and one sync per batch instead of one per reminder.
+ * <p>
+ * When a batch is closed and when it is synced is chosen by a {@link FlushPolicy}. Every
+ * change returns a future that completes once the change is durable, or completes
+ * exceptionally if it could not be written or synced.
+ */
+public class MedicineWriteQueue {
+
+    /**
+     * Decides how changes are grouped into batches and when batches are synced.
+     */
+    public static final class FlushPolicy {
+        final int maxRecords;       // a batch is closed once it holds this many changes
+        final long maxDelayNanos;   // ... or this long after its first change was enqueued
+        final boolean syncOnFlush;  // sync only when flush() is called
+
+        private FlushPolicy(int maxRecords, long maxDelayNanos, boolean syncOnFlush) {
+            this.maxRecords = maxRecords;
+            this.maxDelayNanos = maxDelayNanos;
+            this.syncOnFlush = syncOnFlush;
+        }
+
+        /**
+         * Every change is written and synced on its own. Safest, and slowest for bulk writes.
+         *
+         * @return Policy instance.
+         */
+        public static FlushPolicy everyRecord() {
+            return new FlushPolicy(1, 0, false);
+        }
+
+        /**
+         * Changes are collected until a batch holds maxRecords changes or maxDelayMillis have
+         * passed since its first change, then the batch is written and synced.
+         *
+         * @param maxRecords     Maximum number of changes per batch, at least 1.
+         * @param maxDelayMillis Maximum time a change waits for its batch to fill up.
+         * @return Policy instance.
+         */
+        public static FlushPolicy batched(int maxRecords, long maxDelayMillis) {
+            if (maxRecords < 1 || maxDelayMillis < 0) {
+                throw new IllegalArgumentException("Invalid batch policy");
+            }
+            return new FlushPolicy(maxRecords, TimeUnit.MILLISECONDS.toNanos(maxDelayMillis), false);
+        }
+
+        /**
+         * Whatever is queued is written right away as one batch, so other screens see it
+         * immediately, but the sync is deferred until {@link #flush()} is called, typically
+         * when the screen is paused.
+         *
+         * @return Policy instance.
+         */
+        public static FlushPolicy onPause() {
+            return new FlushPolicy(Integer.MAX_VALUE, 0, true);
+        }
+    }
+
+    // Enqueued in place of a change by flush() and close()
+    private static final int KIND_CHANGE = 0;
+    private static final int KIND_FLUSH = 1;
+    private static final int KIND_CLOSE = 2;
+
+    // Changes written per batch, shared by all queues
+    private static final Metrics.Histogram BATCH_RECORDS = Metrics.histogram("queue.batch_records");
+
+    private final File file;
+    private final FlushPolicy policy;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+
+    private volatile boolean closed;
+
+    // Writer thread state
+    private MedicineJournal journal;
+    private final List<Pending> batch = new ArrayList<>();
+    private final List<MedicineJournal.Change> changes = new ArrayList<>();
+    private final List<CompletableFuture<Void>> awaitingSync = new ArrayList<>();
+    private boolean dirty;  // frames were written since the last sync
+
+    /**
+     * Creates a queue and starts its writer thread. The journal is opened lazily on that thread.
+     *
+     * @param file   Reminder file to write to.
+     * @param policy When batches are closed and synced.
+     */
+    public MedicineWriteQueue(File file, FlushPolicy policy) {
+        this.file = file;
+        this.policy = policy;
+        writerThread = new Thread(this::runWriter, "MedicineWriteQueue");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Enqueues adding or replacing a record.
+     *
+     * @param record Record to store.
+     * @return Future completed once the record is durable.
+     */
+    public CompletableFuture<Void> put(MedicineRecord record) {
+        return enqueue(KIND_CHANGE, MedicineJournal.Change.put(record));
+    }
+
+    /**
+     * Enqueues deleting a record. Deleting an unknown id succeeds without writing anything.
+     *
+     * @param id Id of the record to delete.
+     * @return Future completed once the delete is durable.
+     */
+    public CompletableFuture<Void> delete(long id) {
+        return enqueue(KIND_CHANGE, MedicineJournal.Change.delete(id));
+    }
+
+    /**
+     * Closes the current batch right away and syncs everything enqueued before this call,
+     * whatever the policy.
+     *
+     * @return Future completed once all earlier changes are durable.
+     */
+    public CompletableFuture<Void> flush() {
+        return enqueue(KIND_FLUSH, null);
+    }
+
+    /**
+     * Flushes all enqueued changes and stops the writer thread. Changes enqueued afterwards fail.
+     *
+     * @return Future completed once all earlier changes are durable and the thread has stopped.
+     */
+    public synchronized CompletableFuture<Void> close() {
+        CompletableFuture<Void> done = enqueue(KIND_CLOSE, null);
+        closed = true;
+        return done;
+    }
+
+    /**
+     * @return Number of changes and flush requests not yet taken by the writer thread.
+     */
+    public int pendingCount() {
+        return queue.size();
+    }
+
+    private synchronized CompletableFuture<Void> enqueue(int kind, MedicineJournal.Change change) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (closed) {
+            done.completeExceptionally(new IOException("Write queue is closed"));
+        } else {
+            queue.add(new Pending(kind, change, done));
+        }
+        return done;
+    }
+
+    /**
+     * Writer thread loop: collects a batch as the policy allows, writes it, and syncs it
+     * unless the policy defers syncing to the next flush.
+     */
+    private void runWriter() {
+        boolean running = true;
+        while (running) {
+            boolean syncNow = !policy.syncOnFlush;
+            try {
+                Pending next = queue.take();
+                long deadline = System.nanoTime() + policy.maxDelayNanos;
+                while (true) {
+                    batch.add(next);
+                    if (next.kind != KIND_CHANGE) {
+                        syncNow = true;
+                        running = next.kind != KIND_CLOSE;
+                        break;
+                    }
+                    changes.add(next.change);
+                    if (changes.size() >= policy.maxRecords) {
+                        break;
+                    }
+                    long wait = deadline - System.nanoTime();
+                    next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Not expected, write out what was collected and stop
+                syncNow = true;
+                running = false;
+            }
+            writeBatch(syncNow);
+        }
+    }
+
+    /**
+     * Writes the collected batch and optionally syncs it, then completes the futures of all
+     * changes that became durable.
+     */
+    private void writeBatch(boolean syncNow) {
+        try {
+            if (journal == null) {
+                journal = MedicineJournal.getInstance(file);
+            }
+            if (!changes.isEmpty()) {
+                journal.apply(changes);
+                BATCH_RECORDS.record(changes.size());
+                dirty = true;
+            }
+        } catch (IOException e) {
+            // The batch was not written; earlier unsynced changes are still in the file
+            for (Pending pending : batch) {
+                pending.done.completeExceptionally(e);
+            }
+            clearBatch();
+            return;
+        }
+        for (Pending pending : batch) {
+            awaitingSync.add(pending.done);
+        }
+        clearBatch();
+
+        if (!syncNow) {
+            return;
+        }
+        IOException failure = null;
+        if (dirty) {
+            try {
+                journal.sync();
+            } catch (IOException e) {
+                failure = e;
+            }
+            dirty = false;
+        }
+        for (CompletableFuture<Void> done : awaitingSync) {
+            if (failure == null) {
+                done.complete(null);
+            } else {
+                done.completeExceptionally(failure);
+            }
+        }
+        awaitingSync.clear();
+    }
+
+    private void clearBatch() {
+        batch.clear();
+        changes.clear();
+    }
+
+    /**
+     * A queued change or control request together with the future reported to its caller.
+     */
+    private static final class Pending {
+        final int kind;
+        final MedicineJournal.Change change;
+        final CompletableFuture<Void> done;
+
+        Pending(int kind, MedicineJournal.Change change, CompletableFuture<Void> done) {
+            this.kind = kind;
+            this.change = change;
+            this.done = done;
+        }
+    }
+}
@@ -6,9 +6,10 @@ import android.text.TextUtils;
 import android.view.Gravity;
 import android.widget.*;
 
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.Calendar;
 
@@ -21,10 +22,34 @@ import android.text.InputFilter;
  * Users can input the medicine name, select a time using a TimePickerDialog,
  * specify how many times per day the medicine should be taken,
  * select days of the week for the reminder,
- * and save the data persistently in a text file.
+ * and save the data persistently as a binary MedicineRecord in the reminder shard
+ * of the patient selected on the main screen.
+ * The medicine name field suggests names that are already stored, from a prefix index.
+ * Saves go through a MedicineWriteQueue, so the UI thread never touches the file; the
+ * queue is synced to disk when the screen is paused.
+ * Before saving, a reminder is checked against a hash index of the stored reminders:
+ * an identical reminder is refused, and one with a dose close to a dose of another
+ * reminder of the same medicine, or that interacts with another medicine of the patient
+ * according to the offline drug interaction database, asks for confirmation.
  */
 public class MainActivity2 extends AppCompatActivity {
 
+    // Intent extras selecting the patient the reminders are added for
+    public static final String EXTRA_PROFILE_ID = "com.example.myapplication1.PROFILE_ID";
+    public static final String EXTRA_PROFILE_NAME = "com.example.myapplication1.PROFILE_NAME";
+
+    // Time from submitting a reminder until it is durable, including the wait for the next flush
+    private static final Metrics.Histogram SAVE_TIME = Metrics.histogram("add.save_us");
+
+    // Selected reminder time in minutes since midnight, -1 while no time is selected
+    private short selectedMinuteOfDay = -1;
+
+    // Single writer for the reminder file, synced when this screen is paused
+    private MedicineWriteQueue writeQueue;
+
+    // Reminder file of the selected patient
+    private File medicineFile;
+
     /**
      * Called when the activity is first created.
      * Sets up the entire user interface programmatically,
@@ -36,6 +61,17 @@ public class MainActivity2 extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        // Reminders go to the shard of the patient picked on the main screen
+        long profileId = getIntent().getLongExtra(EXTRA_PROFILE_ID, PatientDirectory.DEFAULT_PROFILE_ID);
+        String profileName = getIntent().getStringExtra(EXTRA_PROFILE_NAME);
+        medicineFile = PatientDirectory.shardFile(getFilesDir(), profileId);
+        writeQueue = new MedicineWriteQueue(medicineFile, MedicineWriteQueue.FlushPolicy.onPause());
+
+        // Build the name indexes of all patients in the background before the first keystroke
+        MedicineNameIndex.preloadAll(getFilesDir());
+        // Build the duplicate and conflict index before the first submit
+        ReminderConflictIndex.preload(medicineFile);
+
         // Create a scrollable container for the UI
         ScrollView scrollView = new ScrollView(this);
 
@@ -75,17 +111,21 @@ public class MainActivity2 extends AppCompatActivity {
 
         // Title TextView for the screen
         TextView title = new TextView(this);
-        title.setText("Add Medicine");
+        title.setText(profileName == null ? "Add Medicine" : "Add Medicine for " + profileName);
         title.setTextSize(24);
         title.setGravity(Gravity.CENTER);
         title.setLayoutParams(params);
         rootLayout.addView(title);
 
-        // Input field for medicine name with max length 20 characters
-        EditText medNameInput = new EditText(this);
+        // Input field for medicine name with max length 20 characters,
+        // suggesting already stored names from the first typed character
+        AutoCompleteTextView medNameInput = new AutoCompleteTextView(this);
         medNameInput.setHint("Medicine Name");
         medNameInput.setLayoutParams(params);
-        medNameInput.setFilters(new InputFilter[]{new InputFilter.LengthFilter(20)});
+        medNameInput.setFilters(new InputFilter[]{
+                new InputFilter.LengthFilter(MedicineValidator.MAX_NAME_LENGTH)});
+        medNameInput.setThreshold(1);
+        medNameInput.setAdapter(new MedicineNameAdapter(getFilesDir()));
         rootLayout.addView(medNameInput);
 
         // Button to open time picker dialog
@@ -110,12 +150,10 @@ public class MainActivity2 extends AppCompatActivity {
             // Create and show time picker dialog
             TimePickerDialog dialog = new TimePickerDialog(this,
                     (view, hourOfDay, minute1) -> {
-                        // Convert 24-hour time to 12-hour format with AM/PM
-                        int hour12 = hourOfDay % 12;
-                        if (hour12 == 0) hour12 = 12;
-                        String amPm = (hourOfDay >= 12) ? "PM" : "AM";
-                        // Update the TextView to show selected time
-                        selectedTimeText.setText(String.format("Time: %02d:%02d %s", hour12, minute1, amPm));
+                        // Remember the selected time as minutes since midnight
+                        selectedMinuteOfDay = DoseTime.packMinute(hourOfDay, minute1);
+                        // Update the TextView to show selected time in 12-hour format with AM/PM
+                        selectedTimeText.setText("Time: " + DoseTime.formatTime(selectedMinuteOfDay));
                     }, hour, minute, false);
             dialog.show();
         });
@@ -125,9 +163,18 @@ public class MainActivity2 extends AppCompatActivity {
         timesPerDayInput.setHint("Times per day (e.g., 3)");
         timesPerDayInput.setInputType(android.text.InputType.TYPE_CLASS_NUMBER);
         timesPerDayInput.setLayoutParams(params);
-        timesPerDayInput.setFilters(new InputFilter[]{new InputFilter.LengthFilter(3)});
+        timesPerDayInput.setFilters(new InputFilter[]{
+                new InputFilter.LengthFilter(MedicineValidator.MAX_TIMES_DIGITS)});
         rootLayout.addView(timesPerDayInput);
 
+        // Optional input field for the pills on hand, used to warn before they run out
+        EditText pillsInput = new EditText(this);
+        pillsInput.setHint("Pills on hand (optional)");
+        pillsInput.setInputType(android.text.InputType.TYPE_CLASS_NUMBER);
+        pillsInput.setLayoutParams(params);
+        pillsInput.setFilters(new InputFilter[]{
+                new InputFilter.LengthFilter(MedicineValidator.MAX_PILL_DIGITS)});
+        rootLayout.addView(pillsInput);
 
         // Label TextView for day selection section
         TextView daysLabel = new TextView(this);
@@ -157,71 +204,107 @@ public class MainActivity2 extends AppCompatActivity {
         submitButton.setOnClickListener(v -> {
             // Get input values from UI components
             String name = medNameInput.getText().toString().trim();
-            String time = selectedTimeText.getText().toString();
             String timesPerDay = timesPerDayInput.getText().toString().trim();
+            String pillsText = pillsInput.getText().toString().trim();
 
             // Validate medicine name is not empty
-            if (TextUtils.isEmpty(name)) {
-                Toast.makeText(this, "Please enter medicine name", Toast.LENGTH_SHORT).show();
+            String error = MedicineValidator.checkName(name);
+            if (error != null) {
+                Toast.makeText(this, error, Toast.LENGTH_SHORT).show();
                 return;
             }
             // Validate a time has been selected
-            if (time.equals("No time selected")) {
-                Toast.makeText(this, "Please select a time", Toast.LENGTH_SHORT).show();
+            error = MedicineValidator.checkTime(selectedMinuteOfDay);
+            if (error != null) {
+                Toast.makeText(this, error, Toast.LENGTH_SHORT).show();
                 return;
             }
             // Validate times per day input is not empty
             if (TextUtils.isEmpty(timesPerDay)) {
-                Toast.makeText(this, "Please enter times per day", Toast.LENGTH_SHORT).show();
+                Toast.makeText(this, MedicineValidator.checkTimesPerDay(timesPerDay),
+                        Toast.LENGTH_SHORT).show();
                 return;
             }
 
-            // Check if the value is 0
-            try {
-                int timesValue = Integer.parseInt(timesPerDay);
-                if (timesValue == 0) {
-                    timesPerDayInput.setError("Times per day cannot be 0");
-                    return;
-                }
-            } catch (NumberFormatException e) {
-                timesPerDayInput.setError("Invalid number");
+            // Check the value is a number other than 0
+            error = MedicineValidator.checkTimesPerDay(timesPerDay);
+            if (error != null) {
+                timesPerDayInput.setError(error);
+                return;
+            }
+            int timesValue = MedicineValidator.parseTimesPerDay(timesPerDay);
+
+            // Check the pill count, if given, is a number
+            error = MedicineValidator.checkPillCount(pillsText);
+            if (error != null) {
+                pillsInput.setError(error);
                 return;
             }
+            int pills = MedicineValidator.parsePillCount(pillsText);
 
-            // Build a string of selected days separated by spaces
-            StringBuilder selectedDaysBuilder = new StringBuilder();
-            for (CheckBox cb : checkBoxes) {
-                if (cb.isChecked()) {
-                    selectedDaysBuilder.append(cb.getText()).append(" ");
+            // Pack the checked days into a bitmask, bit 0 = Monday
+            int dayMask = 0;
+            for (int i = 0; i < checkBoxes.length; i++) {
+                if (checkBoxes[i].isChecked()) {
+                    dayMask = DoseTime.withDay(dayMask, i);
                 }
             }
 
             // Validate at least one day is selected
-            if (selectedDaysBuilder.length() == 0) {
-                Toast.makeText(this, "Please select at least one day", Toast.LENGTH_SHORT).show();
+            error = MedicineValidator.checkDays(dayMask);
+            if (error != null) {
+                Toast.makeText(this, error, Toast.LENGTH_SHORT).show();
                 return;
             }
 
-            // Combine all information into one string for saving
-            String fullEntry = name + " at " + time.replace("Time: ", "") +
-                    ", " + timesPerDay + " times/day on " + selectedDaysBuilder.toString().trim();
-
-            // Save the medicine reminder info to internal storage file
-            saveMedicineToFile(fullEntry);
-
-            // Show confirmation Toast with entered details
-            Toast.makeText(this,
-                    "Medicine: " + name + "\n" +
-                            time + "\n" +
-                            "Times/day: " + timesPerDay + "\n" +
-                            "Days: " + selectedDaysBuilder.toString(),
-                    Toast.LENGTH_LONG).show();
+            // Combine all information into one typed record for saving
+            MedicineRecord record = new MedicineRecord(MedicineRecord.generateId(),
+                    name, selectedMinuteOfDay, timesValue, dayMask);
+
+            // Check for duplicates and close doses off the UI thread, then save
+            ReminderConflictIndex.checkAsync(medicineFile, record,
+                    ReminderConflictIndex.DEFAULT_WINDOW_MINUTES,
+                    new File(getFilesDir(), DrugInteractionDatabase.FILE_NAME)).whenCompleteAsync((check, checkError) -> {
+                if (checkError != null) {
+                    // The check is advisory; a reminder is never lost because of it
+                    Metrics.recordError("add.check", checkError);
+                    saveAndConfirm(record, pills);
+                } else if (check.isDuplicate()) {
+                    Toast.makeText(this, record.getName() + " is already scheduled at "
+                            + DoseTime.formatTime(record.getMinuteOfDay()) + " on these days",
+                            Toast.LENGTH_LONG).show();
+                } else if (!check.isClear()) {
+                    confirmConflict(record, pills, check);
+                } else {
+                    saveAndConfirm(record, pills);
+                }
+            }, this::runOnUiThread);
         });
 
         // Set the entire scrollable layout as the activity content view
         setContentView(scrollView);
     }
 
+    /**
+     * Called when the activity is no longer in the foreground.
+     * Makes every reminder added on this screen durable.
+     */
+    @Override
+    protected void onPause() {
+        super.onPause();
+        writeQueue.flush();
+    }
+
+    /**
+     * Called when the activity is destroyed.
+     * Flushes the remaining reminders and stops the writer thread.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        writeQueue.close();
+    }
+
     /**
      * Converts density-independent pixels (dp) to pixels (px) for current device.
      *
@@ -234,20 +317,107 @@ public class MainActivity2 extends AppCompatActivity {
     }
 
     /**
-     * Saves medicine information string to a file named "medicines.txt" in append mode.
+     * Asks whether to add a reminder that has doses close to doses of other reminders
+     * of the same medicine, or that interacts with other medicines of the patient.
+     *
+     * @param record New reminder.
+     * @param pills  Pills on hand, or -1 if not given.
+     * @param check  Result of the check, with conflicts or interactions.
+     */
+    private void confirmConflict(MedicineRecord record, int pills, ReminderConflictIndex.Check check) {
+        StringBuilder message = new StringBuilder();
+        if (!check.getConflicts().isEmpty()) {
+            message.append(record.getName())
+                    .append(" is already scheduled within ")
+                    .append(ReminderConflictIndex.DEFAULT_WINDOW_MINUTES)
+                    .append(" minutes of this time:");
+            for (MedicineRecord conflict : check.getConflicts()) {
+                conflict.appendDisplayString(message.append("\n"));
+            }
+        }
+        for (DrugInteractionDatabase.Interaction interaction : check.getInteractions()) {
+            if (message.length() > 0) {
+                message.append("\n");
+            }
+            message.append("Interaction with ").append(interaction.getMedicine()).append(": ")
+                    .append(InteractionTable.severityName(interaction.getSeverity()));
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Add anyway?")
+                .setMessage(message)
+                .setPositiveButton("Add", (dialog, which) -> {
+                    try {
+                        // Reserve the reminder so that submitting it again is caught as a duplicate
+                        ReminderConflictIndex.getInstance(medicineFile).add(record);
+                    } catch (IOException e) {
+                        Metrics.recordError("add.check", e);
+                    }
+                    saveAndConfirm(record, pills);
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    /**
+     * Saves a reminder and shows its details.
+     *
+     * @param record Reminder to save.
+     * @param pills  Pills on hand, or -1 if not given.
+     */
+    private void saveAndConfirm(MedicineRecord record, int pills) {
+        // Save the medicine reminder to internal storage file
+        saveMedicineToFile(record, pills);
+
+        // Show confirmation Toast with entered details, rendered from the record
+        Toast.makeText(this,
+                "Medicine: " + record.getName() + "\n" +
+                        "Time: " + DoseTime.formatTime(record.getMinuteOfDay()) + "\n" +
+                        "Times/day: " + record.getTimesPerDay() + "\n" +
+                        "Days: " + DoseTime.formatDays(record.getDayMask()),
+                Toast.LENGTH_LONG).show();
+    }
+
+    /**
+     * Queues a medicine record for the reminder journal in internal storage.
+     * The record is appended on the writer thread together with any other pending records.
+     * Once it is saved, the pills on hand, if given, are counted from now on.
+     *
+     * @param record Medicine reminder to save.
+     * @param pills  Pills on hand, or -1 if not given.
+     */
+    private void saveMedicineToFile(MedicineRecord record, int pills) {
+        long start = Metrics.startTimer();
+        writeQueue.put(record).whenComplete((ignored, error) -> {
+            if (error == null) {
+                SAVE_TIME.recordSince(start);
+                if (pills >= 0) {
+                    PillInventory.setStockAsync(medicineFile, record.getId(), pills, 1,
+                            System.currentTimeMillis()).exceptionally(stockError -> {
+                        Metrics.recordError("add.inventory", stockError);
+                        return null;
+                    });
+                }
+            } else {
+                // Count and print the error if file writing failed
+                Metrics.recordError("add.save", error);
+                releaseReservation(record);
+                runOnUiThread(() -> Toast.makeText(this,
+                        "Could not save " + record.getName(), Toast.LENGTH_LONG).show());
+            }
+        });
+    }
+
+    /**
+     * Drops a reminder that could not be saved from the conflict index, so that submitting
+     * it again is not refused as a duplicate of itself.
      *
-     * @param medicineInfo String containing medicine reminder details to save.
+     * @param record Reminder that was not saved.
      */
-    private void saveMedicineToFile(String medicineInfo) {
+    private void releaseReservation(MedicineRecord record) {
         try {
-            // Open file output stream in append mode
-            FileOutputStream fos = openFileOutput("medicines.txt", MODE_APPEND);
-            // Write the medicine info followed by a newline
-            fos.write((medicineInfo + "\n").getBytes());
-            fos.close();
+            ReminderConflictIndex.getInstance(medicineFile).remove(record.getId());
         } catch (IOException e) {
-            // Print stack trace if an error occurs during file writing
-            e.printStackTrace();
+            Metrics.recordError("add.check", e);
         }
     }
 }
@@ -0,0 +1,396 @@
+package com.example.myapplication1;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics class.
+ * <p>
+ * Process-wide counters, gauges and latency histograms for the hot paths of the app, with a
+ * JSON dump that can be pulled from a device. Metrics are created once, usually into a static
+ * final field of the class that records them, and are then updated without locks or allocation:
+ * counters are {@link LongAdder}s and histograms count values in power-of-two buckets.
+ * <p>
+ * While metrics are disabled every update returns after reading one volatile flag, and
+ * {@link #startTimer()} returns 0 without reading the clock, which {@link Histogram#recordSince}
+ * then ignores.
+ */
+public final class Metrics {
+
+    // Number of histogram buckets: bucket 0 holds 0, bucket i holds [2^(i-1), 2^i - 1]
+    public static final int BUCKET_COUNT = 64;
+
+    // Name of the counter summing all errors passed to recordError
+    public static final String ERRORS = "errors";
+
+    // Whether updates are recorded; checked first by every update
+    private static volatile boolean enabled = true;
+
+    // Registered metrics by name
+    private static final Map<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentHashMap<>();
+
+    // Message of the last error per site, for the dump
+    private static final Map<String, String> LAST_ERRORS = new ConcurrentHashMap<>();
+
+    private static final Counter ERROR_COUNT = counter(ERRORS);
+
+    // Background thread writing dumps
+    private static final ExecutorService DUMP_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Metrics-dump");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Metrics() {
+        // Static helpers only
+    }
+
+    /**
+     * @return True if updates are recorded.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns recording on or off. Values recorded so far are kept.
+     *
+     * @param on True to record updates.
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Returns the counter with a name, creating it on first use.
+     *
+     * @param name Metric name, e.g. "journal.bytes_read".
+     * @return Shared counter.
+     */
+    public static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, k -> new Counter());
+    }
+
+    /**
+     * Returns the histogram with a name, creating it on first use. By convention the name
+     * ends with the unit of the recorded values, e.g. "list.load_us".
+     *
+     * @param name Metric name.
+     * @return Shared histogram.
+     */
+    public static Histogram histogram(String name) {
+        return HISTOGRAMS.computeIfAbsent(name, k -> new Histogram());
+    }
+
+    /**
+     * Registers a gauge, read only when a dump is taken. A later gauge with the same name
+     * replaces the earlier one.
+     *
+     * @param name  Metric name.
+     * @param value Supplies the current value.
+     */
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    /**
+     * @return Start time for {@link Histogram#recordSince}, or 0 while metrics are disabled.
+     */
+    public static long startTimer() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Counts an error under "errors" and "errors.&lt;site&gt;", remembers its message for
+     * the dump and prints its stack trace. Errors are counted even while metrics are disabled.
+     *
+     * @param site  Where the error happened, e.g. "list.load".
+     * @param error The error.
+     */
+    public static void recordError(String site, Throwable error) {
+        ERROR_COUNT.adder.increment();
+        counter(ERRORS + "." + site).adder.increment();
+        LAST_ERRORS.put(site, String.valueOf(error));
+        error.printStackTrace();
+    }
+
+    /**
+     * Clears all recorded values. Registered metrics and gauges stay registered.
+     */
+    public static void reset() {
+        for (Counter counter : COUNTERS.values()) {
+            counter.adder.reset();
+        }
+        for (Histogram histogram : HISTOGRAMS.values()) {
+            histogram.reset();
+        }
+        LAST_ERRORS.clear();
+    }
+
+    /**
+     * Writes all metrics as one JSON object with "counters", "gauges", "histograms" and
+     * "lastErrors" members, sorted by name.
+     *
+     * @param out Destination; flushed but not closed.
+     * @throws IOException If writing fails.
+     */
+    public static void writeJson(Writer out) throws IOException {
+        StringBuilder json = new StringBuilder(4096);
+        json.append("{\n  \"enabled\": ").append(enabled)
+                .append(",\n  \"timestampMillis\": ").append(System.currentTimeMillis());
+
+        json.append(",\n  \"counters\": {");
+        String separator = "\n";
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(COUNTERS).entrySet()) {
+            json.append(separator).append("    ");
+            appendJsonString(json, entry.getKey()).append(": ").append(entry.getValue().get());
+            separator = ",\n";
+        }
+        json.append("\n  },\n  \"gauges\": {");
+        separator = "\n";
+        for (Map.Entry<String, LongSupplier> entry : new TreeMap<>(GAUGES).entrySet()) {
+            json.append(separator).append("    ");
+            appendJsonString(json, entry.getKey()).append(": ").append(entry.getValue().getAsLong());
+            separator = ",\n";
+        }
+        json.append("\n  },\n  \"histograms\": {");
+        separator = "\n";
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(HISTOGRAMS).entrySet()) {
+            json.append(separator).append("    ");
+            appendJsonString(json, entry.getKey()).append(": ");
+            entry.getValue().appendJson(json);
+            separator = ",\n";
+        }
+        json.append("\n  },\n  \"lastErrors\": {");
+        separator = "\n";
+        for (Map.Entry<String, String> entry : new TreeMap<>(LAST_ERRORS).entrySet()) {
+            json.append(separator).append("    ");
+            appendJsonString(json, entry.getKey()).append(": ");
+            appendJsonString(json, entry.getValue());
+            separator = ",\n";
+        }
+        json.append("\n  }\n}\n");
+        out.append(json);
+        out.flush();
+    }
+
+    /**
+     * @return All metrics as JSON, see {@link #writeJson}.
+     */
+    public static String toJson() {
+        StringWriter out = new StringWriter();
+        try {
+            writeJson(out);
+        } catch (IOException e) {
+            // A StringWriter does not fail
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes the JSON dump to a file on a background thread, replacing the file atomically.
+     *
+     * @param file Destination, e.g. diagnostics.json in the app's external files directory.
+     * @return Future completed once the file is written.
+     */
+    public static CompletableFuture<Void> dumpAsync(File file) {
+        return CompletableFuture.runAsync(() -> {
+            File temp = new File(file.getPath() + ".tmp");
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+                writeJson(out);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+            if (!temp.renameTo(file)) {
+                throw new CompletionException(new IOException("Could not replace " + file));
+            }
+        }, DUMP_EXECUTOR);
+    }
+
+    private static StringBuilder appendJsonString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"');
+    }
+
+    /**
+     * Monotonic counter.
+     */
+    public static final class Counter {
+        private final LongAdder adder = new LongAdder();
+
+        private Counter() {
+        }
+
+        public void increment() {
+            if (enabled) {
+                adder.increment();
+            }
+        }
+
+        /**
+         * @param delta Amount to add.
+         */
+        public void add(long delta) {
+            if (enabled) {
+                adder.add(delta);
+            }
+        }
+
+        /**
+         * @return Current total.
+         */
+        public long get() {
+            return adder.sum();
+        }
+    }
+
+    /**
+     * Distribution of non-negative values in power-of-two buckets, so percentiles are exact
+     * to within a factor of two while recording costs a few adds.
+     */
+    public static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        private Histogram() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Records one value; negative values are recorded as 0.
+         *
+         * @param value Value in the unit of the histogram.
+         */
+        public void record(long value) {
+            if (!enabled) {
+                return;
+            }
+            long v = Math.max(0, value);
+            buckets[bucketOf(v)].increment();
+            sum.add(v);
+            long current = max.get();
+            while (v > current && !max.compareAndSet(current, v)) {
+                current = max.get();
+            }
+        }
+
+        /**
+         * Records the microseconds elapsed since a start time.
+         *
+         * @param startNanos Value of {@link Metrics#startTimer()}; 0 records nothing.
+         */
+        public void recordSince(long startNanos) {
+            if (startNanos != 0 && enabled) {
+                record((System.nanoTime() - startNanos) / 1000);
+            }
+        }
+
+        /**
+         * @return Number of recorded values.
+         */
+        public long count() {
+            long count = 0;
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        /**
+         * Returns an upper bound of a percentile: the largest value of the bucket holding it.
+         *
+         * @param percentile Percentile, 0..100.
+         * @return Upper bound, or 0 if nothing was recorded.
+         */
+        public long percentile(double percentile) {
+            long[] counts = new long[BUCKET_COUNT];
+            long count = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] = buckets[i].sum();
+                count += counts[i];
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(1, rank)) {
+                    return Math.min(bucketUpperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        private void reset() {
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+            sum.reset();
+            max.set(0);
+        }
+
+        private void appendJson(StringBuilder json) {
+            long count = count();
+            json.append("{\"count\": ").append(count)
+                    .append(", \"sum\": ").append(sum.sum())
+                    .append(", \"max\": ").append(max.get())
+                    .append(", \"p50\": ").append(percentile(50))
+                    .append(", \"p90\": ").append(percentile(90))
+                    .append(", \"p99\": ").append(percentile(99))
+                    .append(", \"buckets\": {");
+            // Non-empty buckets keyed by their upper bound
+            String separator = "";
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                long n = buckets[i].sum();
+                if (n > 0) {
+                    json.append(separator).append('"').append(bucketUpperBound(i)).append("\": ").append(n);
+                    separator = ", ";
+                }
+            }
+            json.append("}}");
+        }
+
+        private static int bucketOf(long value) {
+            return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(value));
+        }
+
+        private static long bucketUpperBound(int bucket) {
+            return bucket >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+        }
+    }
+}
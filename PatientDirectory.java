@@ -0,0 +1,242 @@
+package com.example.myapplication1;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PatientDirectory class.
+ * <p>
+ * List of patient profiles sharing one device. Each profile stores its reminders in its own
+ * shard file with its own {@link MedicineJournal}, so saving a reminder for one patient never
+ * touches or locks another patient's file. The default profile owns the original
+ * "medicines.dat", so reminders saved before profiles existed stay where they were.
+ * <p>
+ * The profile list is kept in a small "profiles.dat" file that is rewritten atomically when a
+ * profile is added. {@link #openAll()} reads it and opens every shard in parallel on a
+ * bounded pool; after that each profile's reminders are served from its journal's in-memory
+ * index. All methods are thread-safe.
+ */
+public class PatientDirectory {
+
+    // Id of the profile that owns the original reminder file
+    public static final long DEFAULT_PROFILE_ID = 0;
+
+    // Name of the default profile until it is renamed
+    public static final String DEFAULT_PROFILE_NAME = "Default";
+
+    // File holding the profile list
+    public static final String FILE_NAME = "profiles.dat";
+
+    // Magic number of the profile list file, ASCII "PROF"
+    private static final int MAGIC = 0x50524F46;
+
+    // Current profile list format version
+    private static final short VERSION = 1;
+
+    // Threads opening shards at startup; bounded so a home with 40 residents does not start 40
+    public static final int LOAD_PARALLELISM =
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    // Pool shared by all directories for loading the profile list and opening shards
+    private static final ExecutorService LOAD_POOL = Executors.newFixedThreadPool(LOAD_PARALLELISM, r -> {
+        Thread thread = new Thread(r, "PatientDirectory-" + THREAD_NUMBER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // One directory per storage folder, shared by all screens in the process
+    private static final Map<String, PatientDirectory> INSTANCES = new HashMap<>();
+
+    private final File dir;
+    private List<PatientProfile> profiles;  // null until read from disk
+
+    /**
+     * Returns the shared directory for a storage folder. Nothing is read until first use.
+     *
+     * @param dir Folder holding the profile list and the shard files.
+     * @return Shared directory instance.
+     */
+    public static PatientDirectory getInstance(File dir) {
+        String key = dir.getAbsolutePath();
+        synchronized (INSTANCES) {
+            PatientDirectory directory = INSTANCES.get(key);
+            if (directory == null) {
+                directory = new PatientDirectory(dir);
+                INSTANCES.put(key, directory);
+            }
+            return directory;
+        }
+    }
+
+    /**
+     * Returns the reminder shard of a profile. Needs no I/O, so screens can call it
+     * with a profile id passed to them.
+     *
+     * @param dir       Folder holding the shard files.
+     * @param profileId Profile id.
+     * @return Shard file of the profile.
+     */
+    public static File shardFile(File dir, long profileId) {
+        if (profileId == DEFAULT_PROFILE_ID) {
+            return new File(dir, MedicineFileFormat.FILE_NAME);
+        }
+        return new File(dir, "medicines-" + Long.toHexString(profileId) + ".dat");
+    }
+
+    /**
+     * @param dir Folder holding the profile list and the shard files.
+     */
+    public PatientDirectory(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @param profileId Profile id.
+     * @return Shard file of the profile.
+     */
+    public File shardFile(long profileId) {
+        return shardFile(dir, profileId);
+    }
+
+    /**
+     * Returns all profiles in the order they were added, reading the profile list on first use.
+     * Without a profile list there is only the default profile.
+     *
+     * @return Unmodifiable list of profiles.
+     * @throws IOException If the profile list cannot be read.
+     */
+    public synchronized List<PatientProfile> getProfiles() throws IOException {
+        if (profiles == null) {
+            profiles = Collections.unmodifiableList(readProfiles());
+        }
+        return profiles;
+    }
+
+    /**
+     * Adds a profile with a new, empty shard.
+     *
+     * @param name Patient name.
+     * @return The new profile.
+     * @throws IOException If the profile list cannot be written.
+     */
+    public synchronized PatientProfile addProfile(String name) throws IOException {
+        long id;
+        do {
+            id = MedicineRecord.generateId();
+        } while (id == DEFAULT_PROFILE_ID || shardFile(id).exists());
+        PatientProfile profile = new PatientProfile(id, name);
+        List<PatientProfile> updated = new ArrayList<>(getProfiles());
+        updated.add(profile);
+        writeProfiles(updated);
+        profiles = Collections.unmodifiableList(updated);
+        return profile;
+    }
+
+    /**
+     * Reads the profile list and opens every shard in parallel on the load pool, so that
+     * switching between profiles afterwards reads nothing from disk. A shard that cannot be
+     * opened is reported and skipped; it is opened again when its profile is used.
+     *
+     * @return Future completed with all profiles once every shard has been opened.
+     */
+    public CompletableFuture<List<PatientProfile>> openAll() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return getProfiles();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, LOAD_POOL).thenCompose(list -> {
+            CompletableFuture<?>[] opens = new CompletableFuture<?>[list.size()];
+            for (int i = 0; i < opens.length; i++) {
+                File shard = shardFile(list.get(i).getId());
+                opens[i] = CompletableFuture.runAsync(() -> {
+                    try {
+                        MedicineJournal.getInstance(shard);
+                    } catch (IOException e) {
+                        Metrics.recordError("profiles.open", e);
+                    }
+                }, LOAD_POOL);
+            }
+            return CompletableFuture.allOf(opens).thenApply(ignored -> list);
+        });
+    }
+
+    /**
+     * Adds a profile on the load pool, see {@link #addProfile}.
+     *
+     * @param name Patient name.
+     * @return Future completed with the new profile.
+     */
+    public CompletableFuture<PatientProfile> addProfileAsync(String name) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return addProfile(name);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, LOAD_POOL);
+    }
+
+    private List<PatientProfile> readProfiles() throws IOException {
+        List<PatientProfile> list = new ArrayList<>();
+        File file = new File(dir, FILE_NAME);
+        if (!file.exists()) {
+            list.add(new PatientProfile(DEFAULT_PROFILE_ID, DEFAULT_PROFILE_NAME));
+            return list;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readShort() > VERSION) {
+                throw new IOException("Not a profile list: " + file);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                list.add(new PatientProfile(in.readLong(), in.readUTF()));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Writes the profile list to a temporary file and atomically replaces the old list.
+     */
+    private void writeProfiles(List<PatientProfile> list) throws IOException {
+        File file = new File(dir, FILE_NAME);
+        File temp = new File(dir, FILE_NAME + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(list.size());
+            for (PatientProfile profile : list) {
+                out.writeLong(profile.getId());
+                out.writeUTF(profile.getName());
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.myapplication1;
+
+/**
+ * PatientProfile class.
+ * <p>
+ * Immutable patient profile. Every profile has its own reminder shard file, see
+ * {@link PatientDirectory#shardFile}. The name is shown in the profile picker.
+ */
+public final class PatientProfile {
+
+    private final long id;
+    private final String name;
+
+    /**
+     * Creates a profile.
+     *
+     * @param id   Unique profile id; {@link PatientDirectory#DEFAULT_PROFILE_ID} for the
+     *             profile that owns the original reminder file.
+     * @param name Patient name.
+     */
+    public PatientProfile(long id, String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("name must not be null");
+        }
+        this.id = id;
+        this.name = name;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PatientProfile)) return false;
+        PatientProfile other = (PatientProfile) o;
+        return id == other.id && name.equals(other.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(id) + name.hashCode();
+    }
+
+    /**
+     * @return The patient name, as shown by list adapters.
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,522 @@
+package com.example.myapplication1;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * PillInventory class.
+ * <p>
+ * Pills on hand for the reminders of one reminder file, and the projected time each medicine
+ * runs out. Stock is set when pills are counted or refilled and goes down by one dose for
+ * every dose taken in the {@link DoseEventLog}; skipped doses leave it alone.
+ * <p>
+ * A reminder's run-out time is the due time of the first dose its stock cannot cover, counted
+ * from the latest dose that was taken or skipped. Its weekly doses are kept as sorted minutes
+ * of the week, following the rules of {@link DueTimeIndex}, so finding the n-th dose from any
+ * time is one binary search and some arithmetic, however large n is. Each event or schedule
+ * change only projects the one reminder it concerns, and moved run-out times are handed to the
+ * shared {@link RefillQueue}, which answers "what runs out this week" across all residents.
+ * Doses that went by without being taken or skipped are still counted as to be taken, so a
+ * projection errs on the early side. Outcomes are expected in due-time order: an outcome for
+ * a dose due no later than the latest one handled, or than the last count, is ignored, which
+ * also keeps a dose reported twice from being counted twice.
+ * <p>
+ * The stock is checkpointed to "&lt;file&gt;.inventory" together with the number of log
+ * events it covers, so opening it only replays the events recorded after the checkpoint.
+ * Lock order is journal or log, then inventory, then queue. All methods are thread-safe.
+ */
+public class PillInventory implements DoseEventLog.Listener, MedicineJournal.ChangeListener {
+
+    // Suffix appended to the reminder file name
+    public static final String FILE_SUFFIX = ".inventory";
+
+    // Run-out time of a reminder that has no doses scheduled
+    public static final long NEVER = Long.MAX_VALUE;
+
+    // Magic number of the checkpoint file, ASCII "PILL"
+    private static final int MAGIC = 0x50494C4C;
+
+    // Current checkpoint format version
+    private static final short VERSION = 1;
+
+    // One inventory per reminder file, shared by all screens in the process
+    private static final Map<String, PillInventory> INSTANCES = new HashMap<>();
+
+    // Opens inventories and writes checkpoints off the UI thread
+    private static final ExecutorService INVENTORY_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "PillInventory");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File reminderFile;
+    private final ZoneId zone;
+    private final Map<Long, Stock> stocks = new HashMap<>();
+    private long eventCount;  // log events applied so far
+    private MedicineJournal journal;
+    private RefillQueue queue;
+
+    /**
+     * Stock and schedule of one reminder.
+     */
+    private static final class Stock {
+        final long id;
+        int pills;
+        int pillsPerDose;
+        long anchorMillis;             // doses due after this time are still to be taken
+        MedicineRecord record;         // null until the reminder is known
+        int[] minutes = new int[0];    // sorted minutes of the week of its doses
+        long runOutMillis = NEVER;
+
+        Stock(long id, int pills, int pillsPerDose, long anchorMillis) {
+            this.id = id;
+            this.pills = pills;
+            this.pillsPerDose = pillsPerDose;
+            this.anchorMillis = anchorMillis;
+        }
+    }
+
+    /**
+     * Creates an empty inventory.
+     *
+     * @param reminderFile Reminder file the inventory belongs to.
+     * @param zone         Zone the dose times are in.
+     */
+    public PillInventory(File reminderFile, ZoneId zone) {
+        this.reminderFile = reminderFile;
+        this.zone = zone;
+    }
+
+    /**
+     * Returns the shared inventory of a reminder file, opening it on first use: loads the
+     * checkpoint, follows the reminder journal, replays the newer dose events and puts the
+     * run-out times into the shared {@link RefillQueue}.
+     *
+     * @param reminderFile Reminder file.
+     * @return Shared inventory.
+     * @throws IOException If the journal or the event log cannot be read.
+     */
+    public static PillInventory getInstance(File reminderFile) throws IOException {
+        String key = reminderFile.getAbsolutePath();
+        synchronized (INSTANCES) {
+            PillInventory inventory = INSTANCES.get(key);
+            if (inventory == null) {
+                inventory = load(reminderFile, ZoneId.systemDefault());
+                inventory.attach(MedicineJournal.getInstance(reminderFile), RefillQueue.getInstance());
+                inventory.attach(DoseEventLog.getInstance(reminderFile));
+                INSTANCES.put(key, inventory);
+            }
+            return inventory;
+        }
+    }
+
+    /**
+     * Opens the shared inventories of several reminder files in the background.
+     *
+     * @param reminderFiles Reminder files, e.g. the shards of all patients.
+     * @return Future completed once all are open; files that fail are reported and skipped.
+     */
+    public static CompletableFuture<Void> preload(List<File> reminderFiles) {
+        return CompletableFuture.runAsync(() -> {
+            for (File file : reminderFiles) {
+                try {
+                    getInstance(file);
+                } catch (IOException e) {
+                    Metrics.recordError("inventory.open", e);
+                }
+            }
+        }, INVENTORY_EXECUTOR);
+    }
+
+    /**
+     * Sets the pills on hand of a reminder and checkpoints, in the background.
+     *
+     * @param reminderFile Reminder file.
+     * @param reminderId   Reminder id.
+     * @param pills        Pills counted.
+     * @param pillsPerDose Pills taken per dose, at least 1.
+     * @param nowMillis    Time the pills were counted.
+     * @return Future completed with the projected run-out time.
+     */
+    public static CompletableFuture<Long> setStockAsync(File reminderFile, long reminderId, int pills,
+                                                        int pillsPerDose, long nowMillis) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                PillInventory inventory = getInstance(reminderFile);
+                long runOut = inventory.setStock(reminderId, pills, pillsPerDose, nowMillis);
+                inventory.checkpoint();
+                return runOut;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, INVENTORY_EXECUTOR);
+    }
+
+    /**
+     * Adds refilled pills to a reminder and checkpoints, in the background.
+     *
+     * @param reminderFile Reminder file.
+     * @param reminderId   Reminder id; must have a stock set.
+     * @param pills        Pills added.
+     * @return Future completed with the projected run-out time.
+     */
+    public static CompletableFuture<Long> refillAsync(File reminderFile, long reminderId, int pills) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                PillInventory inventory = getInstance(reminderFile);
+                long runOut = inventory.refill(reminderId, pills);
+                inventory.checkpoint();
+                return runOut;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, INVENTORY_EXECUTOR);
+    }
+
+    /**
+     * @param reminderFile Reminder file.
+     * @return Checkpoint file of the reminder file.
+     */
+    public static File checkpointFile(File reminderFile) {
+        return new File(reminderFile.getPath() + FILE_SUFFIX);
+    }
+
+    /**
+     * Loads the checkpoint of a reminder file, or returns an empty inventory if there is none.
+     * Unlike derived statistics, counted stock cannot be rebuilt from the log, so a damaged
+     * checkpoint is an error.
+     *
+     * @param reminderFile Reminder file.
+     * @param zone         Zone the dose times are in.
+     * @return Inventory as of the checkpoint.
+     * @throws IOException If the checkpoint exists but cannot be read.
+     */
+    public static PillInventory load(File reminderFile, ZoneId zone) throws IOException {
+        PillInventory inventory = new PillInventory(reminderFile, zone);
+        File file = checkpointFile(reminderFile);
+        if (!file.exists()) {
+            return inventory;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an inventory checkpoint: " + file);
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported inventory checkpoint version " + version);
+            }
+            inventory.eventCount = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Stock stock = new Stock(in.readLong(), in.readInt(), in.readInt(), in.readLong());
+                inventory.stocks.put(stock.id, stock);
+            }
+        }
+        return inventory;
+    }
+
+    /**
+     * Writes the stock next to the reminder file, atomically replacing the previous checkpoint.
+     *
+     * @throws IOException If writing fails.
+     */
+    public void checkpoint() throws IOException {
+        File file = checkpointFile(reminderFile);
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            synchronized (this) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeLong(eventCount);
+                out.writeInt(stocks.size());
+                for (Stock stock : stocks.values()) {
+                    out.writeLong(stock.id);
+                    out.writeInt(stock.pills);
+                    out.writeInt(stock.pillsPerDose);
+                    out.writeLong(stock.anchorMillis);
+                }
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /**
+     * Follows the reminder journal for the schedules of the reminders with stock, and reports
+     * run-out times to a queue. Stock of reminders that no longer exist is dropped.
+     *
+     * @param journal Journal of the same reminder file.
+     * @param queue   Queue to report run-out times to, may be null.
+     * @throws IOException If reading the journal fails.
+     */
+    public void attach(MedicineJournal journal, RefillQueue queue) throws IOException {
+        synchronized (journal) {
+            List<MedicineRecord> records = journal.readAll();
+            synchronized (this) {
+                this.journal = journal;
+                this.queue = queue;
+                Set<Long> live = new HashSet<>(records.size() * 4 / 3 + 1);
+                for (MedicineRecord record : records) {
+                    live.add(record.getId());
+                    Stock stock = stocks.get(record.getId());
+                    if (stock != null) {
+                        schedule(stock, record);
+                    }
+                }
+                stocks.keySet().retainAll(live);
+            }
+            journal.addChangeListener(this);
+        }
+    }
+
+    /**
+     * Replays the events recorded after the checkpoint and follows the log from then on.
+     * If the log holds fewer events than the checkpoint covers, it was replaced, and only
+     * events from then on are counted.
+     *
+     * @param log Event log of the same reminder file.
+     * @throws IOException If reading the log fails.
+     */
+    public void attach(DoseEventLog log) throws IOException {
+        long from;
+        synchronized (this) {
+            if (log.size() < eventCount) {
+                eventCount = log.size();
+            }
+            from = eventCount;
+        }
+        log.readFromAndListen(from, this);
+    }
+
+    /**
+     * Stops following a journal and a log, and takes the reminders off the queue.
+     *
+     * @param journal Journal passed to {@link #attach(MedicineJournal, RefillQueue)}.
+     * @param log     Log passed to {@link #attach(DoseEventLog)}.
+     */
+    public void detach(MedicineJournal journal, DoseEventLog log) {
+        journal.removeChangeListener(this);
+        log.removeListener(this);
+        synchronized (this) {
+            if (queue != null) {
+                for (Stock stock : stocks.values()) {
+                    queue.remove(this, stock.id);
+                }
+            }
+            queue = null;
+        }
+    }
+
+    /**
+     * Sets the pills on hand of a reminder, as counted at a time.
+     *
+     * @param reminderId   Reminder id.
+     * @param pills        Pills counted.
+     * @param pillsPerDose Pills taken per dose, at least 1.
+     * @param nowMillis    Time the pills were counted; doses after it use them up.
+     * @return Projected run-out time, {@link #NEVER} if nothing is scheduled.
+     * @throws IOException If the reminder cannot be read from the journal.
+     */
+    public long setStock(long reminderId, int pills, int pillsPerDose, long nowMillis) throws IOException {
+        if (pills < 0 || pillsPerDose < 1) {
+            throw new IllegalArgumentException("Invalid stock: " + pills + " pills, " + pillsPerDose + " per dose");
+        }
+        MedicineJournal source = this.journal;
+        if (source == null) {
+            return setStock(reminderId, pills, pillsPerDose, nowMillis, null);
+        }
+        synchronized (source) {
+            return setStock(reminderId, pills, pillsPerDose, nowMillis, source.get(reminderId));
+        }
+    }
+
+    private synchronized long setStock(long reminderId, int pills, int pillsPerDose, long nowMillis,
+                                       MedicineRecord record) {
+        Stock stock = new Stock(reminderId, pills, pillsPerDose, nowMillis);
+        stocks.put(reminderId, stock);
+        if (record != null) {
+            schedule(stock, record);
+        }
+        return stock.runOutMillis;
+    }
+
+    /**
+     * Adds refilled pills to a reminder.
+     *
+     * @param reminderId Reminder id.
+     * @param pills      Pills added.
+     * @return Projected run-out time, {@link #NEVER} if nothing is scheduled.
+     * @throws IllegalStateException If the reminder has no stock set.
+     */
+    public synchronized long refill(long reminderId, int pills) {
+        Stock stock = stocks.get(reminderId);
+        if (stock == null) {
+            throw new IllegalStateException("No stock set for reminder " + reminderId);
+        }
+        stock.pills += Math.max(0, pills);
+        project(stock);
+        return stock.runOutMillis;
+    }
+
+    /**
+     * @param reminderId Reminder id.
+     * @return Pills on hand, or -1 if the reminder has no stock set.
+     */
+    public synchronized int getPills(long reminderId) {
+        Stock stock = stocks.get(reminderId);
+        return stock == null ? -1 : stock.pills;
+    }
+
+    /**
+     * @param reminderId Reminder id.
+     * @return Projected run-out time, {@link #NEVER} if the reminder has no stock set or no doses.
+     */
+    public synchronized long getRunOutMillis(long reminderId) {
+        Stock stock = stocks.get(reminderId);
+        return stock == null ? NEVER : stock.runOutMillis;
+    }
+
+    /**
+     * @return Reminder file the inventory belongs to.
+     */
+    public File getReminderFile() {
+        return reminderFile;
+    }
+
+    /**
+     * @return Number of log events the inventory covers.
+     */
+    public synchronized long getEventCount() {
+        return eventCount;
+    }
+
+    @Override
+    public synchronized void onRecorded(DoseEvent event, long number) {
+        if (number == eventCount) {
+            apply(event);
+        }
+    }
+
+    @Override
+    public synchronized void onPut(MedicineRecord record) {
+        Stock stock = stocks.get(record.getId());
+        if (stock != null) {
+            schedule(stock, record);
+        }
+    }
+
+    @Override
+    public synchronized void onDelete(long id) {
+        if (stocks.remove(id) != null && queue != null) {
+            queue.remove(this, id);
+        }
+    }
+
+    /**
+     * Applies the next event of the log. Called with the inventory lock held.
+     */
+    private void apply(DoseEvent event) {
+        eventCount++;
+        Stock stock = stocks.get(event.getReminderId());
+        long scheduledAt = event.getScheduledAtMillis();
+        if (stock == null || scheduledAt <= stock.anchorMillis) {
+            // Unknown reminder, a dose due before the pills were counted, or one already handled
+            return;
+        }
+        switch (event.getType()) {
+            case DoseEvent.TAKEN:
+            case DoseEvent.LATE:
+                stock.pills = Math.max(0, stock.pills - stock.pillsPerDose);
+                stock.anchorMillis = scheduledAt;
+                project(stock);
+                break;
+            case DoseEvent.SKIPPED:
+                stock.anchorMillis = scheduledAt;
+                project(stock);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Takes over the schedule of a reminder and projects it again.
+     */
+    private void schedule(Stock stock, MedicineRecord record) {
+        stock.record = record;
+        stock.minutes = weekMinutes(record);
+        project(stock);
+    }
+
+    /**
+     * Projects the run-out time of a reminder and reports it if it moved.
+     */
+    private void project(Stock stock) {
+        long runOut = stock.minutes.length == 0 ? NEVER
+                : nthDoseAfter(stock.minutes, stock.anchorMillis, stock.pills / stock.pillsPerDose + 1);
+        boolean moved = runOut != stock.runOutMillis;
+        stock.runOutMillis = runOut;
+        if (queue != null && stock.record != null && (moved || !queue.contains(this, stock.id))) {
+            queue.update(this, stock.record, runOut);
+        }
+    }
+
+    /**
+     * Finds the due time of the n-th dose strictly after a time, n counting from 1.
+     */
+    private long nthDoseAfter(int[] minutes, long afterMillis, int n) {
+        LocalDateTime after = LocalDateTime.ofInstant(Instant.ofEpochMilli(afterMillis), zone);
+        LocalDateTime base = after.truncatedTo(ChronoUnit.MINUTES);
+        int baseMinute = DueTimeIndex.weekMinute(after.getDayOfWeek().getValue() - 1,
+                after.getHour() * 60 + after.getMinute());
+
+        // A dose in the current minute is due at or before afterMillis, so it is not counted
+        int first = Arrays.binarySearch(minutes, baseMinute + 1);
+        if (first < 0) {
+            first = -first - 1;
+        } else {
+            while (first > 0 && minutes[first - 1] == baseMinute + 1) {
+                first--;
+            }
+        }
+        long index = first + (long) n - 1;
+        long delta = minutes[(int) (index % minutes.length)]
+                + index / minutes.length * DueTimeIndex.MINUTES_PER_WEEK - baseMinute;
+        return base.plusMinutes(delta).atZone(zone).toInstant().toEpochMilli();
+    }
+
+    /**
+     * @return Sorted minutes of the week of all doses of a reminder; a minute appears once per
+     * dose due in it.
+     */
+    static int[] weekMinutes(MedicineRecord record) {
+        int[] minutes = DoseTime.weekMinutes(record);
+        Arrays.sort(minutes);
+        return minutes;
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.myapplication1;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * RefillQueue class.
+ * <p>
+ * Upcoming run-out times of every medicine with a known stock, across all residents whose
+ * {@link PillInventory} is open, in a min-heap ordered by run-out time. Asking what runs out
+ * before a time pops only the entries due by then, O((k + s) log n) for k answers and s stale
+ * entries, instead of projecting every medicine again.
+ * <p>
+ * A moved run-out time is pushed as a new entry and the old entry is left in the heap; a map
+ * from reminder to its current entry tells the stale ones apart, and they are dropped when
+ * they reach the top. When stale entries outnumber live ones the heap is rebuilt from the map,
+ * so its size stays within a constant factor of the number of medicines.
+ * <p>
+ * All methods are thread-safe.
+ */
+public final class RefillQueue {
+
+    // Queue shared by all inventories in the process
+    private static final RefillQueue INSTANCE = new RefillQueue();
+
+    // Heap entries kept at least, so small queues are not rebuilt over and over
+    private static final int MIN_REBUILD_SIZE = 64;
+
+    private final PriorityQueue<Refill> heap = new PriorityQueue<>(
+            (a, b) -> Long.compare(a.runOutMillis, b.runOutMillis));
+    private final Map<Key, Refill> current = new HashMap<>();
+
+    /**
+     * Identifies a reminder across inventories.
+     */
+    private static final class Key {
+        final PillInventory inventory;
+        final long reminderId;
+
+        Key(PillInventory inventory, long reminderId) {
+            this.inventory = inventory;
+            this.reminderId = reminderId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return inventory == other.inventory && reminderId == other.reminderId;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(inventory) + Long.hashCode(reminderId);
+        }
+    }
+
+    /**
+     * A medicine and the time it runs out.
+     */
+    public static final class Refill {
+        private final Key key;
+        private final MedicineRecord record;
+        private final long runOutMillis;
+
+        Refill(Key key, MedicineRecord record, long runOutMillis) {
+            this.key = key;
+            this.record = record;
+            this.runOutMillis = runOutMillis;
+        }
+
+        /**
+         * @return Inventory of the resident the medicine belongs to.
+         */
+        public PillInventory getInventory() {
+            return key.inventory;
+        }
+
+        /**
+         * @return Reminder of the medicine as of the projection.
+         */
+        public MedicineRecord getRecord() {
+            return record;
+        }
+
+        /**
+         * @return Due time of the first dose the stock does not cover, epoch milliseconds.
+         */
+        public long getRunOutMillis() {
+            return runOutMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Refill{" + record.getName() + ", runOut=" + runOutMillis + "}";
+        }
+    }
+
+    /**
+     * @return Queue shared by all inventories in the process.
+     */
+    public static RefillQueue getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sets the run-out time of a medicine.
+     *
+     * @param inventory    Inventory the reminder belongs to.
+     * @param record       Reminder.
+     * @param runOutMillis Run-out time; {@link PillInventory#NEVER} takes the medicine off the queue.
+     */
+    public synchronized void update(PillInventory inventory, MedicineRecord record, long runOutMillis) {
+        Key key = new Key(inventory, record.getId());
+        if (runOutMillis == PillInventory.NEVER) {
+            current.remove(key);
+            return;
+        }
+        Refill refill = new Refill(key, record, runOutMillis);
+        current.put(key, refill);
+        heap.add(refill);
+        if (heap.size() > Math.max(MIN_REBUILD_SIZE, 2 * current.size())) {
+            heap.clear();
+            heap.addAll(current.values());
+        }
+    }
+
+    /**
+     * Takes a medicine off the queue.
+     *
+     * @param inventory  Inventory the reminder belongs to.
+     * @param reminderId Reminder id.
+     */
+    public synchronized void remove(PillInventory inventory, long reminderId) {
+        current.remove(new Key(inventory, reminderId));
+    }
+
+    /**
+     * @param inventory  Inventory the reminder belongs to.
+     * @param reminderId Reminder id.
+     * @return True if the medicine is on the queue.
+     */
+    public synchronized boolean contains(PillInventory inventory, long reminderId) {
+        return current.containsKey(new Key(inventory, reminderId));
+    }
+
+    /**
+     * Returns the medicines that run out before a time, e.g. within the coming week.
+     *
+     * @param limitMillis Epoch milliseconds, exclusive.
+     * @return Medicines in run-out order.
+     */
+    public synchronized List<Refill> runningOutBefore(long limitMillis) {
+        List<Refill> due = new ArrayList<>();
+        while (!heap.isEmpty() && heap.peek().runOutMillis < limitMillis) {
+            Refill refill = heap.poll();
+            if (current.get(refill.key) == refill) {
+                due.add(refill);
+            }
+        }
+        // Live entries go back; the stale ones met on the way are gone for good
+        heap.addAll(due);
+        return due;
+    }
+
+    /**
+     * @param inventory  Inventory the reminder belongs to.
+     * @param reminderId Reminder id.
+     * @return Current entry of the medicine, or null if it is not on the queue.
+     */
+    public synchronized Refill get(PillInventory inventory, long reminderId) {
+        return current.get(new Key(inventory, reminderId));
+    }
+
+    /**
+     * @return Number of medicines on the queue.
+     */
+    public synchronized int size() {
+        return current.size();
+    }
+
+    /**
+     * @return Number of entries in the heap, stale ones included.
+     */
+    synchronized int heapSize() {
+        return heap.size();
+    }
+
+    @Override
+    public String toString() {
+        return "RefillQueue{" + size() + " medicines}";
+    }
+}
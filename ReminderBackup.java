@@ -0,0 +1,438 @@
+package com.example.myapplication1;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ReminderBackup class.
+ * <p>
+ * Incremental backup of the reminder store into a {@link BackupRepository}, and restore from
+ * it. A backup covers the profile list and, for every profile, the reminder journal, the dose
+ * event log, the sync state and the pill inventory, whose counts cannot be rebuilt. Files derived from those, such as list snapshots and
+ * adherence checkpoints, are left out and rebuilt after a restore.
+ * <p>
+ * Every file is cut into content-defined chunks by {@link ContentChunker}; only chunks the
+ * repository does not hold yet are compressed and written. What is read also follows what
+ * changed: a file whose size and modification time match the previous backup is not read at
+ * all, and a journal that was only appended to since, in the same generation, is read from
+ * the start of its last backed-up chunk on. Journals are backed up up to the length of a
+ * journal snapshot, which always ends on a frame boundary, so a write in progress is never
+ * half captured.
+ * <p>
+ * A restore streams every file back chunk by chunk, checking each chunk against its hash,
+ * and swaps it in atomically. It must run before the store is opened in the process, e.g. on
+ * a freshly installed tablet: the shared journals and event logs, and every index listening
+ * to them, would keep serving the replaced files. A restore therefore refuses to replace a
+ * shard that is open, and the process is restarted afterwards so the store is opened from the
+ * restored files.
+ */
+public final class ReminderBackup {
+
+    // Folder of the backup repository under the app's external files folder
+    public static final String BACKUP_DIR = "backups";
+
+    // Minimum time between two automatic backups
+    public static final long BACKUP_INTERVAL_MILLIS = 24L * 60 * 60 * 1000;
+
+    // Automatic backups kept; older ones are pruned after each backup
+    public static final int KEEP_BACKUPS = 14;
+
+    // Attempts at reading a journal that is compacted while it is being backed up
+    private static final int JOURNAL_ATTEMPTS = 3;
+
+    // Backups and restores run one at a time, off the UI thread
+    private static final ExecutorService BACKUP_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ReminderBackup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Time of a whole backup and a whole restore
+    private static final Metrics.Histogram BACKUP_TIME = Metrics.histogram("backup.backup_us");
+    private static final Metrics.Histogram RESTORE_TIME = Metrics.histogram("backup.restore_us");
+
+    // Store bytes read by backups and compressed chunk bytes written
+    private static final Metrics.Counter BYTES_SCANNED = Metrics.counter("backup.bytes_scanned");
+    private static final Metrics.Counter BYTES_STORED = Metrics.counter("backup.bytes_stored");
+
+    /**
+     * Result of one {@link #backup}.
+     */
+    public static final class Report {
+        private final BackupManifest manifest;
+        private final int filesReused;
+        private final long bytesScanned;
+        private final int chunks;
+        private final int newChunks;
+        private final long bytesStored;
+
+        Report(BackupManifest manifest, int filesReused, long bytesScanned, int chunks, int newChunks,
+               long bytesStored) {
+            this.manifest = manifest;
+            this.filesReused = filesReused;
+            this.bytesScanned = bytesScanned;
+            this.chunks = chunks;
+            this.newChunks = newChunks;
+            this.bytesStored = bytesStored;
+        }
+
+        public BackupManifest getManifest() {
+            return manifest;
+        }
+
+        /**
+         * @return Files taken over from the previous backup without being read.
+         */
+        public int getFilesReused() {
+            return filesReused;
+        }
+
+        /**
+         * @return Store bytes read.
+         */
+        public long getBytesScanned() {
+            return bytesScanned;
+        }
+
+        /**
+         * @return Chunks cut from the bytes read.
+         */
+        public int getChunks() {
+            return chunks;
+        }
+
+        /**
+         * @return Chunks the repository did not hold yet.
+         */
+        public int getNewChunks() {
+            return newChunks;
+        }
+
+        /**
+         * @return Compressed bytes written for the new chunks.
+         */
+        public long getBytesStored() {
+            return bytesStored;
+        }
+
+        @Override
+        public String toString() {
+            return manifest.getFiles().size() + " files (" + filesReused + " unchanged), "
+                    + bytesScanned + " B scanned, " + newChunks + "/" + chunks + " chunks new, "
+                    + bytesStored + " B stored";
+        }
+    }
+
+    /**
+     * Counts of a backup in progress, and the digest shared by its chunks.
+     */
+    private static final class Progress implements ContentChunker.ChunkSink {
+        final BackupRepository repository;
+        final MessageDigest digest = BackupRepository.sha256();
+        List<BackupManifest.ChunkRef> chunks;
+        int filesReused;
+        long bytesScanned;
+        int chunkCount;
+        int newChunks;
+        long bytesStored;
+
+        Progress(BackupRepository repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public void chunk(byte[] bytes, int offset, int length) throws IOException {
+            digest.update(bytes, offset, length);
+            byte[] hash = digest.digest();
+            int stored = repository.putChunk(hash, bytes, offset, length);
+            if (stored > 0) {
+                newChunks++;
+                bytesStored += stored;
+            }
+            chunkCount++;
+            bytesScanned += length;
+            chunks.add(new BackupManifest.ChunkRef(hash, length));
+        }
+    }
+
+    private ReminderBackup() {
+        // Static helpers only
+    }
+
+    /**
+     * Backs up the store, reusing what the latest backup in the repository already holds.
+     *
+     * @param storeDir   Folder holding the profile list and the shard files.
+     * @param repository Repository to back up into.
+     * @param nowMillis  Time of the backup, names the manifest.
+     * @return What was backed up.
+     * @throws IOException If a file cannot be read or the repository cannot be written.
+     */
+    public static Report backup(File storeDir, BackupRepository repository, long nowMillis) throws IOException {
+        long start = Metrics.startTimer();
+        BackupManifest previous = repository.latest();
+        Progress progress = new Progress(repository);
+        List<BackupManifest.FileEntry> files = new ArrayList<>();
+
+        File profiles = new File(storeDir, PatientDirectory.FILE_NAME);
+        if (profiles.exists()) {
+            files.add(backupFile(profiles, previousEntry(previous, profiles), progress));
+        }
+        for (PatientProfile profile : PatientDirectory.getInstance(storeDir).getProfiles()) {
+            File shard = PatientDirectory.shardFile(storeDir, profile.getId());
+            if (!shard.exists()) {
+                continue;
+            }
+            files.add(backupJournal(shard, previousEntry(previous, shard), progress));
+            for (File file : new File[]{DoseEventLog.eventFile(shard), SyncState.stateFile(shard),
+                    PillInventory.checkpointFile(shard)}) {
+                if (file.exists()) {
+                    files.add(backupFile(file, previousEntry(previous, file), progress));
+                }
+            }
+        }
+
+        BackupManifest manifest = new BackupManifest(nowMillis, files);
+        repository.writeManifest(manifest);
+        BYTES_SCANNED.add(progress.bytesScanned);
+        BYTES_STORED.add(progress.bytesStored);
+        BACKUP_TIME.recordSince(start);
+        return new Report(manifest, progress.filesReused, progress.bytesScanned, progress.chunkCount,
+                progress.newChunks, progress.bytesStored);
+    }
+
+    /**
+     * Backs up the store on the backup thread if the latest backup is older than
+     * {@link #BACKUP_INTERVAL_MILLIS}, then prunes the repository to {@link #KEEP_BACKUPS}.
+     *
+     * @param storeDir  Folder holding the profile list and the shard files.
+     * @param backupDir Repository folder.
+     * @param nowMillis Current time.
+     * @return Future completed with the report, or with null if no backup was due.
+     */
+    public static CompletableFuture<Report> backupIfDueAsync(File storeDir, File backupDir, long nowMillis) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (BackupRepository repository = new BackupRepository(backupDir)) {
+                List<File> manifests = repository.manifestFiles();
+                if (!manifests.isEmpty()) {
+                    BackupManifest latest = repository.readManifest(manifests.get(manifests.size() - 1));
+                    if (nowMillis - latest.getCreatedMillis() < BACKUP_INTERVAL_MILLIS) {
+                        return null;
+                    }
+                }
+                Report report = backup(storeDir, repository, nowMillis);
+                repository.prune(KEEP_BACKUPS);
+                return report;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, BACKUP_EXECUTOR);
+    }
+
+    /**
+     * Restores the files of a backup into a folder, replacing files of the same name, and
+     * deletes the files derived from them so they are rebuilt from the restored data.
+     *
+     * @param repository Repository holding the backup.
+     * @param manifest   Backup to restore.
+     * @param storeDir   Folder to restore into; the store must not be open.
+     * @return Bytes restored.
+     * @throws IOException If a shard of the backup is open, a chunk is missing or damaged, or a
+     *                     file cannot be written.
+     */
+    public static long restore(BackupRepository repository, BackupManifest manifest, File storeDir)
+            throws IOException {
+        long start = Metrics.startTimer();
+        for (BackupManifest.FileEntry entry : manifest.getFiles()) {
+            String name = entry.getName();
+            if (name.isEmpty() || name.indexOf('/') >= 0 || name.indexOf(File.separatorChar) >= 0
+                    || name.startsWith(".")) {
+                throw new IOException("Invalid file name in backup: " + name);
+            }
+            File file = new File(storeDir, name);
+            if (entry.isJournal() && (MedicineJournal.isOpen(file) || DoseEventLog.isOpen(file))) {
+                throw new IOException("Cannot restore over an open store: " + file);
+            }
+        }
+        if (!storeDir.isDirectory() && !storeDir.mkdirs()) {
+            throw new IOException("Could not create " + storeDir);
+        }
+        long restored = 0;
+        for (BackupManifest.FileEntry entry : manifest.getFiles()) {
+            String name = entry.getName();
+            File file = new File(storeDir, name);
+            File temp = new File(file.getPath() + ".restore");
+            long written = 0;
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                for (BackupManifest.ChunkRef chunk : entry.getChunks()) {
+                    byte[] bytes = repository.readChunk(chunk);
+                    out.write(bytes);
+                    written += bytes.length;
+                }
+                out.getFD().sync();
+            } catch (IOException e) {
+                temp.delete();
+                throw e;
+            }
+            if (written != entry.getLength()) {
+                temp.delete();
+                throw new IOException("Backup of " + name + " has " + written + " bytes, expected " + entry.getLength());
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Could not replace " + file);
+            }
+            if (entry.isJournal()) {
+                MedicineListSnapshot.snapshotFile(file).delete();
+                AdherenceStats.checkpointFile(file).delete();
+            }
+            restored += written;
+        }
+        RESTORE_TIME.recordSince(start);
+        return restored;
+    }
+
+    /**
+     * Restores the latest backup on the backup thread. Nothing is opened afterwards; the
+     * process is restarted so the store is opened from the restored files.
+     *
+     * @param backupDir Repository folder.
+     * @param storeDir  Folder to restore into; the store must not be open.
+     * @return Future completed with the bytes restored.
+     */
+    public static CompletableFuture<Long> restoreLatestAsync(File backupDir, File storeDir) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (BackupRepository repository = new BackupRepository(backupDir)) {
+                BackupManifest latest = repository.latest();
+                if (latest == null) {
+                    throw new IOException("No backup in " + backupDir);
+                }
+                return restore(repository, latest, storeDir);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, BACKUP_EXECUTOR);
+    }
+
+    /**
+     * Backs up a plain file, or takes its entry over from the previous backup if its size
+     * and modification time did not change.
+     */
+    private static BackupManifest.FileEntry backupFile(File file, BackupManifest.FileEntry previous,
+                                                      Progress progress) throws IOException {
+        long lastModified = file.lastModified();
+        if (previous != null && !previous.isJournal() && previous.getLength() == file.length()
+                && previous.getLastModified() == lastModified) {
+            progress.filesReused++;
+            return previous;
+        }
+        progress.chunks = new ArrayList<>();
+        long length;
+        try (InputStream in = new FileInputStream(file)) {
+            length = ContentChunker.split(in, progress);
+        }
+        return new BackupManifest.FileEntry(file.getName(), false, length, lastModified, 0, progress.chunks);
+    }
+
+    /**
+     * Backs up a reminder journal up to the end of its current snapshot. Within a generation
+     * the journal only grows, so the chunks of the previous backup are kept and chunking
+     * resumes at the start of its last chunk, which gives the same boundaries as chunking the
+     * whole file again.
+     */
+    private static BackupManifest.FileEntry backupJournal(File file, BackupManifest.FileEntry previous,
+                                                         Progress progress) throws IOException {
+        MedicineJournal journal = MedicineJournal.getInstance(file);
+        for (int attempt = 0; attempt < JOURNAL_ATTEMPTS; attempt++) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                // The channel stays on this file even if a compaction replaces it; compare
+                // generations to be sure the snapshot describes the file that was opened
+                ByteBuffer header = ByteBuffer.allocate(MedicineFileFormat.HEADER_SIZE);
+                while (header.hasRemaining()) {
+                    if (channel.read(header, header.position()) < 0) {
+                        throw new IOException("Journal header truncated: " + file);
+                    }
+                }
+                long generation = header.getLong(4 + 2);
+                JournalSnapshot snapshot = journal.snapshot();
+                if (snapshot.getGeneration() != generation) {
+                    continue;
+                }
+                long length = snapshot.getLength();
+                long lastModified = file.lastModified();
+
+                progress.chunks = new ArrayList<>();
+                long resumeAt = 0;
+                if (previous != null && previous.isJournal() && previous.getGeneration() == generation
+                        && previous.getLength() <= length && !previous.getChunks().isEmpty()) {
+                    List<BackupManifest.ChunkRef> kept = previous.getChunks();
+                    if (previous.getLength() == length) {
+                        progress.filesReused++;
+                        return previous;
+                    }
+                    kept = kept.subList(0, kept.size() - 1);
+                    progress.chunks.addAll(kept);
+                    for (BackupManifest.ChunkRef chunk : kept) {
+                        resumeAt += chunk.getLength();
+                    }
+                }
+                ContentChunker.split(new RangeInputStream(channel, resumeAt, length), progress);
+                return new BackupManifest.FileEntry(file.getName(), true, length, lastModified, generation,
+                        progress.chunks);
+            }
+        }
+        throw new IOException("Journal kept being compacted during backup: " + file);
+    }
+
+    private static BackupManifest.FileEntry previousEntry(BackupManifest previous, File file) {
+        return previous == null ? null : previous.getFile(file.getName());
+    }
+
+    /**
+     * Stream over a range of a file made of positioned reads.
+     */
+    private static final class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        RangeInputStream(FileChannel channel, long position, long end) {
+            this.channel = channel;
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) throws IOException {
+            long remaining = end - position;
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = channel.read(ByteBuffer.wrap(bytes, offset, (int) Math.min(count, remaining)), position);
+            if (read < 0) {
+                throw new IOException("Journal shorter than its snapshot");
+            }
+            position += read;
+            return read;
+        }
+    }
+}
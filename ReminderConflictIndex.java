@@ -0,0 +1,370 @@
+package com.example.myapplication1;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ReminderConflictIndex class.
+ * <p>
+ * Hash indexes used to vet a new reminder before it is saved. Exact duplicates, reminders
+ * with the same normalized name, time and days, are found with one hash lookup on that key.
+ * Conflicts, reminders of the same medicine with a dose within a time window of one of the
+ * new reminder's doses, are found by comparing the new reminder with only the reminders of
+ * the same name, taken from a second hash index, so a check never scans the store.
+ * With a {@link DrugInteractionDatabase} installed, a check also looks up interactions
+ * between the new medicine and every other medicine of the patient.
+ * <p>
+ * Doses follow the rules of {@link DueTimeIndex}: n doses 24/n hours apart on each selected
+ * day, so two reminders on neighbouring days can conflict across midnight.
+ * <p>
+ * The index is built with one scan of the journal and then follows its puts and deletes.
+ * {@link #checkAsync} runs checks one at a time and reserves a clear reminder in the index
+ * right away, so a double tap is caught even before the first save reaches the journal.
+ * All methods are thread-safe.
+ */
+public class ReminderConflictIndex implements MedicineJournal.ChangeListener {
+
+    // Window used by the Add Medicine form, in minutes either side of a dose
+    public static final int DEFAULT_WINDOW_MINUTES = 60;
+
+    // One index per reminder file, shared by all screens in the process
+    private static final Map<String, ReminderConflictIndex> INSTANCES = new HashMap<>();
+
+    // Background thread shared by all indexes, building them and running checks in order
+    private static final ExecutorService CHECK_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ReminderConflictIndex");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<Key, Integer> exact = new HashMap<>();                   // key -> reminders
+    private final Map<String, List<MedicineRecord>> byName = new HashMap<>();  // name -> reminders
+    private final Map<Long, MedicineRecord> byRecord = new HashMap<>();        // id -> reminder
+
+    /**
+     * Result of a check.
+     */
+    public static final class Check {
+        private final boolean duplicate;
+        private final List<MedicineRecord> conflicts;
+        private final List<DrugInteractionDatabase.Interaction> interactions;
+
+        Check(boolean duplicate, List<MedicineRecord> conflicts,
+              List<DrugInteractionDatabase.Interaction> interactions) {
+            this.duplicate = duplicate;
+            this.conflicts = conflicts;
+            this.interactions = interactions;
+        }
+
+        /**
+         * @return True if an identical reminder exists; nothing was reserved.
+         */
+        public boolean isDuplicate() {
+            return duplicate;
+        }
+
+        /**
+         * @return Same-name reminders with a dose within the window; empty if the reminder was
+         * clear and has been reserved.
+         */
+        public List<MedicineRecord> getConflicts() {
+            return conflicts;
+        }
+
+        /**
+         * @return Interactions with the patient's other medicines, worst first; empty if there
+         * are none or no interaction database is installed.
+         */
+        public List<DrugInteractionDatabase.Interaction> getInteractions() {
+            return interactions;
+        }
+
+        /**
+         * @return True if the reminder was not a duplicate and has no conflicts or interactions.
+         */
+        public boolean isClear() {
+            return !duplicate && conflicts.isEmpty() && interactions.isEmpty();
+        }
+    }
+
+    /**
+     * Returns the shared index for a reminder file, building it and attaching it to the
+     * journal on first use. The first call scans the file and should not run on the UI thread.
+     *
+     * @param file Reminder file.
+     * @return Shared index.
+     * @throws IOException If the journal cannot be opened or read.
+     */
+    public static ReminderConflictIndex getInstance(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        synchronized (INSTANCES) {
+            ReminderConflictIndex index = INSTANCES.get(key);
+            if (index == null) {
+                index = new ReminderConflictIndex();
+                index.attach(MedicineJournal.getInstance(file));
+                INSTANCES.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Builds the shared index for a file in the background, so that the first check
+     * does not have to wait for the scan.
+     *
+     * @param file Reminder file.
+     */
+    public static void preload(File file) {
+        CHECK_EXECUTOR.execute(() -> {
+            try {
+                getInstance(file);
+            } catch (IOException e) {
+                Metrics.recordError("conflicts.index", e);
+            }
+        });
+    }
+
+    /**
+     * Checks a new reminder on the background thread, see {@link #check}. Checks run one at
+     * a time in the order they were requested.
+     *
+     * @param file             Reminder file the reminder is about to be saved to.
+     * @param candidate        New reminder.
+     * @param windowMinutes    Conflict window in minutes either side of a dose.
+     * @param interactionsFile Drug interaction database, skipped if it does not exist.
+     * @return Future completed with the result of the check.
+     */
+    public static CompletableFuture<Check> checkAsync(File file, MedicineRecord candidate, int windowMinutes,
+                                                      File interactionsFile) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return getInstance(file).check(candidate, windowMinutes,
+                        DrugInteractionDatabase.getInstance(interactionsFile));
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, CHECK_EXECUTOR);
+    }
+
+    /**
+     * Indexes every record of a journal and keeps following its changes.
+     *
+     * @param journal Journal to follow.
+     * @throws IOException If the journal cannot be read.
+     */
+    public void attach(MedicineJournal journal) throws IOException {
+        journal.readAllAndListen(this);
+    }
+
+    /**
+     * Stops following a journal. Indexed reminders are kept.
+     *
+     * @param journal Journal to detach from.
+     */
+    public void detach(MedicineJournal journal) {
+        journal.removeChangeListener(this);
+    }
+
+    /**
+     * Checks a new reminder. A clear reminder is added to the index right away, so that the
+     * same reminder submitted again is reported as a duplicate even before it is saved.
+     *
+     * @param candidate     New reminder.
+     * @param windowMinutes Conflict window in minutes either side of a dose.
+     * @param interactions  Drug interaction database, or null to skip the interaction check.
+     * @return Result of the check.
+     */
+    public synchronized Check check(MedicineRecord candidate, int windowMinutes,
+                                    DrugInteractionDatabase interactions) {
+        if (findDuplicate(candidate)) {
+            return new Check(true, Collections.emptyList(), Collections.emptyList());
+        }
+        List<MedicineRecord> conflicts = findConflicts(candidate, windowMinutes);
+        List<DrugInteractionDatabase.Interaction> found = interactions == null
+                ? Collections.emptyList()
+                : interactions.check(candidate.getName(), medicineNames());
+        Check check = new Check(false, conflicts, found);
+        if (check.isClear()) {
+            add(candidate);
+        }
+        return check;
+    }
+
+    /**
+     * @return One stored name of every distinct medicine in the index.
+     */
+    public synchronized List<String> medicineNames() {
+        List<String> names = new ArrayList<>(byName.size());
+        for (List<MedicineRecord> sameName : byName.values()) {
+            names.add(sameName.get(0).getName());
+        }
+        return names;
+    }
+
+    /**
+     * @param candidate New reminder.
+     * @return True if another reminder has the same normalized name, time and days.
+     */
+    public synchronized boolean findDuplicate(MedicineRecord candidate) {
+        MedicineRecord indexed = byRecord.get(candidate.getId());
+        int ownUses = indexed != null && Key.of(indexed).equals(Key.of(candidate)) ? 1 : 0;
+        return exact.getOrDefault(Key.of(candidate), 0) > ownUses;
+    }
+
+    /**
+     * Returns the other reminders of the same medicine with a dose within a window of one
+     * of the candidate's doses. Only reminders with the same normalized name are compared.
+     *
+     * @param candidate     New reminder.
+     * @param windowMinutes Window in minutes either side of a dose.
+     * @return Conflicting reminders, empty if there are none.
+     */
+    public synchronized List<MedicineRecord> findConflicts(MedicineRecord candidate, int windowMinutes) {
+        List<MedicineRecord> sameName = byName.get(MedicineNameIndex.normalize(candidate.getName()));
+        if (sameName == null) {
+            return Collections.emptyList();
+        }
+        List<MedicineRecord> conflicts = new ArrayList<>();
+        int[] doses = null;
+        for (MedicineRecord other : sameName) {
+            if (other.getId() == candidate.getId()) {
+                continue;
+            }
+            if (doses == null) {
+                doses = weekDoses(candidate);
+            }
+            if (closestDistance(doses, weekDoses(other)) <= windowMinutes) {
+                conflicts.add(other);
+            }
+        }
+        return conflicts;
+    }
+
+    /**
+     * Indexes a record, replacing the version indexed before.
+     *
+     * @param record Record to index.
+     */
+    public synchronized void add(MedicineRecord record) {
+        remove(record.getId());
+        String name = MedicineNameIndex.normalize(record.getName());
+        exact.merge(Key.of(record), 1, Integer::sum);
+        byName.computeIfAbsent(name, k -> new ArrayList<>(1)).add(record);
+        byRecord.put(record.getId(), record);
+    }
+
+    /**
+     * Drops a record, e.g. one that was reserved by {@link #check} but could not be saved.
+     *
+     * @param id Record id.
+     */
+    public synchronized void remove(long id) {
+        MedicineRecord record = byRecord.remove(id);
+        if (record == null) {
+            return;
+        }
+        exact.computeIfPresent(Key.of(record), (k, uses) -> uses == 1 ? null : uses - 1);
+        String name = MedicineNameIndex.normalize(record.getName());
+        List<MedicineRecord> sameName = byName.get(name);
+        sameName.remove(record);
+        if (sameName.isEmpty()) {
+            byName.remove(name);
+        }
+    }
+
+    /**
+     * @return Number of indexed reminders.
+     */
+    public synchronized int size() {
+        return byRecord.size();
+    }
+
+    @Override
+    public void onPut(MedicineRecord record) {
+        add(record);
+    }
+
+    @Override
+    public void onDelete(long id) {
+        remove(id);
+    }
+
+    /**
+     * @return Sorted minutes of the week of every dose of a reminder; none for a reminder
+     * with no doses a day, which can only come from sync.
+     */
+    private static int[] weekDoses(MedicineRecord record) {
+        int[] doses = DoseTime.weekMinutes(record);
+        Arrays.sort(doses);
+        return doses;
+    }
+
+    /**
+     * Returns the smallest distance between a dose of one list and a dose of the other,
+     * going around the end of the week, with one merge pass over both sorted lists.
+     */
+    private static int closestDistance(int[] a, int[] b) {
+        if (a.length == 0 || b.length == 0) {
+            return Integer.MAX_VALUE;
+        }
+        int best = Integer.MAX_VALUE;
+        int i = 0, j = 0;
+        while (i < a.length && j < b.length) {
+            int distance = Math.abs(a[i] - b[j]);
+            best = Math.min(best, Math.min(distance, DueTimeIndex.MINUTES_PER_WEEK - distance));
+            if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        // Pairs across the end of the week
+        int wrap = DueTimeIndex.MINUTES_PER_WEEK - Math.abs(a[a.length - 1] - b[0]);
+        best = Math.min(best, Math.min(wrap, DueTimeIndex.MINUTES_PER_WEEK - Math.abs(b[b.length - 1] - a[0])));
+        return best;
+    }
+
+    /**
+     * Hash key of a reminder: normalized name, minute of day and day mask.
+     */
+    private static final class Key {
+        final String name;
+        final int minuteOfDay;
+        final int dayMask;
+        final int hash;
+
+        private Key(String name, int minuteOfDay, int dayMask) {
+            this.name = name;
+            this.minuteOfDay = minuteOfDay;
+            this.dayMask = dayMask;
+            this.hash = (name.hashCode() * 31 + minuteOfDay) * 31 + dayMask;
+        }
+
+        static Key of(MedicineRecord record) {
+            return new Key(MedicineNameIndex.normalize(record.getName()), record.getMinuteOfDay(),
+                    record.getDayMask() & DoseTime.ALL_DAYS);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return minuteOfDay == other.minuteOfDay && dayMask == other.dayMask && name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
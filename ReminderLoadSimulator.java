@@ -0,0 +1,844 @@
+package com.example.myapplication1;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * ReminderLoadSimulator class.
+ * <p>
+ * Headless load simulation of the reminder engine on a plain JVM: thousands of residents, a
+ * year of schedules and a steady stream of edits, run against the real journal, scheduler and
+ * dose event log with a {@link VirtualClock}, so a simulated year takes minutes instead of a
+ * year. Every simulated minute it
+ * <ul>
+ * <li>performs the saves, edits, deletes and list loads that fall into it, with reminders
+ * built from form input the way the Add Medicine form builds them and checked by
+ * {@link MedicineValidator};</li>
+ * <li>schedules every saved or edited reminder and unschedules deleted ones;</li>
+ * <li>fires the doses that are due, which records a {@link DoseEvent#FIRED} event each;</li>
+ * <li>records the outcomes that residents report, taken, late or skipped, some time after
+ * their dose fired; a share of doses gets no outcome at all.</li>
+ * </ul>
+ * After each simulated day it reports the operations done, their throughput in wall-clock
+ * time, the p50, p99 and maximum latency of each kind of operation, the heap in use and the
+ * size of the store.
+ * <p>
+ * All choices come from one {@link Random} seeded by the configuration and reminder ids are
+ * counted up, so a seed always replays the same workload. Every day's report carries a digest
+ * of the workload so far; two runs with different code do the same work exactly when the
+ * digests match, which makes the reports usable for bisecting a performance regression.
+ * Only the timings, and background work such as journal compaction and event block writes,
+ * differ between runs.
+ * <p>
+ * Residents are spread over a fixed number of reminder files, so that ten thousand residents
+ * do not need ten thousand open journals and event logs; a list load reads the whole file of
+ * the resident. Setting as many stores as residents gives every resident their own file, as
+ * {@link PatientDirectory} does. Run with
+ * {@code java com.example.myapplication1.ReminderLoadSimulator --residents=10000 --days=365}.
+ */
+public final class ReminderLoadSimulator {
+
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+    private static final long MILLIS_PER_DAY = DoseTime.MINUTES_PER_DAY * MILLIS_PER_MINUTE;
+
+    // Latest an outcome is reported after its dose fired, in minutes
+    private static final int MAX_RESPONSE_MINUTES = 180;
+
+    // Kinds of form operations, in the order they are carried out within a minute
+    private static final int OP_ADD = 0;
+    private static final int OP_EDIT = 1;
+    private static final int OP_DELETE = 2;
+    private static final int OP_LOAD = 3;
+
+    // Base of the digest kinds of dose outcomes, followed by the DoseEvent type
+    private static final int OP_OUTCOME = 4;
+
+    // Sample names for reminders, mixed lengths and one non-ASCII name
+    private static final String[] NAMES = {
+            "Aspirin", "Ibuprofen", "Paracetamol", "Amoxicillin", "Vitamin D",
+            "Metformin", "Omeprazole", "Levothyroxine", "Atorvastatin", "Şurup"
+    };
+
+    // Latencies of one simulated day, reset after each report
+    private static final Metrics.Histogram SAVE_TIME = Metrics.histogram("sim.save_us");
+    private static final Metrics.Histogram DELETE_TIME = Metrics.histogram("sim.delete_us");
+    private static final Metrics.Histogram LOAD_TIME = Metrics.histogram("sim.load_us");
+    private static final Metrics.Histogram SCHEDULE_TIME = Metrics.histogram("sim.schedule_us");
+    private static final Metrics.Histogram FIRE_TIME = Metrics.histogram("sim.fire_us");
+    private static final Metrics.Histogram RECORD_TIME = Metrics.histogram("sim.record_us");
+
+    // Names and histograms of the latency columns of a day report
+    private static final String[] LATENCY_NAMES = {"save", "delete", "load", "schedule", "fire", "record"};
+    private static final Metrics.Histogram[] LATENCIES = {
+            SAVE_TIME, DELETE_TIME, LOAD_TIME, SCHEDULE_TIME, FIRE_TIME, RECORD_TIME
+    };
+
+    // Multiplier of the FNV-1a hash used for the workload digest
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private final Config config;
+    private final Random random;
+    private final VirtualClock clock;
+    private final Store[] stores;
+    private final List<List<Long>> residents;           // reminder ids of every resident
+    private final List<List<Outcome>> pendingOutcomes;  // ring of outcomes by due minute
+    private final List<ScheduledDose> fired = new ArrayList<>();
+    private long nextId = 1;
+    private long digest = 0xCBF29CE484222325L;
+    private int reminderCount;
+    private long eventCount;
+    private long rejectedCount;
+
+    /**
+     * Settings of a simulation. Every setter returns the configuration for chaining.
+     */
+    public static final class Config {
+        private int residents = 10_000;
+        private int days = 365;
+        private long seed = 1;
+        private int stores = 64;
+        private int remindersPerResident = 3;
+        private int addsPerDay = 200;
+        private int editsPerDay = 1_000;
+        private int deletesPerDay = 200;
+        private int loadsPerDay = 5_000;
+        private int takenPercent = 80;
+        private int latePercent = 10;
+        private int skippedPercent = 5;
+        private ZoneId zone = ZoneId.of("UTC");
+        private LocalDate startDate = LocalDate.of(2026, 1, 5);
+        private File dir;
+        private boolean gcBeforeSample;
+
+        /**
+         * Parses options of the form "--name=value", e.g. "--residents=10000". Names are
+         * those of the setters without "set", in lower case with dashes, e.g.
+         * "--edits-per-day"; "--gc" takes no value.
+         *
+         * @param args Command line options.
+         * @return Configuration with the defaults for options not given.
+         * @throws IllegalArgumentException If an option is unknown or has an invalid value.
+         */
+        public static Config parse(String[] args) {
+            Config config = new Config();
+            for (String arg : args) {
+                if (!arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown argument: " + arg);
+                }
+                int equals = arg.indexOf('=');
+                String name = equals < 0 ? arg.substring(2) : arg.substring(2, equals);
+                String value = equals < 0 ? "" : arg.substring(equals + 1);
+                try {
+                    switch (name) {
+                        case "residents": config.setResidents(Integer.parseInt(value)); break;
+                        case "days": config.setDays(Integer.parseInt(value)); break;
+                        case "seed": config.setSeed(Long.parseLong(value)); break;
+                        case "stores": config.setStores(Integer.parseInt(value)); break;
+                        case "reminders-per-resident": config.setRemindersPerResident(Integer.parseInt(value)); break;
+                        case "adds-per-day": config.setAddsPerDay(Integer.parseInt(value)); break;
+                        case "edits-per-day": config.setEditsPerDay(Integer.parseInt(value)); break;
+                        case "deletes-per-day": config.setDeletesPerDay(Integer.parseInt(value)); break;
+                        case "loads-per-day": config.setLoadsPerDay(Integer.parseInt(value)); break;
+                        case "taken-percent": config.setTakenPercent(Integer.parseInt(value)); break;
+                        case "late-percent": config.setLatePercent(Integer.parseInt(value)); break;
+                        case "skipped-percent": config.setSkippedPercent(Integer.parseInt(value)); break;
+                        case "zone": config.setZone(ZoneId.of(value)); break;
+                        case "start": config.setStartDate(LocalDate.parse(value)); break;
+                        case "dir": config.setDir(new File(value)); break;
+                        case "gc": config.setGcBeforeSample(true); break;
+                        default: throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                } catch (NumberFormatException | DateTimeException e) {
+                    throw new IllegalArgumentException("Invalid value of " + arg, e);
+                }
+            }
+            config.check();
+            return config;
+        }
+
+        public Config setResidents(int residents) {
+            this.residents = residents;
+            return this;
+        }
+
+        public Config setDays(int days) {
+            this.days = days;
+            return this;
+        }
+
+        public Config setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @param stores Reminder files the residents are spread over.
+         * @return This configuration.
+         */
+        public Config setStores(int stores) {
+            this.stores = stores;
+            return this;
+        }
+
+        /**
+         * @param remindersPerResident Average reminders a resident starts with.
+         * @return This configuration.
+         */
+        public Config setRemindersPerResident(int remindersPerResident) {
+            this.remindersPerResident = remindersPerResident;
+            return this;
+        }
+
+        public Config setAddsPerDay(int addsPerDay) {
+            this.addsPerDay = addsPerDay;
+            return this;
+        }
+
+        public Config setEditsPerDay(int editsPerDay) {
+            this.editsPerDay = editsPerDay;
+            return this;
+        }
+
+        public Config setDeletesPerDay(int deletesPerDay) {
+            this.deletesPerDay = deletesPerDay;
+            return this;
+        }
+
+        public Config setLoadsPerDay(int loadsPerDay) {
+            this.loadsPerDay = loadsPerDay;
+            return this;
+        }
+
+        /**
+         * @param takenPercent Share of fired doses taken on time.
+         * @return This configuration.
+         */
+        public Config setTakenPercent(int takenPercent) {
+            this.takenPercent = takenPercent;
+            return this;
+        }
+
+        /**
+         * @param latePercent Share of fired doses taken late.
+         * @return This configuration.
+         */
+        public Config setLatePercent(int latePercent) {
+            this.latePercent = latePercent;
+            return this;
+        }
+
+        /**
+         * @param skippedPercent Share of fired doses skipped; the rest get no outcome.
+         * @return This configuration.
+         */
+        public Config setSkippedPercent(int skippedPercent) {
+            this.skippedPercent = skippedPercent;
+            return this;
+        }
+
+        public Config setZone(ZoneId zone) {
+            this.zone = zone;
+            return this;
+        }
+
+        /**
+         * @param startDate First simulated day, starting at midnight in the zone.
+         * @return This configuration.
+         */
+        public Config setStartDate(LocalDate startDate) {
+            this.startDate = startDate;
+            return this;
+        }
+
+        /**
+         * @param dir Folder for the reminder files, or null for a temporary folder that is
+         *            deleted afterwards.
+         * @return This configuration.
+         */
+        public Config setDir(File dir) {
+            this.dir = dir;
+            return this;
+        }
+
+        /**
+         * @param gcBeforeSample True to collect garbage before the heap in use is sampled,
+         *                       which makes the memory column steadier but costs time.
+         * @return This configuration.
+         */
+        public Config setGcBeforeSample(boolean gcBeforeSample) {
+            this.gcBeforeSample = gcBeforeSample;
+            return this;
+        }
+
+        private void check() {
+            if (residents < 1 || days < 0 || stores < 1 || remindersPerResident < 0
+                    || addsPerDay < 0 || editsPerDay < 0 || deletesPerDay < 0 || loadsPerDay < 0
+                    || takenPercent < 0 || latePercent < 0 || skippedPercent < 0
+                    || takenPercent + latePercent + skippedPercent > 100) {
+                throw new IllegalArgumentException("Invalid simulation settings: " + this);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "residents=" + residents + " days=" + days + " seed=" + seed + " stores=" + stores
+                    + " reminders/resident=" + remindersPerResident + " adds/day=" + addsPerDay
+                    + " edits/day=" + editsPerDay + " deletes/day=" + deletesPerDay
+                    + " loads/day=" + loadsPerDay + " taken/late/skipped%=" + takenPercent + "/"
+                    + latePercent + "/" + skippedPercent + " zone=" + zone + " start=" + startDate;
+        }
+    }
+
+    /**
+     * Results of one simulated day.
+     */
+    public static final class DayReport {
+        private final int day;
+        private final long operations;
+        private final long wallNanos;
+        private final long[][] latencies;  // p50, p99 and max of each latency column, µs
+        private final long heapBytes;
+        private final int reminders;
+        private final long events;
+        private final long storeBytes;
+        private final long digest;
+
+        DayReport(int day, long operations, long wallNanos, long[][] latencies, long heapBytes,
+                  int reminders, long events, long storeBytes, long digest) {
+            this.day = day;
+            this.operations = operations;
+            this.wallNanos = wallNanos;
+            this.latencies = latencies;
+            this.heapBytes = heapBytes;
+            this.reminders = reminders;
+            this.events = events;
+            this.storeBytes = storeBytes;
+            this.digest = digest;
+        }
+
+        /**
+         * @return Simulated day, counting from 0.
+         */
+        public int getDay() {
+            return day;
+        }
+
+        /**
+         * @return Saves, deletes, loads, doses fired and outcomes recorded during the day.
+         */
+        public long getOperations() {
+            return operations;
+        }
+
+        /**
+         * @return Wall-clock time the day took to simulate, in nanoseconds.
+         */
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        /**
+         * @return Operations per wall-clock second.
+         */
+        public double getThroughput() {
+            return wallNanos == 0 ? 0 : operations * 1e9 / wallNanos;
+        }
+
+        /**
+         * @param kind       Index into "save", "delete", "load", "schedule", "fire", "record".
+         * @param percentile 50 or 99, or 100 for the maximum.
+         * @return Upper bound of the latency in microseconds, 0 if there was no such operation.
+         */
+        public long getLatency(int kind, int percentile) {
+            return latencies[kind][percentile == 50 ? 0 : percentile == 99 ? 1 : 2];
+        }
+
+        /**
+         * @return Heap in use at the end of the day.
+         */
+        public long getHeapBytes() {
+            return heapBytes;
+        }
+
+        /**
+         * @return Reminders in the store at the end of the day.
+         */
+        public int getReminders() {
+            return reminders;
+        }
+
+        /**
+         * @return Dose events recorded since the start of the simulation.
+         */
+        public long getEvents() {
+            return events;
+        }
+
+        /**
+         * @return Bytes of all reminder files and event logs.
+         */
+        public long getStoreBytes() {
+            return storeBytes;
+        }
+
+        /**
+         * @return Digest of the workload up to the end of the day; equal for equal workloads.
+         */
+        public long getDigest() {
+            return digest;
+        }
+
+        /**
+         * @return Column titles matching {@link #toString()}.
+         */
+        public static String header() {
+            StringBuilder header = new StringBuilder(
+                    " day      ops     ops/s  heap MB  reminders     events  store MB");
+            for (String name : LATENCY_NAMES) {
+                header.append("  ").append(name).append(" p50/p99/max us");
+            }
+            return header.append("  digest").toString();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder row = new StringBuilder(String.format(Locale.ROOT,
+                    "%4d %8d %9.0f %8.1f %10d %10d %9.1f", day, operations, getThroughput(),
+                    heapBytes / 1048576.0, reminders, events, storeBytes / 1048576.0));
+            for (int i = 0; i < LATENCY_NAMES.length; i++) {
+                row.append("  ").append(LATENCY_NAMES[i]).append(' ').append(latencies[i][0])
+                        .append('/').append(latencies[i][1]).append('/').append(latencies[i][2]);
+            }
+            return row.append("  ").append(String.format("%016x", digest)).toString();
+        }
+    }
+
+    /**
+     * Receives every day report as soon as the day is simulated.
+     */
+    public interface Listener {
+        void onDay(DayReport report);
+    }
+
+    /**
+     * Reminder file with its scheduler and event log.
+     */
+    private static final class Store {
+        final File file;
+        final MedicineJournal journal;
+        final DoseEventLog log;
+        final DoseScheduler scheduler;
+
+        Store(File file, VirtualClock clock) throws IOException {
+            this.file = file;
+            this.journal = new MedicineJournal(file);
+            this.log = new DoseEventLog(DoseEventLog.eventFile(file));
+            this.scheduler = new DoseScheduler(clock);
+            scheduler.setEventLog(log);
+        }
+    }
+
+    /**
+     * Outcome a resident reports for a dose that fired.
+     */
+    private static final class Outcome {
+        final Store store;
+        final ScheduledDose dose;
+        final boolean skipped;
+
+        Outcome(Store store, ScheduledDose dose, boolean skipped) {
+            this.store = store;
+            this.dose = dose;
+            this.skipped = skipped;
+        }
+    }
+
+    /**
+     * Creates the reminder files of a simulation, without any reminders yet.
+     *
+     * @param config Settings.
+     * @throws IOException If the files cannot be created.
+     */
+    public ReminderLoadSimulator(Config config) throws IOException {
+        config.check();
+        this.config = config;
+        this.random = new Random(config.seed);
+        this.clock = new VirtualClock(
+                config.startDate.atStartOfDay(config.zone).toInstant().toEpochMilli(), config.zone);
+        File dir = config.dir;
+        if (dir == null) {
+            dir = Files.createTempDirectory("reminder-sim").toFile();
+        } else if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        stores = new Store[config.stores];
+        for (int i = 0; i < stores.length; i++) {
+            File file = new File(dir, "store-" + i + ".dat");
+            if (file.exists() || DoseEventLog.eventFile(file).exists()) {
+                throw new IOException("Simulation folder is not empty: " + dir);
+            }
+            stores[i] = new Store(file, clock);
+        }
+        residents = new ArrayList<>(config.residents);
+        for (int i = 0; i < config.residents; i++) {
+            residents.add(new ArrayList<>());
+        }
+        pendingOutcomes = new ArrayList<>(MAX_RESPONSE_MINUTES + 1);
+        for (int i = 0; i <= MAX_RESPONSE_MINUTES; i++) {
+            pendingOutcomes.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Runs a simulation from the command line and prints one line per simulated day.
+     *
+     * @param args Options, see {@link Config#parse}.
+     * @throws IOException If the store cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        Config config = Config.parse(args);
+        System.out.println(config);
+        ReminderLoadSimulator simulator = new ReminderLoadSimulator(config);
+        try {
+            long start = System.nanoTime();
+            simulator.populate();
+            System.out.println(String.format(Locale.ROOT, "populated %d reminders in %.1f s",
+                    simulator.reminderCount, (System.nanoTime() - start) / 1e9));
+            System.out.println(DayReport.header());
+            List<DayReport> reports = simulator.run(System.out::println);
+            long operations = 0;
+            long wallNanos = 0;
+            long peakHeap = 0;
+            for (DayReport report : reports) {
+                operations += report.operations;
+                wallNanos += report.wallNanos;
+                peakHeap = Math.max(peakHeap, report.heapBytes);
+            }
+            System.out.println(String.format(Locale.ROOT,
+                    "%d days, %d ops in %.1f s, %.0f ops/s, peak heap %.1f MB, %d inputs rejected, digest %016x",
+                    reports.size(), operations, wallNanos / 1e9, wallNanos == 0 ? 0 : operations * 1e9 / wallNanos,
+                    peakHeap / 1048576.0, simulator.rejectedCount, simulator.digest));
+        } finally {
+            simulator.close();
+        }
+    }
+
+    /**
+     * Saves the starting reminders of every resident and schedules them. Not timed.
+     *
+     * @throws IOException If saving fails.
+     */
+    public void populate() throws IOException {
+        List<List<MedicineRecord>> records = new ArrayList<>(stores.length);
+        for (int i = 0; i < stores.length; i++) {
+            records.add(new ArrayList<>());
+        }
+        for (int resident = 0; resident < residents.size(); resident++) {
+            int count = config.remindersPerResident == 0 ? 0 : random.nextInt(2 * config.remindersPerResident) + 1;
+            for (int i = 0; i < count; i++) {
+                MedicineRecord record = fromForm(nextId++, NAMES[random.nextInt(NAMES.length)]);
+                if (record != null) {
+                    records.get(resident % stores.length).add(record);
+                    residents.get(resident).add(record.getId());
+                    hash(OP_ADD, record.getId());
+                }
+            }
+        }
+        for (int i = 0; i < stores.length; i++) {
+            List<MedicineJournal.Change> changes = new ArrayList<>(records.get(i).size());
+            for (MedicineRecord record : records.get(i)) {
+                changes.add(MedicineJournal.Change.put(record));
+            }
+            stores[i].journal.apply(changes);
+            for (MedicineRecord record : records.get(i)) {
+                stores[i].scheduler.add(record);
+            }
+            reminderCount += changes.size();
+        }
+    }
+
+    /**
+     * Simulates the configured number of days.
+     *
+     * @param listener Receives each day's report as soon as it is ready, may be null.
+     * @return Reports of all days.
+     * @throws IOException If the store cannot be read or written.
+     */
+    public List<DayReport> run(Listener listener) throws IOException {
+        List<DayReport> reports = new ArrayList<>(config.days);
+        for (int day = 0; day < config.days; day++) {
+            DayReport report = simulateDay(day);
+            reports.add(report);
+            if (listener != null) {
+                listener.onDay(report);
+            }
+        }
+        return reports;
+    }
+
+    /**
+     * Closes the reminder files, deleting them if they were in a temporary folder.
+     *
+     * @throws IOException If the last events cannot be written.
+     */
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Store store : stores) {
+            try {
+                store.journal.close();
+                store.log.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+            if (config.dir == null) {
+                store.file.delete();
+                DoseEventLog.eventFile(store.file).delete();
+                MedicineListSnapshot.snapshotFile(store.file).delete();
+            }
+        }
+        if (config.dir == null) {
+            stores[0].file.getParentFile().delete();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return Digest of the workload so far.
+     */
+    public long getDigest() {
+        return digest;
+    }
+
+    private DayReport simulateDay(int day) throws IOException {
+        Metrics.reset();
+        long dayStart = clock.millis();
+        int[] ops = planDay();
+        long operations = 0;
+        long start = System.nanoTime();
+        int next = 0;
+        for (int minute = 0; minute < DoseTime.MINUTES_PER_DAY; minute++) {
+            clock.set(dayStart + minute * MILLIS_PER_MINUTE);
+            long absoluteMinute = (long) day * DoseTime.MINUTES_PER_DAY + minute;
+            while (next < ops.length && ops[next] >>> 2 == minute) {
+                perform(ops[next++] & 3);
+                operations++;
+            }
+            operations += recordOutcomes(absoluteMinute);
+            operations += fireDoses(absoluteMinute);
+        }
+        long wallNanos = System.nanoTime() - start;
+        clock.set(dayStart + MILLIS_PER_DAY);
+
+        long[][] latencies = new long[LATENCIES.length][];
+        for (int i = 0; i < LATENCIES.length; i++) {
+            latencies[i] = new long[]{
+                    LATENCIES[i].percentile(50), LATENCIES[i].percentile(99), LATENCIES[i].percentile(100)};
+        }
+        if (config.gcBeforeSample) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long heapBytes = runtime.totalMemory() - runtime.freeMemory();
+        long storeBytes = 0;
+        for (Store store : stores) {
+            storeBytes += store.file.length() + DoseEventLog.eventFile(store.file).length();
+        }
+        return new DayReport(day, operations, wallNanos, latencies, heapBytes, reminderCount,
+                eventCount, storeBytes, digest);
+    }
+
+    /**
+     * Picks the minutes of the day's form operations.
+     *
+     * @return Operations sorted by minute, each packed as minute &lt;&lt; 2 | kind.
+     */
+    private int[] planDay() {
+        int[] ops = new int[config.addsPerDay + config.editsPerDay + config.deletesPerDay + config.loadsPerDay];
+        int n = 0;
+        n = plan(ops, n, config.addsPerDay, OP_ADD);
+        n = plan(ops, n, config.editsPerDay, OP_EDIT);
+        n = plan(ops, n, config.deletesPerDay, OP_DELETE);
+        plan(ops, n, config.loadsPerDay, OP_LOAD);
+        Arrays.sort(ops);
+        return ops;
+    }
+
+    private int plan(int[] ops, int n, int count, int kind) {
+        for (int i = 0; i < count; i++) {
+            ops[n++] = random.nextInt(DoseTime.MINUTES_PER_DAY) << 2 | kind;
+        }
+        return n;
+    }
+
+    private void perform(int kind) throws IOException {
+        int resident = random.nextInt(residents.size());
+        List<Long> ids = residents.get(resident);
+        Store store = stores[resident % stores.length];
+        switch (kind) {
+            case OP_ADD: {
+                MedicineRecord record = fromForm(nextId++, NAMES[random.nextInt(NAMES.length)]);
+                if (record != null) {
+                    save(store, record);
+                    ids.add(record.getId());
+                    reminderCount++;
+                }
+                hash(kind, record == null ? 0 : record.getId());
+                break;
+            }
+            case OP_EDIT: {
+                if (ids.isEmpty()) {
+                    hash(kind, 0);
+                    break;
+                }
+                long id = ids.get(random.nextInt(ids.size()));
+                MedicineRecord old = store.journal.get(id);
+                MedicineRecord record = fromForm(id, old.getName());
+                if (record != null) {
+                    save(store, record);
+                }
+                hash(kind, record == null ? 0 : id);
+                break;
+            }
+            case OP_DELETE: {
+                if (ids.isEmpty()) {
+                    hash(kind, 0);
+                    break;
+                }
+                long id = ids.remove(random.nextInt(ids.size()));
+                long start = Metrics.startTimer();
+                store.journal.delete(id);
+                DELETE_TIME.recordSince(start);
+                start = Metrics.startTimer();
+                store.scheduler.remove(id);
+                SCHEDULE_TIME.recordSince(start);
+                reminderCount--;
+                hash(kind, id);
+                break;
+            }
+            default: {
+                long start = Metrics.startTimer();
+                List<MedicineRecord> records = store.journal.readAll();
+                LOAD_TIME.recordSince(start);
+                hash(kind, records.size());
+                break;
+            }
+        }
+    }
+
+    private void save(Store store, MedicineRecord record) throws IOException {
+        long start = Metrics.startTimer();
+        store.journal.put(record);
+        SAVE_TIME.recordSince(start);
+        start = Metrics.startTimer();
+        store.scheduler.add(record);
+        SCHEDULE_TIME.recordSince(start);
+    }
+
+    /**
+     * Fires the doses due in every store and decides what their residents will report.
+     *
+     * @return Number of doses fired.
+     */
+    private int fireDoses(long absoluteMinute) {
+        int count = 0;
+        for (Store store : stores) {
+            long start = Metrics.startTimer();
+            int n = store.scheduler.pollDue(fired);
+            if (n == 0) {
+                continue;
+            }
+            FIRE_TIME.recordSince(start);
+            eventCount += n;
+            count += n;
+            for (ScheduledDose dose : fired) {
+                int roll = random.nextInt(100);
+                int delay;
+                boolean skipped = false;
+                if (roll < config.takenPercent) {
+                    delay = random.nextInt((int) (DoseEvent.LATE_AFTER_MILLIS / MILLIS_PER_MINUTE));
+                } else if (roll < config.takenPercent + config.latePercent) {
+                    delay = (int) (DoseEvent.LATE_AFTER_MILLIS / MILLIS_PER_MINUTE) + 1 + random.nextInt(
+                            MAX_RESPONSE_MINUTES - (int) (DoseEvent.LATE_AFTER_MILLIS / MILLIS_PER_MINUTE));
+                } else if (roll < config.takenPercent + config.latePercent + config.skippedPercent) {
+                    delay = random.nextInt(MAX_RESPONSE_MINUTES + 1);
+                    skipped = true;
+                } else {
+                    hash(OP_OUTCOME + DoseEvent.FIRED, dose.getRecord().getId());
+                    continue;
+                }
+                pendingOutcomes.get((int) ((absoluteMinute + delay) % pendingOutcomes.size()))
+                        .add(new Outcome(store, dose, skipped));
+                hash(OP_OUTCOME + (skipped ? DoseEvent.SKIPPED : DoseEvent.TAKEN), dose.getRecord().getId());
+            }
+            fired.clear();
+        }
+        return count;
+    }
+
+    /**
+     * Records the outcomes residents report in the current minute.
+     *
+     * @return Number of outcomes recorded.
+     */
+    private int recordOutcomes(long absoluteMinute) {
+        List<Outcome> due = pendingOutcomes.get((int) (absoluteMinute % pendingOutcomes.size()));
+        long now = clock.millis();
+        for (Outcome outcome : due) {
+            long start = Metrics.startTimer();
+            outcome.store.log.record(outcome.skipped
+                    ? DoseEvent.skipped(outcome.dose, now)
+                    : DoseEvent.taken(outcome.dose, now));
+            RECORD_TIME.recordSince(start);
+        }
+        int count = due.size();
+        eventCount += count;
+        due.clear();
+        return count;
+    }
+
+    /**
+     * Fills in the Add Medicine form with a random time, times per day and days, and checks
+     * it as the form does.
+     *
+     * @return Reminder, or null if the form would have refused the input.
+     */
+    private MedicineRecord fromForm(long id, String name) {
+        int minuteOfDay = random.nextInt(DoseTime.MINUTES_PER_DAY);
+        int roll = random.nextInt(100);
+        String timesPerDay = roll < 40 ? "1" : roll < 70 ? "2" : roll < 90 ? "3" : "4";
+        int dayMask = DoseTime.ALL_DAYS;
+        if (random.nextInt(100) >= 60) {
+            dayMask = 0;
+            for (int day = 0; day < 7; day++) {
+                if (random.nextBoolean()) {
+                    dayMask = DoseTime.withDay(dayMask, day);
+                }
+            }
+        }
+        if (MedicineValidator.checkName(name) != null
+                || MedicineValidator.checkTime(minuteOfDay) != null
+                || MedicineValidator.checkTimesPerDay(timesPerDay) != null
+                || MedicineValidator.checkDays(dayMask) != null) {
+            // Unchecked boxes only, the form asks again
+            rejectedCount++;
+            return null;
+        }
+        return new MedicineRecord(id, name, minuteOfDay, MedicineValidator.parseTimesPerDay(timesPerDay), dayMask);
+    }
+
+    private void hash(int kind, long value) {
+        digest = (digest ^ kind) * FNV_PRIME;
+        digest = (digest ^ value) * FNV_PRIME;
+    }
+}
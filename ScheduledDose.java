@@ -0,0 +1,45 @@
+package com.example.myapplication1;
+
+/**
+ * ScheduledDose class.
+ * <p>
+ * A single occurrence of a medicine reminder: which record, which dose of the day and when
+ * it is due. Produced by {@link DoseScheduler}.
+ */
+public final class ScheduledDose {
+
+    private final MedicineRecord record;
+    private final int doseIndex;
+    private final long fireAtMillis;
+
+    /**
+     * Creates a dose occurrence.
+     *
+     * @param record       Reminder the dose belongs to.
+     * @param doseIndex    Index of the dose within its day, 0 for the first dose.
+     * @param fireAtMillis Due time in epoch milliseconds.
+     */
+    public ScheduledDose(MedicineRecord record, int doseIndex, long fireAtMillis) {
+        this.record = record;
+        this.doseIndex = doseIndex;
+        this.fireAtMillis = fireAtMillis;
+    }
+
+    public MedicineRecord getRecord() {
+        return record;
+    }
+
+    public int getDoseIndex() {
+        return doseIndex;
+    }
+
+    public long getFireAtMillis() {
+        return fireAtMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ScheduledDose{id=" + record.getId() + ", dose=" + doseIndex
+                + ", at=" + fireAtMillis + "}";
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.myapplication1;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * SyncBatch class.
+ * <p>
+ * One message of the sync protocol. A device sends a request with the changes it pushes and
+ * the server cursor it has reached; the server answers with the changes made by other devices
+ * after that cursor, the new cursor, and whether more changes are waiting. Both directions
+ * carry at most {@link #MAX_CHANGES} changes, so a device that was offline for long catches up
+ * in several bounded round trips.
+ * <p>
+ * Messages are compressed with {@link Deflater}; records of one patient repeat the same
+ * names, times and node ids, so batches shrink to a fraction of their size. Layout inside the
+ * compressed stream, all numbers big-endian:
+ * <pre>
+ * int   magic "SYNB"
+ * short version
+ * long  node id (0 in responses), long cursor, boolean more
+ * int   change count, then the changes, see {@link SyncChange}
+ * </pre>
+ * Immutable.
+ */
+public final class SyncBatch {
+
+    // Maximum number of changes in one message
+    public static final int MAX_CHANGES = 256;
+
+    // Magic number of a message, ASCII "SYNB"
+    private static final int MAGIC = 0x53594E42;
+
+    // Current protocol version
+    private static final short VERSION = 1;
+
+    private final long nodeId;
+    private final long cursor;
+    private final boolean more;
+    private final List<SyncChange> changes;
+
+    private SyncBatch(long nodeId, long cursor, boolean more, List<SyncChange> changes) {
+        if (changes.size() > MAX_CHANGES) {
+            throw new IllegalArgumentException("Too many changes in one batch: " + changes.size());
+        }
+        this.nodeId = nodeId;
+        this.cursor = cursor;
+        this.more = more;
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    /**
+     * @param nodeId  Device sending the request.
+     * @param cursor  Server cursor reached by the device.
+     * @param changes Changes pushed, at most {@link #MAX_CHANGES}.
+     * @return Request.
+     */
+    public static SyncBatch request(long nodeId, long cursor, List<SyncChange> changes) {
+        return new SyncBatch(nodeId, cursor, false, changes);
+    }
+
+    /**
+     * @param cursor  Server cursor after the changes returned.
+     * @param more    True if more changes are waiting after the cursor.
+     * @param changes Changes pulled, at most {@link #MAX_CHANGES}.
+     * @return Response.
+     */
+    public static SyncBatch response(long cursor, boolean more, List<SyncChange> changes) {
+        return new SyncBatch(0, cursor, more, changes);
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public boolean hasMore() {
+        return more;
+    }
+
+    public List<SyncChange> getChanges() {
+        return changes;
+    }
+
+    /**
+     * @return Compressed message.
+     * @throws IOException If encoding fails.
+     */
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + changes.size() * 16);
+        Deflater deflater = new Deflater();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(nodeId);
+            out.writeLong(cursor);
+            out.writeBoolean(more);
+            out.writeInt(changes.size());
+            for (SyncChange change : changes) {
+                change.write(out);
+            }
+        } finally {
+            // A deflater passed in is not ended by the stream; free its native memory now
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param message Compressed message written by {@link #encode()}.
+     * @return Decoded batch.
+     * @throws IOException If the message is corrupt or of another version.
+     */
+    public static SyncBatch decode(byte[] message) throws IOException {
+        Inflater inflater = new Inflater();
+        try (DataInputStream in = new DataInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(message), inflater))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a sync message");
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported sync protocol version " + version);
+            }
+            long nodeId = in.readLong();
+            long cursor = in.readLong();
+            boolean more = in.readBoolean();
+            int count = in.readInt();
+            if (count < 0 || count > MAX_CHANGES) {
+                throw new IOException("Corrupt sync message: " + count + " changes");
+            }
+            List<SyncChange> changes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                changes.add(SyncChange.read(in));
+            }
+            return new SyncBatch(nodeId, cursor, more, changes);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.myapplication1;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * SyncChange class.
+ * <p>
+ * One reminder change exchanged during sync: the new state of a record, or its deletion,
+ * stamped with the {@link HybridLogicalClock} timestamp and the id of the device that made it.
+ * <p>
+ * Conflicts are resolved the same way on every device and on the server: the change with the
+ * larger timestamp wins, then the larger device id, then a delete over a put, then the larger
+ * record content. That is a total order, so all replicas end up with the same winner whatever
+ * order they see the changes in. Immutable.
+ */
+public final class SyncChange {
+
+    private final long id;
+    private final long timestamp;
+    private final long nodeId;
+    private final MedicineRecord record;  // null for a delete
+
+    /**
+     * Creates a change.
+     *
+     * @param id        Record id.
+     * @param timestamp Hybrid logical clock timestamp of the change.
+     * @param nodeId    Device that made the change.
+     * @param record    New state of the record, or null if it was deleted.
+     */
+    public SyncChange(long id, long timestamp, long nodeId, MedicineRecord record) {
+        if (record != null && record.getId() != id) {
+            throw new IllegalArgumentException("Record " + record.getId() + " for change of " + id);
+        }
+        this.id = id;
+        this.timestamp = timestamp;
+        this.nodeId = nodeId;
+        this.record = record;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return New state of the record, or null if the change is a delete.
+     */
+    public MedicineRecord getRecord() {
+        return record;
+    }
+
+    public boolean isDelete() {
+        return record == null;
+    }
+
+    /**
+     * @param other Competing change of the same record, may be null.
+     * @return True if this change wins over the other one.
+     */
+    public boolean winsOver(SyncChange other) {
+        return other == null || compare(timestamp, nodeId, isDelete(), contentHash(record),
+                other.timestamp, other.nodeId, other.isDelete(), contentHash(other.record)) > 0;
+    }
+
+    /**
+     * Compares two versions of a record by the conflict resolution order.
+     *
+     * @return Positive if the first version wins, negative if the second wins, 0 if they are equal.
+     */
+    static int compare(long timestamp, long nodeId, boolean delete, int hash,
+                       long otherTimestamp, long otherNodeId, boolean otherDelete, int otherHash) {
+        if (timestamp != otherTimestamp) {
+            return Long.compare(timestamp, otherTimestamp);
+        }
+        if (nodeId != otherNodeId) {
+            return Long.compare(nodeId, otherNodeId);
+        }
+        if (delete != otherDelete) {
+            return delete ? 1 : -1;
+        }
+        return Integer.compare(hash, otherHash);
+    }
+
+    /**
+     * @param record Record, or null for a delete.
+     * @return Hash of the record content, 0 for a delete.
+     */
+    static int contentHash(MedicineRecord record) {
+        return record == null ? 0 : record.hashCode();
+    }
+
+    /**
+     * Writes the change to a batch.
+     *
+     * @param out Output.
+     * @throws IOException If writing fails.
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeLong(id);
+        out.writeLong(timestamp);
+        out.writeLong(nodeId);
+        out.writeBoolean(record != null);
+        if (record != null) {
+            out.writeUTF(record.getName());
+            out.writeShort(record.getMinuteOfDay());
+            out.writeShort(record.getTimesPerDay());
+            out.writeByte(record.getDayMask());
+        }
+    }
+
+    /**
+     * Reads a change written by {@link #write}.
+     *
+     * @param in Input.
+     * @return Change.
+     * @throws IOException If reading fails or the record is invalid.
+     */
+    static SyncChange read(DataInput in) throws IOException {
+        long id = in.readLong();
+        long timestamp = in.readLong();
+        long nodeId = in.readLong();
+        MedicineRecord record = null;
+        if (in.readBoolean()) {
+            String name = in.readUTF();
+            int minuteOfDay = in.readShort();
+            int timesPerDay = in.readShort();
+            int dayMask = in.readByte() & 0xFF;
+            try {
+                record = new MedicineRecord(id, name, minuteOfDay, timesPerDay, dayMask);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid record in sync batch: " + e.getMessage(), e);
+            }
+        }
+        return new SyncChange(id, timestamp, nodeId, record);
+    }
+
+    @Override
+    public String toString() {
+        return "SyncChange{id=" + id + ", ts=" + timestamp + ", node=" + nodeId
+                + (record == null ? ", delete}" : ", " + record.toDisplayString() + "}");
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.myapplication1;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * SyncEngine class.
+ * <p>
+ * Delta sync of one medicine journal with the sync endpoint. Each round trip pushes up to
+ * {@link SyncBatch#MAX_CHANGES} records changed on this device since they were last sent and
+ * pulls the records other devices changed after this device's cursor; round trips repeat
+ * until both sides are drained. Only changed records cross the wire, in compressed batches.
+ * <p>
+ * Pulled changes are resolved against the local versions kept by {@link SyncState} and the
+ * winners are written to the journal as one batch, under the journal lock, so an edit made
+ * on this device at the same moment is either resolved against them or stamped after them.
+ * The state is saved after every sync.
+ * <p>
+ * Thread-safe.
+ */
+public final class SyncEngine {
+
+    // Syncs run one at a time, off the UI thread
+    private static final ExecutorService SYNC_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "SyncEngine");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Time of a whole sync, all round trips included
+    private static final Metrics.Histogram SYNC_TIME = Metrics.histogram("sync.sync_us");
+
+    // Compressed bytes sent and received
+    private static final Metrics.Counter BYTES_SENT = Metrics.counter("sync.bytes_sent");
+    private static final Metrics.Counter BYTES_RECEIVED = Metrics.counter("sync.bytes_received");
+
+    // Pulled changes that lost against a newer local version
+    private static final Metrics.Counter CONFLICTS_LOST = Metrics.counter("sync.conflicts_lost");
+
+    private final MedicineJournal journal;
+    private final SyncState state;
+    private final File stateFile;
+    private final String dataset;
+    private final SyncTransport transport;
+
+    /**
+     * Result of one {@link #sync()}.
+     */
+    public static final class Report {
+        private final int pushed;
+        private final int pulled;
+        private final int applied;
+        private final int roundTrips;
+        private final long bytesSent;
+        private final long bytesReceived;
+
+        Report(int pushed, int pulled, int applied, int roundTrips, long bytesSent, long bytesReceived) {
+            this.pushed = pushed;
+            this.pulled = pulled;
+            this.applied = applied;
+            this.roundTrips = roundTrips;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+        }
+
+        /**
+         * @return Local changes sent.
+         */
+        public int getPushed() {
+            return pushed;
+        }
+
+        /**
+         * @return Remote changes received.
+         */
+        public int getPulled() {
+            return pulled;
+        }
+
+        /**
+         * @return Remote changes that won and were written to the journal.
+         */
+        public int getApplied() {
+            return applied;
+        }
+
+        public int getRoundTrips() {
+            return roundTrips;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        @Override
+        public String toString() {
+            return "pushed " + pushed + ", pulled " + pulled + ", applied " + applied + " in "
+                    + roundTrips + " round trips, " + bytesSent + " B sent, " + bytesReceived + " B received";
+        }
+    }
+
+    /**
+     * Creates an engine over a journal whose state is already attached.
+     *
+     * @param journal   Journal to sync.
+     * @param state     Sync state attached to the journal.
+     * @param stateFile File the state is saved to.
+     * @param dataset   Data set of the journal on the endpoint, e.g. the patient id.
+     * @param transport Connection to the endpoint.
+     */
+    public SyncEngine(MedicineJournal journal, SyncState state, File stateFile, String dataset,
+                      SyncTransport transport) {
+        this.journal = journal;
+        this.state = state;
+        this.stateFile = stateFile;
+        this.dataset = dataset;
+        this.transport = transport;
+    }
+
+    /**
+     * Opens the shared journal of a file with its sync state and starts tracking changes.
+     *
+     * @param file      Journal file.
+     * @param dataset   Data set of the journal on the endpoint.
+     * @param transport Connection to the endpoint.
+     * @param clock     Wall clock for change timestamps.
+     * @return Engine.
+     * @throws IOException If the journal or the state cannot be read.
+     */
+    public static SyncEngine open(File file, String dataset, SyncTransport transport, Clock clock)
+            throws IOException {
+        MedicineJournal journal = MedicineJournal.getInstance(file);
+        File stateFile = SyncState.stateFile(file);
+        SyncState state = SyncState.load(stateFile, clock);
+        state.attach(journal);
+        return new SyncEngine(journal, state, stateFile, dataset, transport);
+    }
+
+    /**
+     * Pushes local changes and pulls remote ones until both sides are up to date.
+     *
+     * @return What was exchanged.
+     * @throws IOException If the endpoint cannot be reached or the journal cannot be written;
+     *                     changes not acknowledged are sent again by the next sync.
+     */
+    public synchronized Report sync() throws IOException {
+        long start = Metrics.startTimer();
+        int pushed = 0;
+        int pulled = 0;
+        int applied = 0;
+        int roundTrips = 0;
+        long sent = 0;
+        long received = 0;
+        boolean more;
+        try {
+            do {
+                List<SyncChange> push;
+                synchronized (journal) {
+                    push = state.dirtyChanges(journal, SyncBatch.MAX_CHANGES);
+                }
+                byte[] request = SyncBatch.request(state.getNodeId(), state.getCursor(), push).encode();
+                byte[] responseBytes = transport.exchange(dataset, request);
+                SyncBatch response = SyncBatch.decode(responseBytes);
+                state.acknowledge(push);
+                applied += applyRemote(response.getChanges());
+                state.setCursor(response.getCursor());
+
+                pushed += push.size();
+                pulled += response.getChanges().size();
+                roundTrips++;
+                sent += request.length;
+                received += responseBytes.length;
+                more = response.hasMore() || push.size() == SyncBatch.MAX_CHANGES;
+            } while (more);
+            if (applied > 0) {
+                journal.sync();
+            }
+        } finally {
+            // Keep what the finished round trips reached, also when a later one failed
+            state.save(stateFile);
+        }
+        BYTES_SENT.add(sent);
+        BYTES_RECEIVED.add(received);
+        SYNC_TIME.recordSince(start);
+        return new Report(pushed, pulled, applied, roundTrips, sent, received);
+    }
+
+    /**
+     * Runs {@link #sync()} on the sync thread.
+     *
+     * @return Future completed with the report.
+     */
+    public CompletableFuture<Report> syncAsync() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return sync();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, SYNC_EXECUTOR);
+    }
+
+    /**
+     * Stops tracking changes and saves the state.
+     *
+     * @throws IOException If the state cannot be saved.
+     */
+    public void close() throws IOException {
+        state.detach(journal);
+        state.save(stateFile);
+    }
+
+    /**
+     * @return Sync state of the journal.
+     */
+    public SyncState getState() {
+        return state;
+    }
+
+    /**
+     * Writes the pulled changes that win against the local versions.
+     *
+     * @return Number of changes written.
+     */
+    private int applyRemote(List<SyncChange> changes) throws IOException {
+        if (changes.isEmpty()) {
+            return 0;
+        }
+        synchronized (journal) {
+            List<MedicineJournal.Change> winners = new ArrayList<>(changes.size());
+            boolean written = false;
+            try {
+                for (SyncChange change : changes) {
+                    if (state.accept(change)) {
+                        winners.add(change.isDelete()
+                                ? MedicineJournal.Change.delete(change.getId())
+                                : MedicineJournal.Change.put(change.getRecord()));
+                    } else {
+                        CONFLICTS_LOST.increment();
+                    }
+                }
+                journal.apply(winners);
+                written = true;
+            } finally {
+                state.finishRemote(written);
+            }
+            return winners.size();
+        }
+    }
+}
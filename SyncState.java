@@ -0,0 +1,377 @@
+package com.example.myapplication1;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * SyncState class.
+ * <p>
+ * Sync bookkeeping of one medicine journal, kept in a file next to it: this device's node id,
+ * its {@link HybridLogicalClock}, the server cursor reached by the last sync, and for every
+ * record the timestamp and node of its latest version. Deleted records keep an entry as a
+ * tombstone, since the journal forgets them on compaction but other devices still have to
+ * learn about the delete. Entries changed on this device since they were last sent are dirty;
+ * only those are pushed, so a sync costs time proportional to what changed, not to the
+ * size of the journal.
+ * <p>
+ * Local changes are stamped by listening to the journal. Changes received from the server
+ * are announced with {@link #accept} before they are written, so the listener recognizes
+ * them and does not stamp them again. Entries hold a hash of the record content, which lets
+ * {@link #attach} find changes made while sync state was not being tracked, e.g. when the
+ * app was killed before the state was saved.
+ * <p>
+ * File layout, all numbers big-endian:
+ * <pre>
+ * int   magic "SYNC"
+ * short version
+ * long  node id, long clock, long cursor
+ * int   entry count
+ * per entry: long id, long timestamp, long node, byte flags, int content hash
+ * </pre>
+ * Thread-safe. Lock order is journal, then state.
+ */
+public final class SyncState implements MedicineJournal.ChangeListener {
+
+    // Suffix of the state file, appended to the journal file name
+    public static final String FILE_SUFFIX = ".sync";
+
+    // Magic number of the state file, ASCII "SYNC"
+    private static final int MAGIC = 0x53594E43;
+
+    // Current format version
+    private static final short VERSION = 1;
+
+    // Entry flags
+    private static final int FLAG_DELETED = 1;
+    private static final int FLAG_DIRTY = 2;
+
+    private final long nodeId;
+    private final HybridLogicalClock clock;
+    private final Map<Long, Entry> entries;
+    private final Set<Long> dirty;                                 // ids of entries not sent yet
+    private final Map<Long, Integer> expected = new HashMap<>();  // id -> content hash of a remote change
+    private final Map<Long, Entry> replaced = new HashMap<>();    // id -> entry before a remote change
+    private final Set<Long> replacedDirty = new HashSet<>();      // replaced entries that were dirty
+    private long cursor;
+
+    /**
+     * Latest known version of one record.
+     */
+    private static final class Entry {
+        final long timestamp;
+        final long node;
+        final int hash;          // content hash, 0 for a tombstone
+        final boolean deleted;
+
+        Entry(long timestamp, long node, int hash, boolean deleted) {
+            this.timestamp = timestamp;
+            this.node = node;
+            this.hash = hash;
+            this.deleted = deleted;
+        }
+    }
+
+    private SyncState(long nodeId, HybridLogicalClock clock, long cursor,
+                      Map<Long, Entry> entries, Set<Long> dirty) {
+        this.nodeId = nodeId;
+        this.clock = clock;
+        this.cursor = cursor;
+        this.entries = entries;
+        this.dirty = dirty;
+    }
+
+    /**
+     * @param journalFile Journal file.
+     * @return State file of the journal.
+     */
+    public static File stateFile(File journalFile) {
+        return new File(journalFile.getPath() + FILE_SUFFIX);
+    }
+
+    /**
+     * Loads the state of a journal, or creates a new one with a random node id if the journal
+     * was never synced.
+     *
+     * @param file  State file, see {@link #stateFile}.
+     * @param clock Wall clock for the hybrid logical clock.
+     * @return State.
+     * @throws IOException If the file exists but cannot be read.
+     */
+    public static SyncState load(File file, Clock clock) throws IOException {
+        if (!file.exists()) {
+            long nodeId = new SecureRandom().nextLong();
+            return new SyncState(nodeId, new HybridLogicalClock(clock, 0), 0,
+                    new HashMap<>(), new LinkedHashSet<>());
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a sync state file: " + file);
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported sync state version " + version);
+            }
+            long nodeId = in.readLong();
+            long last = in.readLong();
+            long cursor = in.readLong();
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Corrupt sync state header: " + file);
+            }
+            Map<Long, Entry> entries = new HashMap<>(count * 4 / 3 + 1);
+            Set<Long> dirty = new LinkedHashSet<>();
+            for (int i = 0; i < count; i++) {
+                long id = in.readLong();
+                long timestamp = in.readLong();
+                long node = in.readLong();
+                int flags = in.readByte();
+                int hash = in.readInt();
+                entries.put(id, new Entry(timestamp, node, hash, (flags & FLAG_DELETED) != 0));
+                if ((flags & FLAG_DIRTY) != 0) {
+                    dirty.add(id);
+                }
+            }
+            return new SyncState(nodeId, new HybridLogicalClock(clock, last), cursor, entries, dirty);
+        }
+    }
+
+    /**
+     * Writes the state, atomically replacing the file.
+     *
+     * @param file State file.
+     * @throws IOException If writing fails.
+     */
+    public synchronized void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(nodeId);
+            out.writeLong(clock.last());
+            out.writeLong(cursor);
+            out.writeInt(entries.size());
+            for (Map.Entry<Long, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                out.writeLong(e.getKey());
+                out.writeLong(entry.timestamp);
+                out.writeLong(entry.node);
+                out.writeByte((entry.deleted ? FLAG_DELETED : 0) | (dirty.contains(e.getKey()) ? FLAG_DIRTY : 0));
+                out.writeInt(entry.hash);
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /**
+     * Starts tracking a journal: stamps records that changed while the journal was not
+     * tracked, then listens for further changes.
+     *
+     * @param journal Journal the state belongs to.
+     * @throws IOException If reading the journal fails.
+     */
+    public void attach(MedicineJournal journal) throws IOException {
+        synchronized (journal) {
+            List<MedicineRecord> records = journal.readAll();
+            synchronized (this) {
+                Set<Long> live = new HashSet<>(records.size() * 4 / 3 + 1);
+                for (MedicineRecord record : records) {
+                    live.add(record.getId());
+                    Entry entry = entries.get(record.getId());
+                    if (entry == null || entry.deleted || entry.hash != SyncChange.contentHash(record)) {
+                        stamp(record.getId(), record);
+                    }
+                }
+                List<Long> gone = new ArrayList<>();
+                for (Map.Entry<Long, Entry> e : entries.entrySet()) {
+                    if (!e.getValue().deleted && !live.contains(e.getKey())) {
+                        gone.add(e.getKey());
+                    }
+                }
+                for (long id : gone) {
+                    stamp(id, null);
+                }
+            }
+            journal.addChangeListener(this);
+        }
+    }
+
+    /**
+     * Stops tracking a journal.
+     *
+     * @param journal Journal passed to {@link #attach}.
+     */
+    public void detach(MedicineJournal journal) {
+        journal.removeChangeListener(this);
+    }
+
+    @Override
+    public synchronized void onPut(MedicineRecord record) {
+        if (!consumeExpected(record.getId(), SyncChange.contentHash(record))) {
+            stamp(record.getId(), record);
+        }
+    }
+
+    @Override
+    public synchronized void onDelete(long id) {
+        if (!consumeExpected(id, 0)) {
+            stamp(id, null);
+        }
+    }
+
+    /**
+     * Collects the dirty entries as changes to push. Must be called while holding the journal
+     * lock, so the records read match their entries.
+     *
+     * @param journal Journal to read the records from.
+     * @param limit   Maximum number of changes.
+     * @return Changes, at most limit.
+     * @throws IOException If reading a record fails.
+     */
+    synchronized List<SyncChange> dirtyChanges(MedicineJournal journal, int limit) throws IOException {
+        List<SyncChange> changes = new ArrayList<>(Math.min(limit, dirty.size()));
+        for (long id : dirty) {
+            if (changes.size() == limit) {
+                break;
+            }
+            Entry entry = entries.get(id);
+            MedicineRecord record = entry.deleted ? null : journal.get(id);
+            changes.add(new SyncChange(id, entry.timestamp, entry.node, record));
+        }
+        return changes;
+    }
+
+    /**
+     * Marks pushed changes as sent, unless the record changed again in the meantime.
+     *
+     * @param pushed Changes returned by {@link #dirtyChanges} and sent to the server.
+     */
+    synchronized void acknowledge(List<SyncChange> pushed) {
+        for (SyncChange change : pushed) {
+            Entry entry = entries.get(change.getId());
+            if (entry != null && entry.timestamp == change.getTimestamp() && entry.node == change.getNodeId()) {
+                dirty.remove(change.getId());
+            }
+        }
+    }
+
+    /**
+     * Resolves a change received from the server against the local version. If the remote
+     * change wins, its entry replaces the local one and it is expected as the next change of
+     * the record in the journal. Must be called while holding the journal lock, and followed
+     * by writing the accepted changes and {@link #finishRemote}.
+     *
+     * @param change Remote change.
+     * @return True if the change wins and has to be written to the journal.
+     */
+    synchronized boolean accept(SyncChange change) {
+        clock.observe(change.getTimestamp());
+        Entry entry = entries.get(change.getId());
+        int hash = SyncChange.contentHash(change.getRecord());
+        if (entry != null && SyncChange.compare(change.getTimestamp(), change.getNodeId(), change.isDelete(), hash,
+                entry.timestamp, entry.node, entry.deleted, entry.hash) <= 0) {
+            // The local version wins or is the same; a winning local edit is still pushed
+            return false;
+        }
+        Entry previous = entries.put(change.getId(),
+                new Entry(change.getTimestamp(), change.getNodeId(), hash, change.isDelete()));
+        if (!replaced.containsKey(change.getId())) {
+            replaced.put(change.getId(), previous);
+            if (dirty.remove(change.getId())) {
+                replacedDirty.add(change.getId());
+            }
+        }
+        expected.put(change.getId(), hash);
+        return true;
+    }
+
+    /**
+     * Ends a batch of remote changes. Forgets the changes announced by {@link #accept} that
+     * did not reach the journal, e.g. deletes of records this device never had. If the batch
+     * could not be written, the entries it replaced are restored, so the changes are resolved
+     * again when they are pulled again.
+     *
+     * @param written True if the accepted changes were written to the journal.
+     */
+    synchronized void finishRemote(boolean written) {
+        if (!written) {
+            for (Map.Entry<Long, Entry> e : replaced.entrySet()) {
+                if (e.getValue() == null) {
+                    entries.remove(e.getKey());
+                } else {
+                    entries.put(e.getKey(), e.getValue());
+                }
+            }
+            dirty.addAll(replacedDirty);
+        }
+        expected.clear();
+        replaced.clear();
+        replacedDirty.clear();
+    }
+
+    /**
+     * @return Server cursor reached by the last sync.
+     */
+    public synchronized long getCursor() {
+        return cursor;
+    }
+
+    synchronized void setCursor(long cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return Id of this device.
+     */
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return Number of changes waiting to be pushed.
+     */
+    public synchronized int dirtyCount() {
+        return dirty.size();
+    }
+
+    /**
+     * @return Number of records tracked, tombstones included.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private boolean consumeExpected(long id, int hash) {
+        Integer expectedHash = expected.get(id);
+        if (expectedHash != null && expectedHash == hash) {
+            expected.remove(id);
+            return true;
+        }
+        return false;
+    }
+
+    private void stamp(long id, MedicineRecord record) {
+        entries.put(id, new Entry(clock.now(), nodeId, SyncChange.contentHash(record), record == null));
+        dirty.add(id);
+    }
+}
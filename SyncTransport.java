@@ -0,0 +1,23 @@
+package com.example.myapplication1;
+
+import java.io.IOException;
+
+/**
+ * SyncTransport interface.
+ * <p>
+ * Carries one encoded {@link SyncBatch} request to the sync endpoint and returns its encoded
+ * response. The endpoint is reached over the local network in the field; tests and the
+ * benchmark use {@link InProcessSyncServer}, which needs no network at all.
+ */
+public interface SyncTransport {
+
+    /**
+     * Sends a request and waits for the response.
+     *
+     * @param dataset Data set the request belongs to, e.g. one patient's reminders.
+     * @param request Encoded request.
+     * @return Encoded response.
+     * @throws IOException If the endpoint cannot be reached or rejects the request.
+     */
+    byte[] exchange(String dataset, byte[] request) throws IOException;
+}
@@ -0,0 +1,86 @@
+package com.example.myapplication1;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * VirtualClock class.
+ * <p>
+ * {@link Clock} that only moves when told to, for driving the scheduler, the wakeup planner
+ * and sync through simulated days and years without waiting for them. Instances returned by
+ * {@link #withZone} share the time of the clock they were made from. Time may only move
+ * forward. Thread-safe.
+ */
+public final class VirtualClock extends Clock {
+
+    private final ZoneId zone;
+    private final long[] millis;  // shared with the clocks made by withZone
+
+    /**
+     * Creates a clock standing at a time.
+     *
+     * @param startMillis Initial time, epoch milliseconds.
+     * @param zone        Time zone of the clock.
+     */
+    public VirtualClock(long startMillis, ZoneId zone) {
+        this(new long[]{startMillis}, zone);
+    }
+
+    private VirtualClock(long[] millis, ZoneId zone) {
+        this.millis = millis;
+        this.zone = zone;
+    }
+
+    /**
+     * Moves the clock to a time.
+     *
+     * @param nowMillis New time, epoch milliseconds; not before the current time.
+     */
+    public void set(long nowMillis) {
+        synchronized (millis) {
+            if (nowMillis < millis[0]) {
+                throw new IllegalArgumentException("Clock cannot go back from " + millis[0] + " to " + nowMillis);
+            }
+            millis[0] = nowMillis;
+        }
+    }
+
+    /**
+     * Moves the clock forward.
+     *
+     * @param deltaMillis Milliseconds to advance, not negative.
+     */
+    public void advance(long deltaMillis) {
+        synchronized (millis) {
+            set(millis[0] + deltaMillis);
+        }
+    }
+
+    @Override
+    public long millis() {
+        synchronized (millis) {
+            return millis[0];
+        }
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis());
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return zone.equals(this.zone) ? this : new VirtualClock(millis, zone);
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualClock{" + instant() + ", " + zone + "}";
+    }
+}
@@ -0,0 +1,452 @@
+package com.example.myapplication1;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * WakeupPlanner class.
+ * <p>
+ * Plans when the device has to wake up to deliver reminders. Every dose that falls within a
+ * tolerance window of the first pending dose is delivered by the same wakeup, as one grouped
+ * notification, instead of waking the device once per dose. The wakeup is set to the last dose
+ * of its group, so no dose is delivered early and none more than the tolerance late.
+ * Choosing each group from the earliest pending dose gives the fewest wakeups any plan with
+ * that tolerance can have.
+ * <p>
+ * Doses are kept by minute of the week, following the rules of {@link DueTimeIndex}, in a
+ * sorted map, so planning the next wakeup is a few tree lookups, O(log n + group size), and
+ * counting the wakeups of a day is O(w log n) for w wakeups. Reminders of several patients can
+ * be planned together by attaching the planner to each of their journals.
+ * <p>
+ * The planner keeps one armed wakeup, see {@link #arm}. When reminders change it only plans
+ * again if the change falls inside the armed window, and tells its listener if the wakeup
+ * moved, so the alarm is rescheduled only when needed. All methods are thread-safe.
+ */
+public class WakeupPlanner implements MedicineJournal.ChangeListener {
+
+    // Default tolerance, kept below DoseEvent.LATE_AFTER_MILLIS so grouping never makes a dose late
+    public static final int DEFAULT_TOLERANCE_MINUTES = 10;
+
+    // Doses delivered per wakeup
+    private static final Metrics.Histogram GROUP_SIZE = Metrics.histogram("wakeup.group_doses");
+
+    /**
+     * Receives the armed wakeup whenever a change of the reminders moves it.
+     * Called with the planner lock held, and from journal changes with the journal lock held.
+     */
+    public interface Listener {
+        /**
+         * @param wakeup New armed wakeup, or null if nothing is scheduled any more.
+         */
+        void onWakeupChanged(Wakeup wakeup);
+    }
+
+    private final Clock clock;
+    private final ZoneId zone;
+    private final int toleranceMinutes;
+    private final NavigableMap<Integer, List<Dose>> doses = new TreeMap<>();  // minute of week -> doses
+    private final Map<Long, int[]> byRecord = new HashMap<>();                // id -> minutes of week
+    private int doseCount;
+
+    private Listener listener;
+    private boolean armed;
+    private long armedAfterMillis;  // time the armed wakeup was planned after
+    private Wakeup armedWakeup;     // null if nothing is scheduled
+
+    /**
+     * A planned wakeup and the doses it delivers.
+     */
+    public static final class Wakeup {
+        private final long atMillis;
+        private final List<ScheduledDose> doses;
+
+        Wakeup(long atMillis, List<ScheduledDose> doses) {
+            this.atMillis = atMillis;
+            this.doses = doses;
+        }
+
+        /**
+         * @return Time to wake up at, in epoch milliseconds; the due time of the last dose.
+         */
+        public long getAtMillis() {
+            return atMillis;
+        }
+
+        /**
+         * @return Doses delivered by this wakeup, in due-time order, with their own due times.
+         */
+        public List<ScheduledDose> getDoses() {
+            return doses;
+        }
+
+        /**
+         * Renders the single notification shown for this wakeup, one line per dose.
+         *
+         * @return Notification text.
+         */
+        public String getNotificationText() {
+            StringBuilder builder = new StringBuilder();
+            for (ScheduledDose dose : doses) {
+                if (builder.length() > 0) {
+                    builder.append('\n');
+                }
+                dose.getRecord().appendDisplayString(builder.append("• "));
+            }
+            return builder.toString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Wakeup)) return false;
+            Wakeup other = (Wakeup) o;
+            if (atMillis != other.atMillis || doses.size() != other.doses.size()) {
+                return false;
+            }
+            for (int i = 0; i < doses.size(); i++) {
+                ScheduledDose a = doses.get(i);
+                ScheduledDose b = other.doses.get(i);
+                if (!a.getRecord().equals(b.getRecord()) || a.getDoseIndex() != b.getDoseIndex()
+                        || a.getFireAtMillis() != b.getFireAtMillis()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(atMillis) * 31 + doses.size();
+        }
+
+        @Override
+        public String toString() {
+            return "Wakeup{at=" + atMillis + ", doses=" + doses.size() + "}";
+        }
+    }
+
+    /**
+     * Creates an empty planner.
+     *
+     * @param clock            Source of the current time and time zone.
+     * @param toleranceMinutes Longest a dose may wait for a shared wakeup, 0 for one wakeup per
+     *                         distinct dose time.
+     */
+    public WakeupPlanner(Clock clock, int toleranceMinutes) {
+        if (toleranceMinutes < 0 || toleranceMinutes >= DoseTime.MINUTES_PER_DAY) {
+            throw new IllegalArgumentException("Tolerance out of range: " + toleranceMinutes);
+        }
+        this.clock = clock;
+        this.zone = clock.getZone();
+        this.toleranceMinutes = toleranceMinutes;
+    }
+
+    /**
+     * Plans every record of a journal and keeps following its changes.
+     *
+     * @param journal Journal to follow.
+     * @throws IOException If the journal cannot be read.
+     */
+    public void attach(MedicineJournal journal) throws IOException {
+        journal.readAllAndListen(this);
+    }
+
+    /**
+     * Stops following a journal. Planned reminders are kept.
+     *
+     * @param journal Journal to detach from.
+     */
+    public void detach(MedicineJournal journal) {
+        journal.removeChangeListener(this);
+    }
+
+    /**
+     * Sets the listener told about moves of the armed wakeup.
+     *
+     * @param listener Listener, or null for none.
+     */
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Adds all weekly doses of a reminder, replacing any earlier doses with the same id.
+     *
+     * @param record Reminder to plan.
+     */
+    public synchronized void add(MedicineRecord record) {
+        int[] removed = unplan(record.getId());
+        int[] minutes = DoseTime.weekMinutes(record);
+        if (minutes.length == 0) {
+            replanIfAffected(removed, null);
+            return;
+        }
+        for (int i = 0; i < minutes.length; i++) {
+            doses.computeIfAbsent(minutes[i], k -> new ArrayList<>(1))
+                    .add(new Dose(record, i % record.getTimesPerDay()));
+        }
+        byRecord.put(record.getId(), minutes);
+        doseCount += minutes.length;
+        replanIfAffected(removed, minutes);
+    }
+
+    /**
+     * Removes all doses of a reminder.
+     *
+     * @param id Record id.
+     * @return True if the reminder was planned.
+     */
+    public synchronized boolean remove(long id) {
+        int[] removed = unplan(id);
+        replanIfAffected(removed, null);
+        return removed != null;
+    }
+
+    /**
+     * Plans the next wakeup after a time, without arming it.
+     *
+     * @param afterMillis Epoch milliseconds; only doses due strictly later are planned.
+     * @return Next wakeup, or null if nothing is scheduled.
+     */
+    public synchronized Wakeup planNext(long afterMillis) {
+        if (doses.isEmpty()) {
+            return null;
+        }
+        LocalDateTime after = LocalDateTime.ofInstant(Instant.ofEpochMilli(afterMillis), zone);
+        LocalDateTime base = after.truncatedTo(ChronoUnit.MINUTES);
+        int baseMinute = DueTimeIndex.weekMinute(after.getDayOfWeek().getValue() - 1,
+                after.getHour() * 60 + after.getMinute());
+
+        // A dose in the current minute is due at or before afterMillis, so start one minute on
+        int first = nextDoseDelta(baseMinute, 1);
+        int last = first;
+        List<ScheduledDose> group = new ArrayList<>();
+        for (int delta = first; delta >= 0 && delta <= first + toleranceMinutes;
+             delta = nextDoseDelta(baseMinute, delta + 1)) {
+            long fireAt = base.plusMinutes(delta).atZone(zone).toInstant().toEpochMilli();
+            for (Dose dose : doses.get((baseMinute + delta) % DueTimeIndex.MINUTES_PER_WEEK)) {
+                group.add(new ScheduledDose(dose.record, dose.index, fireAt));
+            }
+            last = delta;
+        }
+        long atMillis = base.plusMinutes(last).atZone(zone).toInstant().toEpochMilli();
+        return new Wakeup(atMillis, Collections.unmodifiableList(group));
+    }
+
+    /**
+     * Plans the next wakeup after now and arms it; later changes to the reminders that move
+     * it are reported to the listener.
+     *
+     * @return Armed wakeup, or null if nothing is scheduled.
+     */
+    public synchronized Wakeup arm() {
+        return arm(clock.millis());
+    }
+
+    /**
+     * Plans the next wakeup after a time and arms it. Call again with the wakeup time once a
+     * wakeup has been delivered.
+     *
+     * @param afterMillis Epoch milliseconds; only doses due strictly later are planned.
+     * @return Armed wakeup, or null if nothing is scheduled.
+     */
+    public synchronized Wakeup arm(long afterMillis) {
+        armed = true;
+        armedAfterMillis = afterMillis;
+        armedWakeup = planNext(afterMillis);
+        if (armedWakeup != null) {
+            GROUP_SIZE.record(armedWakeup.getDoses().size());
+        }
+        return armedWakeup;
+    }
+
+    /**
+     * @return Wakeup armed by the last call to {@link #arm}, kept up to date with changes,
+     * or null if nothing is armed or scheduled.
+     */
+    public synchronized Wakeup getArmedWakeup() {
+        return armedWakeup;
+    }
+
+    /**
+     * Counts the wakeups needed to deliver every dose of a weekday, planned from midnight with
+     * this planner's tolerance. With a tolerance of 0 this is the number of distinct dose times.
+     *
+     * @param day Weekday, 0 = Monday ... 6 = Sunday.
+     * @return Number of wakeups.
+     */
+    public synchronized int countWakeups(int day) {
+        int dayStart = DueTimeIndex.weekMinute(day, 0);
+        int dayEnd = dayStart + DoseTime.MINUTES_PER_DAY;
+        int wakeups = 0;
+        Integer first = doses.ceilingKey(dayStart);
+        while (first != null && first < dayEnd) {
+            wakeups++;
+            // The group ends at its last dose; the next group starts after it, within the day
+            int groupEnd = doses.floorKey(Math.min(first + toleranceMinutes, dayEnd - 1));
+            first = doses.higherKey(groupEnd);
+        }
+        return wakeups;
+    }
+
+    /**
+     * Counts the doses due on a weekday, the number of wakeups needed without grouping.
+     *
+     * @param day Weekday, 0 = Monday ... 6 = Sunday.
+     * @return Number of doses.
+     */
+    public synchronized int countDoses(int day) {
+        int dayStart = DueTimeIndex.weekMinute(day, 0);
+        int count = 0;
+        for (List<Dose> atMinute : doses.subMap(dayStart, dayStart + DoseTime.MINUTES_PER_DAY).values()) {
+            count += atMinute.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of planned weekly doses.
+     */
+    public synchronized int size() {
+        return doseCount;
+    }
+
+    /**
+     * @return Tolerance in minutes.
+     */
+    public int getToleranceMinutes() {
+        return toleranceMinutes;
+    }
+
+    @Override
+    public void onPut(MedicineRecord record) {
+        add(record);
+    }
+
+    @Override
+    public void onDelete(long id) {
+        remove(id);
+    }
+
+    /**
+     * Removes the doses of a reminder from the map.
+     *
+     * @return Minutes of the week of the removed doses, or null if the reminder was not planned.
+     */
+    private int[] unplan(long id) {
+        int[] minutes = byRecord.remove(id);
+        if (minutes == null) {
+            return null;
+        }
+        for (int minute : minutes) {
+            List<Dose> atMinute = doses.get(minute);
+            for (Iterator<Dose> it = atMinute.iterator(); it.hasNext(); ) {
+                if (it.next().record.getId() == id) {
+                    it.remove();
+                    break;
+                }
+            }
+            if (atMinute.isEmpty()) {
+                doses.remove(minute);
+            }
+        }
+        doseCount -= minutes.length;
+        return minutes;
+    }
+
+    /**
+     * Plans the armed wakeup again if one of the changed doses falls between the time it was
+     * planned after and the end of its window, and tells the listener if it moved.
+     */
+    private void replanIfAffected(int[] removed, int[] added) {
+        if (!armed || (removed == null && added == null)) {
+            return;
+        }
+        if (armedWakeup != null && !touchesArmedWindow(removed) && !touchesArmedWindow(added)) {
+            return;
+        }
+        Wakeup previous = armedWakeup;
+        armedWakeup = planNext(armedAfterMillis);
+        if (listener != null && (armedWakeup == null ? previous != null : !armedWakeup.equals(previous))) {
+            listener.onWakeupChanged(armedWakeup);
+        }
+    }
+
+    /**
+     * @return True if a dose minute lies in the window the armed wakeup was chosen from,
+     * from just after the armed time up to the first dose plus the tolerance.
+     */
+    private boolean touchesArmedWindow(int[] minutes) {
+        if (minutes == null) {
+            return false;
+        }
+        LocalDateTime after = LocalDateTime.ofInstant(Instant.ofEpochMilli(armedAfterMillis), zone);
+        int baseMinute = DueTimeIndex.weekMinute(after.getDayOfWeek().getValue() - 1,
+                after.getHour() * 60 + after.getMinute());
+        LocalDateTime first = LocalDateTime.ofInstant(
+                Instant.ofEpochMilli(armedWakeup.getDoses().get(0).getFireAtMillis()), zone);
+        long windowEnd = ChronoUnit.MINUTES.between(after.truncatedTo(ChronoUnit.MINUTES), first)
+                + toleranceMinutes;
+        for (int minute : minutes) {
+            int delta = Math.floorMod(minute - baseMinute, DueTimeIndex.MINUTES_PER_WEEK);
+            if (delta == 0) {
+                delta = DueTimeIndex.MINUTES_PER_WEEK;
+            }
+            if (delta <= windowEnd) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the distance in minutes from a base minute of the week to the first dose at
+     * least a given distance away, going around the end of the week at most once.
+     *
+     * @return Distance, or -1 if there is none before a full week has passed.
+     */
+    private int nextDoseDelta(int baseMinute, int fromDelta) {
+        if (fromDelta > DueTimeIndex.MINUTES_PER_WEEK) {
+            return -1;
+        }
+        int from = baseMinute + fromDelta;
+        Integer minute;
+        if (from < DueTimeIndex.MINUTES_PER_WEEK) {
+            minute = doses.ceilingKey(from);
+            if (minute != null) {
+                return minute - baseMinute;
+            }
+            from = DueTimeIndex.MINUTES_PER_WEEK;
+        }
+        minute = doses.ceilingKey(from - DueTimeIndex.MINUTES_PER_WEEK);
+        if (minute == null || minute + DueTimeIndex.MINUTES_PER_WEEK - baseMinute > DueTimeIndex.MINUTES_PER_WEEK) {
+            return -1;
+        }
+        return minute + DueTimeIndex.MINUTES_PER_WEEK - baseMinute;
+    }
+
+    /**
+     * One weekly dose of a reminder.
+     */
+    private static final class Dose {
+        final MedicineRecord record;
+        final int index;
+
+        Dose(MedicineRecord record, int index) {
+            this.record = record;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.myapplication1;
+
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * AdherenceStatsTest class.
+ * <p>
+ * Counting of due, taken, skipped and missed doses from the events of one reminder, in the
+ * order the log delivers them.
+ */
+public class AdherenceStatsTest {
+
+    private static final ZoneId UTC = ZoneId.of("UTC");
+    private static final long REMINDER = 7;
+
+    private final AdherenceStats stats = new AdherenceStats(UTC);
+    private long eventNumber;
+
+    @Test
+    public void outcomesOnTimeCountAsTaken() {
+        record(DoseEvent.FIRED, "2026-01-05T08:00", "2026-01-05T08:00");
+        record(DoseEvent.TAKEN, "2026-01-05T08:00", "2026-01-05T08:05");
+        record(DoseEvent.FIRED, "2026-01-05T12:00", "2026-01-05T12:00");
+        record(DoseEvent.SKIPPED, "2026-01-05T12:00", "2026-01-05T12:10");
+
+        AdherenceStats.Window week = week();
+        assertEquals(2, week.getDue());
+        assertEquals(1, week.getTaken());
+        assertEquals(1, week.getSkipped());
+        assertEquals(0, week.getMissed());
+    }
+
+    @Test
+    public void outcomeAfterNextDoseFiredIsCreditedToItsOwnDose() {
+        record(DoseEvent.FIRED, "2026-01-05T08:00", "2026-01-05T08:00");
+        record(DoseEvent.FIRED, "2026-01-05T12:00", "2026-01-05T12:00");
+        record(DoseEvent.LATE, "2026-01-05T08:00", "2026-01-05T12:01");
+        record(DoseEvent.TAKEN, "2026-01-05T12:00", "2026-01-05T12:05");
+
+        AdherenceStats.Window week = week();
+        assertEquals(2, week.getDue());
+        assertEquals(2, week.getTaken());
+        assertEquals(1, week.getLate());
+        assertEquals(0, week.getMissed());
+        assertEquals(100, week.getAdherencePercent());
+    }
+
+    @Test
+    public void lateOutcomeOfYesterdayLandsInYesterday() {
+        record(DoseEvent.FIRED, "2026-01-05T20:00", "2026-01-05T20:00");
+        record(DoseEvent.FIRED, "2026-01-06T08:00", "2026-01-06T08:00");
+        record(DoseEvent.SKIPPED, "2026-01-05T20:00", "2026-01-06T08:30");
+
+        AdherenceStats.Window week = week();
+        assertEquals(2, week.getDue());
+        assertEquals(1, week.getSkipped());
+        assertEquals(0, week.getMissed());  // the 08:00 dose is still pending
+        assertEquals(0, stats.getSummary(REMINDER, at("2026-01-06T09:00")).getCurrentStreak());
+    }
+
+    @Test
+    public void repeatedLateOutcomeDoesNotCountTwice() {
+        record(DoseEvent.FIRED, "2026-01-05T08:00", "2026-01-05T08:00");
+        record(DoseEvent.FIRED, "2026-01-05T12:00", "2026-01-05T12:00");
+        record(DoseEvent.LATE, "2026-01-05T08:00", "2026-01-05T12:01");
+        record(DoseEvent.LATE, "2026-01-05T08:00", "2026-01-05T12:02");
+        record(DoseEvent.TAKEN, "2026-01-05T12:00", "2026-01-05T12:05");
+
+        AdherenceStats.Window week = week();
+        assertEquals(2, week.getDue());
+        assertEquals(2, week.getTaken());
+    }
+
+    @Test
+    public void doseWithoutOutcomeIsMissedOnceTheNextFires() {
+        record(DoseEvent.FIRED, "2026-01-05T08:00", "2026-01-05T08:00");
+        record(DoseEvent.FIRED, "2026-01-05T12:00", "2026-01-05T12:00");
+        record(DoseEvent.TAKEN, "2026-01-05T12:00", "2026-01-05T12:05");
+
+        AdherenceStats.Window week = week();
+        assertEquals(2, week.getDue());
+        assertEquals(1, week.getTaken());
+        assertEquals(1, week.getMissed());
+        assertEquals(50, week.getAdherencePercent());
+    }
+
+    @Test
+    public void doseTakenAheadOfTimeIsCountedOnce() {
+        record(DoseEvent.TAKEN, "2026-01-05T08:00", "2026-01-05T07:50");
+        record(DoseEvent.FIRED, "2026-01-05T08:00", "2026-01-05T08:00");
+
+        AdherenceStats.Window week = week();
+        assertEquals(1, week.getDue());
+        assertEquals(1, week.getTaken());
+    }
+
+    private AdherenceStats.Window week() {
+        return stats.getSummary(REMINDER, at("2026-01-06T23:00")).getWindow(7);
+    }
+
+    private void record(int type, String scheduledAt, String eventAt) {
+        stats.onRecorded(new DoseEvent(REMINDER, 0, at(scheduledAt), at(eventAt), type), eventNumber++);
+    }
+
+    private static long at(String localTime) {
+        return LocalDateTime.parse(localTime).atZone(UTC).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.myapplication1;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * DoseEventLogTest class.
+ * <p>
+ * Reopening a log whose last block was cut short, replaying events by number across blocks
+ * in the file, sealed blocks and the open block, and queries that skip blocks by reminder
+ * mask or time range.
+ */
+public class DoseEventLogTest {
+
+    private static final int BLOCK = DoseEventLog.BLOCK_EVENTS;
+    private static final long MINUTE = 60_000L;
+
+    private final Metrics.Counter blocksRead = Metrics.counter("events.blocks_read");
+    private final Metrics.Counter blocksSkipped = Metrics.counter("events.blocks_skipped");
+    private File dir;
+    private File file;
+    private DoseEventLog log;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("events-test").toFile();
+        file = new File(dir, "medicines.dat.events");
+        log = new DoseEventLog(file);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        log.close();
+        for (File child : dir.listFiles()) {
+            child.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void reopenCutsOffTruncatedTrailingBlock() throws IOException {
+        List<DoseEvent> events = events(1, 0, 3 * BLOCK);
+        record(events);
+        log.flush().join();
+        assertEquals(3, log.getBlockCount());
+        log.close();
+
+        // A crash in the middle of appending the third block
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+        log = new DoseEventLog(file);
+        assertEquals(2, log.getBlockCount());
+        assertEquals(2 * BLOCK, log.size());
+        assertEquals(file.length(), log.length());
+        assertEquals(events.subList(0, 2 * BLOCK), readFrom(0));
+
+        // Appending continues on the block boundary
+        List<DoseEvent> more = events(2, 10_000 * MINUTE, 10);
+        record(more);
+        log.close();
+        log = new DoseEventLog(file);
+        assertEquals(3, log.getBlockCount());
+        assertEquals(more, readFrom(2 * BLOCK));
+    }
+
+    @Test
+    public void readFromSpansFileSealedAndOpenBlocks() throws IOException {
+        List<DoseEvent> events = events(1, 0, 3 * BLOCK + 7);
+        record(events.subList(0, BLOCK));
+        log.flush().join();
+        // The second and third block are sealed and may or may not be in the file yet
+        record(events.subList(BLOCK, events.size()));
+
+        assertEquals(events, readFrom(0));
+        assertEquals(events.subList(BLOCK - 3, events.size()), readFrom(BLOCK - 3));
+        assertEquals(events.subList(3 * BLOCK + 2, events.size()), readFrom(3 * BLOCK + 2));
+        List<DoseEvent> none = new ArrayList<>();
+        assertEquals(events.size(), log.readFrom(events.size(), none));
+        assertTrue(none.isEmpty());
+
+        // Only the blocks holding events from the number on are read
+        log.flush().join();
+        long read = blocksRead.get();
+        assertEquals(events.subList(2 * BLOCK + 1, events.size()), readFrom(2 * BLOCK + 1));
+        assertEquals(2, blocksRead.get() - read);
+    }
+
+    @Test
+    public void queriesSkipBlocksByMaskAndTimeRange() throws IOException {
+        List<DoseEvent> first = events(1, 0, BLOCK);
+        List<DoseEvent> second = events(2, 1000 * MINUTE, BLOCK);
+        record(first);
+        record(second);
+        log.flush().join();
+        assertEquals(2, log.getBlockCount());
+
+        // Reminder 2 is not in the mask of the first block
+        long read = blocksRead.get();
+        long skipped = blocksSkipped.get();
+        assertEquals(second, log.query(2, 0, Long.MAX_VALUE));
+        assertEquals(1, blocksRead.get() - read);
+        assertEquals(1, blocksSkipped.get() - skipped);
+
+        // The range ends before the second block starts
+        read = blocksRead.get();
+        skipped = blocksSkipped.get();
+        assertEquals(first.subList(10, 20), log.query(10 * MINUTE, 20 * MINUTE));
+        assertEquals(1, blocksRead.get() - read);
+        assertEquals(1, blocksSkipped.get() - skipped);
+
+        // Both blocks overlap, but reminder 1 is only in the first
+        assertEquals(first.subList(BLOCK - 5, BLOCK), log.query(1, (BLOCK - 5) * MINUTE, 2000 * MINUTE));
+        assertTrue(log.query(3, 0, Long.MAX_VALUE).isEmpty());
+    }
+
+    private void record(List<DoseEvent> events) {
+        for (DoseEvent event : events) {
+            log.record(event);
+        }
+    }
+
+    private List<DoseEvent> readFrom(long number) throws IOException {
+        List<DoseEvent> out = new ArrayList<>();
+        log.readFrom(number, out);
+        return out;
+    }
+
+    /**
+     * Events of one reminder one minute apart, each taken a minute after it was due.
+     */
+    private static List<DoseEvent> events(long reminderId, long startMillis, int count) {
+        List<DoseEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long at = startMillis + i * MINUTE;
+            events.add(new DoseEvent(reminderId, i % 3, at - MINUTE, at, i % 4));
+        }
+        return events;
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.myapplication1;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * DoseSchedulerTest class.
+ * <p>
+ * Next-dose computation driven by a {@link VirtualClock}: doses stay on local time across
+ * daylight saving changes, and schedules wrap from Sunday to Monday.
+ */
+public class DoseSchedulerTest {
+
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+    private static final ZoneId UTC = ZoneId.of("UTC");
+
+    // Day masks, bit 0 = Monday
+    private static final int MONDAY = DoseTime.withDay(0, 0);
+    private static final int SATURDAY = DoseTime.withDay(0, 5);
+    private static final int SUNDAY = DoseTime.withDay(0, 6);
+
+    @Test
+    public void dailyDoseStaysAtLocalTimeWhenClocksGoForward() {
+        // 2026-03-29 02:00 CET becomes 03:00 CEST
+        VirtualClock clock = clockAt("2026-03-28T09:00", BERLIN);
+        DoseScheduler scheduler = new DoseScheduler(clock);
+        scheduler.add(new MedicineRecord(1, "Aspirin", 8 * 60, 1, DoseTime.ALL_DAYS));
+
+        assertEquals(millis("2026-03-29T08:00", BERLIN), fireNext(scheduler, clock).getFireAtMillis());
+        assertEquals(millis("2026-03-30T08:00", BERLIN), fireNext(scheduler, clock).getFireAtMillis());
+    }
+
+    @Test
+    public void dailyDoseFiresOnceWhenClocksGoBack() {
+        // 2026-10-25 03:00 CEST becomes 02:00 CET
+        VirtualClock clock = clockAt("2026-10-24T09:00", BERLIN);
+        DoseScheduler scheduler = new DoseScheduler(clock);
+        scheduler.add(new MedicineRecord(1, "Aspirin", 8 * 60, 1, DoseTime.ALL_DAYS));
+
+        assertEquals(millis("2026-10-25T08:00", BERLIN), fireNext(scheduler, clock).getFireAtMillis());
+        assertEquals(millis("2026-10-26T08:00", BERLIN), fireNext(scheduler, clock).getFireAtMillis());
+    }
+
+    @Test
+    public void doseInSkippedHourFiresAfterTheGap() {
+        VirtualClock clock = clockAt("2026-03-28T12:00", BERLIN);
+        DoseScheduler scheduler = new DoseScheduler(clock);
+        scheduler.add(new MedicineRecord(1, "Aspirin", 2 * 60 + 30, 1, DoseTime.ALL_DAYS));
+
+        assertEquals(millis("2026-03-29T03:30", BERLIN), fireNext(scheduler, clock).getFireAtMillis());
+        assertEquals(millis("2026-03-30T02:30", BERLIN), fireNext(scheduler, clock).getFireAtMillis());
+    }
+
+    @Test
+    public void repeatedHourFiresOnce() {
+        VirtualClock clock = clockAt("2026-10-24T12:00", BERLIN);
+        DoseScheduler scheduler = new DoseScheduler(clock);
+        scheduler.add(new MedicineRecord(1, "Aspirin", 2 * 60 + 30, 1, DoseTime.ALL_DAYS));
+
+        ScheduledDose first = fireNext(scheduler, clock);
+        assertEquals("2026-10-25T02:30", local(first.getFireAtMillis(), BERLIN));
+        assertEquals(millis("2026-10-26T02:30", BERLIN), fireNext(scheduler, clock).getFireAtMillis());
+    }
+
+    @Test
+    public void sundayScheduleWrapsToNextWeek() {
+        // Monday 2026-01-05, after the late dose of the Sunday before
+        VirtualClock clock = clockAt("2026-01-05T12:00", UTC);
+        DoseScheduler scheduler = new DoseScheduler(clock);
+        scheduler.add(new MedicineRecord(1, "Aspirin", 23 * 60, 2, SUNDAY));
+
+        assertEquals(millis("2026-01-11T23:00", UTC), fireNext(scheduler, clock).getFireAtMillis());
+
+        // The second dose of Sunday falls on Monday morning
+        ScheduledDose second = fireNext(scheduler, clock);
+        assertEquals(millis("2026-01-12T11:00", UTC), second.getFireAtMillis());
+        assertEquals(1, second.getDoseIndex());
+        assertEquals(millis("2026-01-18T23:00", UTC), fireNext(scheduler, clock).getFireAtMillis());
+    }
+
+    @Test
+    public void lateDoseOfYesterdayIsFoundAfterMidnight() {
+        // Sunday 07:00; Saturday's second dose is due at 08:00
+        VirtualClock clock = clockAt("2026-01-11T07:00", UTC);
+        DoseScheduler scheduler = new DoseScheduler(clock);
+        scheduler.add(new MedicineRecord(1, "Aspirin", 20 * 60, 2, SATURDAY));
+
+        ScheduledDose next = scheduler.peekNext();
+        assertEquals(millis("2026-01-11T08:00", UTC), next.getFireAtMillis());
+        assertEquals(1, next.getDoseIndex());
+    }
+
+    @Test
+    public void mondayScheduleSeenFromSundayIsTomorrow() {
+        VirtualClock clock = clockAt("2026-01-11T22:00", UTC);
+        DoseScheduler scheduler = new DoseScheduler(clock);
+        scheduler.add(new MedicineRecord(1, "Aspirin", 6 * 60, 1, MONDAY));
+        scheduler.add(new MedicineRecord(2, "Never", 6 * 60, 1, 0));
+
+        assertEquals(millis("2026-01-12T06:00", UTC), scheduler.peekNext().getFireAtMillis());
+        assertEquals(1, scheduler.size());
+        scheduler.remove(1);
+        assertNull(scheduler.peekNext());
+    }
+
+    /**
+     * Moves the clock to the next dose and fires it, checking that exactly one dose was due.
+     */
+    private static ScheduledDose fireNext(DoseScheduler scheduler, VirtualClock clock) {
+        ScheduledDose next = scheduler.peekNext();
+        clock.set(next.getFireAtMillis());
+        List<ScheduledDose> due = new ArrayList<>();
+        assertEquals(1, scheduler.pollDue(due));
+        assertEquals(next.getFireAtMillis(), due.get(0).getFireAtMillis());
+        return next;
+    }
+
+    private static VirtualClock clockAt(String localTime, ZoneId zone) {
+        return new VirtualClock(millis(localTime, zone), zone);
+    }
+
+    private static long millis(String localTime, ZoneId zone) {
+        return LocalDateTime.parse(localTime).atZone(zone).toInstant().toEpochMilli();
+    }
+
+    private static String local(long millis, ZoneId zone) {
+        return Instant.ofEpochMilli(millis).atZone(zone).toLocalDateTime().toString();
+    }
+}
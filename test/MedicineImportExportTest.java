@@ -0,0 +1,151 @@
+package com.example.myapplication1;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * MedicineImportExportTest class.
+ * <p>
+ * CSV and JSON export followed by import gives back the same reminders, names with commas,
+ * quotes and line breaks included; bad rows are reported by row, and an import that stops
+ * partway reports what it saved.
+ */
+public class MedicineImportExportTest {
+
+    // Names that need quoting or escaping, each within the name length limit
+    private static final List<MedicineRecord> RECORDS = Arrays.asList(
+            new MedicineRecord(1, "Aspirin", 8 * 60, 1, DoseTime.ALL_DAYS),
+            new MedicineRecord(2, "A, \"B\"\nC", 21 * 60 + 5, 2, 0x41),
+            new MedicineRecord(3, "Line\r\nbreak", 0, 3, 0x01),
+            new MedicineRecord(-4, "Şurup {x}", 23 * 60 + 59, 1, 0x20));
+
+    private File dir;
+    private final List<MedicineJournal> opened = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("import-test").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (MedicineJournal journal : opened) {
+            journal.close();
+        }
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void csvExportImportRoundTrip() throws IOException {
+        String csv = export(MedicineTextFormat.CSV);
+        assertTrue(csv, csv.startsWith(MedicineTextFormat.CSV_HEADER + "\n"));
+        assertTrue(csv, csv.contains("\"A, \"\"B\"\"\nC\""));
+
+        ImportReport report = importInto("copy.dat", new StringReader(csv));
+        assertEquals(report.getErrors().toString(), RECORDS.size(), report.getImportedCount());
+        assertEquals(RECORDS, journal("copy.dat").readAll());
+    }
+
+    @Test
+    public void jsonExportImportRoundTrip() throws IOException {
+        String json = export(MedicineTextFormat.JSON);
+
+        ImportReport report = importInto("copy.dat", new StringReader(json));
+        assertEquals(report.getErrors().toString(), RECORDS.size(), report.getImportedCount());
+        assertEquals(RECORDS, journal("copy.dat").readAll());
+    }
+
+    @Test
+    public void badRowsAreReportedByTheLineTheyStartOn() throws IOException {
+        String csv = "name,time,times_per_day,days\n"
+                + "\"Two\nlines\",8:00 AM,1,Monday\n"
+                + "Bad time,25:00,1,Monday\n"
+                + "\n"
+                + "No days,08:00,1,\n"
+                + "Good,20:30,2,Mon Fri\n";
+
+        ImportReport report = importInto("copy.dat", new StringReader(csv));
+        assertEquals(4, report.getRowCount());
+        assertEquals(2, report.getImportedCount());
+        assertEquals(2, report.getErrors().size());
+        assertEquals(4, report.getErrors().get(0).getRow());
+        assertEquals(6, report.getErrors().get(1).getRow());
+        assertNull(report.getFailure());
+    }
+
+    @Test
+    public void importStoppedPartwayKeepsRowsReadSoFar() throws IOException {
+        StringBuilder csv = new StringBuilder("name,time,times_per_day,days\n");
+        for (int i = 0; i < 2 * MedicineImporter.CHUNK_SIZE; i++) {
+            csv.append("Medicine ").append(i).append(",08:00,1,Monday\n");
+        }
+        int cut = csv.length() / 2;
+        Reader failing = new FilterReader(new StringReader(csv.toString())) {
+            private int read;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                if (read >= cut) {
+                    throw new IOException("Storage removed");
+                }
+                int n = super.read(buffer, offset, Math.min(length, cut - read));
+                read += Math.max(n, 0);
+                return n;
+            }
+        };
+
+        ImportReport report = importInto("copy.dat", failing);
+        assertEquals("Storage removed", report.getFailure().getMessage());
+        assertTrue(report.getRowCount() > 0);
+        assertEquals(report.getRowCount(), report.getImportedCount());
+        assertEquals(report.getImportedCount(), journal("copy.dat").size());
+        assertTrue(report.getSummary(), report.getSummary().endsWith("stopped early: Storage removed"));
+    }
+
+    private String export(int format) throws IOException {
+        MedicineJournal source = journal("source.dat");
+        for (MedicineRecord record : RECORDS) {
+            source.put(record);
+        }
+        StringWriter out = new StringWriter();
+        assertEquals(RECORDS.size(), MedicineExporter.export(source, out, format));
+        return out.toString();
+    }
+
+    private ImportReport importInto(String name, Reader in) throws IOException {
+        MedicineWriteQueue queue = new MedicineWriteQueue(new File(dir, name),
+                MedicineWriteQueue.FlushPolicy.batched(MedicineImporter.CHUNK_SIZE, 50));
+        try {
+            return new MedicineImporter(queue).importFrom(in);
+        } finally {
+            queue.close();
+        }
+    }
+
+    private MedicineJournal journal(String name) throws IOException {
+        MedicineJournal journal = MedicineJournal.getInstance(new File(dir, name));
+        if (!opened.contains(journal)) {
+            opened.add(journal);
+        }
+        return journal;
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.myapplication1;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * MedicineJournalTest class.
+ * <p>
+ * Binary reminder format: records survive a write and read, a partially written last frame
+ * is dropped, a damaged frame is refused, and a legacy text file is moved into a new journal.
+ */
+public class MedicineJournalTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("journal-test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void recordsRoundTripThroughWriterAndReader() throws IOException {
+        List<MedicineRecord> records = Arrays.asList(
+                new MedicineRecord(1, "Aspirin", 8 * 60, 1, DoseTime.ALL_DAYS),
+                new MedicineRecord(-42, "Şurup", 0, 3, 0x41),
+                new MedicineRecord(Long.MAX_VALUE, "", 23 * 60 + 59, 24, 0x01));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MedicineRecordWriter writer = new MedicineRecordWriter(bytes)) {
+            writer.writeHeader(7);
+            for (MedicineRecord record : records) {
+                writer.write(record);
+            }
+            writer.writeDelete(-42);
+        }
+
+        List<MedicineRecord> read = new ArrayList<>();
+        try (MedicineRecordReader reader = new MedicineRecordReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals(MedicineFileFormat.VERSION, reader.getVersion());
+            assertEquals(7, reader.getGeneration());
+            while (reader.next()) {
+                if (reader.getOp() == MedicineFileFormat.OP_PUT) {
+                    read.add(reader.getRecord());
+                } else {
+                    assertEquals(-42, reader.getId());
+                }
+            }
+            assertEquals(bytes.size(), reader.getPosition());
+        }
+        assertEquals(records, read);
+    }
+
+    @Test
+    public void journalKeepsChangesAcrossReopen() throws IOException {
+        File file = new File(dir, "store.dat");
+        MedicineJournal journal = new MedicineJournal(file);
+        journal.put(new MedicineRecord(1, "Aspirin", 60, 1, 1));
+        journal.put(new MedicineRecord(2, "Ibuprofen", 120, 2, 2));
+        journal.put(new MedicineRecord(1, "Aspirin", 90, 1, 1));
+        journal.delete(2);
+        journal.close();
+
+        MedicineJournal reopened = new MedicineJournal(file);
+        try {
+            assertEquals(Arrays.asList(new MedicineRecord(1, "Aspirin", 90, 1, 1)), reopened.readAll());
+            assertNull(reopened.get(2));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void truncatedLastFrameIsDroppedOnOpen() throws IOException {
+        File file = new File(dir, "store.dat");
+        MedicineJournal journal = new MedicineJournal(file);
+        journal.put(new MedicineRecord(1, "Aspirin", 60, 1, 1));
+        long complete = journal.length();
+        journal.put(new MedicineRecord(2, "Ibuprofen", 120, 2, 2));
+        journal.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        MedicineJournal reopened = new MedicineJournal(file);
+        try {
+            assertEquals(Arrays.asList(new MedicineRecord(1, "Aspirin", 60, 1, 1)), reopened.readAll());
+            assertEquals(complete, file.length());
+
+            // New frames start where the cut frame began
+            reopened.put(new MedicineRecord(3, "Metformin", 180, 1, 4));
+        } finally {
+            reopened.close();
+        }
+        MedicineJournal again = new MedicineJournal(file);
+        try {
+            assertEquals(2, again.size());
+            assertEquals("Metformin", again.get(3).getName());
+        } finally {
+            again.close();
+        }
+    }
+
+    @Test
+    public void corruptFrameIsRefused() throws IOException {
+        File file = new File(dir, "store.dat");
+        MedicineJournal journal = new MedicineJournal(file);
+        journal.put(new MedicineRecord(1, "Aspirin", 60, 1, 1));
+        long second = journal.length();
+        journal.put(new MedicineRecord(2, "Ibuprofen", 120, 2, 2));
+        journal.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(second);
+            raf.writeByte(9);  // not an op code
+        }
+
+        try {
+            new MedicineJournal(file).close();
+            fail("Corrupt file was opened");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Corrupt frame at offset " + second));
+        }
+    }
+
+    @Test
+    public void legacyTextFileIsMigratedOnce() throws IOException {
+        File legacy = new File(dir, MedicineTextFormat.LEGACY_FILE_NAME);
+        Files.write(legacy.toPath(), ("Aspirin at 08:30 PM, 2 times/day on Monday Friday\n"
+                + "Tea at noon at 07:05 AM, 1 times/day on Sunday\n"
+                + "\n"
+                + "not a reminder\n").getBytes(StandardCharsets.UTF_8));
+
+        File file = PatientDirectory.shardFile(dir, PatientDirectory.DEFAULT_PROFILE_ID);
+        MedicineJournal journal = new MedicineJournal(file);
+        try {
+            List<MedicineRecord> records = journal.readAll();
+            assertEquals(2, records.size());
+            assertEquals("Aspirin", records.get(0).getName());
+            assertEquals(20 * 60 + 30, records.get(0).getMinuteOfDay());
+            assertEquals(2, records.get(0).getTimesPerDay());
+            assertEquals(DoseTime.withDay(DoseTime.withDay(0, 0), 4), records.get(0).getDayMask());
+            assertEquals("Tea at noon", records.get(1).getName());
+            assertEquals(7 * 60 + 5, records.get(1).getMinuteOfDay());
+        } finally {
+            journal.close();
+        }
+        assertFalse(legacy.exists());
+        assertTrue(new File(legacy.getPath() + MedicineJournal.LEGACY_SUFFIX).exists());
+
+        MedicineJournal reopened = new MedicineJournal(file);
+        try {
+            assertEquals(2, reopened.size());
+        } finally {
+            reopened.close();
+        }
+    }
+}
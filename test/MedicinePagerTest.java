@@ -0,0 +1,137 @@
+package com.example.myapplication1;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * MedicinePagerTest class.
+ * <p>
+ * Page cache of the medicine list. Loaded pages are delivered through a queue that the test
+ * drains on its own thread, standing in for the UI thread.
+ */
+public class MedicinePagerTest {
+
+    private final BlockingQueue<Runnable> uiThread = new LinkedBlockingQueue<>();
+    private final List<int[]> loadedRanges = new ArrayList<>();
+    private int staleCount;
+    private MedicinePager pager;
+
+    @Before
+    public void setUp() {
+        pager = new MedicinePager(uiThread::add, new MedicinePager.Listener() {
+            @Override
+            public void onRangeLoaded(int start, int count) {
+                loadedRanges.add(new int[]{start, count});
+            }
+
+            @Override
+            public void onSourceStale() {
+                staleCount++;
+            }
+        });
+    }
+
+    @Test
+    public void rowIsNullUntilItsPageArrives() throws InterruptedException {
+        pager.setSource(new ListPageSource(records(0, 120)), 0);
+        assertEquals(120, pager.getCount());
+
+        assertNull(pager.getRecord(10));
+        runUntil(() -> pager.getCachedPageCount() == 2);  // the row's page and the next one
+        assertEquals(10, pager.getRecord(10).getId());
+        assertEquals(99, pager.getRecord(99).getId());
+        assertEquals(0, loadedRanges.get(0)[0]);
+        assertEquals(MedicinePager.PAGE_SIZE, loadedRanges.get(0)[1]);
+    }
+
+    @Test
+    public void cacheHoldsAtMostMaxCachedPages() throws InterruptedException {
+        int pages = 3 * MedicinePager.MAX_CACHED_PAGES;
+        pager.setSource(new ListPageSource(records(0, pages * MedicinePager.PAGE_SIZE)), 0);
+        for (int page = 0; page < pages; page++) {
+            int position = page * MedicinePager.PAGE_SIZE;
+            pager.getRecord(position);
+            runUntil(() -> pager.getRecord(position) != null);
+            assertTrue(pager.getCachedPageCount() <= MedicinePager.MAX_CACHED_PAGES);
+        }
+
+        // The least recently used pages went first
+        assertNull(pager.getRecord(0));
+        assertNotNull(pager.getRecord((pages - 1) * MedicinePager.PAGE_SIZE));
+    }
+
+    @Test
+    public void appendKeepsCompletePagesOnly() throws InterruptedException {
+        int rows = 2 * MedicinePager.PAGE_SIZE + 10;
+        pager.setSource(new ListPageSource(records(0, rows)), 0);
+        pager.getRecord(MedicinePager.PAGE_SIZE);
+        runUntil(() -> pager.getCachedPageCount() == 3);
+
+        pager.setSource(new ListPageSource(records(0, rows + 1)), rows);
+        assertEquals(2, pager.getCachedPageCount());
+        assertNotNull(pager.getRecord(0));
+        assertNull(pager.getRecord(rows));
+        runUntil(() -> pager.getRecord(rows) != null);
+        assertEquals(rows, pager.getRecord(rows).getId());
+    }
+
+    @Test
+    public void pageOfReplacedSourceIsIgnored() throws InterruptedException {
+        pager.setSource(new ListPageSource(records(0, 10)), 0);
+        pager.getRecord(0);
+        pager.setSource(new ListPageSource(records(1000, 10)), 0);
+        runUntil(() -> pager.getRecord(0) != null);
+        assertEquals(1000, pager.getRecord(0).getId());
+    }
+
+    @Test
+    public void staleSourceIsReported() throws InterruptedException {
+        pager.setSource(new MedicinePageSource() {
+            @Override
+            public int getCount() {
+                return 10;
+            }
+
+            @Override
+            public List<MedicineRecord> loadPage(int start, int count) {
+                return null;
+            }
+        }, 0);
+        assertNull(pager.getRecord(0));
+        runUntil(() -> staleCount == 1);
+        assertEquals(0, pager.getCachedPageCount());
+        assertTrue(loadedRanges.isEmpty());
+    }
+
+    /**
+     * Runs delivered page results until a condition holds, failing after a few seconds.
+     */
+    private void runUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            Runnable task = uiThread.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            assertNotNull("Timed out waiting for a page", task);
+            task.run();
+        }
+    }
+
+    private static List<MedicineRecord> records(long firstId, int count) {
+        List<MedicineRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(new MedicineRecord(firstId + i, "Medicine " + i, 8 * 60, 1, DoseTime.ALL_DAYS));
+        }
+        return records;
+    }
+}
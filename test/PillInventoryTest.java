@@ -0,0 +1,161 @@
+package com.example.myapplication1;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PillInventoryTest class.
+ * <p>
+ * Run-out projection across the end of the week, a dose due in the minute the pills were
+ * counted and daylight saving changes, and replay of the dose events after a checkpoint,
+ * also from a log that holds fewer events than the checkpoint covers.
+ */
+public class PillInventoryTest {
+
+    private static final ZoneId UTC = ZoneId.of("UTC");
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+
+    // Day masks, bit 0 = Monday
+    private static final int SUNDAY = DoseTime.withDay(0, 6);
+
+    private File dir;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("inventory-test").toFile();
+        file = new File(dir, "medicines.dat");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        MedicineJournal.getInstance(file).close();
+        DoseEventLog.getInstance(file).close();
+        for (File child : dir.listFiles()) {
+            child.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void runOutWrapsPastTheEndOfTheWeek() throws IOException {
+        // Sunday at 23:00 and, 12 hours later, Monday at 11:00
+        PillInventory inventory = inventory(UTC, new MedicineRecord(1, "Aspirin", 23 * 60, 2, SUNDAY));
+
+        long countedAt = millis("2026-01-11T22:00", UTC);  // a Sunday
+        assertEquals(millis("2026-01-11T23:00", UTC), inventory.setStock(1, 0, 1, countedAt));
+        assertEquals(millis("2026-01-12T11:00", UTC), inventory.setStock(1, 1, 1, countedAt));
+        assertEquals(millis("2026-01-18T23:00", UTC), inventory.setStock(1, 2, 1, countedAt));
+        // Thirteen weeks of two doses are covered by 26 pills
+        assertEquals(millis("2026-04-12T23:00", UTC), inventory.setStock(1, 26, 1, countedAt));
+    }
+
+    @Test
+    public void doseDueInTheMinuteOfTheCountIsNotCovered() throws IOException {
+        PillInventory inventory = inventory(UTC, new MedicineRecord(1, "Aspirin", 8 * 60, 1, DoseTime.ALL_DAYS));
+
+        long justBefore = millis("2026-01-05T07:59", UTC) + 59_000;
+        assertEquals(millis("2026-01-05T08:00", UTC), inventory.setStock(1, 0, 1, justBefore));
+        long duringDose = millis("2026-01-05T08:00", UTC) + 30_000;
+        assertEquals(millis("2026-01-06T08:00", UTC), inventory.setStock(1, 0, 1, duringDose));
+        assertEquals(millis("2026-01-07T08:00", UTC), inventory.setStock(1, 2, 2, duringDose));
+    }
+
+    @Test
+    public void runOutStaysOnLocalTimeAcrossDaylightSaving() throws IOException {
+        PillInventory inventory = inventory(BERLIN, new MedicineRecord(1, "Aspirin", 8 * 60, 1, DoseTime.ALL_DAYS),
+                new MedicineRecord(2, "Night", 2 * 60 + 30, 1, DoseTime.ALL_DAYS));
+
+        // 2026-03-29 02:00 CET becomes 03:00 CEST
+        long countedAt = millis("2026-03-28T09:00", BERLIN);
+        assertEquals(millis("2026-03-30T08:00", BERLIN), inventory.setStock(1, 1, 1, countedAt));
+        // A dose in the skipped hour is due after the gap
+        assertEquals(millis("2026-03-29T03:30", BERLIN), inventory.setStock(2, 0, 1, countedAt));
+
+        // 2026-10-25 03:00 CEST becomes 02:00 CET
+        countedAt = millis("2026-10-24T09:00", BERLIN);
+        assertEquals(millis("2026-10-26T08:00", BERLIN), inventory.setStock(1, 1, 1, countedAt));
+    }
+
+    @Test
+    public void eventsAfterTheCheckpointAreReplayed() throws IOException {
+        PillInventory inventory = inventory(UTC, new MedicineRecord(1, "Aspirin", 8 * 60, 1, DoseTime.ALL_DAYS));
+        DoseEventLog log = DoseEventLog.getInstance(file);
+        inventory.attach(log);
+        inventory.setStock(1, 10, 1, millis("2026-01-01T00:00", UTC));
+        take(log, "2026-01-01T08:00");
+        take(log, "2026-01-02T08:00");
+        inventory.checkpoint();
+        take(log, "2026-01-03T08:00");
+        take(log, "2026-01-03T08:00");  // reported twice, counted once
+
+        PillInventory reopened = reopen();
+        reopened.attach(log);
+        assertEquals(4, reopened.getEventCount());
+        assertEquals(7, reopened.getPills(1));
+        assertEquals(millis("2026-01-11T08:00", UTC), reopened.getRunOutMillis(1));
+    }
+
+    @Test
+    public void shorterLogThanCheckpointOnlyCountsNewEvents() throws IOException {
+        PillInventory inventory = inventory(UTC, new MedicineRecord(1, "Aspirin", 8 * 60, 1, DoseTime.ALL_DAYS));
+        DoseEventLog log = DoseEventLog.getInstance(file);
+        inventory.attach(log);
+        inventory.setStock(1, 10, 1, millis("2026-01-01T00:00", UTC));
+        take(log, "2026-01-01T08:00");
+        take(log, "2026-01-02T08:00");
+        take(log, "2026-01-03T08:00");
+        inventory.checkpoint();
+        inventory.detach(MedicineJournal.getInstance(file), log);
+
+        // The log is replaced by one holding a single event, e.g. restored from an older backup
+        log.close();
+        assertTrue(DoseEventLog.eventFile(file).delete());
+        log = DoseEventLog.getInstance(file);
+        take(log, "2026-01-04T08:00");
+
+        PillInventory reopened = reopen();
+        reopened.attach(log);
+        assertEquals(1, reopened.getEventCount());
+        assertEquals(7, reopened.getPills(1));
+
+        take(log, "2026-01-05T08:00");
+        assertEquals(2, reopened.getEventCount());
+        assertEquals(6, reopened.getPills(1));
+    }
+
+    private PillInventory inventory(ZoneId zone, MedicineRecord... records) throws IOException {
+        MedicineJournal journal = MedicineJournal.getInstance(file);
+        for (MedicineRecord record : records) {
+            journal.put(record);
+        }
+        PillInventory inventory = new PillInventory(file, zone);
+        inventory.attach(journal, null);
+        return inventory;
+    }
+
+    private PillInventory reopen() throws IOException {
+        PillInventory inventory = PillInventory.load(file, UTC);
+        inventory.attach(MedicineJournal.getInstance(file), null);
+        return inventory;
+    }
+
+    private static void take(DoseEventLog log, String scheduledAt) {
+        long millis = millis(scheduledAt, UTC);
+        log.record(new DoseEvent(1, 0, millis, millis + 60_000, DoseEvent.TAKEN));
+    }
+
+    private static long millis(String localTime, ZoneId zone) {
+        return LocalDateTime.parse(localTime).atZone(zone).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.myapplication1;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RefillQueueTest class.
+ * <p>
+ * Medicines are reported once, at their latest run-out time, however often that time moved;
+ * stale heap entries are dropped when they reach the top or when they outnumber live ones.
+ */
+public class RefillQueueTest {
+
+    private final RefillQueue queue = new RefillQueue();
+    private final PillInventory resident = new PillInventory(new File("a.dat"), ZoneId.of("UTC"));
+    private final PillInventory other = new PillInventory(new File("b.dat"), ZoneId.of("UTC"));
+
+    @Test
+    public void movedRunOutIsReportedOnceAtItsLatestTime() {
+        queue.update(resident, record(1), 100);
+        queue.update(resident, record(2), 300);
+        queue.update(resident, record(1), 200);
+
+        List<RefillQueue.Refill> due = queue.runningOutBefore(1000);
+        assertEquals(2, due.size());
+        assertEquals(200, due.get(0).getRunOutMillis());
+        assertEquals(1, due.get(0).getRecord().getId());
+        assertEquals(300, due.get(1).getRunOutMillis());
+        assertSame(resident, due.get(0).getInventory());
+    }
+
+    @Test
+    public void staleEntryBeforeTheLimitIsDroppedAndLiveOnesStay() {
+        queue.update(resident, record(1), 100);
+        queue.update(resident, record(1), 500);  // refilled, runs out later
+        assertEquals(2, queue.heapSize());
+
+        assertTrue(queue.runningOutBefore(200).isEmpty());
+        assertEquals(1, queue.heapSize());
+
+        // Asking again returns the same live entries
+        assertEquals(1, queue.runningOutBefore(1000).size());
+        assertEquals(1, queue.runningOutBefore(1000).size());
+        assertEquals(1, queue.heapSize());
+    }
+
+    @Test
+    public void removedAndNeverEntriesAreNotReported() {
+        queue.update(resident, record(1), 100);
+        queue.update(resident, record(2), 100);
+        queue.update(resident, record(3), 100);
+        queue.remove(resident, 2);
+        queue.update(resident, record(3), PillInventory.NEVER);
+
+        List<RefillQueue.Refill> due = queue.runningOutBefore(1000);
+        assertEquals(1, due.size());
+        assertEquals(1, due.get(0).getRecord().getId());
+        assertFalse(queue.contains(resident, 2));
+        assertNull(queue.get(resident, 3));
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void sameReminderIdOfTwoResidentsAreDistinct() {
+        queue.update(resident, record(1), 100);
+        queue.update(other, record(1), 200);
+
+        assertEquals(2, queue.size());
+        queue.remove(resident, 1);
+        List<RefillQueue.Refill> due = queue.runningOutBefore(1000);
+        assertEquals(1, due.size());
+        assertSame(other, due.get(0).getInventory());
+    }
+
+    @Test
+    public void heapIsRebuiltWhenStaleEntriesOutnumberLiveOnes() {
+        for (int i = 0; i < 1000; i++) {
+            queue.update(resident, record(1), 10_000 - i);
+            queue.update(resident, record(2), 20_000 + i);
+        }
+        assertTrue(String.valueOf(queue.heapSize()), queue.heapSize() <= 64 + 1);
+
+        List<RefillQueue.Refill> due = queue.runningOutBefore(Long.MAX_VALUE);
+        assertEquals(2, due.size());
+        assertEquals(10_000 - 999, due.get(0).getRunOutMillis());
+        assertEquals(20_000 + 999, due.get(1).getRunOutMillis());
+    }
+
+    private static MedicineRecord record(long id) {
+        return new MedicineRecord(id, "Medicine " + id, 8 * 60, 1, DoseTime.ALL_DAYS);
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.myapplication1;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * ReminderBackupTest class.
+ * <p>
+ * Backup followed by restore gives back every shard and event log; unchanged files are taken
+ * over from the previous backup, an appended journal is only read from its last chunk on,
+ * and a damaged chunk or an open store stops the restore.
+ */
+public class ReminderBackupTest {
+
+    private File root;
+    private File storeDir;
+    private File backupDir;
+    private File shard;
+    private final List<MedicineJournal> opened = new ArrayList<>();
+    private final List<DoseEventLog> logs = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("backup-test").toFile();
+        storeDir = new File(root, "store");
+        backupDir = new File(root, "backups");
+        assertTrue(storeDir.mkdir());
+        PatientProfile profile = PatientDirectory.getInstance(storeDir).addProfile("Ana");
+        shard = PatientDirectory.shardFile(storeDir, profile.getId());
+
+        MedicineJournal journal = journal(shard);
+        for (int i = 0; i < 3000; i++) {
+            journal.put(new MedicineRecord(i + 1, "Medicine " + Integer.toHexString(i * 7919), (i * 13) % 1440,
+                    1 + i % 3, DoseTime.ALL_DAYS));
+        }
+        journal.put(new MedicineRecord(1, "Renamed", 8 * 60, 1, DoseTime.ALL_DAYS));
+        journal.sync();
+        DoseEventLog log = log(shard);
+        for (int i = 0; i < 100; i++) {
+            log.record(new DoseEvent(i + 1, 0, i * 60_000L, i * 60_000L, DoseEvent.FIRED));
+        }
+        log.flush().join();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        closeStore();
+        delete(root);
+    }
+
+    @Test
+    public void restoreGivesBackEveryFile() throws IOException {
+        List<MedicineRecord> records = journal(shard).readAll();
+        ReminderBackup.Report report = backup(1000);
+        assertTrue(report.toString(), report.getChunks() > 1);
+        assertEquals(report.getChunks(), report.getNewChunks());
+        closeStore();
+
+        File restoredDir = new File(root, "restored");
+        long restored;
+        try (BackupRepository repository = new BackupRepository(backupDir)) {
+            restored = ReminderBackup.restore(repository, repository.latest(), restoredDir);
+        }
+        assertEquals(report.getBytesScanned(), restored);
+
+        File restoredShard = new File(restoredDir, shard.getName());
+        assertEquals(records, journal(restoredShard).readAll());
+        assertEquals(100, log(restoredShard).size());
+        assertEquals(PatientDirectory.getInstance(storeDir).getProfiles(),
+                new PatientDirectory(restoredDir).getProfiles());
+    }
+
+    @Test
+    public void unchangedFilesAreReusedAndAppendsReadFromTheLastChunk() throws IOException {
+        ReminderBackup.Report first = backup(1000);
+
+        ReminderBackup.Report again = backup(2000);
+        assertEquals(first.getManifest().getFiles().size(), again.getFilesReused());
+        assertEquals(0, again.getBytesScanned());
+        assertEquals(0, again.getNewChunks());
+
+        MedicineJournal journal = journal(shard);
+        journal.put(new MedicineRecord(5000, "Added", 9 * 60, 1, DoseTime.ALL_DAYS));
+        journal.sync();
+        ReminderBackup.Report appended = backup(3000);
+        long journalLength = appended.getManifest().getFile(shard.getName()).getLength();
+        assertEquals(first.getManifest().getFiles().size() - 1, appended.getFilesReused());
+        assertTrue(appended.toString(), appended.getBytesScanned() <= ContentChunker.MAX_CHUNK + 64);
+        assertTrue(appended.toString(), appended.getBytesScanned() < journalLength);
+        assertTrue(appended.toString(), appended.getNewChunks() <= 2);
+
+        List<MedicineRecord> records = journal.readAll();
+        closeStore();
+        File restoredDir = new File(root, "restored");
+        try (BackupRepository repository = new BackupRepository(backupDir)) {
+            ReminderBackup.restore(repository, repository.latest(), restoredDir);
+        }
+        assertEquals(records, journal(new File(restoredDir, shard.getName())).readAll());
+    }
+
+    @Test
+    public void chunkNotMatchingItsHashStopsTheRestore() throws IOException {
+        BackupManifest manifest = backup(1000).getManifest();
+        BackupManifest.ChunkRef damaged = manifest.getFile(shard.getName()).getChunks().get(1);
+        String hex = BackupRepository.hex(damaged.getHash());
+        File chunkFile = new File(new File(new File(backupDir, "chunks"), hex.substring(0, 2)), hex);
+        Files.write(chunkFile.toPath(), deflate(new byte[damaged.getLength()]));
+        closeStore();
+
+        File restoredDir = new File(root, "restored");
+        try (BackupRepository repository = new BackupRepository(backupDir)) {
+            ReminderBackup.restore(repository, manifest, restoredDir);
+            fail("Restore of a damaged chunk succeeded");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("does not match its hash"));
+        }
+        assertFalse(new File(restoredDir, shard.getName()).exists());
+        assertFalse(new File(restoredDir, shard.getName() + ".restore").exists());
+    }
+
+    @Test
+    public void restoreOverAnOpenStoreIsRefused() throws IOException {
+        long length = shard.length();
+        try (BackupRepository repository = new BackupRepository(backupDir)) {
+            ReminderBackup.backup(storeDir, repository, 1000);
+            ReminderBackup.restore(repository, repository.latest(), storeDir);
+            fail("Restore over an open journal succeeded");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Cannot restore over an open store"));
+        }
+        assertEquals(length, shard.length());
+    }
+
+    private ReminderBackup.Report backup(long nowMillis) throws IOException {
+        try (BackupRepository repository = new BackupRepository(backupDir)) {
+            return ReminderBackup.backup(storeDir, repository, nowMillis);
+        }
+    }
+
+    private MedicineJournal journal(File file) throws IOException {
+        MedicineJournal journal = MedicineJournal.getInstance(file);
+        if (!opened.contains(journal)) {
+            opened.add(journal);
+        }
+        return journal;
+    }
+
+    private DoseEventLog log(File file) throws IOException {
+        DoseEventLog log = DoseEventLog.getInstance(file);
+        if (!logs.contains(log)) {
+            logs.add(log);
+        }
+        return log;
+    }
+
+    /**
+     * Closes every journal and event log the test opened, as a process restart would.
+     */
+    private void closeStore() throws IOException {
+        for (MedicineJournal journal : opened) {
+            journal.close();
+        }
+        opened.clear();
+        for (DoseEventLog log : logs) {
+            log.close();
+        }
+        logs.clear();
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(bytes);
+        deflater.finish();
+        byte[] out = new byte[bytes.length + 1024];
+        int length = deflater.deflate(out);
+        deflater.end();
+        return Arrays.copyOf(out, length);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
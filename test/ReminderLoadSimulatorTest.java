@@ -0,0 +1,68 @@
+package com.example.myapplication1;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ReminderLoadSimulatorTest class.
+ * <p>
+ * A seed replays the same workload: two runs with one seed agree on every day's digest,
+ * operation count, reminder count and event count, and another seed does not.
+ */
+public class ReminderLoadSimulatorTest {
+
+    @Test
+    public void sameSeedReplaysSameWorkload() throws IOException {
+        List<ReminderLoadSimulator.DayReport> first = simulate(7);
+        List<ReminderLoadSimulator.DayReport> second = simulate(7);
+
+        assertEquals(first.size(), second.size());
+        for (int day = 0; day < first.size(); day++) {
+            ReminderLoadSimulator.DayReport a = first.get(day);
+            ReminderLoadSimulator.DayReport b = second.get(day);
+            assertEquals("digest of day " + day, a.getDigest(), b.getDigest());
+            assertEquals("operations of day " + day, a.getOperations(), b.getOperations());
+            assertEquals("reminders of day " + day, a.getReminders(), b.getReminders());
+            assertEquals("events of day " + day, a.getEvents(), b.getEvents());
+        }
+        assertTrue(first.get(first.size() - 1).getEvents() > 0);
+    }
+
+    @Test
+    public void otherSeedChangesWorkload() throws IOException {
+        List<ReminderLoadSimulator.DayReport> first = simulate(7);
+        List<ReminderLoadSimulator.DayReport> other = simulate(8);
+
+        assertNotEquals(first.get(first.size() - 1).getDigest(), other.get(other.size() - 1).getDigest());
+    }
+
+    /**
+     * Runs a small simulation in a temporary folder.
+     */
+    private static List<ReminderLoadSimulator.DayReport> simulate(long seed) throws IOException {
+        ReminderLoadSimulator.Config config = new ReminderLoadSimulator.Config()
+                .setSeed(seed)
+                .setResidents(200)
+                .setStores(4)
+                .setDays(3)
+                .setAddsPerDay(20)
+                .setEditsPerDay(50)
+                .setDeletesPerDay(10)
+                .setLoadsPerDay(50);
+        ReminderLoadSimulator simulator = new ReminderLoadSimulator(config);
+        try {
+            simulator.populate();
+            List<ReminderLoadSimulator.DayReport> reports = simulator.run(null);
+            assertEquals(simulator.getDigest(), reports.get(reports.size() - 1).getDigest());
+            return reports;
+        } finally {
+            simulator.close();
+        }
+    }
+}
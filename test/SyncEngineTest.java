@@ -0,0 +1,194 @@
+package com.example.myapplication1;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * SyncEngineTest class.
+ * <p>
+ * Two devices syncing one data set through an {@link InProcessSyncServer}: concurrent edits
+ * end with the same winner everywhere, deletes reach the other device, a pull that cannot be
+ * written is pulled again, and more than {@link SyncBatch#MAX_CHANGES} changes go across in
+ * several round trips.
+ */
+public class SyncEngineTest {
+
+    private static final String DATASET = "patient-1";
+    private static final ZoneId UTC = ZoneId.of("UTC");
+
+    private final InProcessSyncServer server = new InProcessSyncServer();
+    private final VirtualClock clockA = new VirtualClock(1_000_000, UTC);
+    private final VirtualClock clockB = new VirtualClock(1_000_000, UTC);
+    private final List<SyncEngine> engines = new ArrayList<>();
+    private File dir;
+    private File fileA;
+    private File fileB;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("sync-test").toFile();
+        fileA = new File(dir, "a.dat");
+        fileB = new File(dir, "b.dat");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (SyncEngine engine : engines) {
+            engine.close();
+        }
+        for (File file : new File[]{fileA, fileB}) {
+            MedicineJournal.getInstance(file).close();
+        }
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void concurrentEditsConvergeToTheSameWinner() throws IOException {
+        SyncEngine a = open(fileA, server, clockA);
+        SyncEngine b = open(fileB, server, clockB);
+        journal(fileA).put(record(1, "Aspirin"));
+        a.sync();
+        b.sync();
+        assertEquals(record(1, "Aspirin"), journal(fileB).get(1));
+
+        // Both devices edit offline; the edit made later on the wall clock wins
+        clockB.advance(1000);
+        journal(fileB).put(record(1, "Aspirin B"));
+        clockA.advance(2000);
+        journal(fileA).put(record(1, "Aspirin A"));
+
+        b.sync();
+        // The server already resolved B's edit against A's, so A has nothing to pull
+        assertEquals(0, a.sync().getPulled());
+        SyncEngine.Report report = b.sync();
+        assertEquals(1, report.getPulled());
+        assertEquals(1, report.getApplied());
+
+        assertEquals(record(1, "Aspirin A"), journal(fileA).get(1));
+        assertEquals(record(1, "Aspirin A"), journal(fileB).get(1));
+        assertEquals(journal(fileA).readAll(), server.records(DATASET));
+        assertEquals(0, a.getState().dirtyCount());
+        assertEquals(0, b.getState().dirtyCount());
+    }
+
+    @Test
+    public void deletePropagates() throws IOException {
+        SyncEngine a = open(fileA, server, clockA);
+        SyncEngine b = open(fileB, server, clockB);
+        journal(fileA).put(record(1, "Aspirin"));
+        journal(fileA).put(record(2, "Ibuprofen"));
+        a.sync();
+        b.sync();
+        assertEquals(2, journal(fileB).size());
+
+        clockA.advance(1000);
+        journal(fileA).delete(1);
+        a.sync();
+        b.sync();
+
+        assertNull(journal(fileB).get(1));
+        assertEquals(record(2, "Ibuprofen"), journal(fileB).get(2));
+        assertEquals(2, b.getState().size());  // the delete is kept as a tombstone
+        assertEquals(1, server.records(DATASET).size());
+    }
+
+    @Test
+    public void failedApplyRestoresEntriesAndPullsAgain() throws IOException {
+        SyncEngine a = open(fileA, server, clockA);
+        journal(fileB).put(record(1, "Aspirin B"));
+        SyncEngine b = open(fileB, server, clockB);
+        b.sync();
+        a.sync();
+        clockA.advance(1000);
+        journal(fileA).put(record(1, "Aspirin A"));
+        a.sync();
+
+        // The journal goes away while the pull is on the wire, so the winner cannot be written
+        SyncTransport closing = (dataset, request) -> {
+            byte[] response = server.exchange(dataset, request);
+            journal(fileB).close();
+            return response;
+        };
+        SyncEngine failing = new SyncEngine(journal(fileB), b.getState(), SyncState.stateFile(fileB), DATASET,
+                closing);
+        long cursor = b.getState().getCursor();
+        try {
+            failing.sync();
+            fail("Sync into a closed journal succeeded");
+        } catch (IOException expected) {
+            // The pulled change was rolled back
+        }
+        engines.remove(b);
+        assertEquals(cursor, b.getState().getCursor());
+
+        // A restart reads the saved state, which still holds the local version
+        SyncEngine restarted = open(fileB, server, clockB);
+        assertEquals(0, restarted.getState().dirtyCount());
+        assertEquals(record(1, "Aspirin B"), journal(fileB).get(1));
+        SyncEngine.Report report = restarted.sync();
+        assertEquals(1, report.getPulled());
+        assertEquals(1, report.getApplied());
+        assertEquals(record(1, "Aspirin A"), journal(fileB).get(1));
+        assertEquals(0, restarted.getState().dirtyCount());
+    }
+
+    @Test
+    public void pagesPastMaxChanges() throws IOException {
+        int count = 2 * SyncBatch.MAX_CHANGES + 10;
+        SyncEngine a = open(fileA, server, clockA);
+        SyncEngine b = open(fileB, server, clockB);
+        List<MedicineJournal.Change> changes = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            changes.add(MedicineJournal.Change.put(record(i, "Medicine " + i)));
+        }
+        journal(fileA).apply(changes);
+
+        SyncEngine.Report pushed = a.sync();
+        assertEquals(count, pushed.getPushed());
+        assertEquals(3, pushed.getRoundTrips());
+        SyncEngine.Report pulled = b.sync();
+        assertEquals(count, pulled.getPulled());
+        assertEquals(count, pulled.getApplied());
+        assertEquals(3, pulled.getRoundTrips());
+
+        assertEquals(sorted(journal(fileA).readAll()), sorted(journal(fileB).readAll()));
+        assertEquals(count, server.records(DATASET).size());
+        assertEquals(0, b.sync().getPulled());
+    }
+
+    private SyncEngine open(File file, SyncTransport transport, VirtualClock clock) throws IOException {
+        SyncEngine engine = SyncEngine.open(file, DATASET, transport, clock);
+        engines.add(engine);
+        return engine;
+    }
+
+    private static MedicineJournal journal(File file) throws IOException {
+        return MedicineJournal.getInstance(file);
+    }
+
+    private static MedicineRecord record(long id, String name) {
+        return new MedicineRecord(id, name, 8 * 60, 1, DoseTime.ALL_DAYS);
+    }
+
+    private static List<MedicineRecord> sorted(List<MedicineRecord> records) {
+        List<MedicineRecord> copy = new ArrayList<>(records);
+        copy.sort(Comparator.comparingLong(MedicineRecord::getId));
+        return copy;
+    }
+}